@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.plugin.api.PaymentTransactionInfoPlugin;
+import org.killbill.billing.util.callcontext.CallContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * End-to-end authorizePayment: payment method lookup, HTTP call to a local stub, and insert of the response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class HyperswitchAuthorizeBenchmark {
+
+    private HyperswitchStubServer stubServer;
+    private HyperswitchPluginFixture fixture;
+    private UUID kbAccountId;
+    private UUID kbPaymentMethodId;
+    private CallContext context;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        stubServer = new HyperswitchStubServer();
+        fixture = new HyperswitchPluginFixture(stubServer.getBasePath(), 10);
+        kbAccountId = UUID.randomUUID();
+        kbPaymentMethodId = fixture.addPaymentMethod(kbAccountId);
+        context = fixture.newCallContext(kbAccountId);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+        stubServer.close();
+    }
+
+    @Benchmark
+    public PaymentTransactionInfoPlugin authorizePayment() throws Exception {
+        return fixture.getPluginApi().authorizePayment(kbAccountId,
+                                                       UUID.randomUUID(),
+                                                       UUID.randomUUID(),
+                                                       kbPaymentMethodId,
+                                                       new BigDecimal("10.00"),
+                                                       Currency.USD,
+                                                       ImmutableList.<PluginProperty>of(),
+                                                       context);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.plugin.hyperswitch.dao.HyperswitchDao;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchResponsesRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hyperswitch.client.model.IntentStatus;
+import com.hyperswitch.client.model.PaymentsResponse;
+
+/**
+ * Insert costs of hyperswitch_responses against an embedded H2 database: a single row (addResponse, which also
+ * upserts the payment head in the same transaction) vs. a batch of rows (addResponses).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HyperswitchInsertBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    private EmbeddedDatabase database;
+    private HyperswitchDao dao;
+    private PaymentsResponse paymentsResponse;
+    private UUID kbAccountId;
+    private UUID kbTenantId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = new EmbeddedDatabase(2);
+        dao = new HyperswitchDao(database.getDataSource());
+
+        paymentsResponse = new PaymentsResponse();
+        paymentsResponse.setPaymentId("pay_" + UUID.randomUUID().toString().replace("-", ""));
+        paymentsResponse.setStatus(IntentStatus.SUCCEEDED);
+        paymentsResponse.setCustomerId(UUID.randomUUID().toString());
+        paymentsResponse.setProfileId("pro_benchmark");
+        kbAccountId = UUID.randomUUID();
+        kbTenantId = UUID.randomUUID();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public HyperswitchResponsesRecord addResponse() throws Exception {
+        return dao.addResponse(kbAccountId,
+                               UUID.randomUUID(),
+                               UUID.randomUUID(),
+                               TransactionType.PURCHASE,
+                               BigDecimal.TEN,
+                               Currency.USD,
+                               paymentsResponse,
+                               DateTime.now(DateTimeZone.UTC),
+                               kbTenantId);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void addResponses() throws Exception {
+        final DateTime utcNow = DateTime.now(DateTimeZone.UTC);
+        final List<HyperswitchResponsesRecord> records = new ArrayList<HyperswitchResponsesRecord>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            records.add(dao.buildResponse(kbAccountId,
+                                          UUID.randomUUID(),
+                                          UUID.randomUUID(),
+                                          TransactionType.PURCHASE,
+                                          BigDecimal.TEN,
+                                          Currency.USD,
+                                          paymentsResponse,
+                                          utcNow,
+                                          kbTenantId));
+        }
+        dao.addResponses(records);
+    }
+}
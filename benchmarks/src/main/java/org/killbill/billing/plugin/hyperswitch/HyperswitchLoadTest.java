@@ -0,0 +1,293 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.plugin.api.PaymentPluginStatus;
+import org.killbill.billing.payment.plugin.api.PaymentTransactionInfoPlugin;
+import org.killbill.billing.plugin.hyperswitch.dao.HyperswitchResponseJournal;
+import org.killbill.billing.util.callcontext.CallContext;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Closed-loop load driver: each thread runs authorize, (force-sync while pending), capture and refund on new
+ * payments through HyperswitchPaymentPluginApi, against the stub server and the embedded database.
+ * <p>
+ * Options are passed as {@code --name=value}:
+ * <pre>
+ * threads=16 duration=30 warmup=5 dbConnections=10 minLatency=20 maxLatency=50
+ * errorRate=0 errorStatus=500 processing=0 refund=true writeBehind=false hedging=false executionMode=caller
+ * </pre>
+ * Durations are in seconds, latencies and the processing window in milliseconds. Throughput and latencies only
+ * cover the measurement period (after the warmup).
+ */
+public class HyperswitchLoadTest {
+
+    private static final String PROPERTY_PREFIX = "org.killbill.billing.plugin.hyperswitch.";
+    private static final Iterable<PluginProperty> NO_PROPERTIES = ImmutableList.<PluginProperty>of();
+    private static final BigDecimal AMOUNT = new BigDecimal("10.00");
+    private static final BigDecimal REFUND_AMOUNT = new BigDecimal("4.00");
+    private static final long SYNC_INTERVAL_MILLIS = 20;
+    private static final long CONNECTION_SAMPLING_MILLIS = 10;
+
+    private final Map<String, String> options;
+    private final Map<String, Operation> operations = new LinkedHashMap<String, Operation>();
+    private final AtomicLong completedPayments = new AtomicLong();
+    private final AtomicLong connectionSamples = new AtomicLong();
+    private final AtomicLong activeConnectionsSum = new AtomicLong();
+    private final AtomicLong maxActiveConnections = new AtomicLong();
+    private final AtomicLong saturatedSamples = new AtomicLong();
+
+    private volatile boolean recording;
+    private volatile boolean running = true;
+
+    public HyperswitchLoadTest(final Map<String, String> options) {
+        this.options = options;
+        for (final String name : new String[]{"authorize", "sync", "capture", "refund"}) {
+            operations.put(name, new Operation());
+        }
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final Map<String, String> options = new LinkedHashMap<String, String>();
+        for (final String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        new HyperswitchLoadTest(options).run();
+    }
+
+    public void run() throws Exception {
+        final int threads = intOption("threads", 16);
+        final long warmupSeconds = intOption("warmup", 5);
+        final long durationSeconds = intOption("duration", 30);
+        final int dbConnections = intOption("dbConnections", 10);
+
+        final Properties overrides = new Properties();
+        overrides.setProperty(PROPERTY_PREFIX + "writeBehindEnabled", option("writeBehind", "false"));
+        overrides.setProperty(PROPERTY_PREFIX + "refreshHedgingEnabled", option("hedging", "false"));
+        overrides.setProperty(PROPERTY_PREFIX + "executionMode", option("executionMode", "caller"));
+
+        try (final HyperswitchStubServer stubServer = new HyperswitchStubServer();
+             final HyperswitchPluginFixture fixture = new HyperswitchPluginFixture(stubServer.getBasePath(), dbConnections, overrides)) {
+            stubServer.setLatencyMillis(intOption("minLatency", 20), intOption("maxLatency", 50))
+                      .setErrorRate(Double.parseDouble(option("errorRate", "0")), intOption("errorStatus", 500))
+                      .setProcessingMillis(intOption("processing", 0));
+
+            final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+            sampler.scheduleAtFixedRate(() -> sampleConnections(fixture.getDatabase(), dbConnections),
+                                        CONNECTION_SAMPLING_MILLIS,
+                                        CONNECTION_SAMPLING_MILLIS,
+                                        TimeUnit.MILLISECONDS);
+
+            final ExecutorService workers = Executors.newFixedThreadPool(threads);
+            final List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < threads; i++) {
+                final UUID kbAccountId = UUID.randomUUID();
+                final UUID kbPaymentMethodId = fixture.addPaymentMethod(kbAccountId);
+                final CallContext context = fixture.newCallContext(kbAccountId);
+                futures.add(workers.submit(() -> runWorker(fixture.getPluginApi(), kbAccountId, kbPaymentMethodId, context)));
+            }
+
+            System.out.printf("Warming up for %ds with %d threads...%n", warmupSeconds, threads);
+            TimeUnit.SECONDS.sleep(warmupSeconds);
+            recording = true;
+            final long start = System.nanoTime();
+            TimeUnit.SECONDS.sleep(durationSeconds);
+            recording = false;
+            final double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+            running = false;
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+            workers.shutdown();
+            sampler.shutdownNow();
+
+            report(elapsedSeconds, dbConnections, stubServer, fixture);
+        }
+    }
+
+    private void runWorker(final HyperswitchPaymentPluginApi pluginApi,
+                           final UUID kbAccountId,
+                           final UUID kbPaymentMethodId,
+                           final CallContext context) {
+        final boolean refund = Boolean.parseBoolean(option("refund", "true"));
+        final long syncTimeoutMillis = intOption("processing", 0) + 5000L;
+        while (running) {
+            final UUID kbPaymentId = UUID.randomUUID();
+
+            final UUID kbAuthorizeTransactionId = UUID.randomUUID();
+            PaymentTransactionInfoPlugin authorization = time("authorize", () -> pluginApi.authorizePayment(kbAccountId, kbPaymentId, kbAuthorizeTransactionId, kbPaymentMethodId, AMOUNT, Currency.USD, NO_PROPERTIES, context));
+            final long syncDeadline = System.currentTimeMillis() + syncTimeoutMillis;
+            while (authorization != null && authorization.getStatus() == PaymentPluginStatus.PENDING && running && System.currentTimeMillis() < syncDeadline) {
+                sleep(SYNC_INTERVAL_MILLIS);
+                final List<PaymentTransactionInfoPlugin> transactions = time("sync", () -> pluginApi.getPaymentInfo(kbAccountId, kbPaymentId, NO_PROPERTIES, context));
+                authorization = transactions == null ? null : find(transactions, kbAuthorizeTransactionId);
+            }
+            if (authorization == null || authorization.getStatus() != PaymentPluginStatus.PROCESSED) {
+                continue;
+            }
+
+            final PaymentTransactionInfoPlugin capture = time("capture", () -> pluginApi.capturePayment(kbAccountId, kbPaymentId, UUID.randomUUID(), kbPaymentMethodId, AMOUNT, Currency.USD, NO_PROPERTIES, context));
+            if (capture == null || capture.getStatus() != PaymentPluginStatus.PROCESSED) {
+                continue;
+            }
+
+            if (refund) {
+                time("refund", () -> pluginApi.refundPayment(kbAccountId, kbPaymentId, UUID.randomUUID(), kbPaymentMethodId, REFUND_AMOUNT, Currency.USD, NO_PROPERTIES, context));
+            }
+            if (recording) {
+                completedPayments.incrementAndGet();
+            }
+        }
+    }
+
+    private <T> T time(final String name, final PluginCall<T> call) {
+        final Operation operation = operations.get(name);
+        final long start = System.nanoTime();
+        try {
+            final T result = call.call();
+            if (recording) {
+                operation.latencies.recordNanos(System.nanoTime() - start);
+            }
+            return result;
+        } catch (final Exception e) {
+            if (recording) {
+                operation.failures.incrementAndGet();
+            }
+            return null;
+        }
+    }
+
+    private void sampleConnections(final EmbeddedDatabase database, final int maxConnections) {
+        if (!recording) {
+            return;
+        }
+        final int active = database.getActiveConnections();
+        connectionSamples.incrementAndGet();
+        activeConnectionsSum.addAndGet(active);
+        maxActiveConnections.accumulateAndGet(active, Math::max);
+        if (active >= maxConnections) {
+            saturatedSamples.incrementAndGet();
+        }
+    }
+
+    private void report(final double elapsedSeconds,
+                        final int dbConnections,
+                        final HyperswitchStubServer stubServer,
+                        final HyperswitchPluginFixture fixture) {
+        System.out.printf("%nCompleted payments: %d (%.1f/s) over %.1fs%n", completedPayments.get(), completedPayments.get() / elapsedSeconds, elapsedSeconds);
+        System.out.printf("%n%-10s %10s %10s %8s %10s %10s %10s %10s %10s %10s%n",
+                          "operation", "calls", "calls/s", "failed", "mean(ms)", "p50(ms)", "p90(ms)", "p99(ms)", "p99.9(ms)", "max(ms)");
+        for (final Map.Entry<String, Operation> entry : operations.entrySet()) {
+            final LatencyHistogram latencies = entry.getValue().latencies;
+            System.out.printf("%-10s %10d %10.1f %8d %10.2f %10.2f %10.2f %10.2f %10.2f %10.2f%n",
+                              entry.getKey(),
+                              latencies.getCount(),
+                              latencies.getCount() / elapsedSeconds,
+                              entry.getValue().failures.get(),
+                              latencies.getMeanMicros() / 1000,
+                              latencies.getPercentileMicros(50) / 1000.0,
+                              latencies.getPercentileMicros(90) / 1000.0,
+                              latencies.getPercentileMicros(99) / 1000.0,
+                              latencies.getPercentileMicros(99.9) / 1000.0,
+                              latencies.getMaxMicros() / 1000.0);
+        }
+
+        final long samples = Math.max(1, connectionSamples.get());
+        System.out.printf("%nDB connections (pool of %d): mean active %.2f, max active %d, pool exhausted %.1f%% of the time%n",
+                          dbConnections,
+                          (double) activeConnectionsSum.get() / samples,
+                          maxActiveConnections.get(),
+                          100.0 * saturatedSamples.get() / samples);
+        final HyperswitchResponseJournal responseJournal = fixture.getResponseJournal();
+        if (responseJournal != null) {
+            System.out.printf("Write-behind: %d appended, %d flushed in %d group commits, queue depth %d%n",
+                              responseJournal.getAppendedResponses(),
+                              responseJournal.getFlushedResponses(),
+                              responseJournal.getGroupCommits(),
+                              responseJournal.getQueueDepth());
+        }
+        final HyperswitchCircuitBreaker circuitBreaker = fixture.getCircuitBreaker();
+        System.out.printf("Circuit breaker: %d calls rejected while open, %d by the bulkhead, %d circuits open%n",
+                          circuitBreaker.getRejectedByCircuit(),
+                          circuitBreaker.getRejectedByBulkhead(),
+                          circuitBreaker.getOpenCircuits());
+        System.out.printf("Retries: %d retried calls, %d outcomes recovered, %d hedged force-syncs%n",
+                          fixture.getRetryPolicy().getRetries(),
+                          fixture.getRetryPolicy().getRecoveries(),
+                          fixture.getPaymentRefresher().getHedgedReads());
+        System.out.printf("Stub server: %s, %d injected errors%n", stubServer.getRequestsByRoute(), stubServer.getInjectedErrors());
+    }
+
+    private static PaymentTransactionInfoPlugin find(final List<PaymentTransactionInfoPlugin> transactions, final UUID kbTransactionId) {
+        for (final PaymentTransactionInfoPlugin transaction : transactions) {
+            if (kbTransactionId.equals(transaction.getKbTransactionPaymentId())) {
+                return transaction;
+            }
+        }
+        return null;
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String option(final String name, final String defaultValue) {
+        final String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    private int intOption(final String name, final int defaultValue) {
+        return Integer.parseInt(option(name, String.valueOf(defaultValue)));
+    }
+
+    private interface PluginCall<T> {
+
+        T call() throws Exception;
+    }
+
+    private static final class Operation {
+
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final AtomicLong failures = new AtomicLong();
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.billing.plugin.hyperswitch.dao.HyperswitchDao;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchResponsesRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups of hyperswitch_responses rows on a seeded table, with the tenant-scoped composite indexes of ddl.sql
+ * (indexes=tenant) vs. the single-column kb_payment_id and kb_payment_transaction_id indexes they replaced
+ * (indexes=legacy). The query plan of each lookup is printed once the table is seeded.
+ * <p>
+ * The table is seeded with two rows (authorization and capture) per payment, spread over {@link #TENANTS} tenants.
+ * Larger tables can be seeded with {@code -p rows=10000000} (and a larger heap).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class HyperswitchLookupBenchmark {
+
+    private static final int TENANTS = 16;
+    private static final int INSERT_BATCH_SIZE = 10000;
+
+    // Same predicates and ordering as the latest row lookup of HyperswitchDao#updateResponse
+    private static final String LATEST_TRANSACTION_ROW = "select record_id, status from hyperswitch_responses " +
+                                                         "where kb_tenant_id = ? and kb_payment_transaction_id = ? " +
+                                                         "order by record_id desc limit 1";
+    // Same predicates and ordering as HyperswitchDao#getResponses
+    private static final String PAYMENT_ROWS = "select record_id, status from hyperswitch_responses " +
+                                               "where kb_tenant_id = ? and kb_payment_id = ? " +
+                                               "order by record_id";
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"tenant", "legacy"})
+    public String indexes;
+
+    private EmbeddedDatabase database;
+    private HyperswitchDao dao;
+    private int payments;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = new EmbeddedDatabase(2);
+        dao = new HyperswitchDao(database.getDataSource());
+        payments = rows / 2;
+
+        try (final Connection connection = database.getDataSource().getConnection()) {
+            if ("legacy".equals(indexes)) {
+                useLegacyIndexes(connection);
+            }
+            seed(connection);
+            try (final Statement statement = connection.createStatement()) {
+                statement.execute("analyze");
+            }
+            printPlan(connection, LATEST_TRANSACTION_ROW, tenantId(0), transactionId(0, 1));
+            printPlan(connection, PAYMENT_ROWS, tenantId(0), paymentId(0));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public List<HyperswitchResponsesRecord> getResponses() throws SQLException {
+        final int payment = ThreadLocalRandom.current().nextInt(payments);
+        return dao.getResponses(UUID.fromString(paymentId(payment)), UUID.fromString(tenantId(payment)));
+    }
+
+    @Benchmark
+    public String getLatestTransactionRow() throws SQLException {
+        final int payment = ThreadLocalRandom.current().nextInt(payments);
+        try (final Connection connection = database.getDataSource().getConnection();
+             final PreparedStatement statement = connection.prepareStatement(LATEST_TRANSACTION_ROW)) {
+            statement.setString(1, tenantId(payment));
+            statement.setString(2, transactionId(payment, 1));
+            try (final ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getString(2) : null;
+            }
+        }
+    }
+
+    private static void useLegacyIndexes(final Connection connection) throws SQLException {
+        // Reverse of V20261018130000__add_tenant_indexes_to_hyperswitch_responses.sql
+        try (final Statement statement = connection.createStatement()) {
+            statement.execute("create index hyperswitch_responses_kb_payment_id on hyperswitch_responses(kb_payment_id)");
+            statement.execute("create index hyperswitch_responses_kb_payment_transaction_id on hyperswitch_responses(kb_payment_transaction_id)");
+            statement.execute("drop index hyperswitch_responses_kb_tenant_id_kb_payment_id");
+            statement.execute("drop index hyperswitch_responses_kb_tenant_id_kb_payment_transaction_id");
+        }
+    }
+
+    private void seed(final Connection connection) throws SQLException {
+        final Timestamp createdDate = new Timestamp(System.currentTimeMillis());
+        connection.setAutoCommit(false);
+        try (final PreparedStatement statement = connection.prepareStatement(
+                "insert into hyperswitch_responses (kb_account_id, kb_payment_id, kb_payment_transaction_id, transaction_type, " +
+                "payment_attempt_id, status, minor_amount, created_date, kb_tenant_id) values (?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            int batched = 0;
+            for (int payment = 0; payment < payments; payment++) {
+                for (int transaction = 0; transaction < 2; transaction++) {
+                    statement.setString(1, new UUID(3L, payment).toString());
+                    statement.setString(2, paymentId(payment));
+                    statement.setString(3, transactionId(payment, transaction));
+                    statement.setString(4, transaction == 0 ? "AUTHORIZE" : "CAPTURE");
+                    statement.setString(5, "pay_" + payment);
+                    statement.setString(6, transaction == 0 ? "requires_capture" : "succeeded");
+                    statement.setLong(7, 1000L);
+                    statement.setTimestamp(8, createdDate);
+                    statement.setString(9, tenantId(payment));
+                    statement.addBatch();
+                    if (++batched % INSERT_BATCH_SIZE == 0) {
+                        statement.executeBatch();
+                        connection.commit();
+                    }
+                }
+            }
+            statement.executeBatch();
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private void printPlan(final Connection connection, final String sql, final String... parameters) throws SQLException {
+        try (final PreparedStatement statement = connection.prepareStatement("explain " + sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setString(i + 1, parameters[i]);
+            }
+            try (final ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    System.out.printf("%n[indexes=%s, rows=%d] %s%n", indexes, rows, resultSet.getString(1));
+                }
+            }
+        }
+    }
+
+    private static String tenantId(final int payment) {
+        return new UUID(0L, payment % TENANTS).toString();
+    }
+
+    private static String paymentId(final int payment) {
+        return new UUID(1L, payment).toString();
+    }
+
+    private static String transactionId(final int payment, final int transaction) {
+        return new UUID(2L, payment * 2L + transaction).toString();
+    }
+}
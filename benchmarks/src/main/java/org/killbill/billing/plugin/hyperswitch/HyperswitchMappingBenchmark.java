@@ -0,0 +1,145 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.jooq.types.ULong;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.payment.plugin.api.PaymentPluginStatus;
+import org.killbill.billing.plugin.hyperswitch.dao.HyperswitchDao;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchResponsesRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.hyperswitch.client.model.IntentStatus;
+import com.hyperswitch.client.model.PaymentsResponse;
+
+/**
+ * Per-call mapping costs: building transactions from rows, and (de)serializing additional_data.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HyperswitchMappingBenchmark {
+
+    private EmbeddedDatabase database;
+    private SerializingDao dao;
+    private HyperswitchResponsesRecord record;
+    private PaymentsResponse paymentsResponse;
+    private Map<String, Object> additionalDataMap;
+    private String additionalData;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = new EmbeddedDatabase(2);
+        dao = new SerializingDao(database.getDataSource());
+
+        paymentsResponse = new PaymentsResponse();
+        paymentsResponse.setPaymentId("pay_" + UUID.randomUUID().toString().replace("-", ""));
+        paymentsResponse.setStatus(IntentStatus.SUCCEEDED);
+        paymentsResponse.setCustomerId(UUID.randomUUID().toString());
+        paymentsResponse.setProfileId("pro_benchmark");
+        additionalDataMap = HyperswitchPluginProperties.toAdditionalDataMap(paymentsResponse);
+        additionalData = dao.serialize(additionalDataMap);
+
+        record = new HyperswitchResponsesRecord();
+        record.setRecordId(ULong.valueOf(1));
+        record.setKbAccountId(UUID.randomUUID().toString());
+        record.setKbPaymentId(UUID.randomUUID().toString());
+        record.setKbPaymentTransactionId(UUID.randomUUID().toString());
+        record.setTransactionType(TransactionType.AUTHORIZE.toString());
+        record.setAmount(new BigDecimal("10.00"));
+        record.setCurrency(Currency.USD.toString());
+        record.setPaymentAttemptId(paymentsResponse.getPaymentId());
+        record.setStatus("succeeded");
+        record.setAdditionalData(additionalData);
+        record.setCreatedDate(LocalDateTime.now());
+        record.setKbTenantId(UUID.randomUUID().toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public Object buildTransactionInfo() {
+        return HyperswitchPaymentTransactionInfoPlugin.build(record);
+    }
+
+    @Benchmark
+    public Object buildTransactionInfoWithProperties() {
+        return HyperswitchPaymentTransactionInfoPlugin.build(record).getProperties();
+    }
+
+    @Benchmark
+    public Map<String, Object> toAdditionalDataMap() {
+        return HyperswitchPluginProperties.toAdditionalDataMap(paymentsResponse);
+    }
+
+    @Benchmark
+    public Map additionalDataRoundTrip() throws SQLException {
+        return HyperswitchDao.fromAdditionalData(dao.serialize(additionalDataMap));
+    }
+
+    @Benchmark
+    public void convertStatusAndCurrency(final Blackhole blackhole) {
+        for (final IntentStatus status : IntentStatus.values()) {
+            final PaymentPluginStatus pluginStatus = HyperswitchPaymentPluginApi.convertPaymentStatus(status);
+            blackhole.consume(pluginStatus);
+        }
+        for (final Currency currency : Currency.values()) {
+            blackhole.consume(HyperswitchPaymentPluginApi.convertCurrency(currency));
+        }
+    }
+
+    // Exposes the DAO serializer used for additional_data
+    private static final class SerializingDao extends HyperswitchDao {
+
+        private SerializingDao(final DataSource dataSource) throws SQLException {
+            super(dataSource);
+        }
+
+        private String serialize(final Map<String, Object> additionalData) throws SQLException {
+            return asString(additionalData);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.io.File;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.plugin.api.PluginCallContext;
+import org.killbill.billing.plugin.hyperswitch.client.HyperswitchClientRegistry;
+import org.killbill.billing.plugin.hyperswitch.dao.HyperswitchDao;
+import org.killbill.billing.plugin.hyperswitch.dao.HyperswitchResponseJournal;
+import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.clock.Clock;
+import org.killbill.clock.DefaultClock;
+
+import com.google.common.collect.ImmutableMap;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+
+/**
+ * A HyperswitchPaymentPluginApi wired outside of OSGi, against an embedded database and a stub Hyperswitch server.
+ */
+public class HyperswitchPluginFixture implements AutoCloseable {
+
+    private static final String PROPERTY_PREFIX = "org.killbill.billing.plugin.hyperswitch.";
+
+    private final Clock clock = new DefaultClock();
+    private final UUID kbTenantId = UUID.randomUUID();
+    private final EmbeddedDatabase database;
+    private final HyperswitchDao dao;
+    private final File journalFile;
+    private final HyperswitchResponseJournal responseJournal;
+    private final HyperswitchClientRegistry clientRegistry;
+    private final HyperswitchPaymentRefresher paymentRefresher;
+    private final HyperswitchNotificationProcessor notificationProcessor;
+    private final HyperswitchPaymentMethodCache paymentMethodCache;
+    private final HyperswitchCircuitBreaker circuitBreaker;
+    private final HyperswitchRetryPolicy retryPolicy;
+    private final HyperswitchExecutor executor;
+    private final HyperswitchPaymentPluginApi pluginApi;
+
+    public HyperswitchPluginFixture(final String basePath, final int maxDbConnections) throws Exception {
+        this(basePath, maxDbConnections, new Properties());
+    }
+
+    public HyperswitchPluginFixture(final String basePath, final int maxDbConnections, final Properties overrides) throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty(PROPERTY_PREFIX + "hyperswitchApikey", "snd_benchmark");
+        properties.setProperty(PROPERTY_PREFIX + "profileId", "pro_benchmark");
+        properties.putAll(overrides);
+        final HyperswitchConfigProperties config = new HyperswitchConfigProperties(properties, null);
+
+        database = new EmbeddedDatabase(maxDbConnections);
+        dao = new HyperswitchDao(database.getDataSource());
+        if (config.isWriteBehindEnabled()) {
+            // Fresh journal for each run, nothing to replay
+            journalFile = File.createTempFile("hyperswitch-responses", ".journal");
+            responseJournal = new HyperswitchResponseJournal(dao,
+                                                             journalFile,
+                                                             config.getWriteBehindJournalSizeMb() * 1024 * 1024,
+                                                             config.getWriteBehindQueueCapacity(),
+                                                             config.getWriteBehindBatchSize(),
+                                                             config.getWriteBehindTimeoutMillis());
+            responseJournal.start();
+            dao.setResponseJournal(responseJournal);
+        } else {
+            journalFile = null;
+            responseJournal = null;
+        }
+        clientRegistry = new HyperswitchClientRegistry(new OkHttpClient.Builder().connectionPool(new ConnectionPool(maxDbConnections, 5, TimeUnit.MINUTES))
+                                                                                 .connectTimeout(config.getConnectTimeoutMillis(), TimeUnit.MILLISECONDS)
+                                                                                 .readTimeout(config.getReadTimeoutMillis(), TimeUnit.MILLISECONDS)
+                                                                                 .build(),
+                                                       basePath);
+        paymentRefresher = new HyperswitchPaymentRefresher(dao,
+                                                           HyperswitchMetrics.NOOP,
+                                                           config.getRefreshThreads(),
+                                                           config.getRefreshMaxConcurrency(),
+                                                           config.getRefreshTimeoutMillis(),
+                                                           config.isRefreshHedgingEnabled(),
+                                                           config.getRefreshHedgeMinDelayMillis());
+        notificationProcessor = new HyperswitchNotificationProcessor(dao, clock, 1, config.getNotificationBatchSize(), config.getNotificationRetentionDays());
+        paymentMethodCache = new HyperswitchPaymentMethodCache(dao, config.getPaymentMethodCacheMaxSize(), config.getPaymentMethodCacheTtlSeconds());
+        circuitBreaker = HyperswitchCircuitBreaker.create(config);
+        retryPolicy = HyperswitchRetryPolicy.create(config);
+        executor = HyperswitchExecutor.create(config);
+
+        // No Kill Bill tenant API here: always serve the same configuration
+        final HyperswitchConfigurationHandler configurationHandler = new HyperswitchConfigurationHandler(null, HyperswitchActivator.PLUGIN_NAME, null) {
+            @Override
+            public HyperswitchConfigProperties getConfigurable(@Nullable final UUID kbTenantId) {
+                return config;
+            }
+        };
+        pluginApi = new HyperswitchPaymentPluginApi(configurationHandler,
+                                                    null,
+                                                    null,
+                                                    clock,
+                                                    dao,
+                                                    clientRegistry,
+                                                    paymentRefresher,
+                                                    notificationProcessor,
+                                                    paymentMethodCache,
+                                                    HyperswitchMetrics.NOOP,
+                                                    circuitBreaker,
+                                                    retryPolicy,
+                                                    executor);
+    }
+
+    /**
+     * @return the id of a new payment method, backed by a (stub) mandate
+     */
+    public UUID addPaymentMethod(final UUID kbAccountId) throws Exception {
+        final UUID kbPaymentMethodId = UUID.randomUUID();
+        dao.addPaymentMethod(kbAccountId,
+                             kbPaymentMethodId,
+                             ImmutableMap.<String, String>of("mandateId", "man_" + kbPaymentMethodId),
+                             "man_" + kbPaymentMethodId,
+                             kbTenantId);
+        return kbPaymentMethodId;
+    }
+
+    public CallContext newCallContext(final UUID kbAccountId) {
+        return new PluginCallContext(HyperswitchActivator.PLUGIN_NAME, clock.getUTCNow(), kbAccountId, kbTenantId);
+    }
+
+    public HyperswitchPaymentPluginApi getPluginApi() {
+        return pluginApi;
+    }
+
+    public HyperswitchDao getDao() {
+        return dao;
+    }
+
+    public HyperswitchCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public HyperswitchRetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    public HyperswitchPaymentRefresher getPaymentRefresher() {
+        return paymentRefresher;
+    }
+
+    public EmbeddedDatabase getDatabase() {
+        return database;
+    }
+
+    @Nullable
+    public HyperswitchResponseJournal getResponseJournal() {
+        return responseJournal;
+    }
+
+    @Override
+    public void close() {
+        notificationProcessor.close();
+        executor.close();
+        paymentRefresher.close();
+        clientRegistry.close();
+        if (responseJournal != null) {
+            responseJournal.close();
+            journalFile.delete();
+        }
+        database.close();
+    }
+}
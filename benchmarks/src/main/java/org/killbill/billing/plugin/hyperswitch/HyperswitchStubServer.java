@@ -0,0 +1,360 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stub of the subset of the Hyperswitch API used by the plugin (create, capture, cancel and force-sync
+ * retrieve of payments, creation and retrieve of refunds), so that the plugin can be exercised without the sandbox.
+ * <p>
+ * Latency, error rate and the processing window can be changed while the server is running:
+ * <ul>
+ * <li>each request is delayed by a random latency between the configured bounds;</li>
+ * <li>a fraction of the requests (the error rate) fails with the configured HTTP status, without side effect;</li>
+ * <li>with a non-zero processing window, payments are {@code processing} (and refunds {@code pending}) until the
+ * window has elapsed, then {@code requires_capture} (manual capture) or {@code succeeded}.</li>
+ * </ul>
+ * Like Hyperswitch, payments and refunds created with an already used {@code payment_id} or {@code refund_id} are
+ * rejected as duplicates.
+ * State is kept in memory for the lifetime of the server.
+ */
+public class HyperswitchStubServer implements AutoCloseable {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final Pattern PAYMENT_PATH = Pattern.compile("^/payments/([^/]+)(/capture|/cancel)?$");
+    private static final Pattern REFUND_PATH = Pattern.compile("^/refunds/([^/]+)$");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, StubPayment> payments = new ConcurrentHashMap<String, StubPayment>();
+    private final ConcurrentMap<String, Map<String, Object>> refunds = new ConcurrentHashMap<String, Map<String, Object>>();
+    private final ConcurrentMap<String, AtomicLong> requestsByRoute = new ConcurrentHashMap<String, AtomicLong>();
+    private final AtomicLong injectedErrors = new AtomicLong();
+
+    private volatile long minLatencyMillis;
+    private volatile long maxLatencyMillis;
+    private volatile double errorRate;
+    private volatile int errorHttpStatus = 500;
+    private volatile long processingMillis;
+
+    public HyperswitchStubServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/payments", this::handlePayments);
+        server.createContext("/refunds", this::handleRefunds);
+        server.start();
+    }
+
+    public String getBasePath() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public HyperswitchStubServer setLatencyMillis(final long minLatencyMillis, final long maxLatencyMillis) {
+        this.minLatencyMillis = minLatencyMillis;
+        this.maxLatencyMillis = Math.max(minLatencyMillis, maxLatencyMillis);
+        return this;
+    }
+
+    /**
+     * @param errorRate       fraction (0 to 1) of the requests to fail
+     * @param errorHttpStatus HTTP status of the failed requests (400 is surfaced by the plugin as a declined call)
+     */
+    public HyperswitchStubServer setErrorRate(final double errorRate, final int errorHttpStatus) {
+        this.errorRate = errorRate;
+        this.errorHttpStatus = errorHttpStatus;
+        return this;
+    }
+
+    /**
+     * @param processingMillis how long payments stay processing (and refunds pending) after their creation
+     */
+    public HyperswitchStubServer setProcessingMillis(final long processingMillis) {
+        this.processingMillis = processingMillis;
+        return this;
+    }
+
+    /**
+     * @return number of requests served per route (e.g. {@code POST /payments/{id}/capture}), injected errors included
+     */
+    public Map<String, Long> getRequestsByRoute() {
+        final Map<String, Long> requests = new LinkedHashMap<String, Long>();
+        for (final Map.Entry<String, AtomicLong> entry : requestsByRoute.entrySet()) {
+            requests.put(entry.getKey(), entry.getValue().get());
+        }
+        return requests;
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handlePayments(final HttpExchange exchange) throws IOException {
+        try (final InputStream in = exchange.getRequestBody()) {
+            final String method = exchange.getRequestMethod();
+            final String path = exchange.getRequestURI().getPath();
+            if ("POST".equals(method) && "/payments".equals(path)) {
+                if (simulate(exchange, "POST /payments")) {
+                    createPayment(exchange, objectMapper.readTree(in));
+                }
+                return;
+            }
+
+            final Matcher matcher = PAYMENT_PATH.matcher(path);
+            if (!matcher.matches()) {
+                respond(exchange, 404, error("IR_02", "Unsupported route " + method + " " + path));
+                return;
+            }
+            final String action = matcher.group(2);
+            final String route = method + " /payments/{id}" + (action == null ? "" : action);
+            if (!simulate(exchange, route)) {
+                return;
+            }
+
+            final StubPayment payment = payments.get(matcher.group(1));
+            if (payment == null) {
+                respond(exchange, 404, error("HE_02", "Payment does not exist in our records"));
+            } else if ("GET".equals(method) && action == null) {
+                respond(exchange, 200, payment.toJson());
+            } else if ("POST".equals(method) && "/capture".equals(action)) {
+                final JsonNode request = objectMapper.readTree(in);
+                final Map<String, Object> captured = payment.capture(request.path("amount_to_capture").asLong(payment.amount));
+                respond(exchange, captured == null ? 400 : 200, captured == null ? error("IR_14", "Payment is not capturable") : captured);
+            } else if ("POST".equals(method) && "/cancel".equals(action)) {
+                final Map<String, Object> cancelled = payment.cancel();
+                respond(exchange, cancelled == null ? 400 : 200, cancelled == null ? error("IR_14", "Payment can not be cancelled") : cancelled);
+            } else {
+                respond(exchange, 404, error("IR_02", "Unsupported route " + method + " " + path));
+            }
+        }
+    }
+
+    private void handleRefunds(final HttpExchange exchange) throws IOException {
+        try (final InputStream in = exchange.getRequestBody()) {
+            final String method = exchange.getRequestMethod();
+            final String path = exchange.getRequestURI().getPath();
+            final Matcher matcher = REFUND_PATH.matcher(path);
+            if ("GET".equals(method) && matcher.matches()) {
+                if (simulate(exchange, "GET /refunds/{id}")) {
+                    final Map<String, Object> refund = refunds.get(matcher.group(1));
+                    respond(exchange, refund == null ? 404 : 200, refund == null ? error("HE_02", "Refund does not exist in our records") : refund);
+                }
+                return;
+            }
+            if (!"POST".equals(method) || !"/refunds".equals(path)) {
+                respond(exchange, 404, error("IR_02", "Unsupported route " + method + " " + path));
+                return;
+            }
+            if (!simulate(exchange, "POST /refunds")) {
+                return;
+            }
+
+            final JsonNode request = objectMapper.readTree(in);
+            final StubPayment payment = payments.get(request.path("payment_id").asText(""));
+            if (payment == null) {
+                respond(exchange, 404, error("HE_02", "Payment does not exist in our records"));
+                return;
+            }
+            final String refundId = request.path("refund_id").asText("");
+            if (refunds.containsKey(refundId)) {
+                respond(exchange, 400, error("HE_01", "Duplicate refund request. Refund already attempted with the refund ID"));
+                return;
+            }
+            final Map<String, Object> refund = payment.refund(refundId.isEmpty() ? "ref_" + UUID.randomUUID().toString().replace("-", "") : refundId,
+                                                              request.path("amount").asLong(payment.amount));
+            if (refund == null) {
+                respond(exchange, 400, error("IR_13", "Refund amount exceeds the payment amount"));
+                return;
+            }
+            refunds.put((String) refund.get("refund_id"), refund);
+            respond(exchange, 200, refund);
+        }
+    }
+
+    private void createPayment(final HttpExchange exchange, final JsonNode request) throws IOException {
+        final StubPayment payment = new StubPayment(request, System.currentTimeMillis() + processingMillis);
+        if (payments.putIfAbsent(payment.paymentId, payment) != null) {
+            respond(exchange, 400, error("HE_01", "The payment with the specified payment_id already exists in our records"));
+            return;
+        }
+        respond(exchange, 200, payment.toJson());
+    }
+
+    /**
+     * Count the request, apply the latency and inject errors
+     *
+     * @return false if an error was sent instead of processing the request
+     */
+    private boolean simulate(final HttpExchange exchange, final String route) throws IOException {
+        requestsByRoute.computeIfAbsent(route, r -> new AtomicLong()).incrementAndGet();
+
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final long latencyMillis = maxLatencyMillis > minLatencyMillis ? random.nextLong(minLatencyMillis, maxLatencyMillis + 1) : minLatencyMillis;
+        if (latencyMillis > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(latencyMillis);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+            injectedErrors.incrementAndGet();
+            respond(exchange, errorHttpStatus, error("HE_00", "Injected error"));
+            return false;
+        }
+        return true;
+    }
+
+    private static Map<String, Object> error(final String code, final String message) {
+        final Map<String, Object> error = new LinkedHashMap<String, Object>();
+        error.put("type", "invalid_request");
+        error.put("message", message);
+        error.put("code", code);
+        final Map<String, Object> body = new LinkedHashMap<String, Object>();
+        body.put("error", error);
+        return body;
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final Object body) throws IOException {
+        final byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (final OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static final class StubPayment {
+
+        private final String paymentId;
+        private final long amount;
+        private final String currency;
+        private final String customerId;
+        private final String mandateId;
+        private final String profileId;
+        private final boolean manualCapture;
+        private final long settledAtMillis;
+
+        // Set once the payment was captured or cancelled
+        private String finalStatus;
+        private long amountReceived;
+        private long amountRefunded;
+
+        private StubPayment(final JsonNode request, final long settledAtMillis) {
+            final String requestedPaymentId = request.path("payment_id").asText("");
+            this.paymentId = requestedPaymentId.isEmpty() ? "pay_" + UUID.randomUUID().toString().replace("-", "") : requestedPaymentId;
+            this.amount = request.path("amount").asLong();
+            this.currency = request.path("currency").asText();
+            this.customerId = request.path("customer_id").asText(null);
+            this.mandateId = request.path("mandate_id").asText(null);
+            this.profileId = request.path("profile_id").asText(null);
+            this.manualCapture = "manual".equals(request.path("capture_method").asText());
+            this.settledAtMillis = settledAtMillis;
+        }
+
+        private synchronized String status() {
+            if (finalStatus != null) {
+                return finalStatus;
+            } else if (System.currentTimeMillis() < settledAtMillis) {
+                return "processing";
+            } else {
+                return manualCapture ? "requires_capture" : "succeeded";
+            }
+        }
+
+        private synchronized Map<String, Object> capture(final long amountToCapture) {
+            if (!"requires_capture".equals(status()) || amountToCapture > amount) {
+                return null;
+            }
+            finalStatus = "succeeded";
+            amountReceived = amountToCapture;
+            return toJson();
+        }
+
+        private synchronized Map<String, Object> cancel() {
+            final String status = status();
+            if (!"requires_capture".equals(status) && !"processing".equals(status)) {
+                return null;
+            }
+            finalStatus = "cancelled";
+            return toJson();
+        }
+
+        private synchronized Map<String, Object> refund(final String refundId, final long refundAmount) {
+            if (!"succeeded".equals(status()) || amountRefunded + refundAmount > (manualCapture ? amountReceived : amount)) {
+                return null;
+            }
+            amountRefunded += refundAmount;
+
+            final Map<String, Object> refund = new LinkedHashMap<String, Object>();
+            refund.put("refund_id", refundId);
+            refund.put("payment_id", paymentId);
+            refund.put("amount", refundAmount);
+            refund.put("currency", currency);
+            refund.put("status", System.currentTimeMillis() < settledAtMillis ? "pending" : "succeeded");
+            refund.put("profile_id", profileId);
+            return refund;
+        }
+
+        private synchronized Map<String, Object> toJson() {
+            final String status = status();
+            final Map<String, Object> payment = new LinkedHashMap<String, Object>();
+            payment.put("payment_id", paymentId);
+            payment.put("merchant_id", "merchant_stub");
+            payment.put("status", status);
+            payment.put("amount", amount);
+            payment.put("amount_capturable", "requires_capture".equals(status) ? amount : 0L);
+            payment.put("amount_received", manualCapture ? amountReceived : ("succeeded".equals(status) ? amount : 0L));
+            payment.put("currency", currency);
+            payment.put("customer_id", customerId);
+            payment.put("mandate_id", mandateId);
+            payment.put("profile_id", profileId);
+            payment.put("capture_method", manualCapture ? "manual" : "automatic");
+            return payment;
+        }
+    }
+}
@@ -20,6 +20,7 @@
 package org.killbill.billing.plugin.hyperswitch;
 
 
+import java.io.File;
 import java.util.Hashtable;
 import java.util.Properties;
 
@@ -37,16 +38,29 @@ import org.killbill.billing.plugin.api.notification.PluginConfigurationEventHand
 import org.killbill.billing.plugin.core.config.PluginEnvironmentConfig;
 import org.killbill.billing.plugin.core.resources.jooby.PluginApp;
 import org.killbill.billing.plugin.core.resources.jooby.PluginAppBuilder;
+import org.killbill.billing.plugin.hyperswitch.client.HyperswitchClientRegistry;
 import org.killbill.billing.plugin.hyperswitch.dao.HyperswitchDao;
+import org.killbill.billing.plugin.hyperswitch.dao.HyperswitchResponseJournal;
 import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Strings;
+
 public class HyperswitchActivator extends KillbillActivatorBase {
     private static final Logger logger = LoggerFactory.getLogger(HyperswitchActivator.class);
     public static final String PLUGIN_NAME = "hyperswitch-plugin";
 
     private HyperswitchConfigurationHandler hyperswitchConfigurationHandler;
+    private HyperswitchClientRegistry hyperswitchClientRegistry;
+    private HyperswitchPaymentRefresher hyperswitchPaymentRefresher;
+    private HyperswitchPendingPaymentReconciler hyperswitchPendingPaymentReconciler;
+    private HyperswitchNotificationProcessor hyperswitchNotificationProcessor;
+    private HyperswitchResponseJournal hyperswitchResponseJournal;
+    private HyperswitchExecutor hyperswitchExecutor;
+    private HyperswitchBulkPaymentService hyperswitchBulkPaymentService;
+    private HyperswitchPaymentMethodResetJob hyperswitchPaymentMethodResetJob;
+    private HyperswitchHppSessionStore hyperswitchHppSessionStore;
     private OSGIKillbillEventDispatcher.OSGIKillbillEventHandler killbillEventHandler;
 
     @Override
@@ -62,30 +76,144 @@ public class HyperswitchActivator extends KillbillActivatorBase {
         final HyperswitchConfigProperties globalConfiguration = hyperswitchConfigurationHandler
                 .createConfigurable(configProperties.getProperties());
         hyperswitchConfigurationHandler.setDefaultConfigurable(globalConfiguration);
+        final HyperswitchMetrics hyperswitchMetrics = new HyperswitchMetrics(metricRegistry, globalConfiguration.isMetricsPerTenant());
+        hyperswitchDao.setMetrics(hyperswitchMetrics);
+        if (globalConfiguration.isWriteBehindEnabled()) {
+            // The journal holds responses not yet in the database: never default it to a temporary directory
+            if (Strings.isNullOrEmpty(globalConfiguration.getWriteBehindJournalPath())) {
+                throw new IllegalStateException("writeBehindJournalPath must be set (on a persistent volume) when writeBehindEnabled is true");
+            }
+            // Replays the responses which were journaled but not inserted before the last shutdown
+            hyperswitchResponseJournal = new HyperswitchResponseJournal(hyperswitchDao,
+                                                                        new File(globalConfiguration.getWriteBehindJournalPath()),
+                                                                        globalConfiguration.getWriteBehindJournalSizeMb() * 1024 * 1024,
+                                                                        globalConfiguration.getWriteBehindQueueCapacity(),
+                                                                        globalConfiguration.getWriteBehindBatchSize(),
+                                                                        globalConfiguration.getWriteBehindTimeoutMillis());
+            hyperswitchResponseJournal.start();
+            hyperswitchDao.setResponseJournal(hyperswitchResponseJournal);
+            hyperswitchMetrics.registerGauge("journal.queueDepth", hyperswitchResponseJournal::getQueueDepth);
+            hyperswitchMetrics.registerGauge("journal.appendedResponses", hyperswitchResponseJournal::getAppendedResponses);
+            hyperswitchMetrics.registerGauge("journal.flushedResponses", hyperswitchResponseJournal::getFlushedResponses);
+            hyperswitchMetrics.registerGauge("journal.groupCommits", hyperswitchResponseJournal::getGroupCommits);
+            hyperswitchMetrics.registerGauge("journal.lastFlushLatencyMillis", hyperswitchResponseJournal::getLastFlushLatencyMillis);
+            hyperswitchMetrics.registerGauge("journal.lastFsyncLatencyMicros", hyperswitchResponseJournal::getLastFsyncLatencyMicros);
+        }
+        // Hyperswitch clients are cached per tenant and rebuilt on configuration changes
+        hyperswitchClientRegistry = new HyperswitchClientRegistry();
+        hyperswitchConfigurationHandler.addConfigurationChangeListener(hyperswitchClientRegistry::invalidate);
+        hyperswitchMetrics.registerGauge("clients.hits", hyperswitchClientRegistry::getHits);
+        hyperswitchMetrics.registerGauge("clients.misses", hyperswitchClientRegistry::getMisses);
+        hyperswitchMetrics.registerGauge("clients.rebuilds", hyperswitchClientRegistry::getRebuilds);
+        hyperswitchMetrics.registerGauge("clients.transports", hyperswitchClientRegistry::getTransports);
+        hyperswitchPaymentRefresher = new HyperswitchPaymentRefresher(hyperswitchDao,
+                                                                      hyperswitchMetrics,
+                                                                      globalConfiguration.getRefreshThreads(),
+                                                                      globalConfiguration.getRefreshMaxConcurrency(),
+                                                                      globalConfiguration.getRefreshTimeoutMillis(),
+                                                                      globalConfiguration.isRefreshHedgingEnabled(),
+                                                                      globalConfiguration.getRefreshHedgeMinDelayMillis(),
+                                                                      globalConfiguration.getForceSyncCacheMillis(),
+                                                                      globalConfiguration.getForceSyncNegativeCacheMillis());
+        hyperswitchMetrics.registerGauge("refresher.hedgedReads", hyperswitchPaymentRefresher::getHedgedReads);
+        hyperswitchMetrics.registerGauge("refresher.coalescedReads", hyperswitchPaymentRefresher::getCoalescedReads);
+        hyperswitchMetrics.registerGauge("refresher.cachedReads", hyperswitchPaymentRefresher::getCachedReads);
+        if (globalConfiguration.isReconcilerEnabled()) {
+            hyperswitchPendingPaymentReconciler = new HyperswitchPendingPaymentReconciler(hyperswitchDao,
+                                                                                          hyperswitchPaymentRefresher,
+                                                                                          hyperswitchConfigurationHandler,
+                                                                                          hyperswitchClientRegistry,
+                                                                                          clock.getClock(),
+                                                                                          globalConfiguration.getReconcilerBatchSize(),
+                                                                                          globalConfiguration.getReconcilerLeaseSeconds(),
+                                                                                          globalConfiguration.getReconcilerMaxBackoffSeconds(),
+                                                                                          globalConfiguration.getReconcilerMaxAgeSeconds(),
+                                                                                          globalConfiguration.getReconcilerRatePerTenant());
+            hyperswitchPendingPaymentReconciler.start(globalConfiguration.getReconcilerIntervalSeconds());
+            hyperswitchMetrics.registerGauge("reconciler.syncedPayments", hyperswitchPendingPaymentReconciler::getSyncedPayments);
+            hyperswitchMetrics.registerGauge("reconciler.lagSeconds", hyperswitchPendingPaymentReconciler::getLagSeconds);
+        }
+        // Webhooks are stored by processNotification and applied asynchronously
+        hyperswitchNotificationProcessor = new HyperswitchNotificationProcessor(hyperswitchDao,
+                                                                                clock.getClock(),
+                                                                                globalConfiguration.getNotificationThreads(),
+                                                                                globalConfiguration.getNotificationBatchSize(),
+                                                                                globalConfiguration.getNotificationRetentionDays());
+        hyperswitchNotificationProcessor.start(globalConfiguration.getNotificationPollIntervalMillis());
+        hyperswitchMetrics.registerGauge("notifications.processed", hyperswitchNotificationProcessor::getProcessedNotifications);
+        final HyperswitchPaymentMethodCache hyperswitchPaymentMethodCache = new HyperswitchPaymentMethodCache(hyperswitchDao,
+                                                                                                              globalConfiguration.getPaymentMethodCacheMaxSize(),
+                                                                                                              globalConfiguration.getPaymentMethodCacheTtlSeconds());
+        hyperswitchMetrics.registerGauge("paymentMethodCache.hitRate", hyperswitchPaymentMethodCache::getHitRate);
+        hyperswitchMetrics.registerGauge("paymentMethodCache.size", hyperswitchPaymentMethodCache::size);
+        // Fail fast instead of holding payment threads when Hyperswitch is slow or failing
+        final HyperswitchCircuitBreaker hyperswitchCircuitBreaker = HyperswitchCircuitBreaker.create(globalConfiguration);
+        hyperswitchMetrics.registerGauge("circuitBreaker.openCircuits", hyperswitchCircuitBreaker::getOpenCircuits);
+        hyperswitchMetrics.registerGauge("circuitBreaker.rejectedCalls", hyperswitchCircuitBreaker::getRejectedByCircuit);
+        hyperswitchMetrics.registerGauge("bulkhead.rejectedCalls", hyperswitchCircuitBreaker::getRejectedByBulkhead);
+        final HyperswitchRetryPolicy hyperswitchRetryPolicy = HyperswitchRetryPolicy.create(globalConfiguration);
+        hyperswitchMetrics.registerGauge("retries.attempts", hyperswitchRetryPolicy::getRetries);
+        hyperswitchMetrics.registerGauge("retries.recoveries", hyperswitchRetryPolicy::getRecoveries);
+        // Opt-in: run the plugin API operations on virtual threads (or a bounded pool) instead of the Kill Bill threads
+        hyperswitchExecutor = HyperswitchExecutor.create(globalConfiguration);
+        // Hosted payment page sessions, purged once expired
+        hyperswitchHppSessionStore = new HyperswitchHppSessionStore(hyperswitchDao,
+                                                                    clock.getClock(),
+                                                                    globalConfiguration.getHppSessionCacheMaxSize(),
+                                                                    globalConfiguration.getHppSessionTtlSeconds(),
+                                                                    globalConfiguration.getHppSweeperBatchSize());
+        hyperswitchHppSessionStore.start(globalConfiguration.getHppSweeperIntervalSeconds());
+        hyperswitchMetrics.registerGauge("hppSessions.hitRate", hyperswitchHppSessionStore::getHitRate);
+        hyperswitchMetrics.registerGauge("hppSessions.size", hyperswitchHppSessionStore::size);
+        hyperswitchMetrics.registerGauge("hppSessions.purged", hyperswitchHppSessionStore::getPurgedSessions);
         // Register an event listener (optional)
-        killbillEventHandler = new HyperswitchListener(killbillAPI);
+        killbillEventHandler = new HyperswitchListener(killbillAPI, hyperswitchPaymentMethodCache);
 
         // As an example, this plugin registers a PaymentPluginApi (this could be
         // changed to any other plugin api)
         logger.info("Registering an APIs");
-        final PaymentPluginApi paymentPluginApi = new HyperswitchPaymentPluginApi(hyperswitchConfigurationHandler,killbillAPI,configProperties,clock.getClock(),hyperswitchDao);
+        final HyperswitchPaymentPluginApi paymentPluginApi = new HyperswitchPaymentPluginApi(hyperswitchConfigurationHandler,killbillAPI,configProperties,clock.getClock(),hyperswitchDao,hyperswitchClientRegistry,hyperswitchPaymentRefresher,hyperswitchNotificationProcessor,hyperswitchPaymentMethodCache,hyperswitchMetrics,hyperswitchCircuitBreaker,hyperswitchRetryPolicy,hyperswitchExecutor,hyperswitchHppSessionStore);
         registerPaymentPluginApi(context, paymentPluginApi);
 
         logger.info("Registering healthcheck");
         // Expose a healthcheck (optional), so other plugins can check on the plugin status
-        final Healthcheck healthcheck = new HyperswitchHealthcheck();
+        final Healthcheck healthcheck = new HyperswitchHealthcheck(hyperswitchCircuitBreaker);
         registerHealthcheck(context, healthcheck);
 
         // // This Plugin registers a InvoicePluginApi
         // final InvoicePluginApi invoicePluginApi = new HyperswitchInvoicePluginApi(killbillAPI, configProperties, null);
         // registerInvoicePluginApi(context, invoicePluginApi);
 
+        // Batches of purchases (e.g. invoice runs), see HyperswitchBulkPaymentServlet
+        hyperswitchBulkPaymentService = new HyperswitchBulkPaymentService(killbillAPI,
+                                                                          hyperswitchMetrics,
+                                                                          clock.getClock(),
+                                                                          globalConfiguration.getBulkThreads(),
+                                                                          globalConfiguration.getBulkMaxItems(),
+                                                                          globalConfiguration.getBulkTimeoutMillis());
+        // Offline reconciliation of the payment methods of a tenant, see HyperswitchPaymentMethodResetServlet
+        hyperswitchPaymentMethodResetJob = new HyperswitchPaymentMethodResetJob(killbillAPI,
+                                                                                paymentPluginApi,
+                                                                                hyperswitchDao,
+                                                                                clock.getClock(),
+                                                                                globalConfiguration.getPaymentMethodResetThreads(),
+                                                                                globalConfiguration.getPaymentMethodResetPageSize());
+        hyperswitchMetrics.registerGauge("paymentMethodReset.resetAccounts", hyperswitchPaymentMethodResetJob::getResetAccounts);
+        hyperswitchMetrics.registerGauge("paymentMethodReset.failedAccounts", hyperswitchPaymentMethodResetJob::getFailedAccounts);
+
         // Register a servlet (optional)
-        // final PluginApp pluginApp = new PluginAppBuilder(PLUGIN_NAME, killbillAPI, dataSource, super.clock,
-        //                                                  configProperties).withRouteClass(HyperswitchServlet.class)
-        //                                                                   .withRouteClass(HyperswitchHealthcheckServlet.class).withService(healthcheck).build();
-        // final HttpServlet httpServlet = PluginApp.createServlet(pluginApp);
-        // registerServlet(context, httpServlet);
+        final PluginApp pluginApp = new PluginAppBuilder(PLUGIN_NAME, killbillAPI, dataSource, super.clock,
+                                                         configProperties).withRouteClass(HyperswitchHealthcheckServlet.class)
+                                                                          .withRouteClass(HyperswitchBulkPaymentServlet.class)
+                                                                          .withRouteClass(HyperswitchPaymentMethodResetServlet.class)
+                                                                          .withRouteClass(HyperswitchHppSessionServlet.class)
+                                                                          .withService(healthcheck)
+                                                                          .withService(hyperswitchBulkPaymentService)
+                                                                          .withService(hyperswitchPaymentMethodResetJob)
+                                                                          .withService(hyperswitchHppSessionStore)
+                                                                          .build();
+        final HttpServlet httpServlet = PluginApp.createServlet(pluginApp);
+        registerServlet(context, httpServlet);
 
         registerHandlers();
     }
@@ -93,6 +221,33 @@ public class HyperswitchActivator extends KillbillActivatorBase {
     @Override
     public void stop(final BundleContext context) throws Exception {
         // Do additional work on shutdown (optional)
+        if (hyperswitchPendingPaymentReconciler != null) {
+            hyperswitchPendingPaymentReconciler.close();
+        }
+        if (hyperswitchNotificationProcessor != null) {
+            hyperswitchNotificationProcessor.close();
+        }
+        if (hyperswitchBulkPaymentService != null) {
+            hyperswitchBulkPaymentService.close();
+        }
+        if (hyperswitchPaymentMethodResetJob != null) {
+            hyperswitchPaymentMethodResetJob.close();
+        }
+        if (hyperswitchHppSessionStore != null) {
+            hyperswitchHppSessionStore.close();
+        }
+        if (hyperswitchExecutor != null) {
+            hyperswitchExecutor.close();
+        }
+        if (hyperswitchPaymentRefresher != null) {
+            hyperswitchPaymentRefresher.close();
+        }
+        if (hyperswitchClientRegistry != null) {
+            hyperswitchClientRegistry.close();
+        }
+        if (hyperswitchResponseJournal != null) {
+            hyperswitchResponseJournal.close();
+        }
         super.stop(context);
     }
 
@@ -110,6 +265,12 @@ public class HyperswitchActivator extends KillbillActivatorBase {
         registrar.registerService(context, PaymentPluginApi.class, api, props);
     }
 
+    private void registerServlet(final BundleContext context, final Servlet servlet) {
+        final Hashtable<String, String> props = new Hashtable<String, String>();
+        props.put(OSGIPluginProperties.PLUGIN_NAME_PROP, PLUGIN_NAME);
+        registrar.registerService(context, Servlet.class, servlet, props);
+    }
+
     private void registerHealthcheck(final BundleContext context, final Healthcheck healthcheck) {
         final Hashtable<String, String> props = new Hashtable<String, String>();
         props.put(OSGIPluginProperties.PLUGIN_NAME_PROP, PLUGIN_NAME);
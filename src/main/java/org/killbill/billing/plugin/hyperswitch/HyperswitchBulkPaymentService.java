@@ -0,0 +1,303 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.io.Closeable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.account.api.AccountApiException;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
+import org.killbill.billing.payment.api.Payment;
+import org.killbill.billing.payment.api.PaymentApiException;
+import org.killbill.billing.payment.api.PaymentTransaction;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.api.TransactionStatus;
+import org.killbill.billing.payment.plugin.api.PaymentPluginApiException;
+import org.killbill.billing.plugin.api.PluginCallContext;
+import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.clock.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Purchases of a batch of payments (e.g. the payments of an invoice run), as an alternative to one purchase call
+ * per payment.
+ * <p>
+ * Each payment is created through the Kill Bill payment API, which generates its payment and transaction ids and
+ * calls purchasePayment, so the payments are known to Kill Bill and recorded like any other purchase. The calls run
+ * in parallel, on a pool of {@code nbThreads} threads, and go through the bulkhead, retries and circuit breaker of
+ * the tenant like single purchases.
+ */
+public class HyperswitchBulkPaymentService implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HyperswitchBulkPaymentService.class);
+
+    private final OSGIKillbillAPI killbillAPI;
+    private final HyperswitchMetrics hyperswitchMetrics;
+    private final Clock clock;
+    private final ExecutorService executor;
+    private final int maxItems;
+    private final long timeoutNanos;
+
+    public HyperswitchBulkPaymentService(final OSGIKillbillAPI killbillAPI,
+                                         final HyperswitchMetrics hyperswitchMetrics,
+                                         final Clock clock,
+                                         final int nbThreads,
+                                         final int maxItems,
+                                         final long timeoutMillis) {
+        this.killbillAPI = killbillAPI;
+        this.hyperswitchMetrics = hyperswitchMetrics;
+        this.clock = clock;
+        this.executor = Executors.newFixedThreadPool(nbThreads,
+                                                     new ThreadFactoryBuilder().setNameFormat("hyperswitch-bulk-%d")
+                                                                               .setDaemon(true)
+                                                                               .build());
+        this.maxItems = maxItems;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /**
+     * @return the outcome of each payment, in the order of the items. Payments which didn't complete within the
+     * deadline are reported without a status: Kill Bill still completes them, and they can be looked up by their
+     * external keys.
+     */
+    public List<BulkPaymentResult> purchasePayments(final List<BulkPaymentItem> items, final UUID kbTenantId) throws PaymentPluginApiException {
+        if (items.size() > maxItems) {
+            throw new PaymentPluginApiException("Too many payments", "At most " + maxItems + " payments can be submitted at once, got " + items.size());
+        }
+
+        try (final HyperswitchMetrics.Span span = hyperswitchMetrics.startSpan("bulkPurchase", kbTenantId)) {
+            return span.complete(doPurchasePayments(items, kbTenantId), "OK");
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private List<BulkPaymentResult> doPurchasePayments(final List<BulkPaymentItem> items, final UUID kbTenantId) throws PaymentPluginApiException {
+        final long deadline = System.nanoTime() + timeoutNanos;
+
+        final List<CompletableFuture<Payment>> futures = new ArrayList<CompletableFuture<Payment>>(items.size());
+        for (final BulkPaymentItem item : items) {
+            futures.add(CompletableFuture.supplyAsync(() -> purchase(item, kbTenantId), executor));
+        }
+
+        final List<BulkPaymentResult> results = new ArrayList<BulkPaymentResult>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            final BulkPaymentItem item = items.get(i);
+            try {
+                final Payment payment = futures.get(i).get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                results.add(toResult(payment));
+            } catch (final TimeoutException e) {
+                logger.warn("Deadline exceeded while purchasing payment {} of account {}", item.getPaymentExternalKey(), item.getKbAccountId());
+                results.add(new BulkPaymentResult(null, null, null, null, null, "Timed out while waiting for the payment"));
+            } catch (final ExecutionException e) {
+                results.add(toFailure(item, e.getCause()));
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PaymentPluginApiException("Interrupted while purchasing payments", e);
+            }
+        }
+        return results;
+    }
+
+    private Payment purchase(final BulkPaymentItem item, final UUID kbTenantId) {
+        final CallContext context = new PluginCallContext(HyperswitchActivator.PLUGIN_NAME, clock.getUTCNow(), item.getKbAccountId(), kbTenantId);
+        try {
+            final Account account = killbillAPI.getAccountUserApi().getAccountById(item.getKbAccountId(), context);
+            return killbillAPI.getPaymentApi().createPurchase(account,
+                                                              item.getKbPaymentMethodId(),
+                                                              null,
+                                                              item.getAmount(),
+                                                              item.getCurrency(),
+                                                              null,
+                                                              item.getPaymentExternalKey(),
+                                                              item.getTransactionExternalKey(),
+                                                              ImmutableList.<PluginProperty>of(),
+                                                              context);
+        } catch (final AccountApiException | PaymentApiException e) {
+            throw new PurchaseFailed(e);
+        }
+    }
+
+    private static BulkPaymentResult toResult(final Payment payment) {
+        final List<PaymentTransaction> transactions = payment.getTransactions();
+        final PaymentTransaction transaction = transactions.get(transactions.size() - 1);
+        return new BulkPaymentResult(payment.getId(),
+                                     transaction.getId(),
+                                     transaction.getTransactionStatus(),
+                                     HyperswitchRetryPolicy.toPaymentId(transaction.getId()),
+                                     transaction.getGatewayErrorCode(),
+                                     transaction.getGatewayErrorMsg());
+    }
+
+    private static BulkPaymentResult toFailure(final BulkPaymentItem item, final Throwable cause) {
+        // Rejected by Kill Bill (unknown account or payment method, plugin exception, ...)
+        final Throwable error = cause instanceof PurchaseFailed ? cause.getCause() : cause;
+        logger.warn("[bulkPurchase] Unable to purchase payment {} of account {}", item.getPaymentExternalKey(), item.getKbAccountId(), error);
+        return new BulkPaymentResult(null, null, null, null, null, String.valueOf(error.getMessage()));
+    }
+
+    /**
+     * One payment of a batch. The external keys are optional (Kill Bill generates them if missing).
+     */
+    public static final class BulkPaymentItem {
+
+        private final UUID kbAccountId;
+        private final UUID kbPaymentMethodId;
+        private final BigDecimal amount;
+        private final Currency currency;
+        private final String paymentExternalKey;
+        private final String transactionExternalKey;
+
+        @JsonCreator
+        public BulkPaymentItem(@JsonProperty("kbAccountId") final UUID kbAccountId,
+                               @JsonProperty("kbPaymentMethodId") final UUID kbPaymentMethodId,
+                               @JsonProperty("amount") final BigDecimal amount,
+                               @JsonProperty("currency") final Currency currency,
+                               @JsonProperty("paymentExternalKey") @Nullable final String paymentExternalKey,
+                               @JsonProperty("transactionExternalKey") @Nullable final String transactionExternalKey) {
+            this.kbAccountId = kbAccountId;
+            this.kbPaymentMethodId = kbPaymentMethodId;
+            this.amount = amount;
+            this.currency = currency;
+            this.paymentExternalKey = paymentExternalKey;
+            this.transactionExternalKey = transactionExternalKey;
+        }
+
+        public UUID getKbAccountId() {
+            return kbAccountId;
+        }
+
+        public UUID getKbPaymentMethodId() {
+            return kbPaymentMethodId;
+        }
+
+        public BigDecimal getAmount() {
+            return amount;
+        }
+
+        public Currency getCurrency() {
+            return currency;
+        }
+
+        @Nullable
+        public String getPaymentExternalKey() {
+            return paymentExternalKey;
+        }
+
+        @Nullable
+        public String getTransactionExternalKey() {
+            return transactionExternalKey;
+        }
+    }
+
+    /**
+     * Outcome of one payment of a batch. The ids and status are null if Kill Bill rejected the payment or if it
+     * didn't complete within the deadline, see {@link #getError()}.
+     */
+    public static final class BulkPaymentResult {
+
+        private final UUID kbPaymentId;
+        private final UUID kbTransactionId;
+        private final TransactionStatus status;
+        private final String paymentId;
+        private final String gatewayErrorCode;
+        private final String error;
+
+        private BulkPaymentResult(@Nullable final UUID kbPaymentId,
+                                  @Nullable final UUID kbTransactionId,
+                                  @Nullable final TransactionStatus status,
+                                  @Nullable final String paymentId,
+                                  @Nullable final String gatewayErrorCode,
+                                  @Nullable final String error) {
+            this.kbPaymentId = kbPaymentId;
+            this.kbTransactionId = kbTransactionId;
+            this.status = status;
+            this.paymentId = paymentId;
+            this.gatewayErrorCode = gatewayErrorCode;
+            this.error = error;
+        }
+
+        @Nullable
+        public UUID getKbPaymentId() {
+            return kbPaymentId;
+        }
+
+        @Nullable
+        public UUID getKbTransactionId() {
+            return kbTransactionId;
+        }
+
+        @Nullable
+        public TransactionStatus getStatus() {
+            return status;
+        }
+
+        /**
+         * @return the Hyperswitch payment id
+         */
+        @Nullable
+        public String getPaymentId() {
+            return paymentId;
+        }
+
+        @Nullable
+        public String getGatewayErrorCode() {
+            return gatewayErrorCode;
+        }
+
+        /**
+         * @return the gateway error of the payment, or why it has no outcome
+         */
+        @Nullable
+        public String getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Carries an {@link AccountApiException} or a {@link PaymentApiException} out of a pool thread
+     */
+    private static final class PurchaseFailed extends RuntimeException {
+
+        private PurchaseFailed(final Exception cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.jooby.MediaType;
+import org.jooby.Result;
+import org.jooby.Results;
+import org.jooby.Status;
+import org.jooby.mvc.Body;
+import org.jooby.mvc.Local;
+import org.jooby.mvc.POST;
+import org.jooby.mvc.Path;
+import org.killbill.billing.payment.plugin.api.PaymentPluginApiException;
+import org.killbill.billing.plugin.hyperswitch.HyperswitchBulkPaymentService.BulkPaymentItem;
+import org.killbill.billing.plugin.hyperswitch.HyperswitchBulkPaymentService.BulkPaymentResult;
+import org.killbill.billing.tenant.api.Tenant;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.Inject;
+
+/**
+ * POST /plugins/hyperswitch-plugin/payments/bulk with a JSON array of
+ * {@code {kbAccountId, kbPaymentMethodId, amount, currency, paymentExternalKey, transactionExternalKey}} items (the
+ * external keys are optional): purchases them through Kill Bill (see {@link HyperswitchBulkPaymentService}) and
+ * returns the outcome of each item, in the same order.
+ */
+@Singleton
+@Path("/payments/bulk")
+public class HyperswitchBulkPaymentServlet {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final TypeReference<List<BulkPaymentItem>> ITEMS = new TypeReference<List<BulkPaymentItem>>() {};
+
+    private final HyperswitchBulkPaymentService bulkPaymentService;
+
+    @Inject
+    public HyperswitchBulkPaymentServlet(final HyperswitchBulkPaymentService bulkPaymentService) {
+        this.bulkPaymentService = bulkPaymentService;
+    }
+
+    @POST
+    public Result purchase(@Body final String body,
+                           @Local @Named("killbill_tenant") final Optional<Tenant> tenant) throws IOException {
+        if (!tenant.isPresent()) {
+            return Results.with("Missing tenant", Status.UNAUTHORIZED);
+        }
+
+        final List<BulkPaymentItem> items;
+        try {
+            items = objectMapper.readValue(body, ITEMS);
+        } catch (final IOException e) {
+            return Results.with("Invalid payments: " + e.getMessage(), Status.BAD_REQUEST);
+        }
+        for (final BulkPaymentItem item : items) {
+            if (item.getKbAccountId() == null || item.getKbPaymentMethodId() == null || item.getAmount() == null || item.getCurrency() == null) {
+                return Results.with("Each payment needs kbAccountId, kbPaymentMethodId, amount and currency", Status.BAD_REQUEST);
+            }
+        }
+
+        final List<BulkPaymentResult> payments;
+        try {
+            payments = bulkPaymentService.purchasePayments(items, tenant.get().getId());
+        } catch (final PaymentPluginApiException e) {
+            return Results.with(e.getErrorMessage(), Status.BAD_REQUEST);
+        }
+
+        final List<Map<String, Object>> results = new ArrayList<Map<String, Object>>(payments.size());
+        for (final BulkPaymentResult payment : payments) {
+            final Map<String, Object> result = new LinkedHashMap<String, Object>();
+            result.put("kbPaymentId", payment.getKbPaymentId());
+            result.put("kbTransactionId", payment.getKbTransactionId());
+            result.put("status", payment.getStatus());
+            result.put("paymentId", payment.getPaymentId());
+            result.put("gatewayErrorCode", payment.getGatewayErrorCode());
+            result.put("error", payment.getError());
+            results.add(result);
+        }
+        return Results.with(objectMapper.writeValueAsString(results), Status.OK).type(MediaType.json);
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import feign.FeignException;
+
+/**
+ * Per-tenant bulkhead and circuit breaker around the Hyperswitch calls made on Kill Bill payment threads.
+ * <p>
+ * The bulkhead caps the number of in-flight calls of a tenant, so a slow gateway can't hold every payment thread.
+ * The circuit opens when, over the last {@code windowSize} calls, the error rate (5xx, 429 and I/O errors) reaches
+ * {@code failureRateThreshold}, or the {@code latencyPercentile} latency exceeds {@code latencyThresholdMillis}. While
+ * open, calls are rejected without reaching Hyperswitch; after {@code openMillis}, {@code halfOpenCalls} trial calls
+ * are let through and close the circuit if they all succeed in time.
+ */
+public class HyperswitchCircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(HyperswitchCircuitBreaker.class);
+
+    // ConcurrentHashMap doesn't allow null keys: the global (default) configuration is stored under this key
+    private static final UUID DEFAULT_TENANT_KEY = new UUID(0L, 0L);
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final ConcurrentMap<UUID, TenantCircuit> circuits = new ConcurrentHashMap<UUID, TenantCircuit>();
+    private final int maxConcurrentCalls;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long latencyThresholdNanos;
+    private final long openNanos;
+    private final int halfOpenCalls;
+
+    private final LongAdder rejectedByBulkhead = new LongAdder();
+    private final LongAdder rejectedByCircuit = new LongAdder();
+
+    public HyperswitchCircuitBreaker(final int maxConcurrentCalls,
+                                     final int windowSize,
+                                     final int minimumCalls,
+                                     final double failureRateThreshold,
+                                     final double latencyPercentile,
+                                     final long latencyThresholdMillis,
+                                     final long openMillis,
+                                     final int halfOpenCalls) {
+        this.maxConcurrentCalls = Math.max(1, maxConcurrentCalls);
+        this.windowSize = Math.max(1, windowSize);
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, this.windowSize));
+        this.failureRateThreshold = failureRateThreshold;
+        // The p-th percentile exceeds the threshold as soon as more than (100 - p)% of the calls are slower
+        this.slowCallRateThreshold = 100 - latencyPercentile;
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMillis);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+    }
+
+    public static HyperswitchCircuitBreaker create(final HyperswitchConfigProperties config) {
+        return new HyperswitchCircuitBreaker(config.getBulkheadMaxConcurrentCalls(),
+                                             config.getCircuitBreakerWindowSize(),
+                                             config.getCircuitBreakerMinimumCalls(),
+                                             config.getCircuitBreakerFailureRateThreshold(),
+                                             config.getCircuitBreakerLatencyPercentile(),
+                                             config.getCircuitBreakerLatencyThresholdMillis(),
+                                             config.getCircuitBreakerOpenMillis(),
+                                             config.getCircuitBreakerHalfOpenCalls());
+    }
+
+    /**
+     * Run a Hyperswitch call, unless the bulkhead of the tenant is full or its circuit is open.
+     *
+     * @throws CallNotPermittedException if the call was rejected: the request wasn't sent to Hyperswitch
+     */
+    public <T, E extends Exception> T call(@Nullable final UUID kbTenantId, final HyperswitchMetrics.Call<T, E> gatewayCall) throws E, CallNotPermittedException {
+        final TenantCircuit circuit = circuits.computeIfAbsent(toKey(kbTenantId), k -> new TenantCircuit(kbTenantId));
+        if (!circuit.bulkhead.tryAcquire()) {
+            rejectedByBulkhead.increment();
+            throw new CallNotPermittedException("Too many concurrent Hyperswitch calls for tenant " + kbTenantId);
+        }
+        try {
+            if (!circuit.tryAcquirePermission(System.nanoTime())) {
+                rejectedByCircuit.increment();
+                throw new CallNotPermittedException("Hyperswitch circuit breaker is open for tenant " + kbTenantId);
+            }
+            final long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                final T result = gatewayCall.call();
+                failed = false;
+                return result;
+            } catch (final Exception e) {
+                failed = isFailure(e);
+                throw e;
+            } finally {
+                final long end = System.nanoTime();
+                circuit.onResult(failed, end - start > latencyThresholdNanos, end);
+            }
+        } finally {
+            circuit.bulkhead.release();
+        }
+    }
+
+    public State getState(@Nullable final UUID kbTenantId) {
+        final TenantCircuit circuit = circuits.get(toKey(kbTenantId));
+        return circuit == null ? State.CLOSED : circuit.getState(System.nanoTime());
+    }
+
+    /**
+     * @return state, in-flight calls and error/slow call rates of the circuit of the tenant
+     */
+    public Map<String, Object> getDetails(@Nullable final UUID kbTenantId) {
+        final TenantCircuit circuit = circuits.get(toKey(kbTenantId));
+        return circuit == null ? new TreeMap<String, Object>(Map.of("state", State.CLOSED)) : circuit.getDetails(System.nanoTime());
+    }
+
+    /**
+     * @return the tenants whose circuit isn't closed (the default configuration is reported under the nil UUID)
+     */
+    public Map<UUID, State> getTrippedCircuits() {
+        final long now = System.nanoTime();
+        final Map<UUID, State> tripped = new TreeMap<UUID, State>();
+        for (final TenantCircuit circuit : circuits.values()) {
+            final State state = circuit.getState(now);
+            if (state != State.CLOSED) {
+                tripped.put(toKey(circuit.kbTenantId), state);
+            }
+        }
+        return tripped;
+    }
+
+    public int getOpenCircuits() {
+        return getTrippedCircuits().size();
+    }
+
+    public long getRejectedByBulkhead() {
+        return rejectedByBulkhead.sum();
+    }
+
+    public long getRejectedByCircuit() {
+        return rejectedByCircuit.sum();
+    }
+
+    /**
+     * Client errors (4xx other than 429) mean that Hyperswitch is up: they don't count towards the error rate.
+     */
+    static boolean isFailure(final Exception e) {
+        return !(e instanceof FeignException) || HyperswitchRetryPolicy.isTransient((FeignException) e);
+    }
+
+    private static UUID toKey(@Nullable final UUID kbTenantId) {
+        return kbTenantId == null ? DEFAULT_TENANT_KEY : kbTenantId;
+    }
+
+    public static class CallNotPermittedException extends Exception {
+
+        public CallNotPermittedException(final String message) {
+            super(message);
+        }
+    }
+
+    private final class TenantCircuit {
+
+        @Nullable
+        private final UUID kbTenantId;
+        private final Semaphore bulkhead = new Semaphore(maxConcurrentCalls);
+        // Outcomes of the last windowSize calls
+        private final boolean[] failedCalls = new boolean[windowSize];
+        private final boolean[] slowCalls = new boolean[windowSize];
+        private int next;
+        private int recordedCalls;
+        private int failures;
+        private int slowOnes;
+        private State state = State.CLOSED;
+        private long openedAt;
+        private int halfOpenPermits;
+        private int halfOpenSuccesses;
+
+        private TenantCircuit(@Nullable final UUID kbTenantId) {
+            this.kbTenantId = kbTenantId;
+        }
+
+        private synchronized boolean tryAcquirePermission(final long now) {
+            switch (getState(now)) {
+                case CLOSED:
+                    return true;
+                case HALF_OPEN:
+                    if (halfOpenPermits > 0) {
+                        halfOpenPermits--;
+                        return true;
+                    }
+                    return false;
+                default:
+                    return false;
+            }
+        }
+
+        private synchronized void onResult(final boolean failed, final boolean slow, final long now) {
+            switch (state) {
+                case CLOSED:
+                    record(failed, slow);
+                    if (recordedCalls >= minimumCalls) {
+                        final double failureRate = 100.0 * failures / recordedCalls;
+                        final double slowCallRate = 100.0 * slowOnes / recordedCalls;
+                        if (failureRate >= failureRateThreshold || slowCallRate > slowCallRateThreshold) {
+                            logger.warn("Opening Hyperswitch circuit for tenant {}: failureRate={}%, slowCallRate={}%",
+                                        kbTenantId, failureRate, slowCallRate);
+                            open(now);
+                        }
+                    }
+                    break;
+                case HALF_OPEN:
+                    if (failed || slow) {
+                        logger.warn("Trial call failed, re-opening Hyperswitch circuit for tenant {}", kbTenantId);
+                        open(now);
+                    } else if (++halfOpenSuccesses >= halfOpenCalls) {
+                        logger.info("Closing Hyperswitch circuit for tenant {}", kbTenantId);
+                        state = State.CLOSED;
+                    }
+                    break;
+                default:
+                    // Call started before the circuit opened
+                    break;
+            }
+        }
+
+        private synchronized State getState(final long now) {
+            if (state == State.OPEN && now - openedAt >= openNanos) {
+                state = State.HALF_OPEN;
+                halfOpenPermits = halfOpenCalls;
+                halfOpenSuccesses = 0;
+            }
+            return state;
+        }
+
+        private synchronized Map<String, Object> getDetails(final long now) {
+            final Map<String, Object> details = new TreeMap<String, Object>();
+            details.put("state", getState(now));
+            details.put("inFlightCalls", maxConcurrentCalls - bulkhead.availablePermits());
+            details.put("recordedCalls", recordedCalls);
+            details.put("failureRate", recordedCalls == 0 ? 0.0 : 100.0 * failures / recordedCalls);
+            details.put("slowCallRate", recordedCalls == 0 ? 0.0 : 100.0 * slowOnes / recordedCalls);
+            return details;
+        }
+
+        private void record(final boolean failed, final boolean slow) {
+            if (recordedCalls == windowSize) {
+                // Evict the oldest outcome
+                failures -= failedCalls[next] ? 1 : 0;
+                slowOnes -= slowCalls[next] ? 1 : 0;
+            } else {
+                recordedCalls++;
+            }
+            failedCalls[next] = failed;
+            slowCalls[next] = slow;
+            failures += failed ? 1 : 0;
+            slowOnes += slow ? 1 : 0;
+            next = (next + 1) % windowSize;
+        }
+
+        private void open(final long now) {
+            state = State.OPEN;
+            openedAt = now;
+            // Start over with a fresh window once closed again
+            next = 0;
+            recordedCalls = 0;
+            failures = 0;
+            slowOnes = 0;
+        }
+    }
+}
@@ -36,47 +36,435 @@ public class HyperswitchConfigProperties {
 
 	public static final String HYPERSWITCH_API_KEY = "HYPERSWITCH_API_KEY";
 	public static final String HYPERSWITCH_PROFILE_ID= "HYPERSWITCH_PROFILE_ID";
-	public static final String HPYERSWITCH_ENVIRONMENT_KEY = "HPYERSWITCH_ENVIRONMENT";
+	public static final String HYPERSWITCH_ENVIRONMENT_KEY = "HYPERSWITCH_ENVIRONMENT";
 
 
 	private final String hyperswitchApikey;
 	private final String environment;
 	private final String profileId;
+	private final int refreshThreads;
+	private final int refreshMaxConcurrency;
+	private final long refreshTimeoutMillis;
+	private final boolean reconcilerEnabled;
+	private final long reconcilerIntervalSeconds;
+	private final int reconcilerBatchSize;
+	private final int reconcilerLeaseSeconds;
+	private final int reconcilerMaxBackoffSeconds;
+	private final int reconcilerMaxAgeSeconds;
+	private final double reconcilerRatePerTenant;
+	private final String webhookSecret;
+	private final int notificationThreads;
+	private final int notificationBatchSize;
+	private final long notificationPollIntervalMillis;
+	private final int notificationRetentionDays;
+	private final boolean writeBehindEnabled;
+	private final String writeBehindJournalPath;
+	private final int writeBehindJournalSizeMb;
+	private final int writeBehindQueueCapacity;
+	private final int writeBehindBatchSize;
+	private final long writeBehindTimeoutMillis;
+	private final long paymentMethodCacheMaxSize;
+	private final long paymentMethodCacheTtlSeconds;
+	private final long connectTimeoutMillis;
+	private final long readTimeoutMillis;
+	private final long writeTimeoutMillis;
+	private final String baseUrl;
+	private final int maxIdleConnections;
+	private final int sandboxMaxIdleConnections;
+	private final long keepAliveSeconds;
+	private final boolean http2Enabled;
+	private final boolean gzipEnabled;
+	private final int bulkheadMaxConcurrentCalls;
+	private final int circuitBreakerWindowSize;
+	private final int circuitBreakerMinimumCalls;
+	private final double circuitBreakerFailureRateThreshold;
+	private final double circuitBreakerLatencyPercentile;
+	private final long circuitBreakerLatencyThresholdMillis;
+	private final long circuitBreakerOpenMillis;
+	private final int circuitBreakerHalfOpenCalls;
+	private final int retryMaxAttempts;
+	private final long retryInitialBackoffMillis;
+	private final long retryMaxBackoffMillis;
+	private final long retryBudgetMillis;
+	private final boolean refreshHedgingEnabled;
+	private final long refreshHedgeMinDelayMillis;
+	private final long forceSyncCacheMillis;
+	private final long forceSyncNegativeCacheMillis;
+	private final String executionMode;
+	private final boolean asyncVirtualThreads;
+	private final int asyncThreads;
+	private final int asyncQueueCapacity;
+	private final long asyncTimeoutMillis;
+	private final int bulkThreads;
+	private final int bulkMaxItems;
+	private final long bulkTimeoutMillis;
+	private final int paymentMethodResetThreads;
+	private final int paymentMethodResetPageSize;
+	private final long hppSessionTtlSeconds;
+	private final long hppSessionCacheMaxSize;
+	private final long hppSweeperIntervalSeconds;
+	private final int hppSweeperBatchSize;
+	private final boolean metricsPerTenant;
     
 
 	public enum Environment {
-		PRODUCTION, 
-		SANDBOX
+		PRODUCTION("https://api.hyperswitch.io"),
+		SANDBOX("https://sandbox.hyperswitch.io");
+
+		private final String baseUrl;
+
+		Environment(final String baseUrl) {
+			this.baseUrl = baseUrl;
+		}
+
+		public String getBaseUrl() {
+			return baseUrl;
+		}
 	}
 	
 	public HyperswitchConfigProperties(final Properties properties, final String region) {
 		this.hyperswitchApikey = properties.getProperty(PROPERTY_PREFIX + "hyperswitchApikey");
 		this.profileId = properties.getProperty(PROPERTY_PREFIX + "profileId");
-		this.environment = properties.getProperty(PROPERTY_PREFIX + "environment", "sandbox"); // defaults to sandbox
+		this.environment = properties.getProperty(PROPERTY_PREFIX + "environment"); // defaults to the endpoint of the client
+		this.refreshThreads = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "refreshThreads", "20"));
+		this.refreshMaxConcurrency = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "refreshMaxConcurrency", "5"));
+		this.refreshTimeoutMillis = Long.parseLong(properties.getProperty(PROPERTY_PREFIX + "refreshTimeoutMillis", "10000"));
+		this.reconcilerEnabled = Boolean.parseBoolean(properties.getProperty(PROPERTY_PREFIX + "reconcilerEnabled", "false"));
+		this.reconcilerIntervalSeconds = Long.parseLong(properties.getProperty(PROPERTY_PREFIX + "reconcilerIntervalSeconds", "60"));
+		this.reconcilerBatchSize = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "reconcilerBatchSize", "100"));
+		this.reconcilerLeaseSeconds = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "reconcilerLeaseSeconds", "300"));
+		this.reconcilerMaxBackoffSeconds = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "reconcilerMaxBackoffSeconds", "86400"));
+		this.reconcilerMaxAgeSeconds = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "reconcilerMaxAgeSeconds", "604800"));
+		this.reconcilerRatePerTenant = Double.parseDouble(properties.getProperty(PROPERTY_PREFIX + "reconcilerRatePerTenant", "10"));
+		this.webhookSecret = properties.getProperty(PROPERTY_PREFIX + "webhookSecret");
+		this.notificationThreads = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "notificationThreads", "2"));
+		this.notificationBatchSize = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "notificationBatchSize", "100"));
+		this.notificationPollIntervalMillis = Long.parseLong(properties.getProperty(PROPERTY_PREFIX + "notificationPollIntervalMillis", "1000"));
+		this.notificationRetentionDays = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "notificationRetentionDays", "7"));
+		this.writeBehindEnabled = Boolean.parseBoolean(properties.getProperty(PROPERTY_PREFIX + "writeBehindEnabled", "false"));
+		this.writeBehindJournalPath = properties.getProperty(PROPERTY_PREFIX + "writeBehindJournalPath"); // required when write-behind is enabled
+		this.writeBehindJournalSizeMb = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "writeBehindJournalSizeMb", "64"));
+		this.writeBehindQueueCapacity = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "writeBehindQueueCapacity", "10000"));
+		this.writeBehindBatchSize = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "writeBehindBatchSize", "500"));
+		this.writeBehindTimeoutMillis = Long.parseLong(properties.getProperty(PROPERTY_PREFIX + "writeBehindTimeoutMillis", "1000"));
+		this.paymentMethodCacheMaxSize = Long.parseLong(properties.getProperty(PROPERTY_PREFIX + "paymentMethodCacheMaxSize", "10000"));
+		this.paymentMethodCacheTtlSeconds = Long.parseLong(properties.getProperty(PROPERTY_PREFIX + "paymentMethodCacheTtlSeconds", "60"));
+		this.connectTimeoutMillis = Long.parseLong(properties.getProperty(PROPERTY_PREFIX + "connectTimeoutMillis", "5000"));
+		this.readTimeoutMillis = Long.parseLong(properties.getProperty(PROPERTY_PREFIX + "readTimeoutMillis", "30000"));
+		this.writeTimeoutMillis = Long.parseLong(properties.getProperty(PROPERTY_PREFIX + "writeTimeoutMillis", "30000"));
+		this.baseUrl = properties.getProperty(PROPERTY_PREFIX + "baseUrl"); // defaults to the URL of the environment
+		this.maxIdleConnections = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "maxIdleConnections", "50"));
+		this.sandboxMaxIdleConnections = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "sandboxMaxIdleConnections", "5"));
+		this.keepAliveSeconds = Long.parseLong(properties.getProperty(PROPERTY_PREFIX + "keepAliveSeconds", "300"));
+		this.http2Enabled = Boolean.parseBoolean(properties.getProperty(PROPERTY_PREFIX + "http2Enabled", "true"));
+		this.gzipEnabled = Boolean.parseBoolean(properties.getProperty(PROPERTY_PREFIX + "gzipEnabled", "true"));
+		this.bulkheadMaxConcurrentCalls = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "bulkheadMaxConcurrentCalls", "50"));
+		this.circuitBreakerWindowSize = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "circuitBreakerWindowSize", "100"));
+		this.circuitBreakerMinimumCalls = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "circuitBreakerMinimumCalls", "20"));
+		this.circuitBreakerFailureRateThreshold = Double.parseDouble(properties.getProperty(PROPERTY_PREFIX + "circuitBreakerFailureRateThreshold", "50"));
+		this.circuitBreakerLatencyPercentile = Double.parseDouble(properties.getProperty(PROPERTY_PREFIX + "circuitBreakerLatencyPercentile", "95"));
+		this.circuitBreakerLatencyThresholdMillis = Long.parseLong(properties.getProperty(PROPERTY_PREFIX + "circuitBreakerLatencyThresholdMillis", "10000"));
+		this.circuitBreakerOpenMillis = Long.parseLong(properties.getProperty(PROPERTY_PREFIX + "circuitBreakerOpenMillis", "30000"));
+		this.circuitBreakerHalfOpenCalls = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "circuitBreakerHalfOpenCalls", "5"));
+		this.retryMaxAttempts = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "retryMaxAttempts", "3"));
+		this.retryInitialBackoffMillis = Long.parseLong(properties.getProperty(PROPERTY_PREFIX + "retryInitialBackoffMillis", "100"));
+		this.retryMaxBackoffMillis = Long.parseLong(properties.getProperty(PROPERTY_PREFIX + "retryMaxBackoffMillis", "2000"));
+		this.retryBudgetMillis = Long.parseLong(properties.getProperty(PROPERTY_PREFIX + "retryBudgetMillis", "45000"));
+		this.refreshHedgingEnabled = Boolean.parseBoolean(properties.getProperty(PROPERTY_PREFIX + "refreshHedgingEnabled", "false"));
+		this.refreshHedgeMinDelayMillis = Long.parseLong(properties.getProperty(PROPERTY_PREFIX + "refreshHedgeMinDelayMillis", "50"));
+		this.forceSyncCacheMillis = Long.parseLong(properties.getProperty(PROPERTY_PREFIX + "forceSyncCacheMillis", "1000"));
+		this.forceSyncNegativeCacheMillis = Long.parseLong(properties.getProperty(PROPERTY_PREFIX + "forceSyncNegativeCacheMillis", "250"));
+		this.executionMode = properties.getProperty(PROPERTY_PREFIX + "executionMode", "caller");
+		this.asyncVirtualThreads = Boolean.parseBoolean(properties.getProperty(PROPERTY_PREFIX + "asyncVirtualThreads", "true"));
+		this.asyncThreads = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "asyncThreads", "200"));
+		this.asyncQueueCapacity = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "asyncQueueCapacity", "1000"));
+		this.asyncTimeoutMillis = Long.parseLong(properties.getProperty(PROPERTY_PREFIX + "asyncTimeoutMillis", "60000"));
+		this.bulkThreads = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "bulkThreads", "16"));
+		this.bulkMaxItems = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "bulkMaxItems", "1000"));
+		this.bulkTimeoutMillis = Long.parseLong(properties.getProperty(PROPERTY_PREFIX + "bulkTimeoutMillis", "120000"));
+		this.paymentMethodResetThreads = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "paymentMethodResetThreads", "4"));
+		this.paymentMethodResetPageSize = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "paymentMethodResetPageSize", "100"));
+		this.hppSessionTtlSeconds = Long.parseLong(properties.getProperty(PROPERTY_PREFIX + "hppSessionTtlSeconds", "900"));
+		this.hppSessionCacheMaxSize = Long.parseLong(properties.getProperty(PROPERTY_PREFIX + "hppSessionCacheMaxSize", "10000"));
+		this.hppSweeperIntervalSeconds = Long.parseLong(properties.getProperty(PROPERTY_PREFIX + "hppSweeperIntervalSeconds", "60"));
+		this.hppSweeperBatchSize = Integer.parseInt(properties.getProperty(PROPERTY_PREFIX + "hppSweeperBatchSize", "500"));
+		this.metricsPerTenant = Boolean.parseBoolean(properties.getProperty(PROPERTY_PREFIX + "metricsPerTenant", "false"));
 	}
 	
 
 	public String getHSApiKey() {
 		if (hyperswitchApikey == null || hyperswitchApikey.isEmpty()) {
-			return getClient(hyperswitchApikey, null);
+			return getClient(HYPERSWITCH_API_KEY, null);
 		}
 		return hyperswitchApikey;
 	}
 	
 	public String getEnvironment() {
 		if (environment == null || environment.isEmpty()) {
-			return getClient(environment, null);
+			return getClient(HYPERSWITCH_ENVIRONMENT_KEY, null);
 		}
 		return environment;
 	}
 	
 	public String getProfileId(){
 		if (profileId == null || profileId.isEmpty()) {
-			return getClient(profileId, null);
+			return getClient(HYPERSWITCH_PROFILE_ID, null);
 		}
 		return profileId;
 	}
 	
+	public int getRefreshThreads() {
+		return refreshThreads;
+	}
+
+	public int getRefreshMaxConcurrency() {
+		return refreshMaxConcurrency;
+	}
+
+	public long getRefreshTimeoutMillis() {
+		return refreshTimeoutMillis;
+	}
+
+	public boolean isReconcilerEnabled() {
+		return reconcilerEnabled;
+	}
+
+	public long getReconcilerIntervalSeconds() {
+		return reconcilerIntervalSeconds;
+	}
+
+	public int getReconcilerBatchSize() {
+		return reconcilerBatchSize;
+	}
+
+	public int getReconcilerLeaseSeconds() {
+		return reconcilerLeaseSeconds;
+	}
+
+	public int getReconcilerMaxBackoffSeconds() {
+		return reconcilerMaxBackoffSeconds;
+	}
+
+	public int getReconcilerMaxAgeSeconds() {
+		return reconcilerMaxAgeSeconds;
+	}
+
+	public double getReconcilerRatePerTenant() {
+		return reconcilerRatePerTenant;
+	}
+
+	public String getWebhookSecret() {
+		return webhookSecret;
+	}
+
+	public int getNotificationThreads() {
+		return notificationThreads;
+	}
+
+	public int getNotificationBatchSize() {
+		return notificationBatchSize;
+	}
+
+	public long getNotificationPollIntervalMillis() {
+		return notificationPollIntervalMillis;
+	}
+
+	public int getNotificationRetentionDays() {
+		return notificationRetentionDays;
+	}
+
+	public boolean isWriteBehindEnabled() {
+		return writeBehindEnabled;
+	}
+
+	public String getWriteBehindJournalPath() {
+		return writeBehindJournalPath;
+	}
+
+	public int getWriteBehindJournalSizeMb() {
+		return writeBehindJournalSizeMb;
+	}
+
+	public int getWriteBehindQueueCapacity() {
+		return writeBehindQueueCapacity;
+	}
+
+	public int getWriteBehindBatchSize() {
+		return writeBehindBatchSize;
+	}
+
+	public long getWriteBehindTimeoutMillis() {
+		return writeBehindTimeoutMillis;
+	}
+
+	public long getPaymentMethodCacheMaxSize() {
+		return paymentMethodCacheMaxSize;
+	}
+
+	public long getPaymentMethodCacheTtlSeconds() {
+		return paymentMethodCacheTtlSeconds;
+	}
+
+	public long getConnectTimeoutMillis() {
+		return connectTimeoutMillis;
+	}
+
+	public long getReadTimeoutMillis() {
+		return readTimeoutMillis;
+	}
+
+	public long getWriteTimeoutMillis() {
+		return writeTimeoutMillis;
+	}
+
+	public String getBaseUrl() {
+		return baseUrl;
+	}
+
+	public int getMaxIdleConnections() {
+		return maxIdleConnections;
+	}
+
+	public int getSandboxMaxIdleConnections() {
+		return sandboxMaxIdleConnections;
+	}
+
+	public long getKeepAliveSeconds() {
+		return keepAliveSeconds;
+	}
+
+	public boolean isHttp2Enabled() {
+		return http2Enabled;
+	}
+
+	public boolean isGzipEnabled() {
+		return gzipEnabled;
+	}
+
+	public int getBulkheadMaxConcurrentCalls() {
+		return bulkheadMaxConcurrentCalls;
+	}
+
+	public int getCircuitBreakerWindowSize() {
+		return circuitBreakerWindowSize;
+	}
+
+	public int getCircuitBreakerMinimumCalls() {
+		return circuitBreakerMinimumCalls;
+	}
+
+	public double getCircuitBreakerFailureRateThreshold() {
+		return circuitBreakerFailureRateThreshold;
+	}
+
+	public double getCircuitBreakerLatencyPercentile() {
+		return circuitBreakerLatencyPercentile;
+	}
+
+	public long getCircuitBreakerLatencyThresholdMillis() {
+		return circuitBreakerLatencyThresholdMillis;
+	}
+
+	public long getCircuitBreakerOpenMillis() {
+		return circuitBreakerOpenMillis;
+	}
+
+	public int getCircuitBreakerHalfOpenCalls() {
+		return circuitBreakerHalfOpenCalls;
+	}
+
+	public int getRetryMaxAttempts() {
+		return retryMaxAttempts;
+	}
+
+	public long getRetryInitialBackoffMillis() {
+		return retryInitialBackoffMillis;
+	}
+
+	public long getRetryMaxBackoffMillis() {
+		return retryMaxBackoffMillis;
+	}
+
+	public long getRetryBudgetMillis() {
+		return retryBudgetMillis;
+	}
+
+	public boolean isRefreshHedgingEnabled() {
+		return refreshHedgingEnabled;
+	}
+
+	public long getRefreshHedgeMinDelayMillis() {
+		return refreshHedgeMinDelayMillis;
+	}
+
+	public long getForceSyncCacheMillis() {
+		return forceSyncCacheMillis;
+	}
+
+	public long getForceSyncNegativeCacheMillis() {
+		return forceSyncNegativeCacheMillis;
+	}
+
+	public String getExecutionMode() {
+		return executionMode;
+	}
+
+	public boolean isAsyncVirtualThreads() {
+		return asyncVirtualThreads;
+	}
+
+	public int getAsyncThreads() {
+		return asyncThreads;
+	}
+
+	public int getAsyncQueueCapacity() {
+		return asyncQueueCapacity;
+	}
+
+	public long getAsyncTimeoutMillis() {
+		return asyncTimeoutMillis;
+	}
+
+	public int getBulkThreads() {
+		return bulkThreads;
+	}
+
+	public int getBulkMaxItems() {
+		return bulkMaxItems;
+	}
+
+	public long getBulkTimeoutMillis() {
+		return bulkTimeoutMillis;
+	}
+
+	public int getPaymentMethodResetThreads() {
+		return paymentMethodResetThreads;
+	}
+
+	public int getPaymentMethodResetPageSize() {
+		return paymentMethodResetPageSize;
+	}
+
+	public long getHppSessionTtlSeconds() {
+		return hppSessionTtlSeconds;
+	}
+
+	public long getHppSessionCacheMaxSize() {
+		return hppSessionCacheMaxSize;
+	}
+
+	public long getHppSweeperIntervalSeconds() {
+		return hppSweeperIntervalSeconds;
+	}
+
+	public int getHppSweeperBatchSize() {
+		return hppSweeperBatchSize;
+	}
+
+	public boolean isMetricsPerTenant() {
+		return metricsPerTenant;
+	}
+
 	private String getClient(String envKey, String defaultValue) {
 		Map<String, String> env = System.getenv();
 
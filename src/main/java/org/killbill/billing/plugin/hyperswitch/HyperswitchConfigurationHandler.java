@@ -19,7 +19,16 @@
 
 package org.killbill.billing.plugin.hyperswitch;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import javax.annotation.Nullable;
 
 import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
 
@@ -50,7 +59,14 @@ public class HyperswitchConfigurationHandler extends PluginTenantConfigurableCon
 
     private static final Logger logger = LoggerFactory.getLogger(HyperswitchConfigurationHandler.class);
 
+    private static final UUID DEFAULT_TENANT_KEY = new UUID(0L, 0L);
+
     private final String region;
+    private final List<Consumer<UUID>> configurationChangeListeners = new CopyOnWriteArrayList<Consumer<UUID>>();
+    // Resolved configuration of each tenant, copied on write (configuration changes are rare): reads don't lock
+    private volatile Map<UUID, HyperswitchTenantConfig> tenantConfigs = Collections.emptyMap();
+    // Bumped on each configuration change, guarded by this
+    private volatile long generation;
 
     public HyperswitchConfigurationHandler(final String region,
             final String pluginName,
@@ -59,6 +75,70 @@ public class HyperswitchConfigurationHandler extends PluginTenantConfigurableCon
         this.region = region;
     }
 
+    /**
+     * Register a callback invoked with the tenant id each time the configuration of that tenant is (re)loaded
+     */
+    public void addConfigurationChangeListener(final Consumer<UUID> listener) {
+        configurationChangeListeners.add(listener);
+    }
+
+    /**
+     * @return the resolved configuration of the tenant (the default configuration if the tenant has none): a
+     * payment operation should read it once and use that snapshot throughout
+     */
+    public HyperswitchTenantConfig getTenantConfig(@Nullable final UUID kbTenantId) {
+        final UUID key = toKey(kbTenantId);
+        final HyperswitchTenantConfig tenantConfig = tenantConfigs.get(key);
+        if (tenantConfig != null) {
+            return tenantConfig;
+        }
+
+        // First lookup of the tenant on this node
+        final long observedGeneration = generation;
+        final HyperswitchTenantConfig resolved = HyperswitchTenantConfig.resolve(getConfigurable(kbTenantId));
+        synchronized (this) {
+            final HyperswitchTenantConfig existing = tenantConfigs.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            if (generation == observedGeneration) {
+                // Otherwise the configuration changed while it was resolved: don't publish a stale snapshot
+                publish(key, resolved);
+            }
+        }
+        return resolved;
+    }
+
+    @Override
+    protected void configure(@Nullable final UUID kbTenantId) {
+        super.configure(kbTenantId);
+        synchronized (this) {
+            generation++;
+            if (kbTenantId == null) {
+                // Tenants without a configuration of their own fall back to the default one
+                tenantConfigs = Collections.emptyMap();
+            } else {
+                publish(kbTenantId, HyperswitchTenantConfig.resolve(getConfigurable(kbTenantId)));
+            }
+        }
+        logger.info("Configuration loaded for tenant {}", kbTenantId);
+        for (final Consumer<UUID> listener : configurationChangeListeners) {
+            listener.accept(kbTenantId);
+        }
+    }
+
+    // Callers hold the lock
+    private void publish(final UUID key, final HyperswitchTenantConfig tenantConfig) {
+        final Map<UUID, HyperswitchTenantConfig> copy = new HashMap<UUID, HyperswitchTenantConfig>(tenantConfigs);
+        copy.put(key, tenantConfig);
+        tenantConfigs = Collections.unmodifiableMap(copy);
+    }
+
+    private static UUID toKey(@Nullable final UUID kbTenantId) {
+        // The default configuration is stored under the nil UUID
+        return kbTenantId == null ? DEFAULT_TENANT_KEY : kbTenantId;
+    }
+
     @Override
     protected HyperswitchConfigProperties createConfigurable(final Properties properties) {
         return new HyperswitchConfigProperties(properties,region);
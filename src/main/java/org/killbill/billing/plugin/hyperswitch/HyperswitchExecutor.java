@@ -0,0 +1,162 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs the plugin API operations (their Hyperswitch and database calls) off the Kill Bill threads.
+ * <p>
+ * In the default {@code caller} mode, operations run on the calling thread. In the {@code async} mode, they run on
+ * virtual threads when the JVM supports them (Java 21+), or on a bounded pool of platform threads otherwise (callers
+ * run the operation themselves when the queue of the pool is full), and synchronous callers wait for them up to
+ * {@code timeoutMillis}. An operation which misses that deadline isn't interrupted: it completes in the background
+ * and records its outcome, so that it can be picked up by the Janitor.
+ */
+public class HyperswitchExecutor implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HyperswitchExecutor.class);
+
+    public static final String ASYNC_MODE = "async";
+
+    public static final HyperswitchExecutor CALLER = new HyperswitchExecutor(null, 0L);
+
+    // Null in caller mode
+    @Nullable
+    private final ExecutorService executor;
+    private final long timeoutNanos;
+
+    private HyperswitchExecutor(@Nullable final ExecutorService executor, final long timeoutMillis) {
+        this.executor = executor;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    public static HyperswitchExecutor create(final HyperswitchConfigProperties config) {
+        if (!ASYNC_MODE.equalsIgnoreCase(config.getExecutionMode())) {
+            return CALLER;
+        }
+
+        ExecutorService executor = config.isAsyncVirtualThreads() ? newVirtualThreadPerTaskExecutor() : null;
+        if (executor == null) {
+            logger.info("Running Hyperswitch operations on a pool of {} threads", config.getAsyncThreads());
+            executor = new ThreadPoolExecutor(config.getAsyncThreads(),
+                                              config.getAsyncThreads(),
+                                              60L,
+                                              TimeUnit.SECONDS,
+                                              new ArrayBlockingQueue<Runnable>(config.getAsyncQueueCapacity()),
+                                              new ThreadFactoryBuilder().setNameFormat("hyperswitch-async-%d")
+                                                                        .setDaemon(true)
+                                                                        .build(),
+                                              new ThreadPoolExecutor.CallerRunsPolicy());
+        } else {
+            logger.info("Running Hyperswitch operations on virtual threads");
+        }
+        return new HyperswitchExecutor(executor, config.getAsyncTimeoutMillis());
+    }
+
+    public boolean isAsync() {
+        return executor != null;
+    }
+
+    /**
+     * Start an operation: in caller mode, the operation has completed when this method returns.
+     */
+    public <T> CompletableFuture<T> submit(final HyperswitchMetrics.Call<T, ? extends Exception> operation) {
+        final CompletableFuture<T> result = new CompletableFuture<T>();
+        if (executor == null) {
+            complete(result, operation);
+        } else {
+            executor.execute(() -> complete(result, operation));
+        }
+        return result;
+    }
+
+    /**
+     * Run an operation and wait for it.
+     *
+     * @throws TimeoutException if the deadline was exceeded: the operation keeps running in the background
+     */
+    @SuppressWarnings("unchecked")
+    public <T, E extends Exception> T execute(final HyperswitchMetrics.Call<T, E> operation) throws E, TimeoutException {
+        if (executor == null) {
+            return operation.call();
+        }
+
+        final CompletableFuture<T> result = submit(operation);
+        try {
+            return result.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TimeoutException("Interrupted while waiting for the Hyperswitch operation");
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            // Only E can be thrown by the operation
+            throw (E) cause;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private static <T> void complete(final CompletableFuture<T> result, final HyperswitchMetrics.Call<T, ? extends Exception> operation) {
+        try {
+            result.complete(operation.call());
+        } catch (final Throwable e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * {@code Executors.newVirtualThreadPerTaskExecutor()}, looked up reflectively as the plugin also runs on Java 11 and 17
+     *
+     * @return null if virtual threads aren't supported
+     */
+    @Nullable
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (final ReflectiveOperationException e) {
+            logger.info("Virtual threads aren't available on this JVM: {}", e.toString());
+            return null;
+        }
+    }
+}
@@ -20,34 +20,57 @@
 package org.killbill.billing.plugin.hyperswitch;
 
 import java.util.Map;
+import java.util.UUID;
 
 import javax.annotation.Nullable;
 
 import org.killbill.billing.osgi.api.Healthcheck;
 import org.killbill.billing.tenant.api.Tenant;
-import org.slf4j.LoggerFactory;
-import org.slf4j.Logger;
-import org.killbill.billing.osgi.api.Healthcheck;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class HyperswitchHealthcheck implements Healthcheck {
     private static final Logger logger = LoggerFactory.getLogger(HyperswitchHealthcheck.class);
+
+    @Nullable
+    private final HyperswitchCircuitBreaker hyperswitchCircuitBreaker;
+
+    public HyperswitchHealthcheck() {
+        this(null);
+    }
+
+    public HyperswitchHealthcheck(@Nullable final HyperswitchCircuitBreaker hyperswitchCircuitBreaker) {
+        this.hyperswitchCircuitBreaker = hyperswitchCircuitBreaker;
+    }
+
     @Override
     public HealthStatus getHealthStatus(@Nullable final Tenant tenant, @Nullable final Map properties) {
 
         if (tenant == null) {
             // The plugin is running
+            if (hyperswitchCircuitBreaker != null) {
+                final Map<UUID, HyperswitchCircuitBreaker.State> trippedCircuits = hyperswitchCircuitBreaker.getTrippedCircuits();
+                if (!trippedCircuits.isEmpty()) {
+                    return HealthStatus.healthy("Hyperswitch OK, circuit breaker tripped for tenants " + trippedCircuits);
+                }
+            }
             return HealthStatus.healthy("Hyperswitch OK");
         } else {
             // Specifying the tenant lets you also validate the tenant configuration
-            return pingGatewayService();
+            return pingGatewayService(tenant.getId());
         }
     }
 
-    private HealthStatus pingGatewayService() {
+    private HealthStatus pingGatewayService(final UUID kbTenantId) {
         try {
-
+            if (hyperswitchCircuitBreaker != null) {
+                // Calls are failing fast while the circuit is open
+                final Map<String, Object> details = hyperswitchCircuitBreaker.getDetails(kbTenantId);
+                if (details.get("state") == HyperswitchCircuitBreaker.State.OPEN) {
+                    return HealthStatus.unHealthy("Hyperswitch circuit breaker open: " + details);
+                }
+                return HealthStatus.healthy("Hyperswitch OK: " + details);
+            }
             return HealthStatus.healthy("Hyperswitch OK");
         } catch (final Exception e) {
             logger.warn("Healthcheck error", e);
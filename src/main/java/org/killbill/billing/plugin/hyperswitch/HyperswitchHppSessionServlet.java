@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.jooby.MediaType;
+import org.jooby.Result;
+import org.jooby.Results;
+import org.jooby.Status;
+import org.jooby.mvc.GET;
+import org.jooby.mvc.Local;
+import org.jooby.mvc.Path;
+import org.killbill.billing.plugin.hyperswitch.dao.HyperswitchDao;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchHppRequestsRecord;
+import org.killbill.billing.tenant.api.Tenant;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.Inject;
+
+/**
+ * GET /plugins/hyperswitch-plugin/hpp/sessions/{sessionId} returns a hosted payment page session created by
+ * buildFormDescriptor (e.g. for the page rendering the Hyperswitch SDK to get the client secret back), 404 once
+ * it has expired.
+ */
+@Singleton
+@Path("/hpp/sessions")
+public class HyperswitchHppSessionServlet {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final HyperswitchHppSessionStore sessionStore;
+
+    @Inject
+    public HyperswitchHppSessionServlet(final HyperswitchHppSessionStore sessionStore) {
+        this.sessionStore = sessionStore;
+    }
+
+    @GET
+    @Path("/:sessionId")
+    public Result getSession(@Named("sessionId") final String sessionId,
+                             @Local @Named("killbill_tenant") final Optional<Tenant> tenant) throws IOException, SQLException {
+        if (!tenant.isPresent()) {
+            return Results.with("Missing tenant", Status.UNAUTHORIZED);
+        }
+        final HyperswitchHppRequestsRecord session = sessionStore.getSession(sessionId, tenant.get().getId());
+        if (session == null) {
+            return Results.with("Unknown or expired session", Status.NOT_FOUND);
+        }
+        final Map additionalData = HyperswitchDao.fromAdditionalData(session.getAdditionalData());
+        final Map<String, Object> body = new LinkedHashMap<String, Object>();
+        body.put("sessionId", session.getSessionId());
+        body.put("kbAccountId", session.getKbAccountId());
+        body.put("paymentId", additionalData.get("payment_id"));
+        body.put("clientSecret", additionalData.get("client_secret"));
+        body.put("amount", additionalData.get("amount"));
+        body.put("currency", additionalData.get("currency"));
+        body.put("returnUrl", additionalData.get("return_url"));
+        body.put("expirationDate", sessionStore.getExpirationDate(session).toString());
+        return Results.with(objectMapper.writeValueAsString(body), Status.OK).type(MediaType.json);
+    }
+}
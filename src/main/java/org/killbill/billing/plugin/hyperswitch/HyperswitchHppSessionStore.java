@@ -0,0 +1,204 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.io.Closeable;
+import java.sql.SQLException;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.killbill.billing.plugin.hyperswitch.dao.HyperswitchDao;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchHppRequestsRecord;
+import org.killbill.clock.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Hosted payment page sessions (see {@link HyperswitchPaymentPluginApi#buildFormDescriptor}), stored in
+ * hyperswitch_hpp_requests and indexed in memory by session id.
+ * <p>
+ * A session expires {@code ttlSeconds} after its creation: the in-memory entries expire with it, and the rows are
+ * purged in batches by a background sweeper. Sessions created on other nodes of the cluster are read from the
+ * table on the first lookup.
+ */
+public class HyperswitchHppSessionStore implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HyperswitchHppSessionStore.class);
+
+    private final HyperswitchDao hyperswitchDao;
+    private final Clock clock;
+    private final long ttlSeconds;
+    private final int sweeperBatchSize;
+    private final Cache<Key, HyperswitchHppRequestsRecord> sessions;
+    private final ScheduledExecutorService sweeper;
+
+    private final AtomicLong purgedSessions = new AtomicLong();
+
+    public HyperswitchHppSessionStore(final HyperswitchDao hyperswitchDao,
+                                      final Clock clock,
+                                      final long maximumSize,
+                                      final long ttlSeconds,
+                                      final int sweeperBatchSize) {
+        this.hyperswitchDao = hyperswitchDao;
+        this.clock = clock;
+        this.ttlSeconds = ttlSeconds;
+        this.sweeperBatchSize = sweeperBatchSize;
+        this.sessions = CacheBuilder.newBuilder()
+                                    .maximumSize(maximumSize)
+                                    .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                                    .recordStats()
+                                    .build();
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("hyperswitch-hpp-sweeper-%d")
+                                                                                            .setDaemon(true)
+                                                                                            .build());
+    }
+
+    public void start(final long intervalSeconds) {
+        logger.info("Starting HPP session sweeper (interval={}s, ttl={}s)", intervalSeconds, ttlSeconds);
+        sweeper.scheduleWithFixedDelay(this::sweepSafely, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    public HyperswitchHppRequestsRecord addSession(final UUID kbAccountId,
+                                                   final String sessionId,
+                                                   final Map additionalData,
+                                                   final UUID kbTenantId) throws SQLException {
+        final HyperswitchHppRequestsRecord session = hyperswitchDao.addHppRequest(kbAccountId, sessionId, additionalData, clock.getUTCNow(), kbTenantId);
+        sessions.put(new Key(kbTenantId, sessionId), session);
+        return session;
+    }
+
+    /**
+     * @return the session, null if it doesn't exist or has expired (misses aren't cached)
+     */
+    @Nullable
+    public HyperswitchHppRequestsRecord getSession(final String sessionId, final UUID kbTenantId) throws SQLException {
+        final Key key = new Key(kbTenantId, sessionId);
+        HyperswitchHppRequestsRecord session = sessions.getIfPresent(key);
+        if (session == null) {
+            session = hyperswitchDao.getHppRequest(sessionId, kbTenantId);
+            if (session == null || isExpired(session)) {
+                // Expired but not swept yet
+                return null;
+            }
+            sessions.put(key, session);
+        } else if (isExpired(session)) {
+            // Loaded from the table late in its life: the cache TTL runs from the load, not from the creation
+            sessions.invalidate(key);
+            return null;
+        }
+        return session;
+    }
+
+    public DateTime getExpirationDate(final HyperswitchHppRequestsRecord session) {
+        return new DateTime(session.getCreatedDate().toInstant(ZoneOffset.UTC).toEpochMilli(), DateTimeZone.UTC).plusSeconds((int) ttlSeconds);
+    }
+
+    /**
+     * Purge the expired sessions, one batch at a time (each batch in its own short transaction).
+     *
+     * @return the number of sessions purged
+     */
+    public int sweep() throws SQLException {
+        final DateTime createdBefore = clock.getUTCNow().minusSeconds((int) ttlSeconds);
+        int purged = 0;
+        int deleted;
+        do {
+            deleted = hyperswitchDao.deleteHppRequests(createdBefore, sweeperBatchSize);
+            purged += deleted;
+        } while (deleted == sweeperBatchSize && !Thread.currentThread().isInterrupted());
+        sessions.cleanUp();
+
+        purgedSessions.addAndGet(purged);
+        if (purged > 0) {
+            logger.info("Purged {} expired HPP sessions", purged);
+        }
+        return purged;
+    }
+
+    public long getPurgedSessions() {
+        return purgedSessions.get();
+    }
+
+    public double getHitRate() {
+        return sessions.stats().hitRate();
+    }
+
+    public long size() {
+        return sessions.size();
+    }
+
+    private boolean isExpired(final HyperswitchHppRequestsRecord session) {
+        return !getExpirationDate(session).isAfter(clock.getUTCNow());
+    }
+
+    private void sweepSafely() {
+        try {
+            sweep();
+        } catch (final Exception e) {
+            // Don't let the exception cancel the next runs
+            logger.warn("HPP session sweep failed", e);
+        }
+    }
+
+    private static final class Key {
+
+        private final UUID kbTenantId;
+        private final String sessionId;
+
+        private Key(final UUID kbTenantId, final String sessionId) {
+            this.kbTenantId = kbTenantId;
+            this.sessionId = sessionId;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return Objects.equals(kbTenantId, key.kbTenantId) && sessionId.equals(key.sessionId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kbTenantId, sessionId);
+        }
+    }
+}
@@ -22,6 +22,7 @@ package org.killbill.billing.plugin.hyperswitch;
 import org.killbill.billing.account.api.Account;
 import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.notification.plugin.api.ExtBusEvent;
+import org.killbill.billing.notification.plugin.api.ExtBusEventType;
 import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
 import org.killbill.billing.osgi.libs.killbill.OSGIKillbillEventDispatcher;
 import org.killbill.billing.plugin.api.PluginTenantContext;
@@ -34,9 +35,11 @@ public class HyperswitchListener implements OSGIKillbillEventDispatcher.OSGIKill
     private static final Logger logger = LoggerFactory.getLogger(HyperswitchListener.class);
 
     private final OSGIKillbillAPI osgiKillbillAPI;
+    private final HyperswitchPaymentMethodCache hyperswitchPaymentMethodCache;
 
-    public HyperswitchListener(final OSGIKillbillAPI killbillAPI) {
+    public HyperswitchListener(final OSGIKillbillAPI killbillAPI, final HyperswitchPaymentMethodCache hyperswitchPaymentMethodCache) {
         this.osgiKillbillAPI = killbillAPI;
+        this.hyperswitchPaymentMethodCache = hyperswitchPaymentMethodCache;
     }
 
     @Override
@@ -53,6 +56,9 @@ public class HyperswitchListener implements OSGIKillbillEventDispatcher.OSGIKill
             //
             case ACCOUNT_CREATION:
             case ACCOUNT_CHANGE:
+                if (killbillEvent.getEventType() == ExtBusEventType.ACCOUNT_CHANGE) {
+                    hyperswitchPaymentMethodCache.invalidateAccount(killbillEvent.getAccountId(), killbillEvent.getTenantId());
+                }
                 try {
                     final Account account = osgiKillbillAPI.getAccountUserApi().getAccountById(killbillEvent.getAccountId(), context);
                     logger.info("Account information: " + account);
@@ -61,6 +67,11 @@ public class HyperswitchListener implements OSGIKillbillEventDispatcher.OSGIKill
                 }
                 break;
 
+            // The mandate may have been revoked: don't keep serving it from the cache
+            case PAYMENT_FAILED:
+                hyperswitchPaymentMethodCache.invalidateAccount(killbillEvent.getAccountId(), killbillEvent.getTenantId());
+                break;
+
             // Nothing
             default:
                 break;
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.payment.plugin.api.PaymentTransactionInfoPlugin;
+import org.killbill.commons.metrics.api.MetricRegistry;
+
+import feign.FeignException;
+
+/**
+ * Timers and outcome counters of the plugin, recorded in the Kill Bill metric registry:
+ * <ul>
+ * <li>{@code hyperswitch.api.<operation>.{total,gateway,db,json,other}}: latency of each plugin API call,
+ * split between the HTTP exchanges with Hyperswitch, the database, JSON (de)serialization and the rest;</li>
+ * <li>{@code hyperswitch.api.<operation>.<status>}: outcome (PaymentPluginStatus, or exception) of each call;</li>
+ * <li>{@code hyperswitch.gateway.<call>}: latency of each PaymentsApi/RefundsApi call, and
+ * {@code hyperswitch.gateway.<call>.<transaction type>.<status>} the IntentStatus/RefundStatus returned
+ * (or {@code http_<code>});</li>
+ * <li>{@code hyperswitch.dao.<operation>}: latency of each HyperswitchDao operation, and
+ * {@code hyperswitch.dao.<operation>.errors}.</li>
+ * </ul>
+ * Metrics are aggregated across tenants. When per-tenant metrics are enabled, the api and gateway metrics are recorded
+ * under {@code <operation>.<tenant>} (resp. {@code <call>.<tenant>}) instead: the number of metrics then grows with
+ * the number of tenants.
+ * <p>
+ * The split relies on a per-thread span: sections (gateway, db, json) record their exclusive time into the span
+ * of the calling thread, if any, so nested sections are not counted twice.
+ */
+public class HyperswitchMetrics {
+
+    public static final HyperswitchMetrics NOOP = new HyperswitchMetrics(null);
+
+    public enum Section {
+        GATEWAY,
+        DB,
+        JSON
+    }
+
+    public interface Call<T, E extends Exception> {
+
+        T call() throws E;
+    }
+
+    private static final String DEFAULT_TENANT = "default";
+    private static final int MAX_NESTED_SECTIONS = 8;
+
+    private static final ThreadLocal<Span> currentSpan = new ThreadLocal<Span>();
+
+    @Nullable
+    private final MetricRegistry metricRegistry;
+    private final boolean perTenant;
+
+    public HyperswitchMetrics(@Nullable final MetricRegistry metricRegistry) {
+        this(metricRegistry, false);
+    }
+
+    public HyperswitchMetrics(@Nullable final MetricRegistry metricRegistry, final boolean perTenant) {
+        this.metricRegistry = metricRegistry;
+        this.perTenant = perTenant;
+    }
+
+    /**
+     * Start the span of a plugin API call on the current thread: it must be closed by the same thread.
+     */
+    public Span startSpan(final TransactionType transactionType, @Nullable final UUID kbTenantId) {
+        return startSpan(transactionType.name(), kbTenantId);
+    }
+
+    public Span startSpan(final String operation, @Nullable final UUID kbTenantId) {
+        final Span span = new Span(this, "hyperswitch.api." + operation + toTenantSuffix(kbTenantId), currentSpan.get());
+        currentSpan.set(span);
+        return span;
+    }
+
+    /**
+     * Time a PaymentsApi/RefundsApi call. The HTTP exchange itself is accounted as gateway time (see
+     * {@link #startSection()}, called by the Feign client), the rest of the call (request encoding, response
+     * decoding) as JSON time.
+     */
+    public <T, E extends Exception> T gateway(final String call,
+                                              @Nullable final TransactionType transactionType,
+                                              @Nullable final UUID kbTenantId,
+                                              final Call<T, E> gatewayCall,
+                                              final Function<T, Object> status) throws E {
+        final String name = "hyperswitch.gateway." + call + toTenantSuffix(kbTenantId);
+        final String outcomePrefix = name + "." + (transactionType == null ? "NONE" : transactionType.name()) + ".";
+        final long start = startSection();
+        String outcome = "exception";
+        try {
+            final T result = gatewayCall.call();
+            final Object resultStatus = result == null ? null : status.apply(result);
+            outcome = resultStatus == null ? "unknown" : resultStatus.toString();
+            return result;
+        } catch (final FeignException e) {
+            outcome = "http_" + e.status();
+            throw e;
+        } finally {
+            final long elapsedNanos = endSection(Section.JSON, start);
+            if (metricRegistry != null) {
+                metricRegistry.timer(name).update(elapsedNanos, TimeUnit.NANOSECONDS);
+                metricRegistry.counter(outcomePrefix + outcome).inc(1);
+            }
+        }
+    }
+
+    /**
+     * Time a database operation.
+     */
+    public <T, E extends Exception> T db(final String operation, final Call<T, E> dbCall) throws E {
+        final long start = startSection();
+        boolean failed = true;
+        try {
+            final T result = dbCall.call();
+            failed = false;
+            return result;
+        } finally {
+            final long elapsedNanos = endSection(Section.DB, start);
+            if (metricRegistry != null) {
+                metricRegistry.timer("hyperswitch.dao." + operation).update(elapsedNanos, TimeUnit.NANOSECONDS);
+                if (failed) {
+                    metricRegistry.counter("hyperswitch.dao." + operation + ".errors").inc(1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Account JSON (de)serialization in the span of the current thread.
+     */
+    public static <T, E extends Exception> T json(final Call<T, E> jsonCall) throws E {
+        final long start = startSection();
+        try {
+            return jsonCall.call();
+        } finally {
+            endSection(Section.JSON, start);
+        }
+    }
+
+    public <T> void registerGauge(final String name, final Supplier<T> value) {
+        if (metricRegistry != null) {
+            metricRegistry.gauge("hyperswitch." + name, value::get);
+        }
+    }
+
+    /**
+     * Start a section in the span of the current thread
+     *
+     * @return the start time, to pass to {@link #endSection(Section, long)}
+     */
+    public static long startSection() {
+        final Span span = currentSpan.get();
+        if (span != null) {
+            span.push();
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * @return the elapsed time of the section, nested sections included
+     */
+    public static long endSection(final Section section, final long start) {
+        final long elapsedNanos = System.nanoTime() - start;
+        final Span span = currentSpan.get();
+        if (span != null) {
+            span.pop(section, elapsedNanos);
+        }
+        return elapsedNanos;
+    }
+
+    private String toTenantSuffix(@Nullable final UUID kbTenantId) {
+        if (!perTenant) {
+            return "";
+        }
+        return "." + (kbTenantId == null ? DEFAULT_TENANT : kbTenantId.toString());
+    }
+
+    public static final class Span implements AutoCloseable {
+
+        private final HyperswitchMetrics metrics;
+        private final String name;
+        @Nullable
+        private final Span parent;
+        private final long start = System.nanoTime();
+        private final long[] sectionNanos = new long[Section.values().length];
+        // Time spent in the sections nested in each open section
+        private final long[] nestedNanos = new long[MAX_NESTED_SECTIONS + 1];
+        private int depth;
+        private String outcome = "exception";
+
+        private Span(final HyperswitchMetrics metrics, final String name, @Nullable final Span parent) {
+            this.metrics = metrics;
+            this.name = name;
+            this.parent = parent;
+        }
+
+        /**
+         * Record the status of the transaction returned by the plugin API call.
+         */
+        public <T extends PaymentTransactionInfoPlugin> T complete(@Nullable final T transaction) {
+            outcome = transaction == null || transaction.getStatus() == null ? "unknown" : transaction.getStatus().name();
+            return transaction;
+        }
+
+        public <T> T complete(final T result, final String outcome) {
+            this.outcome = outcome;
+            return result;
+        }
+
+        @Override
+        public void close() {
+            if (currentSpan.get() == this) {
+                if (parent == null) {
+                    currentSpan.remove();
+                } else {
+                    currentSpan.set(parent);
+                }
+            }
+
+            final MetricRegistry metricRegistry = metrics.metricRegistry;
+            if (metricRegistry == null) {
+                return;
+            }
+            final long totalNanos = System.nanoTime() - start;
+            long otherNanos = totalNanos;
+            metricRegistry.timer(name + ".total").update(totalNanos, TimeUnit.NANOSECONDS);
+            for (final Section section : Section.values()) {
+                final long nanos = sectionNanos[section.ordinal()];
+                metricRegistry.timer(name + "." + section.name().toLowerCase()).update(nanos, TimeUnit.NANOSECONDS);
+                otherNanos -= nanos;
+            }
+            metricRegistry.timer(name + ".other").update(Math.max(0L, otherNanos), TimeUnit.NANOSECONDS);
+            metricRegistry.counter(name + "." + outcome).inc(1);
+        }
+
+        private void push() {
+            depth++;
+            if (depth <= MAX_NESTED_SECTIONS) {
+                nestedNanos[depth] = 0;
+            }
+        }
+
+        private void pop(final Section section, final long elapsedNanos) {
+            final long exclusiveNanos = depth <= MAX_NESTED_SECTIONS ? elapsedNanos - nestedNanos[depth] : elapsedNanos;
+            sectionNanos[section.ordinal()] += Math.max(0L, exclusiveNanos);
+            depth--;
+            if (depth >= 1 && depth <= MAX_NESTED_SECTIONS) {
+                nestedNanos[depth] += elapsedNanos;
+            }
+        }
+    }
+}
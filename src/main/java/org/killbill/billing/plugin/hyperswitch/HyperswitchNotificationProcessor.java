@@ -0,0 +1,145 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.io.Closeable;
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.killbill.billing.plugin.hyperswitch.dao.HyperswitchDao;
+import org.killbill.clock.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Drains the hyperswitch_notifications inbox. processNotification only verifies and stores the webhook,
+ * the transactions are updated here, in batches, outside of the request thread.
+ */
+public class HyperswitchNotificationProcessor implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HyperswitchNotificationProcessor.class);
+
+    private static final long PURGE_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final HyperswitchDao hyperswitchDao;
+    private final Clock clock;
+    private final int nbThreads;
+    private final int batchSize;
+    private final int retentionDays;
+    private final ScheduledExecutorService scheduler;
+    // Avoid queuing one drain per webhook under load: a single pending signal is enough
+    private final AtomicBoolean signaled = new AtomicBoolean();
+    private final AtomicLong lastPurgeMillis = new AtomicLong();
+    private final AtomicLong processedNotifications = new AtomicLong();
+
+    public HyperswitchNotificationProcessor(final HyperswitchDao hyperswitchDao,
+                                            final Clock clock,
+                                            final int nbThreads,
+                                            final int batchSize,
+                                            final int retentionDays) {
+        this.hyperswitchDao = hyperswitchDao;
+        this.clock = clock;
+        this.nbThreads = nbThreads;
+        this.batchSize = batchSize;
+        this.retentionDays = retentionDays;
+        this.scheduler = Executors.newScheduledThreadPool(nbThreads, new ThreadFactoryBuilder().setNameFormat("hyperswitch-notifications-%d")
+                                                                                               .setDaemon(true)
+                                                                                               .build());
+    }
+
+    public void start(final long pollIntervalMillis) {
+        logger.info("Starting notification processor (threads={}, pollInterval={}ms)", nbThreads, pollIntervalMillis);
+        for (int i = 0; i < nbThreads; i++) {
+            scheduler.scheduleWithFixedDelay(this::drainSafely, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Wake up a worker, after a notification has been stored.
+     */
+    public void signal() {
+        if (signaled.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(() -> {
+                    signaled.set(false);
+                    drainSafely();
+                });
+            } catch (final RuntimeException e) {
+                // Shutting down: the notification will be picked up at next startup
+                signaled.set(false);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Process batches until the inbox is empty (or locked by other workers).
+     *
+     * @return the number of notifications processed
+     */
+    public int drain() throws SQLException {
+        int processed = 0;
+        int lastBatch;
+        do {
+            lastBatch = hyperswitchDao.processNotifications(batchSize, clock.getUTCNow());
+            processed += lastBatch;
+        } while (lastBatch == batchSize && !Thread.currentThread().isInterrupted());
+
+        processedNotifications.addAndGet(processed);
+        purgeIfNeeded();
+        return processed;
+    }
+
+    /**
+     * @return the total number of notifications processed since startup
+     */
+    public long getProcessedNotifications() {
+        return processedNotifications.get();
+    }
+
+    private void drainSafely() {
+        try {
+            drain();
+        } catch (final Exception e) {
+            // Don't let the exception cancel the next runs
+            logger.warn("Notification processing failed", e);
+        }
+    }
+
+    private void purgeIfNeeded() throws SQLException {
+        final long nowMillis = System.currentTimeMillis();
+        final long lastPurge = lastPurgeMillis.get();
+        if (nowMillis - lastPurge < PURGE_INTERVAL_MILLIS || !lastPurgeMillis.compareAndSet(lastPurge, nowMillis)) {
+            return;
+        }
+        final int deleted = hyperswitchDao.deleteProcessedNotifications(clock.getUTCNow().minusDays(retentionDays));
+        if (deleted > 0) {
+            logger.info("Purged {} processed notifications", deleted);
+        }
+    }
+}
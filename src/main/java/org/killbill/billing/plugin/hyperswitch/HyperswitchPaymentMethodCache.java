@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.plugin.hyperswitch.dao.HyperswitchDao;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchPaymentMethodsRecord;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Cache of the payment methods (i.e. mandate ids) looked up before each charge.
+ * <p>
+ * Entries are invalidated locally on add/delete and on bus events, and expire after a short TTL
+ * so that changes made on other nodes of the cluster are eventually picked up.
+ */
+public class HyperswitchPaymentMethodCache {
+
+    private final HyperswitchDao hyperswitchDao;
+    private final Cache<Key, HyperswitchPaymentMethodsRecord> cache;
+
+    public HyperswitchPaymentMethodCache(final HyperswitchDao hyperswitchDao, final long maximumSize, final long ttlSeconds) {
+        this.hyperswitchDao = hyperswitchDao;
+        this.cache = CacheBuilder.newBuilder()
+                                 .maximumSize(maximumSize)
+                                 .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                                 .recordStats()
+                                 .build();
+    }
+
+    /**
+     * @return the active payment method, null if it doesn't exist or has been deleted (misses aren't cached)
+     */
+    @Nullable
+    public HyperswitchPaymentMethodsRecord getPaymentMethod(final UUID kbPaymentMethodId, final UUID kbTenantId) throws SQLException {
+        final Key key = new Key(kbTenantId, kbPaymentMethodId);
+        HyperswitchPaymentMethodsRecord record = cache.getIfPresent(key);
+        if (record == null) {
+            record = hyperswitchDao.getActivePaymentMethod(kbPaymentMethodId, kbTenantId);
+            if (record != null) {
+                cache.put(key, record);
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Batch version of {@link #getPaymentMethod(UUID, UUID)}: the misses are looked up in a single query.
+     *
+     * @return the active payment methods, by Kill Bill payment method id (deleted and unknown ones are missing)
+     */
+    public Map<UUID, HyperswitchPaymentMethodsRecord> getPaymentMethods(final Collection<UUID> kbPaymentMethodIds, final UUID kbTenantId) throws SQLException {
+        final Map<UUID, HyperswitchPaymentMethodsRecord> records = new HashMap<UUID, HyperswitchPaymentMethodsRecord>();
+        // A payment method can appear several times in a batch
+        final Set<UUID> misses = new LinkedHashSet<UUID>();
+        for (final UUID kbPaymentMethodId : kbPaymentMethodIds) {
+            final HyperswitchPaymentMethodsRecord record = cache.getIfPresent(new Key(kbTenantId, kbPaymentMethodId));
+            if (record != null) {
+                records.put(kbPaymentMethodId, record);
+            } else {
+                misses.add(kbPaymentMethodId);
+            }
+        }
+        for (final HyperswitchPaymentMethodsRecord record : hyperswitchDao.getActivePaymentMethods(misses, kbTenantId)) {
+            final UUID kbPaymentMethodId = UUID.fromString(record.getKbPaymentMethodId());
+            cache.put(new Key(kbTenantId, kbPaymentMethodId), record);
+            records.put(kbPaymentMethodId, record);
+        }
+        return records;
+    }
+
+    public void invalidate(final UUID kbPaymentMethodId, final UUID kbTenantId) {
+        cache.invalidate(new Key(kbTenantId, kbPaymentMethodId));
+    }
+
+    /**
+     * Invalidate all payment methods of an account.
+     */
+    public void invalidateAccount(final UUID kbAccountId, final UUID kbTenantId) {
+        final String accountId = kbAccountId.toString();
+        cache.asMap().entrySet().removeIf(entry -> Objects.equals(entry.getKey().kbTenantId, kbTenantId) &&
+                                                   accountId.equals(entry.getValue().getKbAccountId()));
+    }
+
+    public double getHitRate() {
+        return cache.stats().hitRate();
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    private static final class Key {
+
+        private final UUID kbTenantId;
+        private final UUID kbPaymentMethodId;
+
+        private Key(final UUID kbTenantId, final UUID kbPaymentMethodId) {
+            this.kbTenantId = kbTenantId;
+            this.kbPaymentMethodId = kbPaymentMethodId;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return Objects.equals(kbTenantId, key.kbTenantId) && kbPaymentMethodId.equals(key.kbPaymentMethodId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kbTenantId, kbPaymentMethodId);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
+import org.killbill.billing.payment.api.PaymentMethod;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.plugin.api.PaymentMethodInfoPlugin;
+import org.killbill.billing.plugin.api.PluginCallContext;
+import org.killbill.billing.plugin.api.PluginTenantContext;
+import org.killbill.billing.plugin.api.payment.PluginPaymentMethodInfoPlugin;
+import org.killbill.billing.plugin.hyperswitch.dao.HyperswitchDao;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchJobCheckpointsRecord;
+import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.entity.Pagination;
+import org.killbill.clock.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Offline reconciliation of the payment methods of all the accounts of a tenant with Kill Bill (see
+ * {@link HyperswitchPaymentPluginApi#resetPaymentMethods}). Accounts are read page by page, each page is reset on a
+ * bounded pool, and the offset of the next page is checkpointed in hyperswitch_job_checkpoints once a page is done:
+ * an interrupted run (plugin restart, node failure) resumes from the last complete page.
+ */
+public class HyperswitchPaymentMethodResetJob implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HyperswitchPaymentMethodResetJob.class);
+
+    static final String JOB_NAME = "resetPaymentMethods";
+
+    private final OSGIKillbillAPI killbillAPI;
+    private final HyperswitchPaymentPluginApi paymentPluginApi;
+    private final HyperswitchDao hyperswitchDao;
+    private final Clock clock;
+    private final int pageSize;
+    private final ExecutorService jobExecutor;
+    private final ExecutorService accountExecutor;
+    private final ConcurrentMap<UUID, Future<?>> runningJobs = new ConcurrentHashMap<UUID, Future<?>>();
+
+    private final AtomicLong resetAccounts = new AtomicLong();
+    private final AtomicLong failedAccounts = new AtomicLong();
+
+    public HyperswitchPaymentMethodResetJob(final OSGIKillbillAPI killbillAPI,
+                                            final HyperswitchPaymentPluginApi paymentPluginApi,
+                                            final HyperswitchDao hyperswitchDao,
+                                            final Clock clock,
+                                            final int threads,
+                                            final int pageSize) {
+        this.killbillAPI = killbillAPI;
+        this.paymentPluginApi = paymentPluginApi;
+        this.hyperswitchDao = hyperswitchDao;
+        this.clock = clock;
+        this.pageSize = pageSize;
+        this.jobExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("hyperswitch-pm-reset-job-%d")
+                                                                                       .setDaemon(true)
+                                                                                       .build());
+        this.accountExecutor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("hyperswitch-pm-reset-%d")
+                                                                                               .setDaemon(true)
+                                                                                               .build());
+    }
+
+    /**
+     * Schedule a run for the tenant (runs of different tenants are queued), resuming from its checkpoint if any.
+     *
+     * @return false if a run is already scheduled or in progress for the tenant
+     */
+    public boolean start(final UUID kbTenantId) {
+        final FutureTask<Void> job = new FutureTask<Void>(() -> {
+            try {
+                run(kbTenantId);
+            } catch (final Exception e) {
+                logger.warn("Payment method reset of tenant {} failed, it will resume from its last checkpoint", kbTenantId, e);
+            } finally {
+                runningJobs.remove(kbTenantId);
+            }
+        }, null);
+        if (runningJobs.putIfAbsent(kbTenantId, job) != null) {
+            return false;
+        }
+        jobExecutor.execute(job);
+        return true;
+    }
+
+    public boolean isRunning(final UUID kbTenantId) {
+        return runningJobs.containsKey(kbTenantId);
+    }
+
+    /**
+     * @return the checkpoint of the run in progress (or interrupted) for the tenant, null if there is none
+     */
+    public HyperswitchJobCheckpointsRecord getCheckpoint(final UUID kbTenantId) throws SQLException {
+        return hyperswitchDao.getJobCheckpoint(JOB_NAME, kbTenantId);
+    }
+
+    public long getResetAccounts() {
+        return resetAccounts.get();
+    }
+
+    public long getFailedAccounts() {
+        return failedAccounts.get();
+    }
+
+    @Override
+    public void close() {
+        jobExecutor.shutdownNow();
+        accountExecutor.shutdownNow();
+    }
+
+    /**
+     * Reset the payment methods of all the accounts of the tenant, from the checkpoint if any.
+     *
+     * @return the number of accounts processed by this run
+     */
+    long run(final UUID kbTenantId) throws SQLException, InterruptedException {
+        final TenantContext tenantContext = new PluginTenantContext(null, kbTenantId);
+        final HyperswitchJobCheckpointsRecord checkpoint = hyperswitchDao.getJobCheckpoint(JOB_NAME, kbTenantId);
+        long offset = checkpoint == null ? 0L : checkpoint.getNextOffset();
+        long nbProcessed = checkpoint == null ? 0L : checkpoint.getNbProcessed();
+        logger.info("Resetting payment methods of tenant {} from offset {}", kbTenantId, offset);
+
+        long processedByRun = 0;
+        while (true) {
+            final List<Account> accounts = new ArrayList<Account>(pageSize);
+            final Long nextOffset;
+            final Pagination<Account> page = killbillAPI.getAccountUserApi().getAccounts(offset, (long) pageSize, tenantContext);
+            try {
+                page.forEach(accounts::add);
+                nextOffset = page.getNextOffset();
+            } finally {
+                closeQuietly(page);
+            }
+
+            resetPage(accounts, kbTenantId);
+            nbProcessed += accounts.size();
+            processedByRun += accounts.size();
+            if (nextOffset == null || accounts.size() < pageSize) {
+                break;
+            }
+            offset = nextOffset;
+            hyperswitchDao.saveJobCheckpoint(JOB_NAME, offset, nbProcessed, clock.getUTCNow(), kbTenantId);
+        }
+
+        hyperswitchDao.deleteJobCheckpoint(JOB_NAME, kbTenantId);
+        logger.info("Reset payment methods of {} accounts of tenant {}", nbProcessed, kbTenantId);
+        return processedByRun;
+    }
+
+    private void resetPage(final List<Account> accounts, final UUID kbTenantId) throws InterruptedException {
+        final List<Future<?>> futures = new ArrayList<Future<?>>(accounts.size());
+        for (final Account account : accounts) {
+            futures.add(accountExecutor.submit(() -> {
+                reset(account, kbTenantId);
+                return null;
+            }));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+                resetAccounts.incrementAndGet();
+            } catch (final ExecutionException e) {
+                // Don't hold the whole tenant back: the account is picked up by the next run
+                failedAccounts.incrementAndGet();
+                logger.warn("Unable to reset payment methods of account {}", accounts.get(i).getId(), e.getCause());
+            }
+        }
+    }
+
+    private void reset(final Account account, final UUID kbTenantId) throws Exception {
+        final CallContext context = new PluginCallContext(HyperswitchActivator.PLUGIN_NAME, clock.getUTCNow(), account.getId(), kbTenantId);
+        final List<PaymentMethod> paymentMethods = killbillAPI.getPaymentApi().getAccountPaymentMethods(account.getId(),
+                                                                                                         false,
+                                                                                                         false,
+                                                                                                         ImmutableList.<PluginProperty>of(),
+                                                                                                         context);
+        final List<PaymentMethodInfoPlugin> hyperswitchPaymentMethods = new ArrayList<PaymentMethodInfoPlugin>(paymentMethods.size());
+        for (final PaymentMethod paymentMethod : paymentMethods) {
+            if (HyperswitchActivator.PLUGIN_NAME.equals(paymentMethod.getPluginName())) {
+                // Kill Bill doesn't know the mandate ids (the external key isn't one): keep the ones on record
+                hyperswitchPaymentMethods.add(new PluginPaymentMethodInfoPlugin(account.getId(),
+                                                                                paymentMethod.getId(),
+                                                                                paymentMethod.getId().equals(account.getPaymentMethodId()),
+                                                                                null));
+            }
+        }
+        paymentPluginApi.resetPaymentMethods(account.getId(), hyperswitchPaymentMethods, ImmutableList.<PluginProperty>of(), context);
+    }
+
+    private static void closeQuietly(final Pagination<Account> page) {
+        try {
+            page.close();
+        } catch (final IOException e) {
+            logger.warn("Unable to close accounts page", e);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.jooby.MediaType;
+import org.jooby.Result;
+import org.jooby.Results;
+import org.jooby.Status;
+import org.jooby.mvc.GET;
+import org.jooby.mvc.Local;
+import org.jooby.mvc.POST;
+import org.jooby.mvc.Path;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchJobCheckpointsRecord;
+import org.killbill.billing.tenant.api.Tenant;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.Inject;
+
+/**
+ * POST /plugins/hyperswitch-plugin/paymentMethods/reset starts the reconciliation of the payment methods of all the
+ * accounts of the tenant (see {@link HyperswitchPaymentMethodResetJob}), GET returns its progress.
+ */
+@Singleton
+@Path("/paymentMethods/reset")
+public class HyperswitchPaymentMethodResetServlet {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final HyperswitchPaymentMethodResetJob resetJob;
+
+    @Inject
+    public HyperswitchPaymentMethodResetServlet(final HyperswitchPaymentMethodResetJob resetJob) {
+        this.resetJob = resetJob;
+    }
+
+    @POST
+    public Result start(@Local @Named("killbill_tenant") final Optional<Tenant> tenant) {
+        if (!tenant.isPresent()) {
+            return Results.with("Missing tenant", Status.UNAUTHORIZED);
+        }
+        if (!resetJob.start(tenant.get().getId())) {
+            return Results.with("A reset is already in progress", Status.CONFLICT);
+        }
+        return Results.with(Status.ACCEPTED);
+    }
+
+    @GET
+    public Result progress(@Local @Named("killbill_tenant") final Optional<Tenant> tenant) throws IOException, SQLException {
+        if (!tenant.isPresent()) {
+            return Results.with("Missing tenant", Status.UNAUTHORIZED);
+        }
+        final HyperswitchJobCheckpointsRecord checkpoint = resetJob.getCheckpoint(tenant.get().getId());
+        final Map<String, Object> progress = new LinkedHashMap<String, Object>();
+        progress.put("running", resetJob.isRunning(tenant.get().getId()));
+        // No checkpoint: no run was interrupted, and the current one (if any) is on its first page
+        progress.put("nextOffset", checkpoint == null ? null : checkpoint.getNextOffset());
+        progress.put("nbProcessed", checkpoint == null ? null : checkpoint.getNbProcessed());
+        progress.put("updatedDate", checkpoint == null ? null : checkpoint.getUpdatedDate().toString());
+        return Results.with(objectMapper.writeValueAsString(progress), Status.OK).type(MediaType.json);
+    }
+}
@@ -19,12 +19,22 @@
 
 package org.killbill.billing.plugin.hyperswitch;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
 
 import org.joda.time.DateTime;
+import org.jooq.types.ULong;
 import org.killbill.billing.catalog.api.Currency;
 import org.killbill.billing.osgi.libs.killbill.OSGIConfigPropertiesService;
 import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
@@ -39,10 +49,17 @@ import org.killbill.billing.payment.plugin.api.PaymentPluginApiException;
 import org.killbill.billing.payment.plugin.api.PaymentPluginStatus;
 import org.killbill.billing.payment.plugin.api.PaymentTransactionInfoPlugin;
 import org.killbill.billing.plugin.api.PluginProperties;
+import org.killbill.billing.plugin.api.payment.PluginGatewayNotification;
+import org.killbill.billing.plugin.api.payment.PluginHostedPaymentPageFormDescriptor;
+import org.killbill.billing.plugin.api.payment.PluginPaymentMethodInfoPlugin;
+import org.killbill.billing.plugin.api.payment.PluginPaymentMethodPlugin;
 import org.killbill.billing.plugin.api.payment.PluginPaymentPluginApi;
+import org.killbill.billing.plugin.hyperswitch.client.HyperswitchClientRegistry;
 import org.killbill.billing.plugin.hyperswitch.dao.HyperswitchDao;
 import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchPaymentMethods;
 import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchResponses;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchHppRequestsRecord;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchPaymentHeadsRecord;
 import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchPaymentMethodsRecord;
 import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchResponsesRecord;
 import org.killbill.billing.plugin.util.KillBillMoney;
@@ -51,9 +68,11 @@ import org.killbill.billing.util.callcontext.TenantContext;
 import org.killbill.billing.util.entity.Pagination;
 import org.killbill.clock.Clock;
 import java.sql.SQLException;
+import feign.FeignException;
 import feign.FeignException.BadRequest;
 
-import com.hyperswitch.client.HsApiClient;
+import com.google.common.collect.ImmutableList;
+import com.hyperswitch.client.api.MandatesApi;
 import com.hyperswitch.client.api.PaymentsApi;
 import com.hyperswitch.client.api.RefundsApi;
 import com.hyperswitch.client.model.PaymentsCreateRequest;
@@ -62,9 +81,12 @@ import com.hyperswitch.client.model.RefundRequest;
 import com.hyperswitch.client.model.RefundResponse;
 import com.hyperswitch.client.model.RefundStatus;
 import com.hyperswitch.client.model.CaptureMethod;
+import com.hyperswitch.client.model.FutureUsage;
 import com.hyperswitch.client.model.IntentStatus;
 import com.hyperswitch.client.model.PaymentsCancelRequest;
 import com.hyperswitch.client.model.PaymentsCaptureRequest;
+import com.hyperswitch.client.model.MandateResponse;
+import com.hyperswitch.client.model.MandateStatus;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -76,42 +98,102 @@ public class HyperswitchPaymentPluginApi extends
         PluginPaymentPluginApi<HyperswitchResponsesRecord, HyperswitchResponses, HyperswitchPaymentMethodsRecord, HyperswitchPaymentMethods> {
     private static final Logger logger = LoggerFactory.getLogger(HyperswitchPaymentPluginApi.class);
     private static String HS_API_KEY_PROPERTY = "HS_API_KEY_PROPERTY";
+    // Statuses of a payment once a void went through
+    private static final Set<IntentStatus> CANCELLED_STATUSES = EnumSet.of(IntentStatus.CANCELLED);
+    private static final int DEFAULT_SEARCH_LIMIT = 100;
+    private static final int MAX_SEARCH_LIMIT = 1000;
+    // buildFormDescriptor properties (custom fields or plugin properties)
+    static final String HPP_AMOUNT_PROPERTY = "amount";
+    static final String HPP_CURRENCY_PROPERTY = "currency";
+    static final String HPP_RETURN_URL_PROPERTY = "returnUrl";
     private final HyperswitchConfigurationHandler hyperswitchConfigurationHandler;
     private final HyperswitchDao hyperswitchDao;
+    private final HyperswitchClientRegistry hyperswitchClientRegistry;
+    private final HyperswitchPaymentRefresher hyperswitchPaymentRefresher;
+    private final HyperswitchNotificationProcessor hyperswitchNotificationProcessor;
+    private final HyperswitchPaymentMethodCache hyperswitchPaymentMethodCache;
+    private final HyperswitchMetrics hyperswitchMetrics;
+    private final HyperswitchCircuitBreaker hyperswitchCircuitBreaker;
+    private final HyperswitchRetryPolicy hyperswitchRetryPolicy;
+    private final HyperswitchExecutor hyperswitchExecutor;
+    private final HyperswitchHppSessionStore hyperswitchHppSessionStore;
 
     public HyperswitchPaymentPluginApi(
             final HyperswitchConfigurationHandler hyperswitchConfigPropertiesConfigurationHandler,
             final OSGIKillbillAPI killbillAPI,
             final OSGIConfigPropertiesService configProperties,
             final Clock clock,
-            final HyperswitchDao dao) {
+            final HyperswitchDao dao,
+            final HyperswitchClientRegistry hyperswitchClientRegistry,
+            final HyperswitchPaymentRefresher hyperswitchPaymentRefresher,
+            final HyperswitchNotificationProcessor hyperswitchNotificationProcessor,
+            final HyperswitchPaymentMethodCache hyperswitchPaymentMethodCache,
+            final HyperswitchMetrics hyperswitchMetrics,
+            final HyperswitchCircuitBreaker hyperswitchCircuitBreaker,
+            final HyperswitchRetryPolicy hyperswitchRetryPolicy,
+            final HyperswitchExecutor hyperswitchExecutor,
+            final HyperswitchHppSessionStore hyperswitchHppSessionStore) {
         super(killbillAPI, configProperties, clock, dao);
         this.hyperswitchConfigurationHandler = hyperswitchConfigPropertiesConfigurationHandler;
         this.hyperswitchDao = dao;
+        this.hyperswitchClientRegistry = hyperswitchClientRegistry;
+        this.hyperswitchPaymentRefresher = hyperswitchPaymentRefresher;
+        this.hyperswitchNotificationProcessor = hyperswitchNotificationProcessor;
+        this.hyperswitchPaymentMethodCache = hyperswitchPaymentMethodCache;
+        this.hyperswitchMetrics = hyperswitchMetrics;
+        this.hyperswitchCircuitBreaker = hyperswitchCircuitBreaker;
+        this.hyperswitchRetryPolicy = hyperswitchRetryPolicy;
+        this.hyperswitchExecutor = hyperswitchExecutor;
+        this.hyperswitchHppSessionStore = hyperswitchHppSessionStore;
     }
 
     @Override
     public PaymentTransactionInfoPlugin authorizePayment(final UUID kbAccountId, final UUID kbPaymentId,
             final UUID kbTransactionId, final UUID kbPaymentMethodId, final BigDecimal amount, final Currency currency,
             final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
+        return runTransaction(TransactionType.AUTHORIZE, context, () -> doAuthorizePayment(kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, amount, currency, properties, context));
+    }
+
+    /**
+     * Run a payment transaction, on the executor of the plugin in async mode
+     */
+    private PaymentTransactionInfoPlugin runTransaction(final TransactionType transactionType,
+                                                        final CallContext context,
+                                                        final HyperswitchMetrics.Call<PaymentTransactionInfoPlugin, PaymentPluginApiException> transaction) throws PaymentPluginApiException {
+        try {
+            return hyperswitchExecutor.execute(() -> {
+                try (final HyperswitchMetrics.Span span = hyperswitchMetrics.startSpan(transactionType, context.getTenantId())) {
+                    return span.complete(transaction.call());
+                }
+            });
+        } catch (final TimeoutException e) {
+            // The transaction completes in the background and records its outcome, for the Janitor to pick it up
+            logger.warn("[{}] Timed out while waiting for Hyperswitch", transactionType);
+            return HyperswitchPaymentTransactionInfoPlugin.undefinedPaymentTransactionInfoPlugin(
+                    transactionType, "Timed out while waiting for Hyperswitch");
+        }
+    }
+
+    private PaymentTransactionInfoPlugin doAuthorizePayment(final UUID kbAccountId, final UUID kbPaymentId,
+            final UUID kbTransactionId, final UUID kbPaymentMethodId, final BigDecimal amount, final Currency currency,
+            final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
         HyperswitchResponsesRecord hyperswitchRecord = null;
-        PaymentsCreateRequest paymentsCreateRequest = new PaymentsCreateRequest();
-        paymentsCreateRequest.setAmount(KillBillMoney.toMinorUnits(currency.toString(), amount));
-        paymentsCreateRequest.setCurrency(convertCurrency(currency));
-        paymentsCreateRequest.confirm(true);
-        paymentsCreateRequest.customerId(kbAccountId.toString());
-        paymentsCreateRequest.offSession(true);
-        paymentsCreateRequest.profileId(hyperswitchConfigurationHandler.getConfigurable(context.getTenantId()).getProfileId());
-        paymentsCreateRequest.setCaptureMethod(CaptureMethod.MANUAL);
         PaymentPluginStatus paymentPluginStatus = null;
         PaymentsResponse response = null;
         try {
-            HyperswitchPaymentMethodsRecord record = this.hyperswitchDao.getPaymentMethod(kbPaymentMethodId.toString());
+            HyperswitchPaymentMethodsRecord record = this.hyperswitchPaymentMethodCache.getPaymentMethod(kbPaymentMethodId, context.getTenantId());
+            if (record == null) {
+                throw new PaymentPluginApiException("Couldn't find payment method id for account", "Unknown payment method " + kbPaymentMethodId);
+            }
             String mandate_id = record.getHyperswitchId();
-            paymentsCreateRequest.setMandateId(mandate_id);
-            PaymentsApi ClientApi = buildHyperswitchClient(context);
+            final HyperswitchTenantConfig config = hyperswitchConfigurationHandler.getTenantConfig(context.getTenantId());
+            PaymentsApi ClientApi = buildHyperswitchClient(config, context);
+            if (ClientApi == null) {
+                return HyperswitchPaymentTransactionInfoPlugin.cancelPaymentTransactionInfoPlugin(
+                        TransactionType.AUTHORIZE, "Per-tenant properties not configured");
+            }
             try {
-                response = ClientApi.createAPayment(paymentsCreateRequest);
+                response = createPayment(ClientApi, config.getProfileId(), kbAccountId, kbTransactionId, mandate_id, amount, currency, TransactionType.AUTHORIZE, context);
                 try {
                     paymentPluginStatus = convertPaymentStatus(response.getStatus());
                     final DateTime utcNow = clock.getUTCNow();
@@ -134,6 +216,11 @@ public class HyperswitchPaymentPluginApi extends
                 String responseBody = e.contentUTF8();
                 String message = responseBody.toString();
                 throw new PaymentPluginApiException(message, e);
+            } catch (final HyperswitchCircuitBreaker.CallNotPermittedException e) {
+                // Nothing was sent to Hyperswitch: Kill Bill can safely retry the transaction
+                logger.warn("[authorizePayment] {}", e.getMessage());
+                return HyperswitchPaymentTransactionInfoPlugin.cancelPaymentTransactionInfoPlugin(
+                        TransactionType.AUTHORIZE, e.getMessage());
             }
         } catch (SQLException e) {
             throw new PaymentPluginApiException("Couldn't find payment method id for account", e);
@@ -159,39 +246,59 @@ public class HyperswitchPaymentPluginApi extends
     public PaymentTransactionInfoPlugin capturePayment(final UUID kbAccountId, final UUID kbPaymentId,
             final UUID kbTransactionId, final UUID kbPaymentMethodId, final BigDecimal amount, final Currency currency,
             final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
-        HyperswitchResponsesRecord hyperswitchRecord = null;
+        return runTransaction(TransactionType.CAPTURE, context, () -> doCapturePayment(kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, amount, currency, properties, context));
+    }
+
+    private PaymentTransactionInfoPlugin doCapturePayment(final UUID kbAccountId, final UUID kbPaymentId,
+            final UUID kbTransactionId, final UUID kbPaymentMethodId, final BigDecimal amount, final Currency currency,
+            final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
+        final HyperswitchPaymentHeadsRecord paymentHead;
         try {
-            hyperswitchRecord = this.hyperswitchDao.getSuccessfulResponse(kbPaymentId, context.getTenantId());
-            if (this.refundValidations(hyperswitchRecord, amount) != null) {
-                return this.refundValidations(hyperswitchRecord, amount);
-            }
+            paymentHead = this.hyperswitchDao.getPaymentHead(kbPaymentId, context.getTenantId());
         } catch (SQLException e) {
             logger.error("[capturePayment]  but we encountered a database error", e);
             return HyperswitchPaymentTransactionInfoPlugin.cancelPaymentTransactionInfoPlugin(
                     TransactionType.CAPTURE, "[capturePayment] but we encountered a database error");
         }
+        final PaymentTransactionInfoPlugin rejection = validateAmount(TransactionType.CAPTURE, paymentHead, amount);
+        if (rejection != null) {
+            return rejection;
+        }
+        HyperswitchResponsesRecord hyperswitchRecord = null;
         PaymentPluginStatus paymentPluginStatus = null;
-        String payment_id = hyperswitchRecord.getPaymentAttemptId();
+        String payment_id = paymentHead.getPaymentAttemptId();
         PaymentsCaptureRequest paymentsRequest = new PaymentsCaptureRequest();
-        Long amountToCapture = KillBillMoney.toMinorUnits(hyperswitchRecord.getCurrency(), amount);
+        Long amountToCapture = KillBillMoney.toMinorUnits(paymentHead.getCurrency(), amount);
         paymentsRequest.setAmountToCapture(amountToCapture);
         PaymentsApi ClientApi = buildHyperswitchClient(context);
+        if (ClientApi == null) {
+            return HyperswitchPaymentTransactionInfoPlugin.cancelPaymentTransactionInfoPlugin(
+                    TransactionType.CAPTURE, "Per-tenant properties not configured");
+        }
         PaymentsResponse response = null;
         try {
-            response = ClientApi.captureAPayment(payment_id, paymentsRequest);
+            // Captures have no idempotency key: see HyperswitchRetryPolicy#callNotIdempotent
+            response = callHyperswitch("captureAPayment", TransactionType.CAPTURE, context,
+                                       () -> ClientApi.captureAPayment(payment_id, paymentsRequest),
+                                       PaymentsResponse::getStatus);
             paymentPluginStatus = convertPaymentStatus(response.getStatus());
             try {
                 hyperswitchRecord = this.hyperswitchDao.addResponse(
                         kbAccountId,
-                        kbPaymentMethodId, kbPaymentMethodId, TransactionType.CAPTURE, amount, currency, response,
-                        DateTime.now(), context.getTenantId());
+                        kbPaymentId, kbTransactionId, TransactionType.CAPTURE, amount, currency, response,
+                        clock.getUTCNow(), context.getTenantId());
             } catch (final SQLException e) {
                 throw new PaymentPluginApiException("Unable to refresh payment", e);
             }
-        } catch (BadRequest e) {
-            String responseBody = e.contentUTF8();
-            String message = responseBody.toString();
-            throw new PaymentPluginApiException(message, e);
+        } catch (final FeignException e) {
+            if (!HyperswitchRetryPolicy.isClientError(e)) {
+                return unknownOutcome(TransactionType.CAPTURE, e);
+            }
+            throw new PaymentPluginApiException(e.contentUTF8(), e);
+        } catch (final HyperswitchCircuitBreaker.CallNotPermittedException e) {
+            logger.warn("[capturePayment] {}", e.getMessage());
+            return HyperswitchPaymentTransactionInfoPlugin.cancelPaymentTransactionInfoPlugin(
+                    TransactionType.CAPTURE, e.getMessage());
         }
 
         return new HyperswitchPaymentTransactionInfoPlugin(
@@ -215,25 +322,30 @@ public class HyperswitchPaymentPluginApi extends
     public PaymentTransactionInfoPlugin purchasePayment(final UUID kbAccountId, final UUID kbPaymentId,
             final UUID kbTransactionId, final UUID kbPaymentMethodId, final BigDecimal amount, final Currency currency,
             final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
+        return runTransaction(TransactionType.PURCHASE, context, () -> doPurchasePayment(kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, amount, currency, properties, context));
+    }
+
+    private PaymentTransactionInfoPlugin doPurchasePayment(final UUID kbAccountId, final UUID kbPaymentId,
+            final UUID kbTransactionId, final UUID kbPaymentMethodId, final BigDecimal amount, final Currency currency,
+            final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
         logger.info("[purchasePayment] calling purchase payment");
         HyperswitchResponsesRecord hyperswitchRecord = null;
-        String profileId = hyperswitchConfigurationHandler.getConfigurable(context.getTenantId()).getProfileId();
-        PaymentsCreateRequest paymentsCreateRequest = new PaymentsCreateRequest();
-        paymentsCreateRequest.setAmount(KillBillMoney.toMinorUnits(currency.toString(), amount));
-        paymentsCreateRequest.setCurrency(convertCurrency(currency));
-        paymentsCreateRequest.confirm(true);
-        paymentsCreateRequest.profileId(hyperswitchConfigurationHandler.getConfigurable(context.getTenantId()).getProfileId());
-        paymentsCreateRequest.customerId(kbAccountId.toString());
-        paymentsCreateRequest.offSession(true);
         PaymentPluginStatus paymentPluginStatus = null;
         PaymentsResponse response = null;
         try {
-            HyperswitchPaymentMethodsRecord record = this.hyperswitchDao.getPaymentMethod(kbPaymentMethodId.toString());
+            HyperswitchPaymentMethodsRecord record = this.hyperswitchPaymentMethodCache.getPaymentMethod(kbPaymentMethodId, context.getTenantId());
+            if (record == null) {
+                throw new PaymentPluginApiException("Couldn't find payment method id for account", "Unknown payment method " + kbPaymentMethodId);
+            }
             String mandate_id = record.getHyperswitchId();
-            paymentsCreateRequest.setMandateId(mandate_id);
-            PaymentsApi ClientApi = buildHyperswitchClient(context);
+            final HyperswitchTenantConfig config = hyperswitchConfigurationHandler.getTenantConfig(context.getTenantId());
+            PaymentsApi ClientApi = buildHyperswitchClient(config, context);
+            if (ClientApi == null) {
+                return HyperswitchPaymentTransactionInfoPlugin.cancelPaymentTransactionInfoPlugin(
+                        TransactionType.PURCHASE, "Per-tenant properties not configured");
+            }
             try {
-                response = ClientApi.createAPayment(paymentsCreateRequest);
+                response = createPayment(ClientApi, config.getProfileId(), kbAccountId, kbTransactionId, mandate_id, amount, currency, TransactionType.PURCHASE, context);
                 try {
                     paymentPluginStatus = convertPaymentStatus(response.getStatus());
                     final DateTime utcNow = clock.getUTCNow();
@@ -256,6 +368,10 @@ public class HyperswitchPaymentPluginApi extends
                 String responseBody = e.contentUTF8();
                 String message = responseBody.toString();
                 throw new PaymentPluginApiException(message, e);
+            } catch (final HyperswitchCircuitBreaker.CallNotPermittedException e) {
+                logger.warn("[purchasePayment] {}", e.getMessage());
+                return HyperswitchPaymentTransactionInfoPlugin.cancelPaymentTransactionInfoPlugin(
+                        TransactionType.PURCHASE, e.getMessage());
             }
         } catch (SQLException e) {
             throw new PaymentPluginApiException("Couldn't find payment method id for account", e);
@@ -281,34 +397,59 @@ public class HyperswitchPaymentPluginApi extends
     public PaymentTransactionInfoPlugin voidPayment(final UUID kbAccountId, final UUID kbPaymentId,
             final UUID kbTransactionId, final UUID kbPaymentMethodId, final Iterable<PluginProperty> properties,
             final CallContext context) throws PaymentPluginApiException {
-                HyperswitchResponsesRecord hyperswitchRecord = null;
+        return runTransaction(TransactionType.VOID, context, () -> doVoidPayment(kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, properties, context));
+    }
+
+    private PaymentTransactionInfoPlugin doVoidPayment(final UUID kbAccountId, final UUID kbPaymentId,
+            final UUID kbTransactionId, final UUID kbPaymentMethodId, final Iterable<PluginProperty> properties,
+            final CallContext context) throws PaymentPluginApiException {
+                final HyperswitchPaymentHeadsRecord paymentHead;
                 try {
-                    hyperswitchRecord = this.hyperswitchDao.getSuccessfulResponse(kbPaymentId, context.getTenantId());
+                    paymentHead = this.hyperswitchDao.getPaymentHead(kbPaymentId, context.getTenantId());
                 } catch (SQLException e) {
                     logger.error("[voidPayment]  but we encountered a database error", e);
                     return HyperswitchPaymentTransactionInfoPlugin.cancelPaymentTransactionInfoPlugin(
                             TransactionType.VOID, "[voidPayment] but we encountered a database error");
                 }
+                if (paymentHead == null) {
+                    logger.error("[voidPayment] Payment {} doesn't exist", kbPaymentId);
+                    return HyperswitchPaymentTransactionInfoPlugin.cancelPaymentTransactionInfoPlugin(
+                            TransactionType.VOID, "Payment do not exists");
+                }
+                final BigDecimal paymentAmount = paymentHead.getAmount() == null ? null : KillBillMoney.fromMinorUnits(paymentHead.getCurrency(), paymentHead.getAmount());
+                HyperswitchResponsesRecord hyperswitchRecord = null;
                 PaymentPluginStatus paymentPluginStatus = null;
-                String payment_id = hyperswitchRecord.getPaymentAttemptId();
+                String payment_id = paymentHead.getPaymentAttemptId();
                 PaymentsCancelRequest paymentsRequest = new PaymentsCancelRequest();
                 PaymentsApi ClientApi = buildHyperswitchClient(context);
+                if (ClientApi == null) {
+                    return HyperswitchPaymentTransactionInfoPlugin.cancelPaymentTransactionInfoPlugin(
+                            TransactionType.VOID, "Per-tenant properties not configured");
+                }
                 PaymentsResponse response = null;
                 try {
-                    response = ClientApi.cancelPayment(payment_id, paymentsRequest);
+                    response = callHyperswitch("cancelPayment", TransactionType.VOID, context,
+                                               () -> ClientApi.cancelPayment(payment_id, paymentsRequest),
+                                               "retrieveAPaymentwithForcesync", () -> withStatus(ClientApi.retrieveAPaymentwithForcesync(payment_id), CANCELLED_STATUSES),
+                                               PaymentsResponse::getStatus);
                     paymentPluginStatus = convertPaymentStatus(response.getStatus());
                     try {
                         hyperswitchRecord = this.hyperswitchDao.addResponse(
                                 kbAccountId,
-                                kbPaymentMethodId, kbPaymentMethodId, TransactionType.VOID, hyperswitchRecord.getAmount(), null, response,
-                                DateTime.now(), context.getTenantId());
+                                kbPaymentId, kbTransactionId, TransactionType.VOID, paymentAmount, null, response,
+                                clock.getUTCNow(), context.getTenantId());
                     } catch (final SQLException e) {
                         throw new PaymentPluginApiException("Unable to refresh payment", e);
                     }
-                } catch (BadRequest e) {
-                    String responseBody = e.contentUTF8();
-                    String message = responseBody.toString();
-                    throw new PaymentPluginApiException(message, e);
+                } catch (final FeignException e) {
+                    if (!HyperswitchRetryPolicy.isClientError(e)) {
+                        return unknownOutcome(TransactionType.VOID, e);
+                    }
+                    throw new PaymentPluginApiException(e.contentUTF8(), e);
+                } catch (final HyperswitchCircuitBreaker.CallNotPermittedException e) {
+                    logger.warn("[voidPayment] {}", e.getMessage());
+                    return HyperswitchPaymentTransactionInfoPlugin.cancelPaymentTransactionInfoPlugin(
+                            TransactionType.VOID, e.getMessage());
                 }
         
                 return new HyperswitchPaymentTransactionInfoPlugin(
@@ -316,7 +457,7 @@ public class HyperswitchPaymentPluginApi extends
                         kbPaymentId,
                         kbTransactionId,
                         TransactionType.VOID,
-                        hyperswitchRecord.getAmount(),
+                        paymentAmount,
                         null,
                         paymentPluginStatus,
                         response.getErrorMessage(),
@@ -339,40 +480,80 @@ public class HyperswitchPaymentPluginApi extends
     public PaymentTransactionInfoPlugin refundPayment(final UUID kbAccountId, final UUID kbPaymentId,
             final UUID kbTransactionId, final UUID kbPaymentMethodId, final BigDecimal amount, final Currency currency,
             final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
+        return runTransaction(TransactionType.REFUND, context, () -> doRefundPayment(kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, amount, currency, properties, context));
+    }
+
+    private PaymentTransactionInfoPlugin doRefundPayment(final UUID kbAccountId, final UUID kbPaymentId,
+            final UUID kbTransactionId, final UUID kbPaymentMethodId, final BigDecimal amount, final Currency currency,
+            final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
         logger.info("Refund Payment for account {}", kbAccountId);
-        HyperswitchResponsesRecord hyperswitchRecord = null;
+        final HyperswitchPaymentHeadsRecord paymentHead;
         try {
-            hyperswitchRecord = this.hyperswitchDao.getSuccessfulResponse(kbPaymentId, context.getTenantId());
-            if (this.refundValidations(hyperswitchRecord, amount) != null) {
-                return this.refundValidations(hyperswitchRecord, amount);
-            }
+            paymentHead = this.hyperswitchDao.getPaymentHead(kbPaymentId, context.getTenantId());
         } catch (SQLException e) {
             logger.error("[refundPayment]  but we encountered a database error", e);
             return HyperswitchPaymentTransactionInfoPlugin.cancelPaymentTransactionInfoPlugin(
                     TransactionType.REFUND, "[refundPayment] but we encountered a database error");
         }
-        PaymentPluginStatus paymentPluginStatus = null;
+        final PaymentTransactionInfoPlugin rejection = validateAmount(TransactionType.REFUND, paymentHead, amount);
+        if (rejection != null) {
+            return rejection;
+        }
+        Long refundAmount = KillBillMoney.toMinorUnits(paymentHead.getCurrency(), amount);
         RefundRequest refundRequest = new RefundRequest();
-        refundRequest.setPaymentId(hyperswitchRecord.getPaymentAttemptId());
-        Long refundAmount = KillBillMoney.toMinorUnits(hyperswitchRecord.getCurrency(), amount);
+        refundRequest.setPaymentId(paymentHead.getPaymentAttemptId());
         refundRequest.setAmount(refundAmount);
+        final String refundId = HyperswitchRetryPolicy.toRefundId(kbTransactionId);
+        refundRequest.setRefundId(refundId);
         RefundsApi ClientApi = buildHyperswitchRefundsClient(context);
+        if (ClientApi == null) {
+            return HyperswitchPaymentTransactionInfoPlugin.cancelPaymentTransactionInfoPlugin(
+                    TransactionType.REFUND, "Per-tenant properties not configured");
+        }
+        try {
+            // The check above is on a snapshot: this one holds against concurrent refunds of the payment
+            if (!this.hyperswitchDao.reserveRefund(kbPaymentId, refundAmount, context.getTenantId())) {
+                logger.error("[refundPayment] The refund amount is more than the refundable amount");
+                return HyperswitchPaymentTransactionInfoPlugin.cancelPaymentTransactionInfoPlugin(
+                        TransactionType.REFUND, "The refund amount is more than the refundable amount");
+            }
+        } catch (SQLException e) {
+            logger.error("[refundPayment]  but we encountered a database error", e);
+            return HyperswitchPaymentTransactionInfoPlugin.cancelPaymentTransactionInfoPlugin(
+                    TransactionType.REFUND, "[refundPayment] but we encountered a database error");
+        }
+        HyperswitchResponsesRecord hyperswitchRecord = null;
+        PaymentPluginStatus paymentPluginStatus = null;
         RefundResponse response = null;
         try {
-            response = ClientApi.createARefund(refundRequest);
+            response = callHyperswitch("createARefund", TransactionType.REFUND, context,
+                                       () -> ClientApi.createARefund(refundRequest),
+                                       "retrieveARefund", () -> ClientApi.retrieveARefund(refundId),
+                                       RefundResponse::getStatus);
             paymentPluginStatus = convertRefundStatus(response.getStatus());
             try {
                 hyperswitchRecord = this.hyperswitchDao.addResponse(
                         kbAccountId,
-                        kbPaymentMethodId, kbPaymentMethodId, TransactionType.REFUND, amount, currency, response,
-                        DateTime.now(), context.getTenantId());
+                        kbPaymentId, kbTransactionId, TransactionType.REFUND, amount, currency, response,
+                        clock.getUTCNow(), context.getTenantId());
             } catch (final SQLException e) {
                 throw new PaymentPluginApiException("Unable to refresh payment", e);
             }
-        } catch (BadRequest e) {
-            String responseBody = e.contentUTF8();
-            String message = responseBody.toString();
-            throw new PaymentPluginApiException(message, e);
+        } catch (final FeignException e) {
+            if (!HyperswitchRetryPolicy.isClientError(e)) {
+                // The refund may have gone through: it stays reserved, and is recorded as pending so that its
+                // webhook settles it (a failed refund gives the reservation back)
+                addPendingRefund(kbAccountId, kbPaymentId, kbTransactionId, amount, currency, paymentHead.getPaymentAttemptId(), refundId, context);
+                return unknownOutcome(TransactionType.REFUND, e);
+            }
+            // Rejected by Hyperswitch (including a retry whose original attempt didn't go through)
+            releaseRefund(kbPaymentId, refundAmount, context);
+            throw new PaymentPluginApiException(e.contentUTF8(), e);
+        } catch (final HyperswitchCircuitBreaker.CallNotPermittedException e) {
+            releaseRefund(kbPaymentId, refundAmount, context);
+            logger.warn("[refundPayment] {}", e.getMessage());
+            return HyperswitchPaymentTransactionInfoPlugin.cancelPaymentTransactionInfoPlugin(
+                    TransactionType.REFUND, e.getMessage());
         }
 
         return new HyperswitchPaymentTransactionInfoPlugin(
@@ -395,7 +576,22 @@ public class HyperswitchPaymentPluginApi extends
     @Override
     public List<PaymentTransactionInfoPlugin> getPaymentInfo(final UUID kbAccountId, final UUID kbPaymentId,
             final Iterable<PluginProperty> properties, final TenantContext context) throws PaymentPluginApiException {
+        try {
+            return hyperswitchExecutor.execute(() -> {
+                try (final HyperswitchMetrics.Span span = hyperswitchMetrics.startSpan("getPaymentInfo", context.getTenantId())) {
+                    return span.complete(doGetPaymentInfo(kbAccountId, kbPaymentId, properties, context), "OK");
+                }
+            });
+        } catch (final TimeoutException e) {
+            throw new PaymentPluginApiException("Timed out while refreshing payment " + kbPaymentId, e);
+        }
+    }
+
+    private List<PaymentTransactionInfoPlugin> doGetPaymentInfo(final UUID kbAccountId, final UUID kbPaymentId,
+            final Iterable<PluginProperty> properties, final TenantContext context) throws PaymentPluginApiException {
         logger.info("[getPaymentInfo] getPaymentInfo for account {}", kbAccountId);
+        // Responses still in the write-behind journal must be visible
+        hyperswitchDao.awaitFlushed(kbPaymentId);
         final List<PaymentTransactionInfoPlugin> transactions = super.getPaymentInfo(kbAccountId, kbPaymentId,
                 properties, context);
 
@@ -403,24 +599,27 @@ public class HyperswitchPaymentPluginApi extends
             // We don't know about this payment (maybe it was aborted in a control plugin)
             return transactions;
         }
-        boolean wasRefreshed = false;
+        // Hyperswitch payment id of each pending transaction
+        final Map<UUID, String> pendingPaymentIds = new LinkedHashMap<UUID, String>();
         for (final PaymentTransactionInfoPlugin transaction : transactions) {
             if (transaction.getStatus() == PaymentPluginStatus.PENDING) {
-                HyperswitchResponsesRecord hyperswitchRecord = null;
-                final String paymentIntentId = PluginProperties.findPluginPropertyValue("payment_id",
-                        transaction.getProperties());
-                PaymentsApi ClientApi = buildHyperswitchClient(context);
-                PaymentsResponse response = ClientApi.retrieveAPaymentwithForcesync(paymentIntentId);
-                try {
-                    hyperswitchRecord = this.hyperswitchDao.updateResponse(
-                            kbAccountId,
-                            response,
-                            context.getTenantId());
-                } catch (final SQLException e) {
-                    throw new PaymentPluginApiException("Unable to refresh payment", e);
-                }
+                pendingPaymentIds.put(transaction.getKbTransactionPaymentId(), transaction.getFirstPaymentReferenceId());
             }
         }
+        if (pendingPaymentIds.isEmpty()) {
+            return transactions;
+        }
+
+        final PaymentsApi ClientApi = buildHyperswitchClient(context);
+        if (ClientApi == null) {
+            return transactions;
+        }
+        final boolean wasRefreshed;
+        try {
+            wasRefreshed = hyperswitchPaymentRefresher.refresh(context.getTenantId(), ClientApi, pendingPaymentIds) > 0;
+        } catch (final SQLException e) {
+            throw new PaymentPluginApiException("Unable to refresh payment", e);
+        }
         return wasRefreshed ? super.getPaymentInfo(kbAccountId, kbPaymentId, properties, context) : transactions;
     }
 
@@ -428,7 +627,13 @@ public class HyperswitchPaymentPluginApi extends
     public Pagination<PaymentTransactionInfoPlugin> searchPayments(final String searchKey, final Long offset,
             final Long limit, final Iterable<PluginProperty> properties, final TenantContext context)
             throws PaymentPluginApiException {
-        return null;
+        // Matches the Hyperswitch payment id, the Kill Bill payment id, the refund id or the error code. The offset
+        // is a record id (keyset pagination): the next page starts after the last row of this one
+        return hyperswitchDao.searchResponses(searchKey,
+                offset == null ? 0L : offset,
+                limit == null ? DEFAULT_SEARCH_LIMIT : (int) Math.min(limit, MAX_SEARCH_LIMIT),
+                context.getTenantId(),
+                this::buildPaymentTransactionInfoPlugin);
     }
 
     @Override
@@ -449,6 +654,8 @@ public class HyperswitchPaymentPluginApi extends
                         context.getTenantId());
             } catch (SQLException e) {
                 throw new PaymentPluginApiException("Error calling Hyperswitch while adding payment method", e);
+            } finally {
+                hyperswitchPaymentMethodCache.invalidate(kbPaymentMethodId, context.getTenantId());
             }
         }
 
@@ -457,7 +664,14 @@ public class HyperswitchPaymentPluginApi extends
     @Override
     public void deletePaymentMethod(final UUID kbAccountId, final UUID kbPaymentMethodId,
             final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
-
+        logger.info("[deletePaymentMethod] Deleting Payment Method {}", kbPaymentMethodId);
+        try {
+            hyperswitchDao.markPaymentMethodAsDeleted(kbPaymentMethodId, clock.getUTCNow(), context.getTenantId());
+        } catch (SQLException e) {
+            throw new PaymentPluginApiException("Unable to delete payment method", e);
+        } finally {
+            hyperswitchPaymentMethodCache.invalidate(kbPaymentMethodId, context.getTenantId());
+        }
     }
 
     @Override
@@ -475,36 +689,204 @@ public class HyperswitchPaymentPluginApi extends
     @Override
     public List<PaymentMethodInfoPlugin> getPaymentMethods(final UUID kbAccountId, final boolean refreshFromGateway,
             final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
-        return null;
+        try {
+            if (refreshFromGateway) {
+                final MandatesApi mandatesApi = buildHyperswitchMandatesClient(context);
+                if (mandatesApi != null) {
+                    return refreshPaymentMethods(mandatesApi, kbAccountId, context);
+                }
+            }
+            return hyperswitchDao.getActivePaymentMethods(kbAccountId, context.getTenantId(), this::buildPaymentMethodInfoPlugin);
+        } catch (final SQLException e) {
+            throw new PaymentPluginApiException("Unable to retrieve payment methods", e);
+        }
+    }
+
+    /**
+     * Reconcile the payment methods of an account with its Hyperswitch mandates, listed with a single call. Only the
+     * rows whose mandate is no longer active are updated (soft deleted, in one statement). Active mandates unknown to
+     * the plugin are returned without a Kill Bill id, for Kill Bill to create them (see resetPaymentMethods).
+     */
+    private List<PaymentMethodInfoPlugin> refreshPaymentMethods(final MandatesApi mandatesApi,
+                                                                final UUID kbAccountId,
+                                                                final CallContext context) throws PaymentPluginApiException, SQLException {
+        final List<MandateResponse> mandates;
+        try {
+            mandates = hyperswitchCircuitBreaker.call(context.getTenantId(),
+                                                      () -> hyperswitchMetrics.gateway("listMandatesForACustomer", null, context.getTenantId(),
+                                                                                       () -> mandatesApi.listMandatesForACustomer(kbAccountId.toString()),
+                                                                                       response -> "OK"));
+        } catch (final HyperswitchCircuitBreaker.CallNotPermittedException e) {
+            throw new PaymentPluginApiException("Hyperswitch is unavailable", e);
+        } catch (final FeignException e) {
+            throw new PaymentPluginApiException("Unable to list the Hyperswitch mandates", e);
+        }
+
+        final Map<String, MandateResponse> activeMandates = new LinkedHashMap<String, MandateResponse>();
+        for (final MandateResponse mandate : mandates) {
+            if (mandate.getStatus() == MandateStatus.ACTIVE) {
+                activeMandates.put(mandate.getMandateId(), mandate);
+            }
+        }
+
+        final List<ULong> revokedRecordIds = new ArrayList<ULong>();
+        final List<UUID> revokedPaymentMethodIds = new ArrayList<UUID>();
+        final List<PaymentMethodInfoPlugin> paymentMethods = hyperswitchDao.getActivePaymentMethods(kbAccountId, context.getTenantId(), record -> {
+            if (activeMandates.remove(record.getHyperswitchId()) == null) {
+                revokedRecordIds.add(record.getRecordId());
+                revokedPaymentMethodIds.add(UUID.fromString(record.getKbPaymentMethodId()));
+                return null;
+            }
+            return buildPaymentMethodInfoPlugin(record);
+        });
+
+        if (!revokedRecordIds.isEmpty()) {
+            logger.info("Deleting {} payment method(s) of account {} whose mandate is no longer active", revokedRecordIds.size(), kbAccountId);
+            try {
+                hyperswitchDao.markPaymentMethodsAsDeleted(revokedRecordIds, clock.getUTCNow());
+            } finally {
+                for (final UUID kbPaymentMethodId : revokedPaymentMethodIds) {
+                    hyperswitchPaymentMethodCache.invalidate(kbPaymentMethodId, context.getTenantId());
+                }
+            }
+        }
+        for (final String mandateId : activeMandates.keySet()) {
+            paymentMethods.add(new PluginPaymentMethodInfoPlugin(kbAccountId, null, false, mandateId));
+        }
+        return paymentMethods;
     }
 
     @Override
     public Pagination<PaymentMethodPlugin> searchPaymentMethods(final String searchKey, final Long offset,
             final Long limit, final Iterable<PluginProperty> properties, final TenantContext context)
             throws PaymentPluginApiException {
-        return null;
+        // Matches the Kill Bill payment method id, the mandate id or the Kill Bill account id, paginated as searchPayments
+        return hyperswitchDao.searchPaymentMethods(searchKey,
+                offset == null ? 0L : offset,
+                limit == null ? DEFAULT_SEARCH_LIMIT : (int) Math.min(limit, MAX_SEARCH_LIMIT),
+                context.getTenantId(),
+                this::buildPaymentMethodPlugin);
     }
 
     @Override
     public void resetPaymentMethods(final UUID kbAccountId, final List<PaymentMethodInfoPlugin> paymentMethods,
             final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
-
+        final List<UUID> written;
+        try {
+            written = hyperswitchDao.resetPaymentMethods(kbAccountId, paymentMethods, clock.getUTCNow(), context.getTenantId());
+        } catch (final SQLException e) {
+            throw new PaymentPluginApiException("Unable to reset payment methods", e);
+        }
+        if (!written.isEmpty()) {
+            logger.info("Reset {} payment method(s) of account {}", written.size(), kbAccountId);
+        }
+        for (final UUID kbPaymentMethodId : written) {
+            hyperswitchPaymentMethodCache.invalidate(kbPaymentMethodId, context.getTenantId());
+        }
     }
 
     @Override
     public HostedPaymentPageFormDescriptor buildFormDescriptor(final UUID kbAccountId,
             final Iterable<PluginProperty> customFields, final Iterable<PluginProperty> properties,
             final CallContext context) throws PaymentPluginApiException {
-        return null;
+        final Iterable<PluginProperty> allProperties = PluginProperties.merge(customFields, properties);
+        final String amountValue = PluginProperties.findPluginPropertyValue(HPP_AMOUNT_PROPERTY, allProperties);
+        final String currencyValue = PluginProperties.findPluginPropertyValue(HPP_CURRENCY_PROPERTY, allProperties);
+        if (amountValue == null || currencyValue == null) {
+            throw new PaymentPluginApiException("Invalid HPP request", "The amount and the currency are required");
+        }
+        final BigDecimal amount;
+        final Currency currency;
+        try {
+            amount = new BigDecimal(amountValue);
+            currency = Currency.valueOf(currencyValue);
+        } catch (final IllegalArgumentException e) {
+            throw new PaymentPluginApiException("Invalid HPP request", e);
+        }
+        final String returnUrl = PluginProperties.findPluginPropertyValue(HPP_RETURN_URL_PROPERTY, allProperties);
+
+        final HyperswitchTenantConfig config = hyperswitchConfigurationHandler.getTenantConfig(context.getTenantId());
+        final PaymentsApi paymentsApi = buildHyperswitchClient(config, context);
+        if (paymentsApi == null) {
+            throw new PaymentPluginApiException("Invalid HPP request", "Hyperswitch isn't configured for the tenant");
+        }
+
+        // The payment is confirmed client side, by the Hyperswitch SDK (with the client secret), and the payment
+        // method is saved as a mandate for the next (off-session) payments
+        final String sessionId = UUID.randomUUID().toString();
+        final PaymentsCreateRequest paymentsCreateRequest = new PaymentsCreateRequest();
+        paymentsCreateRequest.setAmount(KillBillMoney.toMinorUnits(currency.toString(), amount));
+        paymentsCreateRequest.setCurrency(convertCurrency(currency));
+        paymentsCreateRequest.confirm(false);
+        paymentsCreateRequest.customerId(kbAccountId.toString());
+        paymentsCreateRequest.profileId(config.getProfileId());
+        paymentsCreateRequest.setupFutureUsage(FutureUsage.OFF_SESSION);
+        if (returnUrl != null) {
+            paymentsCreateRequest.returnUrl(returnUrl);
+        }
+        paymentsCreateRequest.setPaymentId(HyperswitchRetryPolicy.toPaymentId(UUID.fromString(sessionId)));
+        final PaymentsResponse response;
+        try {
+            response = hyperswitchCircuitBreaker.call(context.getTenantId(),
+                                                      () -> hyperswitchMetrics.gateway("createAPayment", null, context.getTenantId(),
+                                                                                       () -> paymentsApi.createAPayment(paymentsCreateRequest),
+                                                                                       PaymentsResponse::getStatus));
+        } catch (final HyperswitchCircuitBreaker.CallNotPermittedException e) {
+            throw new PaymentPluginApiException("Hyperswitch is unavailable", e);
+        } catch (final FeignException e) {
+            throw new PaymentPluginApiException("Unable to create the Hyperswitch payment", e);
+        }
+
+        final Map<String, Object> additionalData = new LinkedHashMap<String, Object>(HyperswitchPluginProperties.toAdditionalDataMap(response));
+        additionalData.put("currency", currency.toString());
+        additionalData.put("client_secret", response.getClientSecret());
+        additionalData.put("return_url", returnUrl);
+        final HyperswitchHppRequestsRecord session;
+        try {
+            session = hyperswitchHppSessionStore.addSession(kbAccountId, sessionId, additionalData, context.getTenantId());
+        } catch (final SQLException e) {
+            throw new PaymentPluginApiException("Unable to store the HPP session", e);
+        }
+
+        final List<PluginProperty> formFields = new ArrayList<PluginProperty>();
+        formFields.add(new PluginProperty("sessionId", sessionId, false));
+        formFields.add(new PluginProperty("paymentId", response.getPaymentId(), false));
+        formFields.add(new PluginProperty("clientSecret", response.getClientSecret(), false));
+        formFields.add(new PluginProperty("expirationDate", hyperswitchHppSessionStore.getExpirationDate(session).toString(), false));
+        // No hosted URL: the form is rendered by the merchant page, with the Hyperswitch SDK
+        return new PluginHostedPaymentPageFormDescriptor(kbAccountId, null, null, formFields, ImmutableList.<PluginProperty>of());
     }
 
     @Override
     public GatewayNotification processNotification(final String notification, final Iterable<PluginProperty> properties,
             final CallContext context) throws PaymentPluginApiException {
-        return null;
+        final String secret = hyperswitchConfigurationHandler.getTenantConfig(context.getTenantId()).getWebhookSecret();
+        final String signature = PluginProperties.findPluginPropertyValue(HyperswitchWebhookParser.SIGNATURE_HEADER, properties);
+        if (!HyperswitchWebhookParser.isSignatureValid(notification, signature, secret)) {
+            throw new PaymentPluginApiException("Invalid webhook", "Signature verification failed");
+        }
+
+        final HyperswitchWebhookEvent event;
+        try {
+            event = HyperswitchWebhookParser.parse(notification);
+        } catch (final IOException e) {
+            throw new PaymentPluginApiException("Invalid webhook payload", e);
+        }
+
+        // Only persist the event here: the transactions are updated by the notification processor
+        try {
+            if (!hyperswitchDao.addNotification(event, notification, clock.getUTCNow(), context.getTenantId())) {
+                logger.info("Ignoring duplicate webhook {}", event.getEventId());
+            }
+        } catch (final SQLException e) {
+            throw new PaymentPluginApiException("Unable to store webhook", e);
+        }
+        hyperswitchNotificationProcessor.signal();
+
+        return new PluginGatewayNotification(event.getEventId());
     }
 
-    private PaymentPluginStatus convertPaymentStatus(IntentStatus paymentStatus) {
+    static PaymentPluginStatus convertPaymentStatus(IntentStatus paymentStatus) {
         switch (paymentStatus) {
             case REQUIRES_CAPTURE:
             case SUCCEEDED:
@@ -522,7 +904,7 @@ public class HyperswitchPaymentPluginApi extends
         }
     }
 
-    private PaymentPluginStatus convertRefundStatus(RefundStatus refundStatus) {
+    static PaymentPluginStatus convertRefundStatus(RefundStatus refundStatus) {
         switch (refundStatus) {
             case SUCCEEDED:
                 return PaymentPluginStatus.PROCESSED;
@@ -537,7 +919,7 @@ public class HyperswitchPaymentPluginApi extends
         }
     }
 
-    private com.hyperswitch.client.model.Currency convertCurrency(
+    static com.hyperswitch.client.model.Currency convertCurrency(
             Currency currency) {
         switch (currency) {
             case USD:
@@ -569,64 +951,202 @@ public class HyperswitchPaymentPluginApi extends
     }
 
     @Override
-    protected PaymentMethodPlugin buildPaymentMethodPlugin(HyperswitchPaymentMethodsRecord record) {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException("Unimplemented method 'buildPaymentMethodPlugin'");
+    protected PaymentMethodPlugin buildPaymentMethodPlugin(final HyperswitchPaymentMethodsRecord record) {
+        return new PluginPaymentMethodPlugin(UUID.fromString(record.getKbPaymentMethodId()),
+                record.getHyperswitchId(),
+                isDefault(record),
+                PluginProperties.buildPluginProperties(HyperswitchDao.fromAdditionalData(record.getAdditionalData())));
     }
 
     @Override
-    protected PaymentMethodInfoPlugin buildPaymentMethodInfoPlugin(HyperswitchPaymentMethodsRecord record) {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException("Unimplemented method 'buildPaymentMethodInfoPlugin'");
+    protected PaymentMethodInfoPlugin buildPaymentMethodInfoPlugin(final HyperswitchPaymentMethodsRecord record) {
+        return new PluginPaymentMethodInfoPlugin(UUID.fromString(record.getKbAccountId()),
+                UUID.fromString(record.getKbPaymentMethodId()),
+                isDefault(record),
+                record.getHyperswitchId());
     }
 
     @Override
-    protected String getPaymentMethodId(HyperswitchPaymentMethodsRecord input) {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException("Unimplemented method 'getPaymentMethodId'");
+    protected String getPaymentMethodId(final HyperswitchPaymentMethodsRecord input) {
+        return input.getKbPaymentMethodId();
+    }
+
+    private static boolean isDefault(final HyperswitchPaymentMethodsRecord record) {
+        return record.getIsDefault() != null && record.getIsDefault() == 1;
+    }
+
+    HyperswitchTenantConfig getTenantConfig(final TenantContext tenantContext) {
+        return hyperswitchConfigurationHandler.getTenantConfig(tenantContext.getTenantId());
     }
 
-    private PaymentsApi buildHyperswitchClient(final TenantContext tenantContext) {
-        final HyperswitchConfigProperties config = hyperswitchConfigurationHandler
-                .getConfigurable(tenantContext.getTenantId());
-        if (config == null || config.getHSApiKey() == null || config.getHSApiKey().isEmpty()) {
+    PaymentsApi buildHyperswitchClient(final TenantContext tenantContext) {
+        return buildHyperswitchClient(getTenantConfig(tenantContext), tenantContext);
+    }
+
+    PaymentsApi buildHyperswitchClient(final HyperswitchTenantConfig config, final TenantContext tenantContext) {
+        if (!config.isConfigured()) {
+            logger.warn("Per-tenant properties not configured");
+            return null;
+        }
+        return hyperswitchClientRegistry.getPaymentsApi(tenantContext.getTenantId(), config);
+    }
+
+    private MandatesApi buildHyperswitchMandatesClient(final TenantContext tenantContext) {
+        final HyperswitchTenantConfig config = hyperswitchConfigurationHandler.getTenantConfig(tenantContext.getTenantId());
+        if (!config.isConfigured()) {
             logger.warn("Per-tenant properties not configured");
             return null;
         }
-        final PaymentsApi client = new HsApiClient("api_key", config.getHSApiKey()).buildClient(PaymentsApi.class);
-        return client;
+        return hyperswitchClientRegistry.getMandatesApi(tenantContext.getTenantId(), config);
     }
 
     private RefundsApi buildHyperswitchRefundsClient(final TenantContext tenantContext) {
-        final HyperswitchConfigProperties config = hyperswitchConfigurationHandler
-                .getConfigurable(tenantContext.getTenantId());
-        if (config == null || config.getHSApiKey() == null || config.getHSApiKey().isEmpty()) {
+        final HyperswitchTenantConfig config = hyperswitchConfigurationHandler.getTenantConfig(tenantContext.getTenantId());
+        if (!config.isConfigured()) {
             logger.warn("Per-tenant properties not configured");
             return null;
         }
-        final RefundsApi client = new HsApiClient("api_key", config.getHSApiKey()).buildClient(RefundsApi.class);
-        return client;
+        return hyperswitchClientRegistry.getRefundsApi(tenantContext.getTenantId(), config);
     }
 
-    public PaymentTransactionInfoPlugin refundValidations( // Validate this function with currency unit of amount
-            HyperswitchResponsesRecord hyperswitchRecord, BigDecimal amount) {
-        if (hyperswitchRecord == null) {
-            logger.error("[refundPayment] Purchase do not exists");
+    /**
+     * Create and confirm an off-session payment against a mandate (authorizations are captured manually)
+     */
+    PaymentsResponse createPayment(final PaymentsApi ClientApi,
+                                   final String profileId,
+                                   final UUID kbAccountId,
+                                   final UUID kbTransactionId,
+                                   final String mandateId,
+                                   final BigDecimal amount,
+                                   final Currency currency,
+                                   final TransactionType transactionType,
+                                   final TenantContext context) throws HyperswitchCircuitBreaker.CallNotPermittedException {
+        final PaymentsCreateRequest paymentsCreateRequest = new PaymentsCreateRequest();
+        paymentsCreateRequest.setAmount(KillBillMoney.toMinorUnits(currency.toString(), amount));
+        paymentsCreateRequest.setCurrency(convertCurrency(currency));
+        paymentsCreateRequest.confirm(true);
+        paymentsCreateRequest.customerId(kbAccountId.toString());
+        paymentsCreateRequest.offSession(true);
+        paymentsCreateRequest.profileId(profileId);
+        if (transactionType == TransactionType.AUTHORIZE) {
+            paymentsCreateRequest.setCaptureMethod(CaptureMethod.MANUAL);
+        }
+        paymentsCreateRequest.setMandateId(mandateId);
+        // Idempotency key: retries of this transaction can't create a second payment
+        final String paymentId = HyperswitchRetryPolicy.toPaymentId(kbTransactionId);
+        paymentsCreateRequest.setPaymentId(paymentId);
+        return callHyperswitch("createAPayment", transactionType, context,
+                               () -> ClientApi.createAPayment(paymentsCreateRequest),
+                               "retrieveAPaymentwithForcesync", () -> ClientApi.retrieveAPaymentwithForcesync(paymentId),
+                               PaymentsResponse::getStatus);
+    }
+
+    /**
+     * Call Hyperswitch through the circuit breaker of the tenant, retrying transient failures
+     *
+     * @param recovery fetches the outcome of an earlier attempt when a retry is rejected, see {@link HyperswitchRetryPolicy}
+     */
+    private <T> T callHyperswitch(final String call,
+                                  final TransactionType transactionType,
+                                  final TenantContext context,
+                                  final HyperswitchMetrics.Call<T, RuntimeException> gatewayCall,
+                                  final String recoveryCall,
+                                  final HyperswitchMetrics.Call<T, RuntimeException> recovery,
+                                  final Function<T, Object> status) throws HyperswitchCircuitBreaker.CallNotPermittedException {
+        return hyperswitchRetryPolicy.call(call,
+                                           () -> hyperswitchCircuitBreaker.call(context.getTenantId(),
+                                                                                () -> hyperswitchMetrics.gateway(call, transactionType, context.getTenantId(), gatewayCall, status)),
+                                           () -> hyperswitchMetrics.gateway(recoveryCall, transactionType, context.getTenantId(), recovery, status));
+    }
+
+    /**
+     * Call Hyperswitch through the circuit breaker of the tenant, only retrying failures where the request wasn't processed
+     */
+    private <T> T callHyperswitch(final String call,
+                                  final TransactionType transactionType,
+                                  final TenantContext context,
+                                  final HyperswitchMetrics.Call<T, RuntimeException> gatewayCall,
+                                  final Function<T, Object> status) throws HyperswitchCircuitBreaker.CallNotPermittedException {
+        return hyperswitchRetryPolicy.callNotIdempotent(call,
+                                                        () -> hyperswitchCircuitBreaker.call(context.getTenantId(),
+                                                                                             () -> hyperswitchMetrics.gateway(call, transactionType, context.getTenantId(), gatewayCall, status)));
+    }
+
+    private static PaymentsResponse withStatus(final PaymentsResponse response, final Set<IntentStatus> statuses) {
+        return response != null && statuses.contains(response.getStatus()) ? response : null;
+    }
+
+    /**
+     * Give back a refund Hyperswitch rejected (or which wasn't sent). Refunds with an unknown outcome keep their
+     * reservation, so that a refund which went through can't be refunded again.
+     */
+    private void addPendingRefund(final UUID kbAccountId,
+                                  final UUID kbPaymentId,
+                                  final UUID kbTransactionId,
+                                  final BigDecimal amount,
+                                  final Currency currency,
+                                  final String paymentAttemptId,
+                                  final String refundId,
+                                  final CallContext context) {
+        final RefundResponse pendingRefund = new RefundResponse();
+        pendingRefund.setRefundId(refundId);
+        pendingRefund.setPaymentId(paymentAttemptId);
+        pendingRefund.setStatus(RefundStatus.PENDING);
+        try {
+            this.hyperswitchDao.addResponse(kbAccountId, kbPaymentId, kbTransactionId, TransactionType.REFUND, amount, currency, pendingRefund,
+                                            clock.getUTCNow(), context.getTenantId());
+        } catch (final SQLException e) {
+            logger.warn("[refundPayment] Unable to record pending refund {}", refundId, e);
+        }
+    }
+
+    /**
+     * Outcome of a call which failed without a response from Hyperswitch (I/O error, timeout, 5xx): the transaction
+     * may have gone through, so it is left UNKNOWN in Kill Bill rather than failed.
+     */
+    private static PaymentTransactionInfoPlugin unknownOutcome(final TransactionType transactionType, final FeignException e) {
+        logger.warn("[{}] Outcome unknown after Hyperswitch error: {}", transactionType, e.getMessage());
+        return HyperswitchPaymentTransactionInfoPlugin.undefinedPaymentTransactionInfoPlugin(
+                transactionType, "Outcome of the Hyperswitch call unknown");
+    }
+
+    private void releaseRefund(final UUID kbPaymentId, final long refundAmount, final CallContext context) {
+        try {
+            this.hyperswitchDao.releaseRefund(kbPaymentId, refundAmount, context.getTenantId());
+        } catch (final SQLException e) {
+            logger.warn("[refundPayment] Unable to release refund of payment {}", kbPaymentId, e);
+        }
+    }
+
+    /**
+     * @return the outcome of a capture or refund rejected without calling Hyperswitch, null if the amount is valid
+     */
+    private static PaymentTransactionInfoPlugin validateAmount(final TransactionType transactionType,
+                                                               @Nullable final HyperswitchPaymentHeadsRecord paymentHead,
+                                                               final BigDecimal amount) {
+        if (paymentHead == null || paymentHead.getAmount() == null) {
+            logger.error("[{}] Purchase do not exists", transactionType);
             return HyperswitchPaymentTransactionInfoPlugin.cancelPaymentTransactionInfoPlugin(
-                    TransactionType.REFUND, "Purchase do not exists");
+                    transactionType, "Purchase do not exists");
         }
 
-        if (hyperswitchRecord.getAmount().compareTo(amount) < 0) {
-            logger.error("[refundPayment] The refund amount is more than the transaction amount");
+        // Running totals of the payment, in minor units
+        final long minorAmount = KillBillMoney.toMinorUnits(paymentHead.getCurrency(), amount);
+        if (transactionType == TransactionType.CAPTURE && minorAmount > paymentHead.getAmount() - paymentHead.getCapturedAmount()) {
+            logger.error("[{}] The capture amount is more than the amount left to capture", transactionType);
+            return HyperswitchPaymentTransactionInfoPlugin.cancelPaymentTransactionInfoPlugin(
+                    transactionType, "The capture amount is more than the amount left to capture");
+        }
+        if (transactionType == TransactionType.REFUND && minorAmount > paymentHead.getRefundableAmount()) {
+            logger.error("[{}] The refund amount is more than the refundable amount", transactionType);
             return HyperswitchPaymentTransactionInfoPlugin.cancelPaymentTransactionInfoPlugin(
-                    TransactionType.REFUND, "The refund amount is more than the transaction amount");
+                    transactionType, "The refund amount is more than the refundable amount");
         }
         if (BigDecimal.ZERO.compareTo(amount) == 0) {
-            logger.error("[refundPayment] The refund amount can not be zero");
+            logger.error("[{}] The amount can not be zero", transactionType);
             return HyperswitchPaymentTransactionInfoPlugin.cancelPaymentTransactionInfoPlugin(
-                    TransactionType.REFUND, "The refund amount can not be zero");
-        } else {
-            return null;
+                    transactionType, "The amount can not be zero");
         }
+        return null;
     }
 }
@@ -0,0 +1,333 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.io.Closeable;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.killbill.billing.plugin.hyperswitch.dao.HyperswitchDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hyperswitch.client.api.PaymentsApi;
+import com.hyperswitch.client.model.PaymentsResponse;
+
+/**
+ * Refreshes the status of pending transactions against Hyperswitch: gateway calls are de-duplicated by
+ * Hyperswitch payment id and run in parallel (bounded per tenant, within an overall deadline), and the
+ * refreshed rows are written back in a single JDBC batch.
+ * <p>
+ * When hedging is enabled, a second force-sync of the same payment is sent if the first one is slower than the
+ * 95th percentile of the recent force-syncs, and the first response wins.
+ * <p>
+ * Concurrent refreshes of the same payment (e.g. by the Janitor, a getPaymentInfo call and the reconciler) share a
+ * single force-sync, whose outcome is reused for a short window, see {@link HyperswitchSingleFlight}.
+ */
+public class HyperswitchPaymentRefresher implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HyperswitchPaymentRefresher.class);
+
+    private static final long FORCE_SYNC_CACHE_SIZE = 10000L;
+
+    private final HyperswitchDao hyperswitchDao;
+    private final HyperswitchMetrics hyperswitchMetrics;
+    private final ExecutorService executor;
+    private final int maxConcurrencyPerTenant;
+    private final long timeoutNanos;
+    private final ConcurrentMap<UUID, Semaphore> tenantPermits = new ConcurrentHashMap<UUID, Semaphore>();
+    // Runs both reads of hedged force-syncs (null if hedging is disabled)
+    private final ExecutorService hedgeExecutor;
+    private final long hedgeMinDelayNanos;
+    private final LatencyWindow forceSyncLatencies = new LatencyWindow();
+    private final LongAdder hedgedReads = new LongAdder();
+    // Keyed by tenant and Hyperswitch payment id
+    private final HyperswitchSingleFlight<String, PaymentsResponse> forceSyncs;
+
+    public HyperswitchPaymentRefresher(final HyperswitchDao hyperswitchDao,
+                                       final HyperswitchMetrics hyperswitchMetrics,
+                                       final int nbThreads,
+                                       final int maxConcurrencyPerTenant,
+                                       final long timeoutMillis,
+                                       final boolean hedgingEnabled,
+                                       final long hedgeMinDelayMillis,
+                                       final long forceSyncCacheMillis,
+                                       final long forceSyncNegativeCacheMillis) {
+        this.hyperswitchDao = hyperswitchDao;
+        this.hyperswitchMetrics = hyperswitchMetrics;
+        this.executor = Executors.newFixedThreadPool(nbThreads,
+                                                     new ThreadFactoryBuilder().setNameFormat("hyperswitch-refresh-%d")
+                                                                               .setDaemon(true)
+                                                                               .build());
+        this.maxConcurrencyPerTenant = maxConcurrencyPerTenant;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        // Not bounded: the number of concurrent reads is capped by the per-tenant permits
+        this.hedgeExecutor = hedgingEnabled ? Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("hyperswitch-hedge-%d")
+                                                                                                   .setDaemon(true)
+                                                                                                   .build()) : null;
+        this.hedgeMinDelayNanos = TimeUnit.MILLISECONDS.toNanos(hedgeMinDelayMillis);
+        this.forceSyncs = new HyperswitchSingleFlight<String, PaymentsResponse>(FORCE_SYNC_CACHE_SIZE, forceSyncCacheMillis, forceSyncNegativeCacheMillis);
+    }
+
+    /**
+     * @param paymentIdsByTransactionId Hyperswitch payment id of each Kill Bill transaction to refresh
+     * @return the number of hyperswitch_responses rows updated
+     */
+    public int refresh(final UUID kbTenantId,
+                       final PaymentsApi paymentsApi,
+                       final Map<UUID, String> paymentIdsByTransactionId) throws SQLException {
+        // Several transactions (e.g. an authorization and its capture) can share the same Hyperswitch payment
+        final Map<String, List<UUID>> transactionIdsByPaymentId = new LinkedHashMap<String, List<UUID>>();
+        for (final Map.Entry<UUID, String> entry : paymentIdsByTransactionId.entrySet()) {
+            if (entry.getValue() == null) {
+                continue;
+            }
+            transactionIdsByPaymentId.computeIfAbsent(entry.getValue(), k -> new ArrayList<UUID>()).add(entry.getKey());
+        }
+        if (transactionIdsByPaymentId.isEmpty()) {
+            return 0;
+        }
+
+        final long deadline = System.nanoTime() + timeoutNanos;
+        final Semaphore permits = tenantPermits.computeIfAbsent(kbTenantId, k -> new Semaphore(maxConcurrencyPerTenant));
+
+        final Map<String, PaymentsResponse> responsesByPaymentId = new HashMap<String, PaymentsResponse>();
+        if (transactionIdsByPaymentId.size() == 1) {
+            // Common case: no need to hop to the executor
+            final String paymentId = transactionIdsByPaymentId.keySet().iterator().next();
+            try {
+                responsesByPaymentId.put(paymentId, retrieve(kbTenantId, paymentsApi, paymentId, permits, deadline));
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 0;
+            } catch (final RuntimeException e) {
+                logger.warn("Unable to refresh Hyperswitch payment {}", paymentId, e);
+            }
+        } else {
+            final Map<String, Future<PaymentsResponse>> futures = new LinkedHashMap<String, Future<PaymentsResponse>>();
+            for (final String paymentId : transactionIdsByPaymentId.keySet()) {
+                futures.put(paymentId, executor.submit(() -> retrieve(kbTenantId, paymentsApi, paymentId, permits, deadline)));
+            }
+            for (final Map.Entry<String, Future<PaymentsResponse>> entry : futures.entrySet()) {
+                responsesByPaymentId.put(entry.getKey(), await(entry.getKey(), entry.getValue(), deadline));
+            }
+        }
+
+        final Map<UUID, PaymentsResponse> responsesByTransactionId = new HashMap<UUID, PaymentsResponse>();
+        for (final Map.Entry<String, List<UUID>> entry : transactionIdsByPaymentId.entrySet()) {
+            final PaymentsResponse response = responsesByPaymentId.get(entry.getKey());
+            if (response == null) {
+                continue;
+            }
+            for (final UUID kbTransactionId : entry.getValue()) {
+                responsesByTransactionId.put(kbTransactionId, response);
+            }
+        }
+        return hyperswitchDao.updateResponses(responsesByTransactionId, kbTenantId);
+    }
+
+    public long getHedgedReads() {
+        return hedgedReads.sum();
+    }
+
+    /**
+     * @return the number of refreshes which joined a force-sync already in flight
+     */
+    public long getCoalescedReads() {
+        return forceSyncs.getCoalescedLoads();
+    }
+
+    /**
+     * @return the number of refreshes served by the outcome of a recent force-sync
+     */
+    public long getCachedReads() {
+        return forceSyncs.getCachedLoads();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        if (hedgeExecutor != null) {
+            hedgeExecutor.shutdownNow();
+        }
+    }
+
+    private PaymentsResponse retrieve(final UUID kbTenantId,
+                                      final PaymentsApi paymentsApi,
+                                      final String paymentId,
+                                      final Semaphore permits,
+                                      final long deadline) throws InterruptedException {
+        // Only the leader of the flight takes a permit of the tenant
+        return forceSyncs.get(kbTenantId + "/" + paymentId, () -> doRetrieve(kbTenantId, paymentsApi, paymentId, permits, deadline), deadline);
+    }
+
+    private PaymentsResponse doRetrieve(final UUID kbTenantId,
+                                        final PaymentsApi paymentsApi,
+                                        final String paymentId,
+                                        final Semaphore permits,
+                                        final long deadline) throws InterruptedException {
+        if (!permits.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+            logger.warn("Deadline exceeded while waiting to refresh Hyperswitch payment {}", paymentId);
+            return null;
+        }
+        final long hedgeDelayNanos = forceSyncLatencies.getPercentileNanos();
+        if (hedgeExecutor == null || hedgeDelayNanos < 0) {
+            try {
+                return forceSync(kbTenantId, paymentsApi, paymentId);
+            } finally {
+                permits.release();
+            }
+        }
+        return hedgedForceSync(kbTenantId, paymentsApi, paymentId, permits, Math.max(hedgeMinDelayNanos, hedgeDelayNanos), deadline);
+    }
+
+    /**
+     * Force-sync a payment, and send a second read if the first one didn't complete after hedgeDelayNanos
+     * (and a permit of the tenant is available). The permit already held is released by the first read.
+     */
+    private PaymentsResponse hedgedForceSync(final UUID kbTenantId,
+                                             final PaymentsApi paymentsApi,
+                                             final String paymentId,
+                                             final Semaphore permits,
+                                             final long hedgeDelayNanos,
+                                             final long deadline) throws InterruptedException {
+        final CompletableFuture<PaymentsResponse> result = new CompletableFuture<PaymentsResponse>();
+        final AtomicInteger pendingReads = new AtomicInteger(2);
+        final AtomicReference<RuntimeException> lastFailure = new AtomicReference<RuntimeException>();
+        hedgeExecutor.execute(() -> read(kbTenantId, paymentsApi, paymentId, permits, result, pendingReads, lastFailure));
+        CompletableFuture.delayedExecutor(hedgeDelayNanos, TimeUnit.NANOSECONDS, hedgeExecutor).execute(() -> {
+            if (!result.isDone() && permits.tryAcquire()) {
+                hedgedReads.increment();
+                read(kbTenantId, paymentsApi, paymentId, permits, result, pendingReads, lastFailure);
+            } else if (pendingReads.decrementAndGet() == 0) {
+                result.completeExceptionally(lastFailure.get());
+            }
+        });
+
+        try {
+            return result.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (final TimeoutException e) {
+            logger.warn("Deadline exceeded while refreshing Hyperswitch payment {}", paymentId);
+            return null;
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private void read(final UUID kbTenantId,
+                      final PaymentsApi paymentsApi,
+                      final String paymentId,
+                      final Semaphore permits,
+                      final CompletableFuture<PaymentsResponse> result,
+                      final AtomicInteger pendingReads,
+                      final AtomicReference<RuntimeException> lastFailure) {
+        try {
+            result.complete(forceSync(kbTenantId, paymentsApi, paymentId));
+        } catch (final RuntimeException e) {
+            lastFailure.set(e);
+        } finally {
+            permits.release();
+            if (pendingReads.decrementAndGet() == 0) {
+                // Both reads failed (no-op if one of them succeeded)
+                result.completeExceptionally(lastFailure.get());
+            }
+        }
+    }
+
+    private PaymentsResponse forceSync(final UUID kbTenantId, final PaymentsApi paymentsApi, final String paymentId) {
+        final long start = System.nanoTime();
+        final PaymentsResponse response = hyperswitchMetrics.gateway("retrieveAPaymentwithForcesync", null, kbTenantId,
+                                                                     () -> paymentsApi.retrieveAPaymentwithForcesync(paymentId),
+                                                                     PaymentsResponse::getStatus);
+        forceSyncLatencies.record(System.nanoTime() - start);
+        return response;
+    }
+
+    private PaymentsResponse await(final String paymentId, final Future<PaymentsResponse> future, final long deadline) {
+        try {
+            return future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (final TimeoutException e) {
+            future.cancel(true);
+            logger.warn("Deadline exceeded while refreshing Hyperswitch payment {}", paymentId);
+        } catch (final ExecutionException e) {
+            logger.warn("Unable to refresh Hyperswitch payment {}", paymentId, e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+        }
+        return null;
+    }
+
+    /**
+     * Latencies of the last force-syncs, and their 95th percentile (refreshed every few samples)
+     */
+    private static final class LatencyWindow {
+
+        private static final int SIZE = 256;
+        private static final int MIN_SAMPLES = 20;
+        private static final int REFRESH_EVERY = 16;
+
+        private final long[] samples = new long[SIZE];
+        private int next;
+        private int count;
+        private int sinceRefresh;
+        private volatile long percentileNanos = -1L;
+
+        private synchronized void record(final long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % SIZE;
+            count = Math.min(count + 1, SIZE);
+            if (++sinceRefresh >= REFRESH_EVERY && count >= MIN_SAMPLES) {
+                sinceRefresh = 0;
+                final long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                percentileNanos = sorted[(int) Math.ceil(count * 0.95) - 1];
+            }
+        }
+
+        /**
+         * @return the 95th percentile, or -1 until enough samples were recorded
+         */
+        private long getPercentileNanos() {
+            return percentileNanos;
+        }
+    }
+}
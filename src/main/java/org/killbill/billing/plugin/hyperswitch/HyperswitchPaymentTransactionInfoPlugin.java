@@ -16,11 +16,14 @@
 package org.killbill.billing.plugin.hyperswitch;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.List;
 import java.util.UUID;
 import java.util.Map;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.killbill.billing.catalog.api.Currency;
 import org.killbill.billing.payment.api.PluginProperty;
 import org.killbill.billing.payment.api.TransactionType;
@@ -35,15 +38,17 @@ import com.google.common.base.Strings;
 
 public class HyperswitchPaymentTransactionInfoPlugin extends PluginPaymentTransactionInfoPlugin {
 	private final HyperswitchResponsesRecord hyperswitchResponseRecord;
+	private volatile List<PluginProperty> lazyProperties;
 
 	public static HyperswitchPaymentTransactionInfoPlugin build(
 			final HyperswitchResponsesRecord HyperswitchResponsesRecord) {
-		final Map<?, ?> additionalData = HyperswitchDao
-				.mapFromAdditionalDataString(HyperswitchResponsesRecord.getAdditionalData());
-
 		final String firstPaymentReferenceId = HyperswitchResponsesRecord.getPaymentAttemptId();
 
-		final DateTime responseDate =DateTime.now();
+		final DateTime createdDate = toDateTime(HyperswitchResponsesRecord.getCreatedDate());
+		final DateTime effectiveDate = HyperswitchResponsesRecord.getUpdatedDate() == null
+				? createdDate
+				: toDateTime(HyperswitchResponsesRecord.getUpdatedDate());
+		// additional_data is only deserialized if the plugin properties are requested (see getProperties)
 		return new HyperswitchPaymentTransactionInfoPlugin(
 				HyperswitchResponsesRecord,
 				UUID.fromString(HyperswitchResponsesRecord.getKbPaymentId()),
@@ -53,14 +58,14 @@ public class HyperswitchPaymentTransactionInfoPlugin extends PluginPaymentTransa
 				Strings.isNullOrEmpty(HyperswitchResponsesRecord.getCurrency())
 						? null
 						: Currency.valueOf(HyperswitchResponsesRecord.getCurrency()),
-				getPaymentPluginStatus(additionalData),
+				getPaymentPluginStatus(getStatus(HyperswitchResponsesRecord)),
 				HyperswitchResponsesRecord.getErrorMessage(),
 				HyperswitchResponsesRecord.getErrorCode(),
 				firstPaymentReferenceId,
-				null,
-				responseDate,
-				responseDate,
-				PluginProperties.buildPluginProperties(additionalData));
+				HyperswitchResponsesRecord.getRefundId(),
+				createdDate,
+				effectiveDate,
+				null);
 	}
 
 	public HyperswitchPaymentTransactionInfoPlugin(final HyperswitchResponsesRecord hyperswitchResponsesRecord,
@@ -95,8 +100,54 @@ public class HyperswitchPaymentTransactionInfoPlugin extends PluginPaymentTransa
 				null);
 	}
 
-	private static PaymentPluginStatus getPaymentPluginStatus(final Map additionalData) {
-        final String status = (String) additionalData.get("status");
+	public static PaymentTransactionInfoPlugin undefinedPaymentTransactionInfoPlugin(
+			TransactionType transactionType, String message) {
+
+		return new HyperswitchPaymentTransactionInfoPlugin(
+				null,
+				null,
+				null,
+				transactionType,
+				null,
+				null,
+				PaymentPluginStatus.UNDEFINED,
+				message,
+				null,
+				null,
+				null,
+				null,
+				null,
+				null);
+	}
+
+	@Override
+	public List<PluginProperty> getProperties() {
+		final List<PluginProperty> properties = super.getProperties();
+		if (properties != null || hyperswitchResponseRecord == null) {
+			return properties;
+		}
+		if (lazyProperties == null) {
+			final Map<?, ?> additionalData = HyperswitchDao
+					.mapFromAdditionalDataString(hyperswitchResponseRecord.getAdditionalData());
+			lazyProperties = PluginProperties.buildPluginProperties(additionalData);
+		}
+		return lazyProperties;
+	}
+
+	private static String getStatus(final HyperswitchResponsesRecord hyperswitchResponsesRecord) {
+		if (hyperswitchResponsesRecord.getStatus() != null) {
+			return hyperswitchResponsesRecord.getStatus();
+		}
+		// Rows written before the status column was populated
+		final Object status = HyperswitchDao.mapFromAdditionalDataString(hyperswitchResponsesRecord.getAdditionalData()).get("status");
+		return status == null ? null : status.toString();
+	}
+
+	private static DateTime toDateTime(final LocalDateTime localDateTime) {
+		return new DateTime(localDateTime.toInstant(ZoneOffset.UTC).toEpochMilli(), DateTimeZone.UTC);
+	}
+
+	private static PaymentPluginStatus getPaymentPluginStatus(final String status) {
         if ("succeeded".equals(status) || "requires_capture".equals(status)) {
             return PaymentPluginStatus.PROCESSED;
         } else if("cancelled".equals(status)) {
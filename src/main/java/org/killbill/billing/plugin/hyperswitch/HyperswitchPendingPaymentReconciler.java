@@ -0,0 +1,205 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.io.Closeable;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.plugin.hyperswitch.client.HyperswitchClientRegistry;
+import org.killbill.billing.plugin.hyperswitch.dao.HyperswitchDao;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchResponsesRecord;
+import org.killbill.clock.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hyperswitch.client.api.PaymentsApi;
+
+/**
+ * Periodically syncs Hyperswitch payments left in a non-terminal status, instead of waiting for
+ * the Janitor (or a client) to call getPaymentInfo. Work is claimed in batches from hyperswitch_responses,
+ * so that several Kill Bill nodes can run the reconciler concurrently. Payments which stay in the same status are
+ * synced less and less often, and payments older than the maximum age are left to the Janitor.
+ */
+public class HyperswitchPendingPaymentReconciler implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HyperswitchPendingPaymentReconciler.class);
+
+    static final List<String> STATUSES_TO_SYNC = ImmutableList.of("processing", "requires_capture");
+
+    private final HyperswitchDao hyperswitchDao;
+    private final HyperswitchPaymentRefresher hyperswitchPaymentRefresher;
+    private final HyperswitchConfigurationHandler hyperswitchConfigurationHandler;
+    private final HyperswitchClientRegistry hyperswitchClientRegistry;
+    private final Clock clock;
+    private final int batchSize;
+    private final int leaseSeconds;
+    private final int maxBackoffSeconds;
+    private final int maxAgeSeconds;
+    private final double permitsPerSecondPerTenant;
+    private final ConcurrentMap<UUID, RateLimiter> tenantRateLimiters = new ConcurrentHashMap<UUID, RateLimiter>();
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong syncedPayments = new AtomicLong();
+    private volatile double syncedPaymentsPerSecond;
+    private volatile long lagSeconds;
+
+    public HyperswitchPendingPaymentReconciler(final HyperswitchDao hyperswitchDao,
+                                               final HyperswitchPaymentRefresher hyperswitchPaymentRefresher,
+                                               final HyperswitchConfigurationHandler hyperswitchConfigurationHandler,
+                                               final HyperswitchClientRegistry hyperswitchClientRegistry,
+                                               final Clock clock,
+                                               final int batchSize,
+                                               final int leaseSeconds,
+                                               final int maxBackoffSeconds,
+                                               final int maxAgeSeconds,
+                                               final double permitsPerSecondPerTenant) {
+        this.hyperswitchDao = hyperswitchDao;
+        this.hyperswitchPaymentRefresher = hyperswitchPaymentRefresher;
+        this.hyperswitchConfigurationHandler = hyperswitchConfigurationHandler;
+        this.hyperswitchClientRegistry = hyperswitchClientRegistry;
+        this.clock = clock;
+        this.batchSize = batchSize;
+        this.leaseSeconds = leaseSeconds;
+        this.maxBackoffSeconds = maxBackoffSeconds;
+        this.maxAgeSeconds = maxAgeSeconds;
+        this.permitsPerSecondPerTenant = permitsPerSecondPerTenant;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("hyperswitch-reconciler-%d")
+                                                                                             .setDaemon(true)
+                                                                                             .build());
+    }
+
+    public void start(final long intervalSeconds) {
+        logger.info("Starting pending payment reconciler (interval={}s, batchSize={})", intervalSeconds, batchSize);
+        scheduler.scheduleWithFixedDelay(this::runSafely, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Claim and sync batches until there is nothing left to do.
+     *
+     * @return the number of payments synced
+     */
+    public int reconcile() throws SQLException {
+        final long startNanos = System.nanoTime();
+        int synced = 0;
+        List<HyperswitchResponsesRecord> claimed;
+        do {
+            claimed = hyperswitchDao.claimResponsesToSync(STATUSES_TO_SYNC, batchSize, clock.getUTCNow(), leaseSeconds, maxBackoffSeconds, maxAgeSeconds);
+            synced += sync(claimed);
+        } while (claimed.size() == batchSize && !Thread.currentThread().isInterrupted());
+
+        final long elapsedNanos = System.nanoTime() - startNanos;
+        syncedPayments.addAndGet(synced);
+        syncedPaymentsPerSecond = elapsedNanos == 0 ? 0 : synced * 1e9 / elapsedNanos;
+        lagSeconds = computeLagSeconds(clock.getUTCNow());
+        if (synced > 0) {
+            logger.info("Synced {} pending payments ({} payments/s, lag={}s)", synced, String.format("%.2f", syncedPaymentsPerSecond), lagSeconds);
+        }
+        return synced;
+    }
+
+    /**
+     * @return the total number of payments synced since startup
+     */
+    public long getSyncedPayments() {
+        return syncedPayments.get();
+    }
+
+    /**
+     * @return the throughput of the last reconciliation run
+     */
+    public double getSyncedPaymentsPerSecond() {
+        return syncedPaymentsPerSecond;
+    }
+
+    /**
+     * @return the age, in seconds, of the oldest payment (within the maximum age) still waiting for a terminal status
+     */
+    public long getLagSeconds() {
+        return lagSeconds;
+    }
+
+    private void runSafely() {
+        try {
+            reconcile();
+        } catch (final Exception e) {
+            // Don't let the exception cancel the next runs
+            logger.warn("Pending payment reconciliation failed", e);
+        }
+    }
+
+    private int sync(final List<HyperswitchResponsesRecord> claimed) throws SQLException {
+        final Map<UUID, Map<UUID, String>> paymentIdsByTenant = new LinkedHashMap<UUID, Map<UUID, String>>();
+        for (final HyperswitchResponsesRecord response : claimed) {
+            paymentIdsByTenant.computeIfAbsent(UUID.fromString(response.getKbTenantId()), k -> new LinkedHashMap<UUID, String>())
+                              .put(UUID.fromString(response.getKbPaymentTransactionId()), response.getPaymentAttemptId());
+        }
+
+        int synced = 0;
+        for (final Map.Entry<UUID, Map<UUID, String>> entry : paymentIdsByTenant.entrySet()) {
+            final UUID kbTenantId = entry.getKey();
+            final PaymentsApi paymentsApi = buildHyperswitchClient(kbTenantId);
+            if (paymentsApi == null) {
+                logger.warn("Skipping pending payments of tenant {}: Hyperswitch isn't configured", kbTenantId);
+                continue;
+            }
+            tenantRateLimiters.computeIfAbsent(kbTenantId, k -> RateLimiter.create(permitsPerSecondPerTenant))
+                              .acquire(entry.getValue().size());
+            synced += hyperswitchPaymentRefresher.refresh(kbTenantId, paymentsApi, entry.getValue());
+        }
+        return synced;
+    }
+
+    private PaymentsApi buildHyperswitchClient(final UUID kbTenantId) {
+        final HyperswitchTenantConfig config = hyperswitchConfigurationHandler.getTenantConfig(kbTenantId);
+        if (!config.isConfigured()) {
+            return null;
+        }
+        return hyperswitchClientRegistry.getPaymentsApi(kbTenantId, config);
+    }
+
+    private long computeLagSeconds(final DateTime utcNow) throws SQLException {
+        final LocalDateTime oldest = hyperswitchDao.getOldestResponseDate(STATUSES_TO_SYNC, utcNow.minusSeconds(maxAgeSeconds));
+        if (oldest == null) {
+            return 0;
+        }
+        final LocalDateTime now = LocalDateTime.of(utcNow.getYear(), utcNow.getMonthOfYear(), utcNow.getDayOfMonth(),
+                                                   utcNow.getHourOfDay(), utcNow.getMinuteOfHour(), utcNow.getSecondOfMinute());
+        return Math.max(0, Duration.between(oldest, now).getSeconds());
+    }
+}
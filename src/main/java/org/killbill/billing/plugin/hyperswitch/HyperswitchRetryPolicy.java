@@ -0,0 +1,223 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.plugin.hyperswitch.HyperswitchCircuitBreaker.CallNotPermittedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import feign.FeignException;
+
+/**
+ * Retries of the Hyperswitch calls which change a payment (create, capture, void, refund).
+ * <p>
+ * Requests carry ids derived from the Kill Bill transaction id ({@link #toPaymentId(UUID)}, {@link #toRefundId(UUID)}),
+ * so that Hyperswitch rejects a retry whose original attempt went through (e.g. the response was lost on a read
+ * timeout) instead of charging twice. Transient failures (I/O errors, 429, 5xx) are retried with a jittered exponential
+ * back-off, as long as the retry starts within {@code budgetMillis} of the first attempt. When a retry is rejected with a
+ * client error, the outcome of the original attempt is fetched instead.
+ * <p>
+ * Calls without such an id (captures) are only retried when the request can't have been processed: connection failures,
+ * 429 and 503 (see {@link #callNotIdempotent(String, HyperswitchMetrics.Call)}).
+ */
+public class HyperswitchRetryPolicy {
+
+    private static final Logger logger = LoggerFactory.getLogger(HyperswitchRetryPolicy.class);
+
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final long budgetNanos;
+
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder recoveries = new LongAdder();
+
+    public HyperswitchRetryPolicy(final int maxAttempts,
+                                  final long initialBackoffMillis,
+                                  final long maxBackoffMillis,
+                                  final long budgetMillis) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(initialBackoffMillis);
+        this.maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(initialBackoffMillis, maxBackoffMillis));
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+    }
+
+    public static HyperswitchRetryPolicy create(final HyperswitchConfigProperties config) {
+        return new HyperswitchRetryPolicy(config.getRetryMaxAttempts(),
+                                          config.getRetryInitialBackoffMillis(),
+                                          config.getRetryMaxBackoffMillis(),
+                                          config.getRetryBudgetMillis());
+    }
+
+    /**
+     * Hyperswitch payment id of a Kill Bill (authorize or purchase) transaction
+     */
+    public static String toPaymentId(final UUID kbTransactionId) {
+        return "pay_" + kbTransactionId.toString().replace("-", "");
+    }
+
+    /**
+     * Hyperswitch refund id of a Kill Bill refund transaction
+     */
+    public static String toRefundId(final UUID kbTransactionId) {
+        return "ref_" + kbTransactionId.toString().replace("-", "");
+    }
+
+    /**
+     * @param gatewayCall one attempt of the call
+     * @param recovery    fetches the outcome of an earlier attempt, when a retry is rejected by Hyperswitch (null if
+     *                    that attempt didn't go through)
+     * @throws CallNotPermittedException if the first attempt was rejected by the circuit breaker (once an attempt was sent,
+     *                                   the failure of that attempt is thrown instead)
+     */
+    public <T> T call(final String call,
+                      final HyperswitchMetrics.Call<T, CallNotPermittedException> gatewayCall,
+                      @Nullable final HyperswitchMetrics.Call<T, RuntimeException> recovery) throws CallNotPermittedException {
+        return call(call, gatewayCall, recovery, true);
+    }
+
+    /**
+     * Call without idempotency key: a read timeout or a 5xx may mean the request went through, so only failures where
+     * Hyperswitch didn't process it are retried, and a rejected retry isn't recovered (the status of the payment could be
+     * the outcome of another call).
+     *
+     * @see #call(String, HyperswitchMetrics.Call, HyperswitchMetrics.Call)
+     */
+    public <T> T callNotIdempotent(final String call,
+                                   final HyperswitchMetrics.Call<T, CallNotPermittedException> gatewayCall) throws CallNotPermittedException {
+        return call(call, gatewayCall, null, false);
+    }
+
+    private <T> T call(final String call,
+                       final HyperswitchMetrics.Call<T, CallNotPermittedException> gatewayCall,
+                       @Nullable final HyperswitchMetrics.Call<T, RuntimeException> recovery,
+                       final boolean idempotent) throws CallNotPermittedException {
+        final long start = System.nanoTime();
+        FeignException lastFailure = null;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return gatewayCall.call();
+            } catch (final CallNotPermittedException e) {
+                if (lastFailure == null) {
+                    throw e;
+                }
+                // An earlier attempt may have reached Hyperswitch: its outcome is unknown
+                throw lastFailure;
+            } catch (final FeignException e) {
+                if (lastFailure != null && recovery != null && isClientError(e)) {
+                    return recover(call, recovery, e, lastFailure);
+                }
+                if (!(idempotent ? isTransient(e) : isNotProcessed(e)) || attempt >= maxAttempts) {
+                    throw e;
+                }
+                lastFailure = e;
+            }
+
+            final long backoffNanos = backoffNanos(attempt);
+            if (System.nanoTime() + backoffNanos - start > budgetNanos) {
+                throw lastFailure;
+            }
+            logger.warn("Retrying Hyperswitch call {} (attempt {}/{}) after {}", call, attempt + 1, maxAttempts, lastFailure.toString());
+            retries.increment();
+            try {
+                TimeUnit.NANOSECONDS.sleep(backoffNanos);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw lastFailure;
+            }
+        }
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    public long getRecoveries() {
+        return recoveries.sum();
+    }
+
+    private <T> T recover(final String call,
+                          final HyperswitchMetrics.Call<T, RuntimeException> recovery,
+                          final FeignException rejection,
+                          final FeignException lastFailure) {
+        logger.info("Hyperswitch call {} was rejected on retry ({}), fetching the outcome of the previous attempt", call, rejection.status());
+        final T result;
+        try {
+            result = recovery.call();
+        } catch (final FeignException e) {
+            // The outcome of the previous attempt is still unknown
+            logger.warn("Unable to fetch the outcome of Hyperswitch call {}", call, e);
+            throw lastFailure;
+        }
+        if (result == null) {
+            // The previous attempt didn't go through after all: the rejection stands
+            throw rejection;
+        }
+        recoveries.increment();
+        return result;
+    }
+
+    /**
+     * Full jitter: uniformly distributed between 0 and the exponential back-off
+     */
+    private long backoffNanos(final int attempt) {
+        final long exponentialNanos = Math.min(maxBackoffNanos, initialBackoffNanos << Math.min(attempt - 1, 30));
+        return exponentialNanos <= 0 ? 0L : ThreadLocalRandom.current().nextLong(exponentialNanos + 1);
+    }
+
+    static boolean isTransient(final FeignException e) {
+        // RetryableException (connection refused, read timeout, ...) has no status
+        return e.status() < 400 || e.status() == 429 || e.status() >= 500;
+    }
+
+    /**
+     * @return true if Hyperswitch can't have processed the request: the connection couldn't be established, or the request
+     * was throttled (429) or refused by an unavailable service (503)
+     */
+    static boolean isNotProcessed(final FeignException e) {
+        if (e.status() == 429 || e.status() == 503) {
+            return true;
+        }
+        if (e.status() >= 400) {
+            return false;
+        }
+        final Throwable cause = e.getCause();
+        return cause instanceof ConnectException ||
+               cause instanceof NoRouteToHostException ||
+               cause instanceof UnknownHostException ||
+               (cause instanceof SocketTimeoutException && cause.getMessage() != null && cause.getMessage().startsWith("connect"));
+    }
+
+    /**
+     * @return true if Hyperswitch rejected the request (4xx other than 429): it wasn't processed
+     */
+    static boolean isClientError(final FeignException e) {
+        return e.status() >= 400 && e.status() < 500 && e.status() != 429;
+    }
+}
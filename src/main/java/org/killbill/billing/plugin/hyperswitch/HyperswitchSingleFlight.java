@@ -0,0 +1,161 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller (the leader) runs the load, the others wait for
+ * its outcome instead of running their own. Outcomes are then remembered for a short while (successes for
+ * {@code ttlMillis}, failures for {@code negativeTtlMillis}), so that a burst of loads of the same key results in
+ * at most one load per window. Null values (e.g. a load which gave up on its deadline) aren't remembered.
+ */
+final class HyperswitchSingleFlight<K, V> {
+
+    @FunctionalInterface
+    interface Loader<V> {
+
+        @Nullable
+        V load() throws InterruptedException;
+    }
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<K, CompletableFuture<V>>();
+    // Null if outcomes aren't remembered
+    @Nullable
+    private final Cache<K, Outcome<V>> outcomes;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+
+    private final LongAdder coalescedLoads = new LongAdder();
+    private final LongAdder cachedLoads = new LongAdder();
+
+    HyperswitchSingleFlight(final long maximumSize, final long ttlMillis, final long negativeTtlMillis) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis);
+        final long maxTtlMillis = Math.max(ttlMillis, negativeTtlMillis);
+        this.outcomes = maxTtlMillis <= 0 ? null : CacheBuilder.newBuilder()
+                                                               .maximumSize(maximumSize)
+                                                               .expireAfterWrite(maxTtlMillis, TimeUnit.MILLISECONDS)
+                                                               .<K, Outcome<V>>build();
+    }
+
+    /**
+     * @param deadline {@link System#nanoTime()} after which a caller waiting for the leader gives up
+     * @return the value loaded (or remembered), null if the deadline was exceeded
+     */
+    @Nullable
+    V get(final K key, final Loader<V> loader, final long deadline) throws InterruptedException {
+        if (outcomes != null) {
+            final Outcome<V> outcome = outcomes.getIfPresent(key);
+            if (outcome != null && outcome.expiresAtNanos - System.nanoTime() > 0) {
+                cachedLoads.increment();
+                return outcome.get();
+            }
+        }
+
+        final CompletableFuture<V> flight = new CompletableFuture<V>();
+        final CompletableFuture<V> leaderFlight = inFlight.putIfAbsent(key, flight);
+        if (leaderFlight != null) {
+            coalescedLoads.increment();
+            return await(leaderFlight, deadline);
+        }
+
+        try {
+            final V value = loader.load();
+            if (value != null) {
+                remember(key, new Outcome<V>(value, null, System.nanoTime() + ttlNanos), ttlNanos);
+            }
+            flight.complete(value);
+            return value;
+        } catch (final RuntimeException e) {
+            remember(key, new Outcome<V>(null, e, System.nanoTime() + negativeTtlNanos), negativeTtlNanos);
+            flight.completeExceptionally(e);
+            throw e;
+        } catch (final InterruptedException e) {
+            // Only the leader was interrupted: let the followers load it again
+            flight.complete(null);
+            throw e;
+        } finally {
+            // Errors: don't leave the followers waiting until their deadline
+            flight.complete(null);
+            // After the outcome was remembered, so that there is no window where a new caller loads it again
+            inFlight.remove(key, flight);
+        }
+    }
+
+    long getCoalescedLoads() {
+        return coalescedLoads.sum();
+    }
+
+    long getCachedLoads() {
+        return cachedLoads.sum();
+    }
+
+    private void remember(final K key, final Outcome<V> outcome, final long ttl) {
+        if (outcomes != null && ttl > 0) {
+            outcomes.put(key, outcome);
+        }
+    }
+
+    @Nullable
+    private static <V> V await(final CompletableFuture<V> flight, final long deadline) throws InterruptedException {
+        try {
+            return flight.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (final TimeoutException e) {
+            return null;
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static final class Outcome<V> {
+
+        @Nullable
+        private final V value;
+        @Nullable
+        private final RuntimeException failure;
+        private final long expiresAtNanos;
+
+        private Outcome(@Nullable final V value, @Nullable final RuntimeException failure, final long expiresAtNanos) {
+            this.value = value;
+            this.failure = failure;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        private V get() {
+            if (failure != null) {
+                throw failure;
+            }
+            return value;
+        }
+    }
+}
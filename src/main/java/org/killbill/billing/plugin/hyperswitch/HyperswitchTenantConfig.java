@@ -0,0 +1,165 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.util.Locale;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.plugin.hyperswitch.HyperswitchConfigProperties.Environment;
+import org.killbill.billing.plugin.hyperswitch.client.HyperswitchTransportSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable snapshot of the configuration of a tenant, as used by the payment operations. Credentials (and their
+ * environment variable fallbacks) and the endpoint are resolved once, when the configuration is (re)loaded, see
+ * {@link HyperswitchConfigurationHandler#getTenantConfig}.
+ */
+public final class HyperswitchTenantConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(HyperswitchTenantConfig.class);
+
+    @Nullable
+    private final String apiKey;
+    @Nullable
+    private final String profileId;
+    // Null unless set: the client then keeps its default endpoint
+    @Nullable
+    private final Environment environment;
+    @Nullable
+    private final String baseUrl;
+    @Nullable
+    private final String webhookSecret;
+    private final HyperswitchTransportSettings transportSettings;
+    private final int bulkheadMaxConcurrentCalls;
+    private final int refreshMaxConcurrency;
+    private final int bulkMaxItems;
+
+    private HyperswitchTenantConfig(@Nullable final String apiKey,
+                                    @Nullable final String profileId,
+                                    @Nullable final Environment environment,
+                                    @Nullable final String baseUrl,
+                                    @Nullable final String webhookSecret,
+                                    final HyperswitchTransportSettings transportSettings,
+                                    final int bulkheadMaxConcurrentCalls,
+                                    final int refreshMaxConcurrency,
+                                    final int bulkMaxItems) {
+        this.apiKey = apiKey;
+        this.profileId = profileId;
+        this.environment = environment;
+        if (baseUrl != null && !baseUrl.isEmpty()) {
+            this.baseUrl = baseUrl;
+        } else {
+            this.baseUrl = environment != null ? environment.getBaseUrl() : null;
+        }
+        this.webhookSecret = webhookSecret;
+        this.transportSettings = transportSettings;
+        this.bulkheadMaxConcurrentCalls = bulkheadMaxConcurrentCalls;
+        this.refreshMaxConcurrency = refreshMaxConcurrency;
+        this.bulkMaxItems = bulkMaxItems;
+    }
+
+    public static HyperswitchTenantConfig resolve(final HyperswitchConfigProperties config) {
+        final Environment environment = toEnvironment(config.getEnvironment());
+        // Sandbox tenants get a small pool of their own, the others share a tuned one
+        final boolean sandbox = environment == Environment.SANDBOX;
+        final HyperswitchTransportSettings transportSettings = new HyperswitchTransportSettings(sandbox,
+                                                                                                sandbox ? config.getSandboxMaxIdleConnections() : config.getMaxIdleConnections(),
+                                                                                                config.getKeepAliveSeconds(),
+                                                                                                config.isHttp2Enabled(),
+                                                                                                config.isGzipEnabled(),
+                                                                                                config.getConnectTimeoutMillis(),
+                                                                                                config.getReadTimeoutMillis(),
+                                                                                                config.getWriteTimeoutMillis());
+        return new HyperswitchTenantConfig(config.getHSApiKey(),
+                                           config.getProfileId(),
+                                           environment,
+                                           config.getBaseUrl(),
+                                           config.getWebhookSecret(),
+                                           transportSettings,
+                                           config.getBulkheadMaxConcurrentCalls(),
+                                           config.getRefreshMaxConcurrency(),
+                                           config.getBulkMaxItems());
+    }
+
+    /**
+     * @return false if no API key is configured for the tenant (nor in the environment)
+     */
+    public boolean isConfigured() {
+        return apiKey != null && !apiKey.isEmpty();
+    }
+
+    @Nullable
+    public String getApiKey() {
+        return apiKey;
+    }
+
+    @Nullable
+    public String getProfileId() {
+        return profileId;
+    }
+
+    @Nullable
+    public Environment getEnvironment() {
+        return environment;
+    }
+
+    /**
+     * @return the endpoint of the tenant, null for the default endpoint of the client
+     */
+    @Nullable
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    @Nullable
+    public String getWebhookSecret() {
+        return webhookSecret;
+    }
+
+    public HyperswitchTransportSettings getTransportSettings() {
+        return transportSettings;
+    }
+
+    public int getBulkheadMaxConcurrentCalls() {
+        return bulkheadMaxConcurrentCalls;
+    }
+
+    public int getRefreshMaxConcurrency() {
+        return refreshMaxConcurrency;
+    }
+
+    public int getBulkMaxItems() {
+        return bulkMaxItems;
+    }
+
+    @Nullable
+    private static Environment toEnvironment(@Nullable final String environment) {
+        if (environment == null || environment.isEmpty()) {
+            return null;
+        }
+        try {
+            return Environment.valueOf(environment.trim().toUpperCase(Locale.ROOT));
+        } catch (final IllegalArgumentException e) {
+            // Never default to production
+            logger.warn("Unknown Hyperswitch environment '{}', using the sandbox", environment);
+            return Environment.SANDBOX;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch;
+
+/**
+ * The fields of a Hyperswitch webhook the plugin cares about.
+ */
+public class HyperswitchWebhookEvent {
+
+    private final String eventId;
+    private final String eventType;
+    private final String paymentId;
+    private final String refundId;
+    private final String status;
+
+    public HyperswitchWebhookEvent(final String eventId,
+                                   final String eventType,
+                                   final String paymentId,
+                                   final String refundId,
+                                   final String status) {
+        this.eventId = eventId;
+        this.eventType = eventType;
+        this.paymentId = paymentId;
+        this.refundId = refundId;
+        this.status = status;
+    }
+
+    public String getEventId() {
+        return eventId;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public String getPaymentId() {
+        return paymentId;
+    }
+
+    /**
+     * @return the refund id for refund events, null otherwise
+     */
+    public String getRefundId() {
+        return refundId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    @Override
+    public String toString() {
+        return "HyperswitchWebhookEvent{" +
+               "eventId='" + eventId + '\'' +
+               ", eventType='" + eventType + '\'' +
+               ", paymentId='" + paymentId + '\'' +
+               ", refundId='" + refundId + '\'' +
+               ", status='" + status + '\'' +
+               '}';
+    }
+}
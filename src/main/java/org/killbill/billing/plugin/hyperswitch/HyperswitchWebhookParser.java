@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.annotation.Nullable;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Verifies and parses Hyperswitch webhooks. The payload is read with the streaming parser: only the event
+ * identifiers and the payment/refund id and status are extracted, everything else is skipped.
+ *
+ * <pre>
+ * {"event_id": "...", "event_type": "payment_succeeded",
+ *  "content": {"type": "payment_details", "object": {"payment_id": "...", "status": "succeeded", ...}}}
+ * </pre>
+ */
+public abstract class HyperswitchWebhookParser {
+
+    // Header set by Hyperswitch: hex encoded HMAC-SHA512 of the body, keyed with the payment response hash key
+    public static final String SIGNATURE_HEADER = "x-webhook-signature-512";
+
+    private static final String HMAC_ALGORITHM = "HmacSHA512";
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    public static boolean isSignatureValid(final String payload, @Nullable final String signature, @Nullable final String secret) {
+        if (signature == null || secret == null || secret.isEmpty()) {
+            return false;
+        }
+
+        final byte[] expected;
+        try {
+            final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM));
+            expected = BaseEncoding.base16().lowerCase().encode(mac.doFinal(payload.getBytes(StandardCharsets.UTF_8)))
+                                   .getBytes(StandardCharsets.UTF_8);
+        } catch (final NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new IllegalStateException(e);
+        }
+        // Constant time comparison
+        return MessageDigest.isEqual(expected, signature.trim().toLowerCase().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static HyperswitchWebhookEvent parse(final String payload) throws IOException {
+        try (final JsonParser parser = jsonFactory.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON object");
+            }
+
+            String eventId = null;
+            String eventType = null;
+            final ObjectFields objectFields = new ObjectFields();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String fieldName = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if ("event_id".equals(fieldName)) {
+                    eventId = parser.getValueAsString();
+                } else if ("event_type".equals(fieldName)) {
+                    eventType = parser.getValueAsString();
+                } else if ("content".equals(fieldName) && value == JsonToken.START_OBJECT) {
+                    parseContent(parser, objectFields);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return new HyperswitchWebhookEvent(eventId, eventType, objectFields.paymentId, objectFields.refundId, objectFields.status);
+        }
+    }
+
+    private static void parseContent(final JsonParser parser, final ObjectFields objectFields) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String fieldName = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            if ("object".equals(fieldName) && value == JsonToken.START_OBJECT) {
+                parseObject(parser, objectFields);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static void parseObject(final JsonParser parser, final ObjectFields objectFields) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String fieldName = parser.getCurrentName();
+            parser.nextToken();
+            if ("payment_id".equals(fieldName)) {
+                objectFields.paymentId = parser.getValueAsString();
+            } else if ("refund_id".equals(fieldName)) {
+                objectFields.refundId = parser.getValueAsString();
+            } else if ("status".equals(fieldName)) {
+                objectFields.status = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static final class ObjectFields {
+
+        private String paymentId;
+        private String refundId;
+        private String status;
+    }
+}
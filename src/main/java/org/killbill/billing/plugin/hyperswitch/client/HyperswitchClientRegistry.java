@@ -0,0 +1,335 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.plugin.hyperswitch.HyperswitchMetrics;
+import org.killbill.billing.plugin.hyperswitch.HyperswitchTenantConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.hyperswitch.client.HsApiClient;
+import com.hyperswitch.client.api.MandatesApi;
+import com.hyperswitch.client.api.PaymentsApi;
+import com.hyperswitch.client.api.RefundsApi;
+import feign.Client;
+import feign.Request;
+import feign.Response;
+import feign.Util;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * Tenant-keyed cache of Hyperswitch Feign clients. Clients are built once per tenant and configuration (API key,
+ * endpoint and transport settings), and are rebuilt when the tenant configuration changes.
+ * <p>
+ * Tenants with equal transport settings share an OkHttp client, and its keep-alive connection pool, except for
+ * isolated (sandbox) tenants, which each get a transport of their own. Transports are reference counted by the
+ * tenants whose clients use them, and closed once no tenant uses them any more.
+ */
+public class HyperswitchClientRegistry implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HyperswitchClientRegistry.class);
+
+    // ConcurrentHashMap doesn't allow null keys: the global (default) configuration is stored under this key
+    private static final UUID DEFAULT_TENANT_KEY = new UUID(0L, 0L);
+
+    private final ConcurrentMap<UUID, HyperswitchClients> clients = new ConcurrentHashMap<UUID, HyperswitchClients>();
+    private final Set<UUID> invalidatedTenants = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<TransportKey, Transport> transports = new ConcurrentHashMap<TransportKey, Transport>();
+    // Transport used by the clients of each tenant (absent with a transport for all the tenants)
+    private final ConcurrentMap<UUID, TransportKey> tenantTransports = new ConcurrentHashMap<UUID, TransportKey>();
+    // Transport of all the tenants (e.g. to point to a stub server), null to build them from the tenant settings
+    @Nullable
+    private final OkHttpClient httpClient;
+    // Overrides the Hyperswitch endpoint of all the tenants, null for the endpoint of the tenant
+    @Nullable
+    private final String basePath;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+
+    public HyperswitchClientRegistry() {
+        this(null, null);
+    }
+
+    public HyperswitchClientRegistry(final OkHttpClient httpClient) {
+        this(httpClient, null);
+    }
+
+    public HyperswitchClientRegistry(@Nullable final OkHttpClient httpClient, @Nullable final String basePath) {
+        this.httpClient = httpClient;
+        this.basePath = basePath;
+    }
+
+    public PaymentsApi getPaymentsApi(@Nullable final UUID kbTenantId, final HyperswitchTenantConfig config) {
+        return getClients(kbTenantId, config).getPaymentsApi();
+    }
+
+    public RefundsApi getRefundsApi(@Nullable final UUID kbTenantId, final HyperswitchTenantConfig config) {
+        return getClients(kbTenantId, config).getRefundsApi();
+    }
+
+    public MandatesApi getMandatesApi(@Nullable final UUID kbTenantId, final HyperswitchTenantConfig config) {
+        return getClients(kbTenantId, config).getMandatesApi();
+    }
+
+    public HyperswitchClients getClients(@Nullable final UUID kbTenantId, final HyperswitchTenantConfig config) {
+        final UUID key = toKey(kbTenantId);
+        final HyperswitchClients existing = clients.get(key);
+        if (existing != null && existing.isFor(config)) {
+            hits.increment();
+            return existing;
+        }
+
+        return clients.compute(key, (k, current) -> {
+            if (current != null && current.isFor(config)) {
+                // Built concurrently by another thread
+                hits.increment();
+                return current;
+            }
+            if (current != null || invalidatedTenants.remove(k)) {
+                rebuilds.increment();
+                logger.info("Rebuilding Hyperswitch clients for tenant {}", kbTenantId);
+            } else {
+                misses.increment();
+            }
+            final HyperswitchClients built = buildClients(k, config);
+            // Acquired by buildClients: the transport of the previous clients is released once the new one is held,
+            // so that a shared transport isn't closed and rebuilt in between
+            final TransportKey transportKey = toTransportKey(k, config.getTransportSettings());
+            final TransportKey previous = transportKey == null ? tenantTransports.remove(k) : tenantTransports.put(k, transportKey);
+            if (previous != null) {
+                releaseTransport(previous);
+            }
+            return built;
+        });
+    }
+
+    /**
+     * Drop the cached clients of a tenant, typically on a configuration change. The next call rebuilds them.
+     */
+    public void invalidate(@Nullable final UUID kbTenantId) {
+        clients.computeIfPresent(toKey(kbTenantId), (k, current) -> {
+            invalidatedTenants.add(k);
+            final TransportKey transportKey = tenantTransports.remove(k);
+            if (transportKey != null) {
+                releaseTransport(transportKey);
+            }
+            return null;
+        });
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getRebuilds() {
+        return rebuilds.sum();
+    }
+
+    public int size() {
+        return clients.size();
+    }
+
+    public int getTransports() {
+        return transports.size();
+    }
+
+    @Override
+    public void close() {
+        clients.clear();
+        tenantTransports.clear();
+        for (final Transport transport : transports.values()) {
+            close(transport.client);
+        }
+        transports.clear();
+        if (httpClient != null) {
+            close(httpClient);
+        }
+    }
+
+    private HyperswitchClients buildClients(final UUID key, final HyperswitchTenantConfig config) {
+        final HsApiClient apiClient = new HsApiClient("api_key", config.getApiKey());
+        if (basePath != null || config.getBaseUrl() != null) {
+            apiClient.setBasePath(basePath != null ? basePath : config.getBaseUrl());
+        }
+        final OkHttpClient transport = httpClient != null ? httpClient : acquireTransport(key, config.getTransportSettings());
+        apiClient.getFeignBuilder().client(new TimedClient(new feign.okhttp.OkHttpClient(transport)));
+        // Feign's default options (10s connect, 60s read) would otherwise override the timeouts of the OkHttp client
+        apiClient.getFeignBuilder().options(new Request.Options(transport.connectTimeoutMillis(), TimeUnit.MILLISECONDS,
+                                                                transport.readTimeoutMillis(), TimeUnit.MILLISECONDS,
+                                                                transport.followRedirects()));
+        return new HyperswitchClients(config.getApiKey(),
+                                      config.getBaseUrl(),
+                                      config.getTransportSettings(),
+                                      apiClient.buildClient(PaymentsApi.class),
+                                      apiClient.buildClient(RefundsApi.class),
+                                      apiClient.buildClient(MandatesApi.class));
+    }
+
+    private OkHttpClient acquireTransport(final UUID key, final HyperswitchTransportSettings settings) {
+        return transports.compute(toTransportKey(key, settings), (k, current) -> {
+            final Transport transport;
+            if (current != null) {
+                transport = current;
+            } else {
+                logger.info("Building Hyperswitch transport (maxIdleConnections={}, http2={}, isolated tenant={})",
+                            settings.getMaxIdleConnections(), settings.isHttp2Enabled(), k.kbTenantId);
+                transport = new Transport(buildTransport(settings));
+            }
+            transport.references++;
+            return transport;
+        }).client;
+    }
+
+    private void releaseTransport(final TransportKey transportKey) {
+        transports.computeIfPresent(transportKey, (k, transport) -> {
+            if (--transport.references > 0) {
+                return transport;
+            }
+            logger.info("Closing Hyperswitch transport (maxIdleConnections={}, http2={}, isolated tenant={})",
+                        k.settings.getMaxIdleConnections(), k.settings.isHttp2Enabled(), k.kbTenantId);
+            close(transport.client);
+            return null;
+        });
+    }
+
+    @Nullable
+    private TransportKey toTransportKey(final UUID key, final HyperswitchTransportSettings settings) {
+        if (httpClient != null) {
+            return null;
+        }
+        return new TransportKey(settings.isIsolated() ? key : null, settings);
+    }
+
+    private static OkHttpClient buildTransport(final HyperswitchTransportSettings settings) {
+        final OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(settings.getMaxIdleConnections(), settings.getKeepAliveSeconds(), TimeUnit.SECONDS))
+                .connectTimeout(settings.getConnectTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .readTimeout(settings.getReadTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .writeTimeout(settings.getWriteTimeoutMillis(), TimeUnit.MILLISECONDS)
+                // HTTP/2 is negotiated with ALPN, HTTP/1.1 is the fallback
+                .protocols(settings.isHttp2Enabled() ? ImmutableList.of(Protocol.HTTP_2, Protocol.HTTP_1_1) : ImmutableList.of(Protocol.HTTP_1_1));
+        if (!settings.isGzipEnabled()) {
+            // OkHttp asks for gzip (and inflates the responses) unless the request sets its own encoding
+            builder.addInterceptor(chain -> chain.proceed(chain.request().newBuilder().header("Accept-Encoding", "identity").build()));
+        }
+        return builder.build();
+    }
+
+    private static void close(final OkHttpClient transport) {
+        // In-flight calls complete, only the idle connections are closed
+        transport.connectionPool().evictAll();
+        transport.dispatcher().executorService().shutdown();
+    }
+
+    private static UUID toKey(@Nullable final UUID kbTenantId) {
+        return kbTenantId == null ? DEFAULT_TENANT_KEY : kbTenantId;
+    }
+
+    /**
+     * Shared transport, with the number of tenants whose clients use it (guarded by the compute methods of the map)
+     */
+    private static final class Transport {
+
+        private final OkHttpClient client;
+        private int references;
+
+        private Transport(final OkHttpClient client) {
+            this.client = client;
+        }
+    }
+
+    private static final class TransportKey {
+
+        // Null for shared transports
+        @Nullable
+        private final UUID kbTenantId;
+        private final HyperswitchTransportSettings settings;
+
+        private TransportKey(@Nullable final UUID kbTenantId, final HyperswitchTransportSettings settings) {
+            this.kbTenantId = kbTenantId;
+            this.settings = settings;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final TransportKey that = (TransportKey) o;
+            return Objects.equals(kbTenantId, that.kbTenantId) && settings.equals(that.settings);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kbTenantId, settings);
+        }
+    }
+
+    /**
+     * Accounts the HTTP exchanges (response body included) as gateway time in the span of the calling thread,
+     * so that the rest of the Feign call is attributed to request encoding and response decoding.
+     */
+    private static final class TimedClient implements Client {
+
+        private final Client delegate;
+
+        private TimedClient(final Client delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Response execute(final Request request, final Request.Options options) throws IOException {
+            final long start = HyperswitchMetrics.startSection();
+            try {
+                final Response response = delegate.execute(request, options);
+                if (response.body() == null) {
+                    return response;
+                }
+                return response.toBuilder()
+                               .body(Util.toByteArray(response.body().asInputStream()))
+                               .build();
+            } finally {
+                HyperswitchMetrics.endSection(HyperswitchMetrics.Section.GATEWAY, start);
+            }
+        }
+    }
+}
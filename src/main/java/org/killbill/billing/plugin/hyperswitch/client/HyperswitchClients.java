@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch.client;
+
+import java.util.Objects;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.plugin.hyperswitch.HyperswitchTenantConfig;
+
+import com.hyperswitch.client.api.MandatesApi;
+import com.hyperswitch.client.api.PaymentsApi;
+import com.hyperswitch.client.api.RefundsApi;
+
+/**
+ * Hyperswitch API clients built for a given API key, endpoint and transport.
+ */
+public class HyperswitchClients {
+
+    private final String apiKey;
+    // Null for the default endpoint of the client
+    @Nullable
+    private final String baseUrl;
+    private final HyperswitchTransportSettings transportSettings;
+    private final PaymentsApi paymentsApi;
+    private final RefundsApi refundsApi;
+    private final MandatesApi mandatesApi;
+
+    public HyperswitchClients(final String apiKey,
+                              @Nullable final String baseUrl,
+                              final HyperswitchTransportSettings transportSettings,
+                              final PaymentsApi paymentsApi,
+                              final RefundsApi refundsApi,
+                              final MandatesApi mandatesApi) {
+        this.apiKey = apiKey;
+        this.baseUrl = baseUrl;
+        this.transportSettings = transportSettings;
+        this.paymentsApi = paymentsApi;
+        this.refundsApi = refundsApi;
+        this.mandatesApi = mandatesApi;
+    }
+
+    public PaymentsApi getPaymentsApi() {
+        return paymentsApi;
+    }
+
+    public RefundsApi getRefundsApi() {
+        return refundsApi;
+    }
+
+    public MandatesApi getMandatesApi() {
+        return mandatesApi;
+    }
+
+    boolean isFor(final HyperswitchTenantConfig config) {
+        return apiKey.equals(config.getApiKey()) &&
+               Objects.equals(baseUrl, config.getBaseUrl()) &&
+               transportSettings.equals(config.getTransportSettings());
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch.client;
+
+import java.util.Objects;
+
+/**
+ * HTTP transport settings of a tenant. Tenants with equal settings share the same transport (connection pool
+ * included), unless the transport is isolated, see {@link HyperswitchClientRegistry}.
+ */
+public final class HyperswitchTransportSettings {
+
+    private final boolean isolated;
+    private final int maxIdleConnections;
+    private final long keepAliveSeconds;
+    private final boolean http2Enabled;
+    private final boolean gzipEnabled;
+    private final long connectTimeoutMillis;
+    private final long readTimeoutMillis;
+    private final long writeTimeoutMillis;
+
+    public HyperswitchTransportSettings(final boolean isolated,
+                                        final int maxIdleConnections,
+                                        final long keepAliveSeconds,
+                                        final boolean http2Enabled,
+                                        final boolean gzipEnabled,
+                                        final long connectTimeoutMillis,
+                                        final long readTimeoutMillis,
+                                        final long writeTimeoutMillis) {
+        this.isolated = isolated;
+        this.maxIdleConnections = maxIdleConnections;
+        this.keepAliveSeconds = keepAliveSeconds;
+        this.http2Enabled = http2Enabled;
+        this.gzipEnabled = gzipEnabled;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.writeTimeoutMillis = writeTimeoutMillis;
+    }
+
+    /**
+     * @return true if the tenant gets a transport of its own (e.g. sandbox tenants), instead of sharing it
+     */
+    public boolean isIsolated() {
+        return isolated;
+    }
+
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    public long getKeepAliveSeconds() {
+        return keepAliveSeconds;
+    }
+
+    public boolean isHttp2Enabled() {
+        return http2Enabled;
+    }
+
+    public boolean isGzipEnabled() {
+        return gzipEnabled;
+    }
+
+    public long getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public long getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    public long getWriteTimeoutMillis() {
+        return writeTimeoutMillis;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final HyperswitchTransportSettings that = (HyperswitchTransportSettings) o;
+        return isolated == that.isolated &&
+               maxIdleConnections == that.maxIdleConnections &&
+               keepAliveSeconds == that.keepAliveSeconds &&
+               http2Enabled == that.http2Enabled &&
+               gzipEnabled == that.gzipEnabled &&
+               connectTimeoutMillis == that.connectTimeoutMillis &&
+               readTimeoutMillis == that.readTimeoutMillis &&
+               writeTimeoutMillis == that.writeTimeoutMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(isolated, maxIdleConnections, keepAliveSeconds, http2Enabled, gzipEnabled,
+                            connectTimeoutMillis, readTimeoutMillis, writeTimeoutMillis);
+    }
+}
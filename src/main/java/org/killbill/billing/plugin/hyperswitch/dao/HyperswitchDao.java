@@ -21,48 +21,120 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Function;
 
 import javax.annotation.Nullable;
 import javax.sql.DataSource;
 
 import org.joda.time.DateTime;
+import org.jooq.BatchBindStep;
+import org.jooq.Condition;
+import org.jooq.Cursor;
 import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.InsertOnDuplicateSetMoreStep;
+import org.jooq.Query;
+import org.jooq.Record;
+import org.jooq.Record1;
+import org.jooq.Select;
+import org.jooq.Table;
+import org.jooq.TableField;
 import org.jooq.impl.DSL;
+import org.jooq.types.ULong;
 import org.killbill.billing.catalog.api.Currency;
 import org.killbill.billing.payment.api.PluginProperty;
 import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.payment.plugin.api.PaymentMethodInfoPlugin;
 import org.killbill.billing.plugin.api.PluginProperties;
 import org.killbill.billing.plugin.dao.payment.PluginPaymentDao;
+import org.killbill.billing.plugin.util.KillBillMoney;
+import org.killbill.billing.util.entity.Pagination;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.hyperswitch.client.model.IntentStatus;
 import com.hyperswitch.client.model.PaymentsResponse;
 import com.hyperswitch.client.model.RefundResponse;
+import com.hyperswitch.client.model.RefundStatus;
 
+import org.killbill.billing.plugin.hyperswitch.HyperswitchMetrics;
 import org.killbill.billing.plugin.hyperswitch.HyperswitchPluginProperties;
+import org.killbill.billing.plugin.hyperswitch.HyperswitchWebhookEvent;
 import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchPaymentMethods;
 import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchResponses;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchHppRequestsRecord;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchJobCheckpointsRecord;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchNotificationsRecord;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchPaymentHeadsRecord;
 import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchPaymentMethodsRecord;
 import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchResponsesRecord;
 import org.killbill.billing.plugin.hyperswitch.exception.FormaterException;
 
 import static org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchHppRequests.HYPERSWITCH_HPP_REQUESTS;
+import static org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchJobCheckpoints.HYPERSWITCH_JOB_CHECKPOINTS;
+import static org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchNotifications.HYPERSWITCH_NOTIFICATIONS;
+import static org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchPaymentHeads.HYPERSWITCH_PAYMENT_HEADS;
 import static org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchPaymentMethods.HYPERSWITCH_PAYMENT_METHODS;
 import static org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchResponses.HYPERSWITCH_RESPONSES;
 
 public class HyperswitchDao extends
         PluginPaymentDao<HyperswitchResponsesRecord, HyperswitchResponses, HyperswitchPaymentMethodsRecord, HyperswitchPaymentMethods> {
 
+    private static final Logger logger = LoggerFactory.getLogger(HyperswitchDao.class);
+
+    private static final long JOURNAL_READ_TIMEOUT_MILLIS = 5000;
+    private static final int SEARCH_FETCH_SIZE = 100;
+    // Columns matched by searchResponses, each served by a (kb_tenant_id, column, record_id) index
+    private static final List<TableField<HyperswitchResponsesRecord, String>> RESPONSE_SEARCH_FIELDS = List.of(HYPERSWITCH_RESPONSES.PAYMENT_ATTEMPT_ID,
+                                                                                                              HYPERSWITCH_RESPONSES.KB_PAYMENT_ID,
+                                                                                                              HYPERSWITCH_RESPONSES.REFUND_ID,
+                                                                                                              HYPERSWITCH_RESPONSES.ERROR_CODE);
+    // Columns matched by searchPaymentMethods (unique, indexed and (kb_tenant_id, kb_account_id, record_id) indexes)
+    private static final List<TableField<HyperswitchPaymentMethodsRecord, String>> PAYMENT_METHOD_SEARCH_FIELDS = List.of(HYPERSWITCH_PAYMENT_METHODS.KB_PAYMENT_METHOD_ID,
+                                                                                                                          HYPERSWITCH_PAYMENT_METHODS.HYPERSWITCH_ID,
+                                                                                                                          HYPERSWITCH_PAYMENT_METHODS.KB_ACCOUNT_ID);
+    // Statuses of a purchase or capture (resp. a refund) whose amount counts in the captured (resp. refunded) total of the payment.
+    // A processing capture only counts once a webhook or a refresh confirms it, see updatePaymentHead
+    private static final Set<String> CAPTURED_STATUSES = ImmutableSet.of(IntentStatus.SUCCEEDED.toString(),
+                                                                         IntentStatus.PARTIALLY_CAPTURED.toString(),
+                                                                         IntentStatus.PARTIALLY_CAPTURED_AND_CAPTURABLE.toString());
+    private static final Set<String> REFUNDED_STATUSES = ImmutableSet.of(RefundStatus.SUCCEEDED.toString(),
+                                                                         RefundStatus.PENDING.toString(),
+                                                                         RefundStatus.REVIEW.toString());
+
+    private volatile HyperswitchResponseJournal responseJournal;
+    private volatile HyperswitchMetrics metrics = HyperswitchMetrics.NOOP;
+
     public HyperswitchDao(final DataSource dataSource) throws SQLException {
         super(HYPERSWITCH_RESPONSES, HYPERSWITCH_PAYMENT_METHODS, dataSource);
         // Save space in the database
         objectMapper.setSerializationInclusion(Include.NON_EMPTY);
     }
 
+    public void setMetrics(final HyperswitchMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public List<HyperswitchResponsesRecord> getResponses(final UUID kbPaymentId, final UUID kbTenantId) throws SQLException {
+        return metrics.db("getResponses", () -> super.getResponses(kbPaymentId, kbTenantId));
+    }
+
     // Payment methods
 
     public void addPaymentMethod(final UUID kbAccountId,
@@ -70,7 +142,7 @@ public class HyperswitchDao extends
             final Map<String, String> additionalDataMap,
             final String hyperswitchId,
             final UUID kbTenantId) throws SQLException {
-        execute(dataSource.getConnection(),
+        execute("addPaymentMethod",
                 new WithConnectionCallback<HyperswitchResponsesRecord>() {
                     @Override
                     public HyperswitchResponsesRecord withConnection(final Connection conn) throws SQLException {
@@ -88,7 +160,7 @@ public class HyperswitchDao extends
                                         kbPaymentMethodId.toString(),
                                         hyperswitchId,
                                         (short) FALSE,
-                                        asString(additionalDataMap),
+                                        toJson(additionalDataMap),
                                         toLocalDateTime(new DateTime()),
                                         toLocalDateTime(new DateTime()),
                                         kbTenantId.toString())
@@ -98,24 +170,196 @@ public class HyperswitchDao extends
                 });
     }
 
-    public HyperswitchPaymentMethodsRecord getPaymentMethod(final String kbPaymentMethodId)
-            throws SQLException {
-        return execute(
-                dataSource.getConnection(),
-                new WithConnectionCallback<HyperswitchPaymentMethodsRecord>() {
-                    @Override
-                    public HyperswitchPaymentMethodsRecord withConnection(final Connection conn)
-                            throws SQLException {
-                        return DSL.using(conn, dialect, settings)
-                                .selectFrom(HYPERSWITCH_PAYMENT_METHODS)
-                                .where(
-                                        DSL.field(HYPERSWITCH_PAYMENT_METHODS.KB_PAYMENT_METHOD_ID)
-                                                .equal(kbPaymentMethodId))
-                                .fetchOne();
+    @Nullable
+    public HyperswitchPaymentMethodsRecord getActivePaymentMethod(final UUID kbPaymentMethodId,
+            final UUID kbTenantId) throws SQLException {
+        return execute("getActivePaymentMethod",
+                conn -> DSL.using(conn, dialect, settings)
+                           .selectFrom(HYPERSWITCH_PAYMENT_METHODS)
+                           .where(HYPERSWITCH_PAYMENT_METHODS.KB_PAYMENT_METHOD_ID.equal(kbPaymentMethodId.toString()))
+                           .and(HYPERSWITCH_PAYMENT_METHODS.KB_TENANT_ID.equal(kbTenantId.toString()))
+                           .and(HYPERSWITCH_PAYMENT_METHODS.IS_DELETED.equal((short) FALSE))
+                           .fetchOne());
+    }
+
+    /**
+     * Look up the active payment methods of a batch in a single query.
+     *
+     * @return the payment methods found (deleted and unknown ones are missing)
+     */
+    public List<HyperswitchPaymentMethodsRecord> getActivePaymentMethods(final Collection<UUID> kbPaymentMethodIds,
+            final UUID kbTenantId) throws SQLException {
+        if (kbPaymentMethodIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final List<String> ids = new ArrayList<String>(kbPaymentMethodIds.size());
+        for (final UUID kbPaymentMethodId : kbPaymentMethodIds) {
+            ids.add(kbPaymentMethodId.toString());
+        }
+        return execute("getActivePaymentMethods",
+                conn -> DSL.using(conn, dialect, settings)
+                           .selectFrom(HYPERSWITCH_PAYMENT_METHODS)
+                           .where(HYPERSWITCH_PAYMENT_METHODS.KB_PAYMENT_METHOD_ID.in(ids))
+                           .and(HYPERSWITCH_PAYMENT_METHODS.KB_TENANT_ID.equal(kbTenantId.toString()))
+                           .and(HYPERSWITCH_PAYMENT_METHODS.IS_DELETED.equal((short) FALSE))
+                           .fetch());
+    }
+
+    /**
+     * Soft delete: the row is kept, for the responses which reference it.
+     */
+    public void markPaymentMethodAsDeleted(final UUID kbPaymentMethodId,
+            final DateTime utcNow,
+            final UUID kbTenantId) throws SQLException {
+        execute("markPaymentMethodAsDeleted",
+                conn -> DSL.using(conn, dialect, settings)
+                           .update(HYPERSWITCH_PAYMENT_METHODS)
+                           .set(HYPERSWITCH_PAYMENT_METHODS.IS_DELETED, (short) TRUE)
+                           .set(HYPERSWITCH_PAYMENT_METHODS.UPDATED_DATE, toLocalDateTime(utcNow))
+                           .where(HYPERSWITCH_PAYMENT_METHODS.KB_PAYMENT_METHOD_ID.equal(kbPaymentMethodId.toString()))
+                           .and(HYPERSWITCH_PAYMENT_METHODS.KB_TENANT_ID.equal(kbTenantId.toString()))
+                           .execute());
+    }
+
+    /**
+     * Stream the active payment methods of an account, mapping them one at a time: only the mapped values are held in
+     * memory (the records aren't materialized as a whole). Rows mapped to null are left out.
+     */
+    public <T> List<T> getActivePaymentMethods(final UUID kbAccountId,
+            final UUID kbTenantId,
+            final Function<HyperswitchPaymentMethodsRecord, T> mapper) throws SQLException {
+        return execute("getActivePaymentMethodsForAccount",
+                conn -> {
+                    final List<T> paymentMethods = new ArrayList<T>();
+                    // Served by the (kb_tenant_id, kb_account_id, record_id) index, without a sort
+                    try (final Cursor<HyperswitchPaymentMethodsRecord> cursor = DSL.using(conn, dialect, settings)
+                                                                                  .selectFrom(HYPERSWITCH_PAYMENT_METHODS)
+                                                                                  .where(HYPERSWITCH_PAYMENT_METHODS.KB_TENANT_ID.equal(kbTenantId.toString()))
+                                                                                  .and(HYPERSWITCH_PAYMENT_METHODS.KB_ACCOUNT_ID.equal(kbAccountId.toString()))
+                                                                                  .and(HYPERSWITCH_PAYMENT_METHODS.IS_DELETED.equal((short) FALSE))
+                                                                                  .orderBy(HYPERSWITCH_PAYMENT_METHODS.RECORD_ID)
+                                                                                  .fetchSize(SEARCH_FETCH_SIZE)
+                                                                                  .fetchLazy()) {
+                        while (cursor.hasNext()) {
+                            final T paymentMethod = mapper.apply(cursor.fetchNext());
+                            if (paymentMethod != null) {
+                                paymentMethods.add(paymentMethod);
+                            }
+                        }
                     }
+                    return paymentMethods;
                 });
     }
 
+    /**
+     * Soft delete a batch of payment methods in a single statement.
+     */
+    public void markPaymentMethodsAsDeleted(final Collection<ULong> recordIds,
+            final DateTime utcNow) throws SQLException {
+        if (recordIds.isEmpty()) {
+            return;
+        }
+        execute("markPaymentMethodsAsDeleted",
+                conn -> DSL.using(conn, dialect, settings)
+                           .update(HYPERSWITCH_PAYMENT_METHODS)
+                           .set(HYPERSWITCH_PAYMENT_METHODS.IS_DELETED, (short) TRUE)
+                           .set(HYPERSWITCH_PAYMENT_METHODS.UPDATED_DATE, toLocalDateTime(utcNow))
+                           .where(HYPERSWITCH_PAYMENT_METHODS.RECORD_ID.in(recordIds))
+                           .execute());
+    }
+
+    /**
+     * Align the payment methods of an account with {@code paymentMethods} (the Kill Bill view), in one transaction.
+     * Both sides are indexed by Kill Bill payment method id and only the differences are written, as one JDBC batch of
+     * inserts (new payment methods) and one of updates (payment methods missing from the list are soft deleted, the
+     * others get their default flag and mandate id updated, and are restored if they had been deleted). A payment method
+     * without external payment method id keeps its mandate id, and is skipped if it isn't on record yet.
+     *
+     * @return the ids of the payment methods written
+     */
+    public List<UUID> resetPaymentMethods(final UUID kbAccountId,
+            final Collection<PaymentMethodInfoPlugin> paymentMethods,
+            final DateTime utcNow,
+            final UUID kbTenantId) throws SQLException {
+        final Map<String, PaymentMethodInfoPlugin> expectedPaymentMethods = new LinkedHashMap<String, PaymentMethodInfoPlugin>();
+        for (final PaymentMethodInfoPlugin paymentMethod : paymentMethods) {
+            if (paymentMethod.getPaymentMethodId() != null) {
+                expectedPaymentMethods.put(paymentMethod.getPaymentMethodId().toString(), paymentMethod);
+            }
+        }
+
+        return execute("resetPaymentMethods",
+                conn -> DSL.using(conn, dialect, settings).transactionResult(configuration -> {
+                    final DSLContext dslContext = DSL.using(configuration);
+                    final LocalDateTime now = toLocalDateTime(utcNow);
+                    final Map<String, HyperswitchPaymentMethodsRecord> currentPaymentMethods = new HashMap<String, HyperswitchPaymentMethodsRecord>();
+                    for (final HyperswitchPaymentMethodsRecord record : dslContext.select(HYPERSWITCH_PAYMENT_METHODS.RECORD_ID,
+                                                                                          HYPERSWITCH_PAYMENT_METHODS.KB_PAYMENT_METHOD_ID,
+                                                                                          HYPERSWITCH_PAYMENT_METHODS.HYPERSWITCH_ID,
+                                                                                          HYPERSWITCH_PAYMENT_METHODS.IS_DEFAULT,
+                                                                                          HYPERSWITCH_PAYMENT_METHODS.IS_DELETED)
+                                                                                  .from(HYPERSWITCH_PAYMENT_METHODS)
+                                                                                  .where(HYPERSWITCH_PAYMENT_METHODS.KB_TENANT_ID.equal(kbTenantId.toString()))
+                                                                                  .and(HYPERSWITCH_PAYMENT_METHODS.KB_ACCOUNT_ID.equal(kbAccountId.toString()))
+                                                                                  .fetchInto(HYPERSWITCH_PAYMENT_METHODS)) {
+                        currentPaymentMethods.put(record.getKbPaymentMethodId(), record);
+                    }
+
+                    final List<UUID> written = new ArrayList<UUID>();
+                    final List<HyperswitchPaymentMethodsRecord> inserts = new ArrayList<HyperswitchPaymentMethodsRecord>();
+                    final BatchBindStep updates = dslContext.batch(
+                            dslContext.update(HYPERSWITCH_PAYMENT_METHODS)
+                                      .set(HYPERSWITCH_PAYMENT_METHODS.HYPERSWITCH_ID, (String) null)
+                                      .set(HYPERSWITCH_PAYMENT_METHODS.IS_DEFAULT, (Short) null)
+                                      .set(HYPERSWITCH_PAYMENT_METHODS.IS_DELETED, (Short) null)
+                                      .set(HYPERSWITCH_PAYMENT_METHODS.UPDATED_DATE, (LocalDateTime) null)
+                                      .where(HYPERSWITCH_PAYMENT_METHODS.RECORD_ID.equal((ULong) null)));
+                    for (final PaymentMethodInfoPlugin paymentMethod : expectedPaymentMethods.values()) {
+                        final short isDefault = (short) (paymentMethod.isDefault() ? TRUE : FALSE);
+                        final HyperswitchPaymentMethodsRecord current = currentPaymentMethods.get(paymentMethod.getPaymentMethodId().toString());
+                        if (current == null) {
+                            if (paymentMethod.getExternalPaymentMethodId() == null) {
+                                logger.warn("Skipping payment method {} of account {}: no mandate id", paymentMethod.getPaymentMethodId(), kbAccountId);
+                                continue;
+                            }
+                            final HyperswitchPaymentMethodsRecord record = new HyperswitchPaymentMethodsRecord();
+                            record.setKbAccountId(kbAccountId.toString());
+                            record.setKbPaymentMethodId(paymentMethod.getPaymentMethodId().toString());
+                            record.setHyperswitchId(paymentMethod.getExternalPaymentMethodId());
+                            record.setIsDefault(isDefault);
+                            record.setIsDeleted((short) FALSE);
+                            record.setCreatedDate(now);
+                            record.setUpdatedDate(now);
+                            record.setKbTenantId(kbTenantId.toString());
+                            inserts.add(record);
+                            written.add(paymentMethod.getPaymentMethodId());
+                            continue;
+                        }
+
+                        final String hyperswitchId = paymentMethod.getExternalPaymentMethodId() == null ? current.getHyperswitchId() : paymentMethod.getExternalPaymentMethodId();
+                        if (current.getIsDeleted() != FALSE || current.getIsDefault() != isDefault || !hyperswitchId.equals(current.getHyperswitchId())) {
+                            updates.bind(hyperswitchId, isDefault, (short) FALSE, now, current.getRecordId());
+                            written.add(paymentMethod.getPaymentMethodId());
+                        }
+                    }
+                    for (final HyperswitchPaymentMethodsRecord current : currentPaymentMethods.values()) {
+                        if (current.getIsDeleted() == FALSE && !expectedPaymentMethods.containsKey(current.getKbPaymentMethodId())) {
+                            updates.bind(current.getHyperswitchId(), (short) FALSE, (short) TRUE, now, current.getRecordId());
+                            written.add(UUID.fromString(current.getKbPaymentMethodId()));
+                        }
+                    }
+
+                    if (!inserts.isEmpty()) {
+                        dslContext.batchInsert(inserts).execute();
+                    }
+                    if (updates.size() > 0) {
+                        updates.execute();
+                    }
+                    return written;
+                }));
+    }
+
     public HyperswitchResponsesRecord addResponse(final UUID kbAccountId,
             final UUID kbPaymentId,
             final UUID kbPaymentTransactionId,
@@ -125,42 +369,73 @@ public class HyperswitchDao extends
             final PaymentsResponse paymentsResponse,
             final DateTime utcNow,
             final UUID kbTenantId) throws SQLException {
-        final Map<String, Object> additionalDataMap;
-        additionalDataMap = HyperswitchPluginProperties.toAdditionalDataMap(paymentsResponse);
-        return execute(dataSource.getConnection(),
-                conn -> DSL.using(conn, dialect, settings).transactionResult(configuration -> {
-                    final DSLContext dslContext = DSL.using(configuration);
-                    dslContext.insertInto(HYPERSWITCH_RESPONSES,
-                            HYPERSWITCH_RESPONSES.KB_ACCOUNT_ID,
-                            HYPERSWITCH_RESPONSES.KB_PAYMENT_ID,
-                            HYPERSWITCH_RESPONSES.KB_PAYMENT_TRANSACTION_ID,
-                            HYPERSWITCH_RESPONSES.TRANSACTION_TYPE,
-                            HYPERSWITCH_RESPONSES.AMOUNT,
-                            HYPERSWITCH_RESPONSES.CURRENCY,
-                            HYPERSWITCH_RESPONSES.PAYMENT_ATTEMPT_ID,
-                            HYPERSWITCH_RESPONSES.ERROR_MESSAGE,
-                            HYPERSWITCH_RESPONSES.ERROR_CODE,
-                            HYPERSWITCH_RESPONSES.ADDITIONAL_DATA,
-                            HYPERSWITCH_RESPONSES.CREATED_DATE,
-                            HYPERSWITCH_RESPONSES.KB_TENANT_ID)
-                            .values(kbAccountId.toString(),
-                                    kbPaymentId.toString(),
-                                    kbPaymentTransactionId.toString(),
-                                    transactionType.toString(),
-                                    amount,
-                                    currency == null ? null : currency.name(),
-                                    paymentsResponse.getPaymentId(),
-                                    paymentsResponse.getErrorMessage(),
-                                    paymentsResponse.getErrorCode(),
-                                    asString(additionalDataMap),
-                                    toLocalDateTime(utcNow),
-                                    kbTenantId.toString())
-                            .execute();
-                    return dslContext.fetchOne(
-                            HYPERSWITCH_RESPONSES,
-                            HYPERSWITCH_RESPONSES.RECORD_ID
-                                    .eq(HYPERSWITCH_RESPONSES.RECORD_ID.getDataType().convert(dslContext.lastID())));
-                }));
+        return insertResponse(buildResponse(kbAccountId,
+                                            kbPaymentId,
+                                            kbPaymentTransactionId,
+                                            transactionType,
+                                            amount,
+                                            currency,
+                                            paymentsResponse,
+                                            utcNow,
+                                            kbTenantId));
+    }
+
+    /**
+     * Build the row of a payment response, to be inserted with {@link #addResponses(List)}.
+     */
+    public HyperswitchResponsesRecord buildResponse(final UUID kbAccountId,
+            final UUID kbPaymentId,
+            final UUID kbPaymentTransactionId,
+            final TransactionType transactionType,
+            final BigDecimal amount,
+            final Currency currency,
+            final PaymentsResponse paymentsResponse,
+            final DateTime utcNow,
+            final UUID kbTenantId) throws SQLException {
+        final HyperswitchResponsesRecord record = newResponse(kbAccountId,
+                                                              kbPaymentId,
+                                                              kbPaymentTransactionId,
+                                                              transactionType,
+                                                              amount,
+                                                              currency,
+                                                              utcNow,
+                                                              kbTenantId);
+        record.setPaymentAttemptId(paymentsResponse.getPaymentId());
+        record.setErrorMessage(paymentsResponse.getErrorMessage());
+        record.setErrorCode(paymentsResponse.getErrorCode());
+        record.setStatus(toStatus(paymentsResponse.getStatus()));
+        record.setRefundId(null);
+        record.setMinorAmount(toMinorAmount(paymentsResponse.getAmount()));
+        record.setProfileId(paymentsResponse.getProfileId());
+        record.setAdditionalData(toJson(HyperswitchPluginProperties.toAdditionalDataMap(paymentsResponse)));
+        return record;
+    }
+
+    /**
+     * Insert the rows of a batch of responses, in a single JDBC batch (or through the write-behind journal).
+     * Unlike {@link #insertResponse(HyperswitchResponsesRecord)}, the generated record ids aren't fetched.
+     */
+    public void addResponses(final List<HyperswitchResponsesRecord> records) throws SQLException {
+        if (records.isEmpty()) {
+            return;
+        }
+
+        List<HyperswitchResponsesRecord> toInsert = records;
+        if (responseJournal != null) {
+            toInsert = new ArrayList<HyperswitchResponsesRecord>();
+            for (final HyperswitchResponsesRecord record : records) {
+                try {
+                    responseJournal.append(record);
+                } catch (final SQLException e) {
+                    logger.warn("Unable to journal response for transaction {}, inserting it synchronously", record.getKbPaymentTransactionId(), e);
+                    toInsert.add(record);
+                }
+            }
+            if (toInsert.isEmpty()) {
+                return;
+            }
+        }
+        insertResponses(toInsert);
     }
 
     public HyperswitchResponsesRecord addResponse(final UUID kbAccountId,
@@ -172,44 +447,138 @@ public class HyperswitchDao extends
             final RefundResponse refundResponse,
             final DateTime utcNow,
             final UUID kbTenantId) throws SQLException {
-        final Map<String, Object> additionalDataMap;
-        additionalDataMap = HyperswitchPluginProperties.toAdditionalDataMap(refundResponse);
-        return execute(dataSource.getConnection(),
+        final HyperswitchResponsesRecord record = newResponse(kbAccountId,
+                                                              kbPaymentId,
+                                                              kbPaymentTransactionId,
+                                                              transactionType,
+                                                              amount,
+                                                              currency,
+                                                              utcNow,
+                                                              kbTenantId);
+        record.setPaymentAttemptId(refundResponse.getPaymentId());
+        record.setErrorMessage(refundResponse.getErrorMessage());
+        record.setErrorCode(refundResponse.getErrorCode());
+        record.setStatus(toStatus(refundResponse.getStatus()));
+        record.setRefundId(refundResponse.getRefundId());
+        record.setMinorAmount(toMinorAmount(refundResponse.getAmount()));
+        record.setProfileId(refundResponse.getProfileId());
+        record.setAdditionalData(toJson(HyperswitchPluginProperties.toAdditionalDataMap(refundResponse)));
+        return insertResponse(record);
+    }
+
+    private HyperswitchResponsesRecord newResponse(final UUID kbAccountId,
+            final UUID kbPaymentId,
+            final UUID kbPaymentTransactionId,
+            final TransactionType transactionType,
+            final BigDecimal amount,
+            final Currency currency,
+            final DateTime utcNow,
+            final UUID kbTenantId) {
+        final HyperswitchResponsesRecord record = new HyperswitchResponsesRecord();
+        record.setKbAccountId(kbAccountId.toString());
+        record.setKbPaymentId(kbPaymentId.toString());
+        record.setKbPaymentTransactionId(kbPaymentTransactionId.toString());
+        record.setTransactionType(transactionType.toString());
+        record.setAmount(amount);
+        record.setCurrency(currency == null ? null : currency.name());
+        record.setCreatedDate(toLocalDateTime(utcNow));
+        record.setUpdatedDate(toLocalDateTime(utcNow));
+        record.setKbTenantId(kbTenantId.toString());
+        return record;
+    }
+
+    /**
+     * Insert the row and fetch its generated id in the same round trip (INSERT ... RETURNING on PostgreSQL,
+     * JDBC generated keys on MySQL), instead of a second SELECT by last id. The head of the payment is updated
+     * in the same transaction. The columns inserted are the ones set on the record.
+     */
+    private HyperswitchResponsesRecord insertResponse(final HyperswitchResponsesRecord record) throws SQLException {
+        if (responseJournal != null) {
+            try {
+                // The row will be inserted by the journal writer (record_id isn't known yet)
+                responseJournal.append(record);
+                return record;
+            } catch (final SQLException e) {
+                logger.warn("Unable to journal response for transaction {}, inserting it synchronously", record.getKbPaymentTransactionId(), e);
+            }
+        }
+        return execute("insertResponse",
+                conn -> DSL.using(conn, dialect, settings).transactionResult(configuration -> {
+                    final DSLContext dslContext = DSL.using(configuration);
+                    final HyperswitchResponsesRecord inserted = dslContext.insertInto(HYPERSWITCH_RESPONSES)
+                                                                          .set(record)
+                                                                          .returning(HYPERSWITCH_RESPONSES.RECORD_ID)
+                                                                          .fetchOne();
+                    upsertPaymentHead(dslContext, record).execute();
+                    record.setRecordId(inserted.getRecordId());
+                    record.changed(false);
+                    return record;
+                }));
+    }
+
+
+    /**
+     * Insert journaled responses, in a single JDBC batch (and the heads of their payments in a second one).
+     */
+    void insertResponses(final List<HyperswitchResponsesRecord> records) throws SQLException {
+        execute("insertResponses",
                 conn -> DSL.using(conn, dialect, settings).transactionResult(configuration -> {
                     final DSLContext dslContext = DSL.using(configuration);
-                    dslContext.insertInto(HYPERSWITCH_RESPONSES,
-                            HYPERSWITCH_RESPONSES.KB_ACCOUNT_ID,
-                            HYPERSWITCH_RESPONSES.KB_PAYMENT_ID,
-                            HYPERSWITCH_RESPONSES.KB_PAYMENT_TRANSACTION_ID,
-                            HYPERSWITCH_RESPONSES.TRANSACTION_TYPE,
-                            HYPERSWITCH_RESPONSES.AMOUNT,
-                            HYPERSWITCH_RESPONSES.CURRENCY,
-                            HYPERSWITCH_RESPONSES.PAYMENT_ATTEMPT_ID,
-                            HYPERSWITCH_RESPONSES.ERROR_MESSAGE,
-                            HYPERSWITCH_RESPONSES.ERROR_CODE,
-                            HYPERSWITCH_RESPONSES.ADDITIONAL_DATA,
-                            HYPERSWITCH_RESPONSES.CREATED_DATE,
-                            HYPERSWITCH_RESPONSES.KB_TENANT_ID)
-                            .values(kbAccountId.toString(),
-                                    kbPaymentId.toString(),
-                                    kbPaymentTransactionId.toString(),
-                                    transactionType.toString(),
-                                    amount,
-                                    currency == null ? null : currency.name(),
-                                    refundResponse.getPaymentId(),
-                                    refundResponse.getErrorMessage(),
-                                    refundResponse.getErrorCode(),
-                                    asString(additionalDataMap),
-                                    toLocalDateTime(utcNow),
-                                    kbTenantId.toString())
-                            .execute();
-                    return dslContext.fetchOne(
-                            HYPERSWITCH_RESPONSES,
-                            HYPERSWITCH_RESPONSES.RECORD_ID
-                                    .eq(HYPERSWITCH_RESPONSES.RECORD_ID.getDataType().convert(dslContext.lastID())));
+                    dslContext.batchInsert(records).execute();
+                    final List<Query> heads = new ArrayList<Query>(records.size());
+                    for (final HyperswitchResponsesRecord record : records) {
+                        heads.add(upsertPaymentHead(dslContext, record));
+                    }
+                    return dslContext.batch(heads).execute();
                 }));
     }
 
+    /**
+     * Insert the journaled responses which aren't in the database yet (journal replay).
+     *
+     * @return the number of responses inserted
+     */
+    int insertMissingResponses(final List<HyperswitchResponsesRecord> records) throws SQLException {
+        final List<HyperswitchResponsesRecord> missing = new ArrayList<HyperswitchResponsesRecord>(records.size());
+        execute("insertMissingResponses",
+                conn -> {
+                    final DSLContext dslContext = DSL.using(conn, dialect, settings);
+                    for (final HyperswitchResponsesRecord record : records) {
+                        final boolean exists = dslContext.fetchExists(
+                                dslContext.selectOne()
+                                          .from(HYPERSWITCH_RESPONSES)
+                                          .where(HYPERSWITCH_RESPONSES.KB_TENANT_ID.equal(record.getKbTenantId()))
+                                          .and(HYPERSWITCH_RESPONSES.KB_PAYMENT_TRANSACTION_ID.equal(record.getKbPaymentTransactionId()))
+                                          .and(HYPERSWITCH_RESPONSES.TRANSACTION_TYPE.equal(record.getTransactionType()))
+                                          .and(HYPERSWITCH_RESPONSES.CREATED_DATE.equal(record.getCreatedDate())));
+                        if (!exists) {
+                            missing.add(record);
+                        }
+                    }
+                    return null;
+                });
+        if (!missing.isEmpty()) {
+            insertResponses(missing);
+        }
+        return missing.size();
+    }
+
+    /**
+     * Enable write-behind of gateway responses (see {@link HyperswitchResponseJournal}).
+     */
+    public void setResponseJournal(@Nullable final HyperswitchResponseJournal responseJournal) {
+        this.responseJournal = responseJournal;
+    }
+
+    /**
+     * Wait for the journaled responses of a payment or transaction to be in the database, so they are visible to reads.
+     */
+    public void awaitFlushed(final UUID kbPaymentOrTransactionId) {
+        final HyperswitchResponseJournal journal = responseJournal;
+        if (journal != null) {
+            journal.awaitFlushed(kbPaymentOrTransactionId.toString(), JOURNAL_READ_TIMEOUT_MILLIS);
+        }
+    }
 
     public HyperswitchResponsesRecord updateResponse(final UUID kbPaymentTransactionId,
             final PaymentsResponse hyperswitchPaymentResponse,
@@ -230,74 +599,523 @@ public class HyperswitchDao extends
     public HyperswitchResponsesRecord updateResponse(final UUID kbPaymentTransactionId,
             final Map<String, Object> additionalProperties,
             final UUID kbTenantId) throws SQLException {
-        return execute(dataSource.getConnection(),
-                new WithConnectionCallback<HyperswitchResponsesRecord>() {
-                    @Override
-                    public HyperswitchResponsesRecord withConnection(final Connection conn)
-                            throws SQLException {
-                        final HyperswitchResponsesRecord response = DSL.using(conn, dialect,
-                                settings)
-                                .selectFrom(HYPERSWITCH_RESPONSES)
-                                .where(HYPERSWITCH_RESPONSES.KB_PAYMENT_TRANSACTION_ID
-                                        .equal(kbPaymentTransactionId.toString()))
-                                .and(HYPERSWITCH_RESPONSES.KB_TENANT_ID.equal(kbTenantId.toString()))
-                                .orderBy(HYPERSWITCH_RESPONSES.RECORD_ID.desc())
-                                .limit(1)
-                                .fetchOne();
+        awaitFlushed(kbPaymentTransactionId);
+        return execute("updateResponse",
+                conn -> DSL.using(conn, dialect, settings).transactionResult(configuration -> {
+                    final DSLContext dslContext = DSL.using(configuration);
+                    final HyperswitchResponsesRecord response = dslContext
+                            .selectFrom(HYPERSWITCH_RESPONSES)
+                            .where(HYPERSWITCH_RESPONSES.KB_TENANT_ID.equal(kbTenantId.toString()))
+                            .and(HYPERSWITCH_RESPONSES.KB_PAYMENT_TRANSACTION_ID
+                                    .equal(kbPaymentTransactionId.toString()))
+                            .orderBy(HYPERSWITCH_RESPONSES.RECORD_ID.desc())
+                            .limit(1)
+                            // Locked: the head deltas are computed from the status read here
+                            .forUpdate()
+                            .fetchOne();
 
-                        if (response == null) {
-                            return null;
-                        }
-                        final Map originalData = new HashMap(fromAdditionalData(response.getAdditionalData()));
-                        originalData.putAll(additionalProperties);
+                    if (response == null) {
+                        return null;
+                    }
+                    final Map originalData = new HashMap(fromAdditionalData(response.getAdditionalData()));
+                    originalData.putAll(additionalProperties);
 
-                        DSL.using(conn, dialect, settings)
-                                .update(HYPERSWITCH_RESPONSES)
-                                .set(HYPERSWITCH_RESPONSES.ADDITIONAL_DATA, asString(originalData))
-                                .where(HYPERSWITCH_RESPONSES.RECORD_ID.equal(response.getRecordId()))
-                                .execute();
-                        return response;
+                    final LocalDateTime updatedDate = utcNow();
+                    dslContext.update(HYPERSWITCH_RESPONSES)
+                              .set(HYPERSWITCH_RESPONSES.ADDITIONAL_DATA, toJson(originalData))
+                              .set(HYPERSWITCH_RESPONSES.STATUS, toStatus(originalData.get("status")))
+                              .set(HYPERSWITCH_RESPONSES.UPDATED_DATE, updatedDate)
+                              .where(HYPERSWITCH_RESPONSES.RECORD_ID.equal(response.getRecordId()))
+                              .execute();
+                    updatePaymentHead(dslContext, response, toStatus(originalData.get("status")), updatedDate).execute();
+                    return response;
+                }));
+    }
+
+    /**
+     * Merge refreshed gateway responses into the latest row of each transaction, with a single select and a single JDBC batch.
+     *
+     * @return the number of rows updated
+     */
+    public int updateResponses(final Map<UUID, PaymentsResponse> responsesByTransactionId,
+            final UUID kbTenantId) throws SQLException {
+        if (responsesByTransactionId.isEmpty()) {
+            return 0;
+        }
+
+        final List<String> kbPaymentTransactionIds = new ArrayList<String>(responsesByTransactionId.size());
+        for (final UUID kbPaymentTransactionId : responsesByTransactionId.keySet()) {
+            awaitFlushed(kbPaymentTransactionId);
+            kbPaymentTransactionIds.add(kbPaymentTransactionId.toString());
+        }
+
+        return execute("updateResponses",
+                conn -> DSL.using(conn, dialect, settings).transactionResult(configuration -> {
+                    final DSLContext dslContext = DSL.using(configuration);
+                    final List<HyperswitchResponsesRecord> responses = dslContext
+                            .selectFrom(HYPERSWITCH_RESPONSES)
+                            .where(HYPERSWITCH_RESPONSES.KB_TENANT_ID.equal(kbTenantId.toString()))
+                            .and(HYPERSWITCH_RESPONSES.KB_PAYMENT_TRANSACTION_ID.in(kbPaymentTransactionIds))
+                            .orderBy(HYPERSWITCH_RESPONSES.RECORD_ID.desc())
+                            .forUpdate()
+                            .fetch();
+
+                    // Only the latest row of each transaction is updated (see updateResponse)
+                    final Map<String, HyperswitchResponsesRecord> latestResponses = new HashMap<String, HyperswitchResponsesRecord>();
+                    for (final HyperswitchResponsesRecord response : responses) {
+                        latestResponses.putIfAbsent(response.getKbPaymentTransactionId(), response);
                     }
-                });
+                    if (latestResponses.isEmpty()) {
+                        return 0;
+                    }
+
+                    final BatchBindStep batch = dslContext.batch(
+                            dslContext.update(HYPERSWITCH_RESPONSES)
+                                      .set(HYPERSWITCH_RESPONSES.ADDITIONAL_DATA, (String) null)
+                                      .set(HYPERSWITCH_RESPONSES.STATUS, (String) null)
+                                      .set(HYPERSWITCH_RESPONSES.UPDATED_DATE, (LocalDateTime) null)
+                                      .where(HYPERSWITCH_RESPONSES.RECORD_ID.equal((ULong) null)));
+                    final LocalDateTime updatedDate = utcNow();
+                    final List<Query> heads = new ArrayList<Query>(latestResponses.size());
+                    for (final HyperswitchResponsesRecord response : latestResponses.values()) {
+                        final PaymentsResponse paymentsResponse = responsesByTransactionId.get(UUID.fromString(response.getKbPaymentTransactionId()));
+                        final Map originalData = new HashMap(fromAdditionalData(response.getAdditionalData()));
+                        originalData.putAll(HyperswitchPluginProperties.toAdditionalDataMap(paymentsResponse));
+                        batch.bind(toJson(originalData), toStatus(paymentsResponse.getStatus()), updatedDate, response.getRecordId());
+                        heads.add(updatePaymentHead(dslContext, response, toStatus(paymentsResponse.getStatus()), updatedDate));
+                    }
+                    batch.execute();
+                    dslContext.batch(heads).execute();
+                    return latestResponses.size();
+                }));
     }
 
     public void updateResponse(final HyperswitchResponsesRecord hyperswitchResponsesRecord,
             final Map additionalMetadata) throws SQLException {
-        final Map additionalDataMap = fromAdditionalData(hyperswitchResponsesRecord.getAdditionalData());
-        additionalDataMap.putAll(additionalMetadata);
-
-        execute(dataSource.getConnection(),
-                new WithConnectionCallback<Void>() {
-                    @Override
-                    public Void withConnection(final Connection conn) throws SQLException {
-                        DSL.using(conn, dialect, settings)
-                                .update(HYPERSWITCH_RESPONSES)
-                                .set(HYPERSWITCH_RESPONSES.ADDITIONAL_DATA, asString(additionalDataMap))
-                                .where(HYPERSWITCH_RESPONSES.RECORD_ID.equal(hyperswitchResponsesRecord.getRecordId()))
-                                .execute();
+        execute("updateResponse",
+                conn -> DSL.using(conn, dialect, settings).transactionResult(configuration -> {
+                    final DSLContext dslContext = DSL.using(configuration);
+                    // The record may be stale: merge into (and compute the head deltas from) the locked row
+                    final HyperswitchResponsesRecord response = dslContext
+                            .selectFrom(HYPERSWITCH_RESPONSES)
+                            .where(HYPERSWITCH_RESPONSES.RECORD_ID.equal(hyperswitchResponsesRecord.getRecordId()))
+                            .forUpdate()
+                            .fetchOne();
+                    if (response == null) {
                         return null;
                     }
+                    final Map additionalDataMap = new HashMap(fromAdditionalData(response.getAdditionalData()));
+                    additionalDataMap.putAll(additionalMetadata);
+
+                    final LocalDateTime updatedDate = utcNow();
+                    dslContext.update(HYPERSWITCH_RESPONSES)
+                              .set(HYPERSWITCH_RESPONSES.ADDITIONAL_DATA, toJson(additionalDataMap))
+                              .set(HYPERSWITCH_RESPONSES.STATUS, toStatus(additionalDataMap.get("status")))
+                              .set(HYPERSWITCH_RESPONSES.UPDATED_DATE, updatedDate)
+                              .where(HYPERSWITCH_RESPONSES.RECORD_ID.equal(response.getRecordId()))
+                              .execute();
+                    updatePaymentHead(dslContext, response, toStatus(additionalDataMap.get("status")), updatedDate).execute();
+                    return null;
+                }));
+    }
+
+    /**
+     * Claim a batch of responses in a non-terminal status whose next sync is due. Rows locked by other nodes are skipped,
+     * and claimed rows are leased (their next sync is pushed back) so that no other node picks them up meanwhile.
+     * <p>
+     * The lease grows with the age of the row (between {@code leaseSeconds} and {@code maxBackoffSeconds}): a payment
+     * resting in the same status (e.g. an uncaptured authorization) is synced exponentially less often. Rows older than
+     * {@code maxAgeSeconds} (e.g. historical rows without a next sync date) are left to the Janitor.
+     */
+    public List<HyperswitchResponsesRecord> claimResponsesToSync(final Collection<String> statuses,
+            final int batchSize,
+            final DateTime utcNow,
+            final int leaseSeconds,
+            final int maxBackoffSeconds,
+            final int maxAgeSeconds) throws SQLException {
+        return execute("claimResponsesToSync",
+                conn -> DSL.using(conn, dialect, settings).transactionResult(configuration -> {
+                    final DSLContext dslContext = DSL.using(configuration);
+                    final LocalDateTime now = toLocalDateTime(utcNow);
+                    final List<HyperswitchResponsesRecord> claimed = dslContext
+                            .selectFrom(HYPERSWITCH_RESPONSES)
+                            .where(HYPERSWITCH_RESPONSES.STATUS.in(statuses))
+                            .and(HYPERSWITCH_RESPONSES.NEXT_SYNC_DATE.isNull()
+                                    .or(HYPERSWITCH_RESPONSES.NEXT_SYNC_DATE.le(now)))
+                            .and(HYPERSWITCH_RESPONSES.CREATED_DATE.ge(now.minusSeconds(maxAgeSeconds)))
+                            .orderBy(HYPERSWITCH_RESPONSES.RECORD_ID)
+                            .limit(batchSize)
+                            .forUpdate()
+                            .skipLocked()
+                            .fetch();
+                    if (claimed.isEmpty()) {
+                        return claimed;
+                    }
+
+                    final BatchBindStep leases = dslContext.batch(
+                            dslContext.update(HYPERSWITCH_RESPONSES)
+                                      .set(HYPERSWITCH_RESPONSES.NEXT_SYNC_DATE, (LocalDateTime) null)
+                                      .where(HYPERSWITCH_RESPONSES.RECORD_ID.equal((ULong) null)));
+                    for (final HyperswitchResponsesRecord response : claimed) {
+                        final long ageSeconds = response.getCreatedDate() == null ? 0 : Duration.between(response.getCreatedDate(), now).getSeconds();
+                        final long backoffSeconds = Math.min(maxBackoffSeconds, Math.max(leaseSeconds, ageSeconds));
+                        leases.bind(now.plusSeconds(backoffSeconds), response.getRecordId());
+                    }
+                    leases.execute();
+                    return claimed;
+                }));
+    }
+
+    /**
+     * @return the creation date of the oldest response in one of these statuses created after {@code since}, null if there is none
+     */
+    public LocalDateTime getOldestResponseDate(final Collection<String> statuses, final DateTime since) throws SQLException {
+        return execute("getOldestResponseDate",
+                conn -> DSL.using(conn, dialect, settings)
+                           .select(DSL.min(HYPERSWITCH_RESPONSES.CREATED_DATE))
+                           .from(HYPERSWITCH_RESPONSES)
+                           .where(HYPERSWITCH_RESPONSES.STATUS.in(statuses))
+                           .and(HYPERSWITCH_RESPONSES.CREATED_DATE.ge(toLocalDateTime(since)))
+                           .fetchOne(0, LocalDateTime.class));
+    }
+
+    // Search
+
+    /**
+     * Search the responses of a tenant by Hyperswitch payment id, Kill Bill payment id, refund id or error code.
+     * <p>
+     * Pagination is keyset based: {@code offset} is the record id after which the page starts (0 for the first page),
+     * and the next offset is the record id of the last row of the page. Rows are read through a cursor (and mapped)
+     * as the pagination is iterated: close the pagination to release the connection if it isn't fully iterated.
+     */
+    public <T> Pagination<T> searchResponses(final String searchKey,
+            final long offset,
+            final int limit,
+            final UUID kbTenantId,
+            final Function<HyperswitchResponsesRecord, T> mapper) {
+        return search("searchResponses",
+                HYPERSWITCH_RESPONSES,
+                HYPERSWITCH_RESPONSES.RECORD_ID,
+                HYPERSWITCH_RESPONSES.KB_TENANT_ID,
+                RESPONSE_SEARCH_FIELDS,
+                DSL.noCondition(),
+                searchKey,
+                offset,
+                limit,
+                kbTenantId,
+                mapper);
+    }
+
+    /**
+     * Search the active payment methods of a tenant by Kill Bill payment method id, mandate id or Kill Bill account id,
+     * paginated as {@link #searchResponses}.
+     */
+    public <T> Pagination<T> searchPaymentMethods(final String searchKey,
+            final long offset,
+            final int limit,
+            final UUID kbTenantId,
+            final Function<HyperswitchPaymentMethodsRecord, T> mapper) {
+        return search("searchPaymentMethods",
+                HYPERSWITCH_PAYMENT_METHODS,
+                HYPERSWITCH_PAYMENT_METHODS.RECORD_ID,
+                HYPERSWITCH_PAYMENT_METHODS.KB_TENANT_ID,
+                PAYMENT_METHOD_SEARCH_FIELDS,
+                HYPERSWITCH_PAYMENT_METHODS.IS_DELETED.equal((short) FALSE),
+                searchKey,
+                offset,
+                limit,
+                kbTenantId,
+                mapper);
+    }
+
+    private <R extends Record, T> Pagination<T> search(final String operation,
+            final Table<R> table,
+            final TableField<R, ULong> recordId,
+            final TableField<R, String> tenantId,
+            final List<TableField<R, String>> fields,
+            final Condition condition,
+            final String searchKey,
+            final long offset,
+            final int limit,
+            final UUID kbTenantId,
+            final Function<R, T> mapper) {
+        final HyperswitchSearchPagination.Query<R> query = new HyperswitchSearchPagination.Query<R>() {
+            @Override
+            public Connection connect() throws SQLException {
+                return dataSource.getConnection();
+            }
+
+            @Override
+            public Cursor<R> open(final Connection conn) throws SQLException {
+                return metrics.db(operation, () -> {
+                    final DSLContext dslContext = DSL.using(conn, dialect, settings);
+                    final Table<Record1<ULong>> page = searchPage(dslContext, table, recordId, tenantId, fields, condition, searchKey, offset, limit, kbTenantId);
+                    return dslContext.selectFrom(table)
+                                     .where(recordId.in(dslContext.select(page.field(0, ULong.class)).from(page)))
+                                     .orderBy(recordId)
+                                     .limit(limit)
+                                     .fetchSize(SEARCH_FETCH_SIZE)
+                                     .fetchLazy();
                 });
+            }
+
+            @Override
+            public Long getNextOffset() throws SQLException {
+                return execute(operation + "NextOffset",
+                        conn -> {
+                            final DSLContext dslContext = DSL.using(conn, dialect, settings);
+                            final Table<Record1<ULong>> page = searchPage(dslContext, table, recordId, tenantId, fields, condition, searchKey, offset, limit, kbTenantId);
+                            final Field<ULong> pageRecordId = page.field(0, ULong.class);
+                            final ULong last = dslContext.select(pageRecordId)
+                                                         .from(page)
+                                                         .orderBy(pageRecordId)
+                                                         .limit(1)
+                                                         .offset(limit - 1)
+                                                         .fetchOne(pageRecordId);
+                            return last == null ? null : last.longValue();
+                        });
+            }
+
+            @Override
+            public long countMatches() throws SQLException {
+                return execute(operation + "Count",
+                        conn -> {
+                            final DSLContext dslContext = DSL.using(conn, dialect, settings);
+                            final Table<Record1<ULong>> matches = searchPage(dslContext, table, recordId, tenantId, fields, condition, searchKey, 0L, null, kbTenantId);
+                            return dslContext.selectCount().from(matches).fetchOne(0, Long.class);
+                        });
+            }
+
+            @Override
+            public long countAll() throws SQLException {
+                return execute(operation + "MaxCount",
+                        conn -> DSL.using(conn, dialect, settings)
+                                   .selectCount()
+                                   .from(table)
+                                   .where(tenantId.equal(kbTenantId.toString()))
+                                   .and(condition)
+                                   .fetchOne(0, Long.class));
+            }
+        };
+        return new HyperswitchSearchPagination<R, T>(query, offset, limit, record -> record.get(recordId).longValue(), mapper);
+    }
+
+    /**
+     * Record ids of the first {@code limit} matching rows after {@code offset} (all of them if {@code limit} is null):
+     * one index range scan per searched column (instead of an OR, which can't use them), merged with a UNION.
+     */
+    private <R extends Record> Table<Record1<ULong>> searchPage(final DSLContext dslContext,
+            final Table<R> table,
+            final TableField<R, ULong> recordId,
+            final TableField<R, String> tenantId,
+            final List<TableField<R, String>> fields,
+            final Condition condition,
+            final String searchKey,
+            final long offset,
+            @Nullable final Integer limit,
+            final UUID kbTenantId) {
+        Select<Record1<ULong>> union = null;
+        for (final TableField<R, String> field : fields) {
+            final Select<Record1<ULong>> branch;
+            if (limit == null) {
+                branch = dslContext.select(recordId)
+                                   .from(table)
+                                   .where(tenantId.equal(kbTenantId.toString()))
+                                   .and(field.equal(searchKey))
+                                   .and(condition);
+            } else {
+                branch = dslContext.select(recordId)
+                                   .from(table)
+                                   .where(tenantId.equal(kbTenantId.toString()))
+                                   .and(field.equal(searchKey))
+                                   .and(condition)
+                                   .and(recordId.greaterThan(ULong.valueOf(offset)))
+                                   .orderBy(recordId)
+                                   .limit(limit);
+            }
+            union = union == null ? branch : union.union(branch);
+        }
+        return union.asTable("search_page");
+    }
+
+    /**
+     * Run a query on a new connection (checked out of the pool in the timed section).
+     */
+    private <T> T execute(final String operation, final WithConnectionCallback<T> callback) throws SQLException {
+        return metrics.db(operation, () -> execute(dataSource.getConnection(), callback));
+    }
+
+    private String toJson(final Map additionalData) throws SQLException {
+        return HyperswitchMetrics.json(() -> asString(additionalData));
+    }
+
+    @Nullable
+    private static Long toMinorAmount(@Nullable final Number amount) {
+        return amount == null ? null : amount.longValue();
     }
 
-    public HyperswitchResponsesRecord getSuccessfulResponse(
-      final UUID kbPaymentId, final UUID kbTenantId) throws SQLException {
-    return execute(
-        dataSource.getConnection(),
-        new WithConnectionCallback<HyperswitchResponsesRecord>() {
-          @Override
-          public HyperswitchResponsesRecord withConnection(final Connection conn) throws SQLException {
-            return DSL.using(conn, dialect, settings)
-                .selectFrom(HYPERSWITCH_RESPONSES)
-                .where(DSL.field(HYPERSWITCH_RESPONSES.KB_PAYMENT_ID).equal(kbPaymentId.toString()))
-                .and(DSL.field(HYPERSWITCH_RESPONSES.KB_TENANT_ID).equal(kbTenantId.toString()))
-                //                .and(DSL.field(HYPERSWITCH_RESPONSES.TRANSACTION_TYPE).equal(PURCHASE))
-                .orderBy(HYPERSWITCH_RESPONSES.RECORD_ID)
-                .fetchOne();
-          }
-        });
-  }
+    private static LocalDateTime utcNow() {
+        return LocalDateTime.now(ZoneOffset.UTC).withNano(0);
+    }
+
+    private static String toStatus(@Nullable final Object status) {
+        // Hyperswitch enums serialize to their API value (e.g. "requires_capture")
+        return status == null ? null : status.toString();
+    }
+
+    // Notifications
+
+    /**
+     * Store a webhook in the inbox. Redeliveries of the same event are ignored.
+     *
+     * @return false if the event had already been received
+     */
+    public boolean addNotification(final HyperswitchWebhookEvent event,
+            final String payload,
+            final DateTime utcNow,
+            final UUID kbTenantId) throws SQLException {
+        return execute("addNotification",
+                conn -> DSL.using(conn, dialect, settings)
+                           .insertInto(HYPERSWITCH_NOTIFICATIONS,
+                                   HYPERSWITCH_NOTIFICATIONS.EVENT_ID,
+                                   HYPERSWITCH_NOTIFICATIONS.EVENT_TYPE,
+                                   HYPERSWITCH_NOTIFICATIONS.PAYMENT_ID,
+                                   HYPERSWITCH_NOTIFICATIONS.REFUND_ID,
+                                   HYPERSWITCH_NOTIFICATIONS.STATUS,
+                                   HYPERSWITCH_NOTIFICATIONS.PAYLOAD,
+                                   HYPERSWITCH_NOTIFICATIONS.CREATED_DATE,
+                                   HYPERSWITCH_NOTIFICATIONS.KB_TENANT_ID)
+                           .values(event.getEventId() == null ? UUID.randomUUID().toString() : event.getEventId(),
+                                   event.getEventType(),
+                                   event.getPaymentId(),
+                                   event.getRefundId(),
+                                   event.getStatus(),
+                                   payload,
+                                   toLocalDateTime(utcNow),
+                                   kbTenantId.toString())
+                           .onDuplicateKeyIgnore()
+                           .execute() > 0);
+    }
+
+    /**
+     * Apply a batch of pending notifications onto hyperswitch_responses, and mark them as processed, in a single transaction.
+     * Notifications locked by other workers are skipped. A payment event is applied to the latest transaction of the payment,
+     * a refund event to the row of that refund.
+     *
+     * @return the number of notifications processed
+     */
+    public int processNotifications(final int batchSize, final DateTime utcNow) throws SQLException {
+        return execute("processNotifications",
+                conn -> DSL.using(conn, dialect, settings).transactionResult(configuration -> {
+                    final DSLContext dslContext = DSL.using(configuration);
+                    final List<HyperswitchNotificationsRecord> notifications = dslContext
+                            .selectFrom(HYPERSWITCH_NOTIFICATIONS)
+                            .where(HYPERSWITCH_NOTIFICATIONS.PROCESSED_DATE.isNull())
+                            .orderBy(HYPERSWITCH_NOTIFICATIONS.RECORD_ID)
+                            .limit(batchSize)
+                            .forUpdate()
+                            .skipLocked()
+                            .fetch();
+                    if (notifications.isEmpty()) {
+                        return 0;
+                    }
+
+                    final Map<String, List<HyperswitchNotificationsRecord>> notificationsByTenant = new HashMap<String, List<HyperswitchNotificationsRecord>>();
+                    for (final HyperswitchNotificationsRecord notification : notifications) {
+                        if (notification.getPaymentId() != null && notification.getStatus() != null) {
+                            notificationsByTenant.computeIfAbsent(notification.getKbTenantId(), k -> new ArrayList<HyperswitchNotificationsRecord>())
+                                                 .add(notification);
+                        }
+                    }
+
+                    // Responses to update, with their merged additional data (later events win)
+                    final Map<ULong, HyperswitchResponsesRecord> updatedResponses = new HashMap<ULong, HyperswitchResponsesRecord>();
+                    final Map<ULong, Map> updatedData = new HashMap<ULong, Map>();
+                    for (final Map.Entry<String, List<HyperswitchNotificationsRecord>> entry : notificationsByTenant.entrySet()) {
+                        final List<String> paymentIds = new ArrayList<String>();
+                        for (final HyperswitchNotificationsRecord notification : entry.getValue()) {
+                            paymentIds.add(notification.getPaymentId());
+                        }
+                        final List<HyperswitchResponsesRecord> responses = dslContext
+                                .selectFrom(HYPERSWITCH_RESPONSES)
+                                .where(HYPERSWITCH_RESPONSES.PAYMENT_ATTEMPT_ID.in(paymentIds))
+                                .and(HYPERSWITCH_RESPONSES.KB_TENANT_ID.equal(entry.getKey()))
+                                .orderBy(HYPERSWITCH_RESPONSES.RECORD_ID.desc())
+                                .forUpdate()
+                                .fetch();
+                        // Payment events only apply to the latest (non refund) transaction of the payment
+                        final Map<String, ULong> latestRecordIds = new HashMap<String, ULong>();
+                        for (final HyperswitchResponsesRecord response : responses) {
+                            if (!TransactionType.REFUND.toString().equals(response.getTransactionType())) {
+                                latestRecordIds.putIfAbsent(response.getPaymentAttemptId(), response.getRecordId());
+                            }
+                        }
+                        for (final HyperswitchNotificationsRecord notification : entry.getValue()) {
+                            for (final HyperswitchResponsesRecord response : responses) {
+                                if (!notification.getPaymentId().equals(response.getPaymentAttemptId())) {
+                                    continue;
+                                }
+                                if (notification.getRefundId() == null && !response.getRecordId().equals(latestRecordIds.get(response.getPaymentAttemptId()))) {
+                                    continue;
+                                }
+                                final Map data = updatedData.computeIfAbsent(response.getRecordId(),
+                                                                             k -> new HashMap(fromAdditionalData(response.getAdditionalData())));
+                                if (!isNotificationFor(notification, response, data)) {
+                                    continue;
+                                }
+                                data.put("status", notification.getStatus());
+                                updatedResponses.put(response.getRecordId(), response);
+                            }
+                        }
+                    }
+
+                    if (!updatedResponses.isEmpty()) {
+                        final BatchBindStep batch = dslContext.batch(
+                                dslContext.update(HYPERSWITCH_RESPONSES)
+                                          .set(HYPERSWITCH_RESPONSES.ADDITIONAL_DATA, (String) null)
+                                          .set(HYPERSWITCH_RESPONSES.STATUS, (String) null)
+                                          .set(HYPERSWITCH_RESPONSES.UPDATED_DATE, (LocalDateTime) null)
+                                          .where(HYPERSWITCH_RESPONSES.RECORD_ID.equal((ULong) null)));
+                        final List<Query> heads = new ArrayList<Query>(updatedResponses.size());
+                        for (final ULong recordId : updatedResponses.keySet()) {
+                            final Map data = updatedData.get(recordId);
+                            batch.bind(toJson(data), toStatus(data.get("status")), toLocalDateTime(utcNow), recordId);
+                            heads.add(updatePaymentHead(dslContext, updatedResponses.get(recordId), toStatus(data.get("status")), toLocalDateTime(utcNow)));
+                        }
+                        batch.execute();
+                        dslContext.batch(heads).execute();
+                    }
+
+                    final List<ULong> notificationIds = new ArrayList<ULong>(notifications.size());
+                    for (final HyperswitchNotificationsRecord notification : notifications) {
+                        notificationIds.add(notification.getRecordId());
+                    }
+                    dslContext.update(HYPERSWITCH_NOTIFICATIONS)
+                              .set(HYPERSWITCH_NOTIFICATIONS.PROCESSED_DATE, toLocalDateTime(utcNow))
+                              .where(HYPERSWITCH_NOTIFICATIONS.RECORD_ID.in(notificationIds))
+                              .execute();
+                    return notifications.size();
+                }));
+    }
 
+    public int deleteProcessedNotifications(final DateTime processedBefore) throws SQLException {
+        return execute("deleteProcessedNotifications",
+                conn -> DSL.using(conn, dialect, settings)
+                           .deleteFrom(HYPERSWITCH_NOTIFICATIONS)
+                           .where(HYPERSWITCH_NOTIFICATIONS.PROCESSED_DATE.lt(toLocalDateTime(processedBefore)))
+                           .execute());
+    }
+
+    private static boolean isNotificationFor(final HyperswitchNotificationsRecord notification,
+            final HyperswitchResponsesRecord response,
+            final Map additionalData) {
+        final boolean isRefund = TransactionType.REFUND.toString().equals(response.getTransactionType());
+        if (notification.getRefundId() == null) {
+            return !isRefund;
+        }
+        final Object refundId = response.getRefundId() != null ? response.getRefundId() : additionalData.get("refund_id");
+        return isRefund && notification.getRefundId().equals(refundId);
+    }
 
     public static Map fromAdditionalData(@Nullable final String additionalData) {
         if (additionalData == null) {
@@ -305,7 +1123,7 @@ public class HyperswitchDao extends
         }
 
         try {
-            return objectMapper.readValue(additionalData, Map.class);
+            return HyperswitchMetrics.json(() -> objectMapper.readValue(additionalData, Map.class));
         } catch (final IOException e) {
             throw new RuntimeException(e);
         }
@@ -323,4 +1141,322 @@ public class HyperswitchDao extends
             throw new FormaterException(e);
         }
     }
+
+    // Payment heads
+
+    /**
+     * The head of a payment is its latest state (Hyperswitch payment id, original amount, captured and refunded totals
+     * in minor units, latest status), kept in step with hyperswitch_responses in the transaction of each insert or
+     * status update, so that it can be read without going through the history of the payment.
+     * <p>
+     * The refundable amount is the captured total, minus the refunded total and the refunds in flight (see
+     * {@link #reserveRefund}).
+     * <p>
+     * Payments which predate hyperswitch_payment_heads get their head rebuilt from their history on first read (legacy
+     * captures, voids and refunds, recorded under the payment method id, are attached to their payment by migration
+     * V20261018200000).
+     *
+     * @return the head of the payment, null if there is no response for it
+     */
+    @Nullable
+    public HyperswitchPaymentHeadsRecord getPaymentHead(final UUID kbPaymentId, final UUID kbTenantId) throws SQLException {
+        awaitFlushed(kbPaymentId);
+        final HyperswitchPaymentHeadsRecord head = execute("getPaymentHead",
+                conn -> DSL.using(conn, dialect, settings)
+                           .selectFrom(HYPERSWITCH_PAYMENT_HEADS)
+                           .where(HYPERSWITCH_PAYMENT_HEADS.KB_PAYMENT_ID.equal(kbPaymentId.toString()))
+                           .and(HYPERSWITCH_PAYMENT_HEADS.KB_TENANT_ID.equal(kbTenantId.toString()))
+                           .fetchOne());
+        return head != null ? head : rebuildPaymentHead(kbPaymentId, kbTenantId);
+    }
+
+    /**
+     * Take a refund out of the refundable amount of the payment before sending it to Hyperswitch, unless it is more
+     * than what is left: concurrent refunds of the same payment can't go over the captured total. The refund is
+     * accounted for when its response is inserted (and given back if it failed), or by {@link #releaseRefund} if
+     * there is no response.
+     *
+     * @return false if the refund is more than the refundable amount of the payment
+     */
+    public boolean reserveRefund(final UUID kbPaymentId, final long amount, final UUID kbTenantId) throws SQLException {
+        return execute("reserveRefund",
+                conn -> DSL.using(conn, dialect, settings)
+                           .update(HYPERSWITCH_PAYMENT_HEADS)
+                           .set(HYPERSWITCH_PAYMENT_HEADS.REFUNDABLE_AMOUNT, HYPERSWITCH_PAYMENT_HEADS.REFUNDABLE_AMOUNT.minus(amount))
+                           .where(HYPERSWITCH_PAYMENT_HEADS.KB_PAYMENT_ID.equal(kbPaymentId.toString()))
+                           .and(HYPERSWITCH_PAYMENT_HEADS.KB_TENANT_ID.equal(kbTenantId.toString()))
+                           .and(HYPERSWITCH_PAYMENT_HEADS.REFUNDABLE_AMOUNT.greaterOrEqual(amount))
+                           .execute() > 0);
+    }
+
+    /**
+     * Give back a refund reserved by {@link #reserveRefund}, which didn't get a response from Hyperswitch.
+     */
+    public void releaseRefund(final UUID kbPaymentId, final long amount, final UUID kbTenantId) throws SQLException {
+        execute("releaseRefund",
+                conn -> DSL.using(conn, dialect, settings)
+                           .update(HYPERSWITCH_PAYMENT_HEADS)
+                           .set(HYPERSWITCH_PAYMENT_HEADS.REFUNDABLE_AMOUNT, HYPERSWITCH_PAYMENT_HEADS.REFUNDABLE_AMOUNT.plus(amount))
+                           .where(HYPERSWITCH_PAYMENT_HEADS.KB_PAYMENT_ID.equal(kbPaymentId.toString()))
+                           .and(HYPERSWITCH_PAYMENT_HEADS.KB_TENANT_ID.equal(kbTenantId.toString()))
+                           .execute());
+    }
+
+    @Nullable
+    private HyperswitchPaymentHeadsRecord rebuildPaymentHead(final UUID kbPaymentId, final UUID kbTenantId) throws SQLException {
+        return execute("rebuildPaymentHead",
+                conn -> DSL.using(conn, dialect, settings).transactionResult(configuration -> {
+                    final DSLContext dslContext = DSL.using(configuration);
+                    final List<HyperswitchResponsesRecord> responses = dslContext
+                            .selectFrom(HYPERSWITCH_RESPONSES)
+                            .where(HYPERSWITCH_RESPONSES.KB_TENANT_ID.equal(kbTenantId.toString()))
+                            .and(HYPERSWITCH_RESPONSES.KB_PAYMENT_ID.equal(kbPaymentId.toString()))
+                            .orderBy(HYPERSWITCH_RESPONSES.RECORD_ID)
+                            .fetch();
+                    if (responses.isEmpty()) {
+                        return null;
+                    }
+
+                    HyperswitchPaymentHeadsRecord head = null;
+                    for (final HyperswitchResponsesRecord response : responses) {
+                        final HyperswitchPaymentHeadsRecord next = newPaymentHead(response);
+                        if (head == null) {
+                            head = next;
+                            continue;
+                        }
+                        // Same as the upsert of an insert, see upsertPaymentHead
+                        if (isPayment(response)) {
+                            head.setAmount(next.getAmount());
+                            head.setCurrency(next.getCurrency());
+                        }
+                        if (next.getPaymentAttemptId() != null) {
+                            head.setPaymentAttemptId(next.getPaymentAttemptId());
+                        }
+                        head.setCapturedAmount(head.getCapturedAmount() + next.getCapturedAmount());
+                        head.setRefundedAmount(head.getRefundedAmount() + next.getRefundedAmount());
+                        head.setStatus(next.getStatus());
+                        head.setKbPaymentTransactionId(next.getKbPaymentTransactionId());
+                        head.setUpdatedDate(next.getUpdatedDate());
+                    }
+                    // No refund is in flight for a payment without a head
+                    head.setRefundableAmount(head.getCapturedAmount() - head.getRefundedAmount());
+                    // Another thread may have rebuilt it meanwhile
+                    dslContext.insertInto(HYPERSWITCH_PAYMENT_HEADS)
+                              .set(head)
+                              .onDuplicateKeyIgnore()
+                              .execute();
+                    return dslContext.selectFrom(HYPERSWITCH_PAYMENT_HEADS)
+                                     .where(HYPERSWITCH_PAYMENT_HEADS.KB_PAYMENT_ID.equal(kbPaymentId.toString()))
+                                     .and(HYPERSWITCH_PAYMENT_HEADS.KB_TENANT_ID.equal(kbTenantId.toString()))
+                                     .fetchOne();
+                }));
+    }
+
+    /**
+     * Apply a new response to the head of its payment, creating it on the first response of the payment.
+     */
+    private static Query upsertPaymentHead(final DSLContext dslContext, final HyperswitchResponsesRecord response) {
+        final HyperswitchPaymentHeadsRecord head = newPaymentHead(response);
+        InsertOnDuplicateSetMoreStep<HyperswitchPaymentHeadsRecord> upsert = dslContext
+                .insertInto(HYPERSWITCH_PAYMENT_HEADS)
+                .set(head)
+                .onDuplicateKeyUpdate()
+                .set(HYPERSWITCH_PAYMENT_HEADS.PAYMENT_ATTEMPT_ID, DSL.coalesce(DSL.val(head.getPaymentAttemptId(), HYPERSWITCH_PAYMENT_HEADS.PAYMENT_ATTEMPT_ID),
+                                                                                HYPERSWITCH_PAYMENT_HEADS.PAYMENT_ATTEMPT_ID))
+                .set(HYPERSWITCH_PAYMENT_HEADS.CAPTURED_AMOUNT, HYPERSWITCH_PAYMENT_HEADS.CAPTURED_AMOUNT.plus(head.getCapturedAmount()))
+                .set(HYPERSWITCH_PAYMENT_HEADS.REFUNDED_AMOUNT, HYPERSWITCH_PAYMENT_HEADS.REFUNDED_AMOUNT.plus(head.getRefundedAmount()))
+                .set(HYPERSWITCH_PAYMENT_HEADS.REFUNDABLE_AMOUNT, HYPERSWITCH_PAYMENT_HEADS.REFUNDABLE_AMOUNT.plus(getRefundableDelta(response)))
+                .set(HYPERSWITCH_PAYMENT_HEADS.STATUS, head.getStatus())
+                .set(HYPERSWITCH_PAYMENT_HEADS.KB_PAYMENT_TRANSACTION_ID, head.getKbPaymentTransactionId())
+                .set(HYPERSWITCH_PAYMENT_HEADS.UPDATED_DATE, head.getUpdatedDate());
+        if (isPayment(response)) {
+            upsert = upsert.set(HYPERSWITCH_PAYMENT_HEADS.AMOUNT, head.getAmount())
+                           .set(HYPERSWITCH_PAYMENT_HEADS.CURRENCY, head.getCurrency());
+        }
+        return upsert;
+    }
+
+    /**
+     * @return the change of the refundable amount of the payment when the response is inserted
+     */
+    private static long getRefundableDelta(final HyperswitchResponsesRecord response) {
+        if (TransactionType.REFUND.toString().equals(response.getTransactionType())) {
+            // Already taken out by reserveRefund: only a failed refund changes it, by giving it back
+            return toMinorUnits(response) - getRefundedAmount(response, response.getStatus());
+        }
+        return getCapturedAmount(response, response.getStatus());
+    }
+
+    /**
+     * Apply the status change of a response to the head of its payment: running totals and, if the response is the
+     * latest transaction of the payment, status. The response holds the status before the change, and must have been
+     * read with its row locked (SELECT ... FOR UPDATE) in the same transaction, so that the change is applied once.
+     */
+    private static Query updatePaymentHead(final DSLContext dslContext,
+            final HyperswitchResponsesRecord response,
+            @Nullable final String status,
+            final LocalDateTime updatedDate) {
+        final long capturedDelta = getCapturedAmount(response, status) - getCapturedAmount(response, response.getStatus());
+        final long refundedDelta = getRefundedAmount(response, status) - getRefundedAmount(response, response.getStatus());
+        return dslContext.update(HYPERSWITCH_PAYMENT_HEADS)
+                         .set(HYPERSWITCH_PAYMENT_HEADS.CAPTURED_AMOUNT, HYPERSWITCH_PAYMENT_HEADS.CAPTURED_AMOUNT.plus(capturedDelta))
+                         .set(HYPERSWITCH_PAYMENT_HEADS.REFUNDED_AMOUNT, HYPERSWITCH_PAYMENT_HEADS.REFUNDED_AMOUNT.plus(refundedDelta))
+                         .set(HYPERSWITCH_PAYMENT_HEADS.REFUNDABLE_AMOUNT, HYPERSWITCH_PAYMENT_HEADS.REFUNDABLE_AMOUNT.plus(capturedDelta - refundedDelta))
+                         .set(HYPERSWITCH_PAYMENT_HEADS.STATUS, DSL.when(HYPERSWITCH_PAYMENT_HEADS.KB_PAYMENT_TRANSACTION_ID.equal(response.getKbPaymentTransactionId()),
+                                                                         DSL.val(status, HYPERSWITCH_PAYMENT_HEADS.STATUS))
+                                                                   .otherwise(HYPERSWITCH_PAYMENT_HEADS.STATUS))
+                         .set(HYPERSWITCH_PAYMENT_HEADS.UPDATED_DATE, updatedDate)
+                         .where(HYPERSWITCH_PAYMENT_HEADS.KB_PAYMENT_ID.equal(response.getKbPaymentId()))
+                         .and(HYPERSWITCH_PAYMENT_HEADS.KB_TENANT_ID.equal(response.getKbTenantId()));
+    }
+
+    /**
+     * @return the head of a payment whose only response is this one
+     */
+    private static HyperswitchPaymentHeadsRecord newPaymentHead(final HyperswitchResponsesRecord response) {
+        final HyperswitchPaymentHeadsRecord head = new HyperswitchPaymentHeadsRecord();
+        head.setKbPaymentId(response.getKbPaymentId());
+        head.setKbAccountId(response.getKbAccountId());
+        head.setPaymentAttemptId(response.getPaymentAttemptId());
+        if (isPayment(response)) {
+            head.setAmount(toMinorUnits(response));
+            head.setCurrency(response.getCurrency());
+        }
+        head.setCapturedAmount(getCapturedAmount(response, response.getStatus()));
+        head.setRefundedAmount(getRefundedAmount(response, response.getStatus()));
+        head.setRefundableAmount(head.getCapturedAmount() - head.getRefundedAmount());
+        head.setStatus(response.getStatus());
+        head.setKbPaymentTransactionId(response.getKbPaymentTransactionId());
+        head.setCreatedDate(response.getCreatedDate());
+        head.setUpdatedDate(response.getCreatedDate());
+        head.setKbTenantId(response.getKbTenantId());
+        return head;
+    }
+
+    /**
+     * @return true for the response which sets the amount of the payment (authorization or purchase)
+     */
+    private static boolean isPayment(final HyperswitchResponsesRecord response) {
+        return TransactionType.AUTHORIZE.toString().equals(response.getTransactionType()) ||
+               TransactionType.PURCHASE.toString().equals(response.getTransactionType());
+    }
+
+    private static long getCapturedAmount(final HyperswitchResponsesRecord response, @Nullable final String status) {
+        final boolean isCapture = TransactionType.PURCHASE.toString().equals(response.getTransactionType()) ||
+                                  TransactionType.CAPTURE.toString().equals(response.getTransactionType());
+        return isCapture && status != null && CAPTURED_STATUSES.contains(status) ? toMinorUnits(response) : 0L;
+    }
+
+    private static long getRefundedAmount(final HyperswitchResponsesRecord response, @Nullable final String status) {
+        final boolean isRefund = TransactionType.REFUND.toString().equals(response.getTransactionType());
+        return isRefund && status != null && REFUNDED_STATUSES.contains(status) ? toMinorUnits(response) : 0L;
+    }
+
+    private static long toMinorUnits(final HyperswitchResponsesRecord response) {
+        // Voids are recorded without a currency
+        if (response.getAmount() == null || response.getCurrency() == null) {
+            return 0L;
+        }
+        return KillBillMoney.toMinorUnits(response.getCurrency(), response.getAmount());
+    }
+
+    // HPP requests
+
+    public HyperswitchHppRequestsRecord addHppRequest(final UUID kbAccountId,
+            final String sessionId,
+            final Map additionalData,
+            final DateTime utcNow,
+            final UUID kbTenantId) throws SQLException {
+        final HyperswitchHppRequestsRecord record = new HyperswitchHppRequestsRecord();
+        record.setKbAccountId(kbAccountId.toString());
+        record.setSessionId(sessionId);
+        record.setAdditionalData(toJson(additionalData));
+        record.setCreatedDate(toLocalDateTime(utcNow));
+        record.setKbTenantId(kbTenantId.toString());
+        execute("addHppRequest",
+                conn -> DSL.using(conn, dialect, settings)
+                           .insertInto(HYPERSWITCH_HPP_REQUESTS)
+                           .set(record)
+                           .execute());
+        return record;
+    }
+
+    @Nullable
+    public HyperswitchHppRequestsRecord getHppRequest(final String sessionId, final UUID kbTenantId) throws SQLException {
+        return execute("getHppRequest",
+                conn -> DSL.using(conn, dialect, settings)
+                           .selectFrom(HYPERSWITCH_HPP_REQUESTS)
+                           .where(HYPERSWITCH_HPP_REQUESTS.SESSION_ID.equal(sessionId))
+                           .and(HYPERSWITCH_HPP_REQUESTS.KB_TENANT_ID.equal(kbTenantId.toString()))
+                           .fetchOne());
+    }
+
+    /**
+     * Delete (at most) {@code batchSize} of the requests created before {@code createdBefore}, oldest first.
+     *
+     * @return the number of requests deleted, less than batchSize once there is nothing left to purge
+     */
+    public int deleteHppRequests(final DateTime createdBefore, final int batchSize) throws SQLException {
+        return execute("deleteHppRequests",
+                conn -> DSL.using(conn, dialect, settings).transactionResult(configuration -> {
+                    final DSLContext dslContext = DSL.using(configuration);
+                    // Portable bounded delete (no DELETE ... LIMIT), served by the (created_date, record_id) index
+                    final List<ULong> recordIds = dslContext.select(HYPERSWITCH_HPP_REQUESTS.RECORD_ID)
+                                                            .from(HYPERSWITCH_HPP_REQUESTS)
+                                                            .where(HYPERSWITCH_HPP_REQUESTS.CREATED_DATE.lt(toLocalDateTime(createdBefore)))
+                                                            .orderBy(HYPERSWITCH_HPP_REQUESTS.CREATED_DATE, HYPERSWITCH_HPP_REQUESTS.RECORD_ID)
+                                                            .limit(batchSize)
+                                                            .fetch(HYPERSWITCH_HPP_REQUESTS.RECORD_ID);
+                    if (recordIds.isEmpty()) {
+                        return 0;
+                    }
+                    return dslContext.deleteFrom(HYPERSWITCH_HPP_REQUESTS)
+                                     .where(HYPERSWITCH_HPP_REQUESTS.RECORD_ID.in(recordIds))
+                                     .execute();
+                }));
+    }
+
+    // Job checkpoints
+
+    @Nullable
+    public HyperswitchJobCheckpointsRecord getJobCheckpoint(final String jobName, final UUID kbTenantId) throws SQLException {
+        return execute("getJobCheckpoint",
+                conn -> DSL.using(conn, dialect, settings)
+                           .selectFrom(HYPERSWITCH_JOB_CHECKPOINTS)
+                           .where(HYPERSWITCH_JOB_CHECKPOINTS.KB_TENANT_ID.equal(kbTenantId.toString()))
+                           .and(HYPERSWITCH_JOB_CHECKPOINTS.JOB_NAME.equal(jobName))
+                           .fetchOne());
+    }
+
+    public void saveJobCheckpoint(final String jobName,
+            final long nextOffset,
+            final long nbProcessed,
+            final DateTime utcNow,
+            final UUID kbTenantId) throws SQLException {
+        final LocalDateTime now = toLocalDateTime(utcNow);
+        execute("saveJobCheckpoint",
+                conn -> DSL.using(conn, dialect, settings)
+                           .insertInto(HYPERSWITCH_JOB_CHECKPOINTS,
+                                   HYPERSWITCH_JOB_CHECKPOINTS.JOB_NAME,
+                                   HYPERSWITCH_JOB_CHECKPOINTS.NEXT_OFFSET,
+                                   HYPERSWITCH_JOB_CHECKPOINTS.NB_PROCESSED,
+                                   HYPERSWITCH_JOB_CHECKPOINTS.CREATED_DATE,
+                                   HYPERSWITCH_JOB_CHECKPOINTS.UPDATED_DATE,
+                                   HYPERSWITCH_JOB_CHECKPOINTS.KB_TENANT_ID)
+                           .values(jobName, nextOffset, nbProcessed, now, now, kbTenantId.toString())
+                           .onDuplicateKeyUpdate()
+                           .set(HYPERSWITCH_JOB_CHECKPOINTS.NEXT_OFFSET, nextOffset)
+                           .set(HYPERSWITCH_JOB_CHECKPOINTS.NB_PROCESSED, nbProcessed)
+                           .set(HYPERSWITCH_JOB_CHECKPOINTS.UPDATED_DATE, now)
+                           .execute());
+    }
+
+    public void deleteJobCheckpoint(final String jobName, final UUID kbTenantId) throws SQLException {
+        execute("deleteJobCheckpoint",
+                conn -> DSL.using(conn, dialect, settings)
+                           .deleteFrom(HYPERSWITCH_JOB_CHECKPOINTS)
+                           .where(HYPERSWITCH_JOB_CHECKPOINTS.KB_TENANT_ID.equal(kbTenantId.toString()))
+                           .and(HYPERSWITCH_JOB_CHECKPOINTS.JOB_NAME.equal(jobName))
+                           .execute());
+    }
 }
@@ -0,0 +1,570 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch.dao;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchResponsesRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Write-behind journal for hyperswitch_responses.
+ * <p>
+ * Responses are appended to a memory-mapped file by a single appender thread, which fsyncs each batch of
+ * appends at once (group commit) before acknowledging them. A writer thread then inserts them into the
+ * database in JDBC batches, and checkpoints the journal. On startup, entries past the checkpoint are
+ * replayed (rows already inserted are skipped).
+ * <p>
+ * The number of responses not yet in the database is bounded: callers block when the limit is reached,
+ * and {@link #append} fails if no room is made within the timeout.
+ * <p>
+ * File layout: a header {@code [generation: long][checkpoint: long]} followed by entries
+ * {@code [length: int][crc32: int][generation: long][payload]}. The generation is bumped each time the
+ * journal wraps around, so that stale entries left after the write position are never replayed.
+ */
+public class HyperswitchResponseJournal implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HyperswitchResponseJournal.class);
+
+    private static final int HEADER_SIZE = 16;
+    private static final int ENTRY_HEADER_SIZE = 16;
+    private static final long FLUSH_RETRY_MILLIS = 1000;
+
+    private final HyperswitchDao hyperswitchDao;
+    private final File file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int flushBatchSize;
+    private final long appendTimeoutMillis;
+    private final Semaphore capacity;
+    private final int queueCapacity;
+    private final BlockingQueue<Entry> appendQueue = new LinkedBlockingQueue<Entry>();
+    private final BlockingQueue<Entry> flushQueue = new LinkedBlockingQueue<Entry>();
+    // Number of responses not yet in the database, per payment and per transaction id
+    private final ConcurrentMap<String, AtomicInteger> pendingByKey = new ConcurrentHashMap<String, AtomicInteger>();
+    private final Object checkpointLock = new Object();
+    private final Thread appender;
+    private final Thread writer;
+
+    private long generation;
+    // Only accessed by the appender thread
+    private int writeOffset;
+    private volatile long checkpoint;
+    private volatile boolean closed;
+
+    private final AtomicLong appendedResponses = new AtomicLong();
+    private final AtomicLong flushedResponses = new AtomicLong();
+    private final AtomicLong groupCommits = new AtomicLong();
+    private volatile long lastFlushLatencyMillis;
+    private volatile long lastFsyncLatencyMicros;
+
+    public HyperswitchResponseJournal(final HyperswitchDao hyperswitchDao,
+                                      final File file,
+                                      final int sizeBytes,
+                                      final int queueCapacity,
+                                      final int flushBatchSize,
+                                      final long appendTimeoutMillis) throws IOException {
+        this.hyperswitchDao = hyperswitchDao;
+        this.file = file;
+        this.flushBatchSize = flushBatchSize;
+        this.appendTimeoutMillis = appendTimeoutMillis;
+        this.queueCapacity = queueCapacity;
+        this.capacity = new Semaphore(queueCapacity);
+
+        final boolean exists = file.exists() && file.length() >= HEADER_SIZE;
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        this.channel = randomAccessFile.getChannel();
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(sizeBytes, exists ? file.length() : 0));
+        if (exists) {
+            this.generation = buffer.getLong(0);
+            this.checkpoint = buffer.getLong(8);
+        } else {
+            this.generation = 0;
+            this.checkpoint = HEADER_SIZE;
+            writeHeader();
+        }
+        this.writeOffset = (int) checkpoint;
+
+        final ThreadFactoryBuilder threadFactoryBuilder = new ThreadFactoryBuilder().setDaemon(true);
+        this.appender = threadFactoryBuilder.setNameFormat("hyperswitch-journal-appender-%d").build().newThread(this::runAppender);
+        this.writer = threadFactoryBuilder.setNameFormat("hyperswitch-journal-writer-%d").build().newThread(this::runWriter);
+    }
+
+    /**
+     * Replay the entries which didn't make it to the database, then start the appender and writer threads.
+     *
+     * @return the number of responses recovered
+     */
+    public int start() throws IOException, SQLException {
+        final List<HyperswitchResponsesRecord> recovered = new ArrayList<HyperswitchResponsesRecord>();
+        int offset = (int) checkpoint;
+        HyperswitchResponsesRecord record;
+        while ((record = readEntry(offset)) != null) {
+            recovered.add(record);
+            offset += ENTRY_HEADER_SIZE + buffer.getInt(offset);
+        }
+
+        int inserted = 0;
+        for (int i = 0; i < recovered.size(); i += flushBatchSize) {
+            inserted += hyperswitchDao.insertMissingResponses(recovered.subList(i, Math.min(recovered.size(), i + flushBatchSize)));
+        }
+        if (!recovered.isEmpty()) {
+            logger.info("Replayed {} journaled responses from {} ({} were not in the database)", recovered.size(), file, inserted);
+        }
+        rewind();
+
+        appender.start();
+        writer.start();
+        return inserted;
+    }
+
+    /**
+     * Durably journal a response: returns once it has been fsync'd, not once it is in the database.
+     *
+     * @throws SQLException if the response couldn't be journaled, in which case it should be inserted synchronously
+     */
+    public void append(final HyperswitchResponsesRecord record) throws SQLException {
+        if (closed) {
+            throw new SQLException("Journal is closed");
+        }
+
+        final byte[] payload;
+        try {
+            payload = encode(record);
+        } catch (final IOException e) {
+            throw new SQLException(e);
+        }
+        if (HEADER_SIZE + ENTRY_HEADER_SIZE + payload.length > buffer.capacity()) {
+            throw new SQLException("Response too large for the journal: " + payload.length + " bytes");
+        }
+
+        try {
+            // Back-pressure: bounded number of responses not yet in the database
+            if (!capacity.tryAcquire(appendTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for room in the journal (" + queueCapacity + " pending responses)");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(e);
+        }
+
+        final Entry entry = new Entry(record, payload);
+        incrementPending(record);
+        appendQueue.add(entry);
+        try {
+            entry.journaled.get(appendTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(e);
+        } catch (final ExecutionException | TimeoutException e) {
+            // Not acknowledged: the appender won't hand it to the writer
+            if (entry.abandon()) {
+                release(entry);
+            }
+            throw new SQLException("Unable to journal response", e);
+        }
+    }
+
+    /**
+     * Wait until the pending responses of a payment (or transaction) are in the database.
+     */
+    public void awaitFlushed(final String kbPaymentOrTransactionId, final long timeoutMillis) {
+        final AtomicInteger pending = pendingByKey.get(kbPaymentOrTransactionId);
+        if (pending == null || pending.get() == 0) {
+            return;
+        }
+
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (checkpointLock) {
+            long remaining;
+            while (pending.get() > 0 && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    checkpointLock.wait(remaining);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        appender.interrupt();
+        writer.interrupt();
+        try {
+            appender.join(TimeUnit.SECONDS.toMillis(5));
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Anything not flushed is replayed at next startup
+        try {
+            channel.close();
+        } catch (final IOException e) {
+            logger.warn("Unable to close journal {}", file, e);
+        }
+    }
+
+    /**
+     * @return the number of responses journaled or being journaled, but not yet in the database
+     */
+    public int getQueueDepth() {
+        return queueCapacity - capacity.availablePermits();
+    }
+
+    public long getAppendedResponses() {
+        return appendedResponses.get();
+    }
+
+    public long getFlushedResponses() {
+        return flushedResponses.get();
+    }
+
+    public long getGroupCommits() {
+        return groupCommits.get();
+    }
+
+    public long getLastFlushLatencyMillis() {
+        return lastFlushLatencyMillis;
+    }
+
+    public long getLastFsyncLatencyMicros() {
+        return lastFsyncLatencyMicros;
+    }
+
+    private void runAppender() {
+        final List<Entry> batch = new ArrayList<Entry>();
+        while (!closed) {
+            try {
+                batch.add(appendQueue.take());
+                appendQueue.drainTo(batch);
+                appendBatch(batch);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (final Exception e) {
+                logger.warn("Unable to journal {} responses", batch.size(), e);
+                for (final Entry entry : batch) {
+                    entry.journaled.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void appendBatch(final List<Entry> batch) throws InterruptedException, IOException {
+        final int batchStart = writeOffset;
+        int position = writeOffset;
+        final List<Entry> written = new ArrayList<Entry>(batch.size());
+        for (final Entry entry : batch) {
+            if (position + ENTRY_HEADER_SIZE + entry.payload.length > buffer.capacity()) {
+                // Journal full: sync what we have so far, wait for the writer to catch up, and wrap around
+                commit(written, batchStart, position);
+                written.clear();
+                awaitCheckpoint(position);
+                rewind();
+                appendBatch(new ArrayList<Entry>(batch.subList(batch.indexOf(entry), batch.size())));
+                return;
+            }
+            writeEntry(position, entry.payload);
+            position += ENTRY_HEADER_SIZE + entry.payload.length;
+            entry.endOffset = position;
+            written.add(entry);
+        }
+        commit(written, batchStart, position);
+    }
+
+    private void commit(final List<Entry> written, final int start, final int end) {
+        if (written.isEmpty()) {
+            return;
+        }
+
+        final long startNanos = System.nanoTime();
+        buffer.force(start, end - start);
+        lastFsyncLatencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        writeOffset = end;
+        groupCommits.incrementAndGet();
+        appendedResponses.addAndGet(written.size());
+        for (final Entry entry : written) {
+            if (entry.acknowledge()) {
+                flushQueue.add(entry);
+            } else {
+                // The caller gave up and inserts synchronously: skip it, but checkpoint past it
+                entry.skipped = true;
+                flushQueue.add(entry);
+            }
+        }
+    }
+
+    private void runWriter() {
+        final List<Entry> batch = new ArrayList<Entry>(flushBatchSize);
+        while (!closed) {
+            try {
+                batch.add(flushQueue.take());
+                flushQueue.drainTo(batch, flushBatchSize - 1);
+                flushBatch(batch);
+                batch.clear();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    private void flushBatch(final List<Entry> batch) throws InterruptedException {
+        final List<HyperswitchResponsesRecord> records = new ArrayList<HyperswitchResponsesRecord>(batch.size());
+        for (final Entry entry : batch) {
+            if (!entry.skipped) {
+                records.add(entry.record);
+            }
+        }
+
+        while (true) {
+            final long startMillis = System.currentTimeMillis();
+            try {
+                if (!records.isEmpty()) {
+                    hyperswitchDao.insertResponses(records);
+                }
+                lastFlushLatencyMillis = System.currentTimeMillis() - startMillis;
+                break;
+            } catch (final SQLException | RuntimeException e) {
+                // Keep the entries (and the back-pressure) until the database is back
+                logger.warn("Unable to flush {} journaled responses, retrying", records.size(), e);
+                Thread.sleep(FLUSH_RETRY_MILLIS);
+            }
+        }
+
+        synchronized (checkpointLock) {
+            checkpoint = batch.get(batch.size() - 1).endOffset;
+            buffer.putLong(8, checkpoint);
+            buffer.force(0, HEADER_SIZE);
+            for (final Entry entry : batch) {
+                if (!entry.skipped) {
+                    release(entry);
+                }
+            }
+            checkpointLock.notifyAll();
+        }
+        flushedResponses.addAndGet(records.size());
+    }
+
+    private void awaitCheckpoint(final long offset) throws InterruptedException {
+        synchronized (checkpointLock) {
+            while (checkpoint < offset) {
+                checkpointLock.wait(FLUSH_RETRY_MILLIS);
+            }
+        }
+    }
+
+    private void rewind() {
+        synchronized (checkpointLock) {
+            generation++;
+            checkpoint = HEADER_SIZE;
+            writeOffset = HEADER_SIZE;
+            writeHeader();
+        }
+    }
+
+    private void writeHeader() {
+        buffer.putLong(0, generation);
+        buffer.putLong(8, checkpoint);
+        buffer.force(0, HEADER_SIZE);
+    }
+
+    private void writeEntry(final int offset, final byte[] payload) {
+        buffer.putInt(offset, payload.length);
+        buffer.putInt(offset + 4, checksum(generation, payload));
+        buffer.putLong(offset + 8, generation);
+        buffer.put(offset + ENTRY_HEADER_SIZE, payload);
+    }
+
+    @Nullable
+    private HyperswitchResponsesRecord readEntry(final int offset) throws IOException {
+        if (offset + ENTRY_HEADER_SIZE > buffer.capacity()) {
+            return null;
+        }
+        final int length = buffer.getInt(offset);
+        if (length <= 0 || offset + ENTRY_HEADER_SIZE + length > buffer.capacity() || buffer.getLong(offset + 8) != generation) {
+            return null;
+        }
+        final byte[] payload = new byte[length];
+        buffer.get(offset + ENTRY_HEADER_SIZE, payload);
+        if (checksum(generation, payload) != buffer.getInt(offset + 4)) {
+            // Torn write
+            return null;
+        }
+        return decode(payload);
+    }
+
+    private void incrementPending(final HyperswitchResponsesRecord record) {
+        pendingByKey.computeIfAbsent(record.getKbPaymentId(), k -> new AtomicInteger()).incrementAndGet();
+        pendingByKey.computeIfAbsent(record.getKbPaymentTransactionId(), k -> new AtomicInteger()).incrementAndGet();
+    }
+
+    private void release(final Entry entry) {
+        decrementPending(entry.record.getKbPaymentId());
+        decrementPending(entry.record.getKbPaymentTransactionId());
+        capacity.release();
+    }
+
+    private void decrementPending(final String key) {
+        pendingByKey.computeIfPresent(key, (k, pending) -> pending.decrementAndGet() <= 0 ? null : pending);
+    }
+
+    private static int checksum(final long generation, final byte[] payload) {
+        final CRC32 crc32 = new CRC32();
+        crc32.update(ByteBuffer.allocate(8).putLong(0, generation));
+        crc32.update(payload);
+        return (int) crc32.getValue();
+    }
+
+    private static byte[] encode(final HyperswitchResponsesRecord record) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, record.getKbAccountId());
+        writeString(out, record.getKbPaymentId());
+        writeString(out, record.getKbPaymentTransactionId());
+        writeString(out, record.getTransactionType());
+        writeString(out, record.getAmount() == null ? null : record.getAmount().toPlainString());
+        writeString(out, record.getCurrency());
+        writeString(out, record.getPaymentAttemptId());
+        writeString(out, record.getErrorMessage());
+        writeString(out, record.getErrorCode());
+        writeString(out, record.getStatus());
+        writeString(out, record.getRefundId());
+        writeString(out, record.getMinorAmount() == null ? null : record.getMinorAmount().toString());
+        writeString(out, record.getProfileId());
+        writeString(out, record.getAdditionalData());
+        writeString(out, record.getCreatedDate() == null ? null : record.getCreatedDate().toString());
+        writeString(out, record.getUpdatedDate() == null ? null : record.getUpdatedDate().toString());
+        writeString(out, record.getKbTenantId());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static HyperswitchResponsesRecord decode(final byte[] payload) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        final HyperswitchResponsesRecord record = new HyperswitchResponsesRecord();
+        record.setKbAccountId(readString(in));
+        record.setKbPaymentId(readString(in));
+        record.setKbPaymentTransactionId(readString(in));
+        record.setTransactionType(readString(in));
+        final String amount = readString(in);
+        record.setAmount(amount == null ? null : new BigDecimal(amount));
+        record.setCurrency(readString(in));
+        record.setPaymentAttemptId(readString(in));
+        record.setErrorMessage(readString(in));
+        record.setErrorCode(readString(in));
+        record.setStatus(readString(in));
+        record.setRefundId(readString(in));
+        final String minorAmount = readString(in);
+        record.setMinorAmount(minorAmount == null ? null : Long.valueOf(minorAmount));
+        record.setProfileId(readString(in));
+        record.setAdditionalData(readString(in));
+        final String createdDate = readString(in);
+        record.setCreatedDate(createdDate == null ? null : LocalDateTime.parse(createdDate));
+        final String updatedDate = readString(in);
+        record.setUpdatedDate(updatedDate == null ? null : LocalDateTime.parse(updatedDate));
+        record.setKbTenantId(readString(in));
+        return record;
+    }
+
+    private static void writeString(final DataOutputStream out, @Nullable final String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Nullable
+    private static String readString(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class Entry {
+
+        private final HyperswitchResponsesRecord record;
+        private final byte[] payload;
+        private final CompletableFuture<Void> journaled = new CompletableFuture<Void>();
+        // 0: in flight, 1: acknowledged, 2: abandoned by the caller
+        private final AtomicInteger state = new AtomicInteger();
+        private int endOffset;
+        private boolean skipped;
+
+        private Entry(final HyperswitchResponsesRecord record, final byte[] payload) {
+            this.record = record;
+            this.payload = payload;
+        }
+
+        private boolean acknowledge() {
+            final boolean acknowledged = state.compareAndSet(0, 1);
+            if (acknowledged) {
+                journaled.complete(null);
+            }
+            return acknowledged;
+        }
+
+        private boolean abandon() {
+            return state.compareAndSet(0, 2);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+
+import org.jooq.Cursor;
+import org.jooq.Record;
+import org.killbill.billing.util.entity.Pagination;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A page of {@link HyperswitchDao} search results. Nothing is read until the pagination is iterated (or its
+ * counts asked for): rows are then streamed from a cursor and mapped one at a time, and the connection is released
+ * as soon as the last row has been read.
+ */
+class HyperswitchSearchPagination<R extends Record, T> implements Pagination<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(HyperswitchSearchPagination.class);
+
+    /**
+     * The queries behind a page, see {@link HyperswitchDao#searchResponses}.
+     */
+    interface Query<R extends Record> {
+
+        Connection connect() throws SQLException;
+
+        /**
+         * Open a cursor over the rows of the page, on {@code conn}: the caller closes both.
+         */
+        Cursor<R> open(Connection conn) throws SQLException;
+
+        /**
+         * @return the record id of the last row of the page, null if the page isn't full (last page)
+         */
+        @Nullable
+        Long getNextOffset() throws SQLException;
+
+        long countMatches() throws SQLException;
+
+        long countAll() throws SQLException;
+    }
+
+    private final Query<R> query;
+    private final long offset;
+    private final int limit;
+    private final Function<R, Long> recordId;
+    private final Function<R, T> mapper;
+
+    private Connection connection;
+    private Cursor<R> cursor;
+    private boolean iterated;
+    private boolean exhausted;
+    private Long lastRecordId;
+    private int nbRead;
+    private Long maxNbRecords;
+    private Long totalNbRecords;
+
+    HyperswitchSearchPagination(final Query<R> query,
+            final long offset,
+            final int limit,
+            final Function<R, Long> recordId,
+            final Function<R, T> mapper) {
+        this.query = query;
+        this.offset = offset;
+        this.limit = limit;
+        this.recordId = recordId;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public Long getCurrentOffset() {
+        return offset;
+    }
+
+    @Override
+    public Long getNextOffset() {
+        if (exhausted) {
+            // The page was read: no need to go back to the database
+            return nbRead < limit ? null : lastRecordId;
+        }
+        try {
+            return query.getNextOffset();
+        } catch (final SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public Long getMaxNbRecords() {
+        if (maxNbRecords == null) {
+            try {
+                maxNbRecords = query.countAll();
+            } catch (final SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return maxNbRecords;
+    }
+
+    @Override
+    public Long getTotalNbRecords() {
+        if (totalNbRecords == null) {
+            try {
+                totalNbRecords = query.countMatches();
+            } catch (final SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return totalNbRecords;
+    }
+
+    @Override
+    public synchronized Iterator<T> iterator() {
+        if (iterated) {
+            throw new IllegalStateException("Search results can only be iterated once");
+        }
+        iterated = true;
+        try {
+            connection = query.connect();
+            cursor = query.open(connection);
+        } catch (final SQLException e) {
+            close();
+            throw new RuntimeException(e);
+        }
+
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                if (exhausted) {
+                    return false;
+                }
+                if (cursor.hasNext()) {
+                    return true;
+                }
+                exhausted = true;
+                close();
+                return false;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final R record = cursor.fetchNext();
+                lastRecordId = recordId.apply(record);
+                nbRead++;
+                return mapper.apply(record);
+            }
+        };
+    }
+
+    @Override
+    public synchronized void close() {
+        if (cursor != null) {
+            cursor.close();
+            cursor = null;
+        }
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (final SQLException e) {
+                logger.warn("Unable to release search connection", e);
+            }
+            connection = null;
+        }
+    }
+}
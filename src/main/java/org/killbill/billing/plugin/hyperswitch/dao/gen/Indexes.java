@@ -8,6 +8,7 @@ import org.jooq.Index;
 import org.jooq.OrderField;
 import org.jooq.impl.Internal;
 import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchHppRequests;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchNotifications;
 import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchPaymentMethods;
 import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchResponses;
 
@@ -22,23 +23,35 @@ public class Indexes {
     // INDEX definitions
     // -------------------------------------------------------------------------
 
+    public static final Index HYPERSWITCH_HPP_REQUESTS_HYPERSWITCH_HPP_REQUESTS_CREATED_DATE = Indexes0.HYPERSWITCH_HPP_REQUESTS_HYPERSWITCH_HPP_REQUESTS_CREATED_DATE;
     public static final Index HYPERSWITCH_HPP_REQUESTS_HYPERSWITCH_HPP_REQUESTS_KB_ACCOUNT_ID = Indexes0.HYPERSWITCH_HPP_REQUESTS_HYPERSWITCH_HPP_REQUESTS_KB_ACCOUNT_ID;
     public static final Index HYPERSWITCH_HPP_REQUESTS_HYPERSWITCH_HPP_REQUESTS_KB_PAYMENT_TRANSACTION_ID = Indexes0.HYPERSWITCH_HPP_REQUESTS_HYPERSWITCH_HPP_REQUESTS_KB_PAYMENT_TRANSACTION_ID;
+    public static final Index HYPERSWITCH_NOTIFICATIONS_HYPERSWITCH_NOTIFICATIONS_PROCESSED_DATE = Indexes0.HYPERSWITCH_NOTIFICATIONS_HYPERSWITCH_NOTIFICATIONS_PROCESSED_DATE;
     public static final Index HYPERSWITCH_PAYMENT_METHODS_HYPERSWITCH_PAYMENT_METHODS_HYPERSWITCH_ID = Indexes0.HYPERSWITCH_PAYMENT_METHODS_HYPERSWITCH_PAYMENT_METHODS_HYPERSWITCH_ID;
-    public static final Index HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_PAYMENT_ID = Indexes0.HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_PAYMENT_ID;
-    public static final Index HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_PAYMENT_TRANSACTION_ID = Indexes0.HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_PAYMENT_TRANSACTION_ID;
-    public static final Index HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_PAYMENT_ATTEMPT_ID = Indexes0.HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_PAYMENT_ATTEMPT_ID;
+    public static final Index HYPERSWITCH_PAYMENT_METHODS_HYPERSWITCH_PAYMENT_METHODS_KB_TENANT_ID_KB_ACCOUNT_ID = Indexes0.HYPERSWITCH_PAYMENT_METHODS_HYPERSWITCH_PAYMENT_METHODS_KB_TENANT_ID_KB_ACCOUNT_ID;
+    public static final Index HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_TENANT_ID_ERROR_CODE = Indexes0.HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_TENANT_ID_ERROR_CODE;
+    public static final Index HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_TENANT_ID_KB_PAYMENT_ID = Indexes0.HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_TENANT_ID_KB_PAYMENT_ID;
+    public static final Index HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_TENANT_ID_KB_PAYMENT_TRANSACTION_ID = Indexes0.HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_TENANT_ID_KB_PAYMENT_TRANSACTION_ID;
+    public static final Index HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_TENANT_ID_PAYMENT_ATTEMPT_ID = Indexes0.HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_TENANT_ID_PAYMENT_ATTEMPT_ID;
+    public static final Index HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_TENANT_ID_REFUND_ID = Indexes0.HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_TENANT_ID_REFUND_ID;
+    public static final Index HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_STATUS = Indexes0.HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_STATUS;
 
     // -------------------------------------------------------------------------
     // [#1459] distribute members to avoid static initialisers > 64kb
     // -------------------------------------------------------------------------
 
     private static class Indexes0 {
+        public static Index HYPERSWITCH_HPP_REQUESTS_HYPERSWITCH_HPP_REQUESTS_CREATED_DATE = Internal.createIndex("hyperswitch_hpp_requests_created_date", HyperswitchHppRequests.HYPERSWITCH_HPP_REQUESTS, new OrderField[] { HyperswitchHppRequests.HYPERSWITCH_HPP_REQUESTS.CREATED_DATE, HyperswitchHppRequests.HYPERSWITCH_HPP_REQUESTS.RECORD_ID }, false);
         public static Index HYPERSWITCH_HPP_REQUESTS_HYPERSWITCH_HPP_REQUESTS_KB_ACCOUNT_ID = Internal.createIndex("hyperswitch_hpp_requests_kb_account_id", HyperswitchHppRequests.HYPERSWITCH_HPP_REQUESTS, new OrderField[] { HyperswitchHppRequests.HYPERSWITCH_HPP_REQUESTS.KB_ACCOUNT_ID }, false);
         public static Index HYPERSWITCH_HPP_REQUESTS_HYPERSWITCH_HPP_REQUESTS_KB_PAYMENT_TRANSACTION_ID = Internal.createIndex("hyperswitch_hpp_requests_kb_payment_transaction_id", HyperswitchHppRequests.HYPERSWITCH_HPP_REQUESTS, new OrderField[] { HyperswitchHppRequests.HYPERSWITCH_HPP_REQUESTS.KB_PAYMENT_TRANSACTION_ID }, false);
+        public static Index HYPERSWITCH_NOTIFICATIONS_HYPERSWITCH_NOTIFICATIONS_PROCESSED_DATE = Internal.createIndex("hyperswitch_notifications_processed_date", HyperswitchNotifications.HYPERSWITCH_NOTIFICATIONS, new OrderField[] { HyperswitchNotifications.HYPERSWITCH_NOTIFICATIONS.PROCESSED_DATE, HyperswitchNotifications.HYPERSWITCH_NOTIFICATIONS.RECORD_ID }, false);
         public static Index HYPERSWITCH_PAYMENT_METHODS_HYPERSWITCH_PAYMENT_METHODS_HYPERSWITCH_ID = Internal.createIndex("hyperswitch_payment_methods_hyperswitch_id", HyperswitchPaymentMethods.HYPERSWITCH_PAYMENT_METHODS, new OrderField[] { HyperswitchPaymentMethods.HYPERSWITCH_PAYMENT_METHODS.HYPERSWITCH_ID }, false);
-        public static Index HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_PAYMENT_ID = Internal.createIndex("hyperswitch_responses_kb_payment_id", HyperswitchResponses.HYPERSWITCH_RESPONSES, new OrderField[] { HyperswitchResponses.HYPERSWITCH_RESPONSES.KB_PAYMENT_ID }, false);
-        public static Index HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_PAYMENT_TRANSACTION_ID = Internal.createIndex("hyperswitch_responses_kb_payment_transaction_id", HyperswitchResponses.HYPERSWITCH_RESPONSES, new OrderField[] { HyperswitchResponses.HYPERSWITCH_RESPONSES.KB_PAYMENT_TRANSACTION_ID }, false);
-        public static Index HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_PAYMENT_ATTEMPT_ID = Internal.createIndex("hyperswitch_responses_hyperswitch_id", HyperswitchResponses.HYPERSWITCH_RESPONSES, new OrderField[] { HyperswitchResponses.HYPERSWITCH_RESPONSES.PAYMENT_ATTEMPT_ID }, false);
+        public static Index HYPERSWITCH_PAYMENT_METHODS_HYPERSWITCH_PAYMENT_METHODS_KB_TENANT_ID_KB_ACCOUNT_ID = Internal.createIndex("hyperswitch_payment_methods_kb_tenant_id_kb_account_id", HyperswitchPaymentMethods.HYPERSWITCH_PAYMENT_METHODS, new OrderField[] { HyperswitchPaymentMethods.HYPERSWITCH_PAYMENT_METHODS.KB_TENANT_ID, HyperswitchPaymentMethods.HYPERSWITCH_PAYMENT_METHODS.KB_ACCOUNT_ID, HyperswitchPaymentMethods.HYPERSWITCH_PAYMENT_METHODS.RECORD_ID }, false);
+        public static Index HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_TENANT_ID_ERROR_CODE = Internal.createIndex("hyperswitch_responses_kb_tenant_id_error_code", HyperswitchResponses.HYPERSWITCH_RESPONSES, new OrderField[] { HyperswitchResponses.HYPERSWITCH_RESPONSES.KB_TENANT_ID, HyperswitchResponses.HYPERSWITCH_RESPONSES.ERROR_CODE, HyperswitchResponses.HYPERSWITCH_RESPONSES.RECORD_ID }, false);
+        public static Index HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_TENANT_ID_KB_PAYMENT_ID = Internal.createIndex("hyperswitch_responses_kb_tenant_id_kb_payment_id", HyperswitchResponses.HYPERSWITCH_RESPONSES, new OrderField[] { HyperswitchResponses.HYPERSWITCH_RESPONSES.KB_TENANT_ID, HyperswitchResponses.HYPERSWITCH_RESPONSES.KB_PAYMENT_ID, HyperswitchResponses.HYPERSWITCH_RESPONSES.RECORD_ID }, false);
+        public static Index HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_TENANT_ID_KB_PAYMENT_TRANSACTION_ID = Internal.createIndex("hyperswitch_responses_kb_tenant_id_kb_payment_transaction_id", HyperswitchResponses.HYPERSWITCH_RESPONSES, new OrderField[] { HyperswitchResponses.HYPERSWITCH_RESPONSES.KB_TENANT_ID, HyperswitchResponses.HYPERSWITCH_RESPONSES.KB_PAYMENT_TRANSACTION_ID, HyperswitchResponses.HYPERSWITCH_RESPONSES.RECORD_ID }, false);
+        public static Index HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_TENANT_ID_PAYMENT_ATTEMPT_ID = Internal.createIndex("hyperswitch_responses_kb_tenant_id_payment_attempt_id", HyperswitchResponses.HYPERSWITCH_RESPONSES, new OrderField[] { HyperswitchResponses.HYPERSWITCH_RESPONSES.KB_TENANT_ID, HyperswitchResponses.HYPERSWITCH_RESPONSES.PAYMENT_ATTEMPT_ID, HyperswitchResponses.HYPERSWITCH_RESPONSES.RECORD_ID }, false);
+        public static Index HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_TENANT_ID_REFUND_ID = Internal.createIndex("hyperswitch_responses_kb_tenant_id_refund_id", HyperswitchResponses.HYPERSWITCH_RESPONSES, new OrderField[] { HyperswitchResponses.HYPERSWITCH_RESPONSES.KB_TENANT_ID, HyperswitchResponses.HYPERSWITCH_RESPONSES.REFUND_ID, HyperswitchResponses.HYPERSWITCH_RESPONSES.RECORD_ID }, false);
+        public static Index HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_STATUS = Internal.createIndex("hyperswitch_responses_status", HyperswitchResponses.HYPERSWITCH_RESPONSES, new OrderField[] { HyperswitchResponses.HYPERSWITCH_RESPONSES.STATUS, HyperswitchResponses.HYPERSWITCH_RESPONSES.NEXT_SYNC_DATE }, false);
     }
 }
@@ -10,9 +10,15 @@ import org.jooq.UniqueKey;
 import org.jooq.impl.Internal;
 import org.jooq.types.ULong;
 import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchHppRequests;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchJobCheckpoints;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchNotifications;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchPaymentHeads;
 import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchPaymentMethods;
 import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchResponses;
 import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchHppRequestsRecord;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchJobCheckpointsRecord;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchNotificationsRecord;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchPaymentHeadsRecord;
 import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchPaymentMethodsRecord;
 import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchResponsesRecord;
 
@@ -29,6 +35,8 @@ public class Keys {
     // -------------------------------------------------------------------------
 
     public static final Identity<HyperswitchHppRequestsRecord, ULong> IDENTITY_HYPERSWITCH_HPP_REQUESTS = Identities0.IDENTITY_HYPERSWITCH_HPP_REQUESTS;
+    public static final Identity<HyperswitchJobCheckpointsRecord, ULong> IDENTITY_HYPERSWITCH_JOB_CHECKPOINTS = Identities0.IDENTITY_HYPERSWITCH_JOB_CHECKPOINTS;
+    public static final Identity<HyperswitchNotificationsRecord, ULong> IDENTITY_HYPERSWITCH_NOTIFICATIONS = Identities0.IDENTITY_HYPERSWITCH_NOTIFICATIONS;
     public static final Identity<HyperswitchPaymentMethodsRecord, ULong> IDENTITY_HYPERSWITCH_PAYMENT_METHODS = Identities0.IDENTITY_HYPERSWITCH_PAYMENT_METHODS;
     public static final Identity<HyperswitchResponsesRecord, ULong> IDENTITY_HYPERSWITCH_RESPONSES = Identities0.IDENTITY_HYPERSWITCH_RESPONSES;
 
@@ -39,6 +47,11 @@ public class Keys {
     public static final UniqueKey<HyperswitchHppRequestsRecord> KEY_HYPERSWITCH_HPP_REQUESTS_PRIMARY = UniqueKeys0.KEY_HYPERSWITCH_HPP_REQUESTS_PRIMARY;
     public static final UniqueKey<HyperswitchHppRequestsRecord> KEY_HYPERSWITCH_HPP_REQUESTS_RECORD_ID = UniqueKeys0.KEY_HYPERSWITCH_HPP_REQUESTS_RECORD_ID;
     public static final UniqueKey<HyperswitchHppRequestsRecord> KEY_HYPERSWITCH_HPP_REQUESTS_HYPERSWITCH_HPP_REQUESTS_KB_SESSION_ID = UniqueKeys0.KEY_HYPERSWITCH_HPP_REQUESTS_HYPERSWITCH_HPP_REQUESTS_KB_SESSION_ID;
+    public static final UniqueKey<HyperswitchJobCheckpointsRecord> KEY_HYPERSWITCH_JOB_CHECKPOINTS_PRIMARY = UniqueKeys0.KEY_HYPERSWITCH_JOB_CHECKPOINTS_PRIMARY;
+    public static final UniqueKey<HyperswitchJobCheckpointsRecord> KEY_HYPERSWITCH_JOB_CHECKPOINTS_HYPERSWITCH_JOB_CHECKPOINTS_JOB_NAME = UniqueKeys0.KEY_HYPERSWITCH_JOB_CHECKPOINTS_HYPERSWITCH_JOB_CHECKPOINTS_JOB_NAME;
+    public static final UniqueKey<HyperswitchNotificationsRecord> KEY_HYPERSWITCH_NOTIFICATIONS_PRIMARY = UniqueKeys0.KEY_HYPERSWITCH_NOTIFICATIONS_PRIMARY;
+    public static final UniqueKey<HyperswitchNotificationsRecord> KEY_HYPERSWITCH_NOTIFICATIONS_HYPERSWITCH_NOTIFICATIONS_EVENT_ID = UniqueKeys0.KEY_HYPERSWITCH_NOTIFICATIONS_HYPERSWITCH_NOTIFICATIONS_EVENT_ID;
+    public static final UniqueKey<HyperswitchPaymentHeadsRecord> KEY_HYPERSWITCH_PAYMENT_HEADS_PRIMARY = UniqueKeys0.KEY_HYPERSWITCH_PAYMENT_HEADS_PRIMARY;
     public static final UniqueKey<HyperswitchPaymentMethodsRecord> KEY_HYPERSWITCH_PAYMENT_METHODS_PRIMARY = UniqueKeys0.KEY_HYPERSWITCH_PAYMENT_METHODS_PRIMARY;
     public static final UniqueKey<HyperswitchPaymentMethodsRecord> KEY_HYPERSWITCH_PAYMENT_METHODS_RECORD_ID = UniqueKeys0.KEY_HYPERSWITCH_PAYMENT_METHODS_RECORD_ID;
     public static final UniqueKey<HyperswitchPaymentMethodsRecord> KEY_HYPERSWITCH_PAYMENT_METHODS_HYPERSWITCH_PAYMENT_METHODS_KB_PAYMENT_ID = UniqueKeys0.KEY_HYPERSWITCH_PAYMENT_METHODS_HYPERSWITCH_PAYMENT_METHODS_KB_PAYMENT_ID;
@@ -56,6 +69,8 @@ public class Keys {
 
     private static class Identities0 {
         public static Identity<HyperswitchHppRequestsRecord, ULong> IDENTITY_HYPERSWITCH_HPP_REQUESTS = Internal.createIdentity(HyperswitchHppRequests.HYPERSWITCH_HPP_REQUESTS, HyperswitchHppRequests.HYPERSWITCH_HPP_REQUESTS.RECORD_ID);
+        public static Identity<HyperswitchJobCheckpointsRecord, ULong> IDENTITY_HYPERSWITCH_JOB_CHECKPOINTS = Internal.createIdentity(HyperswitchJobCheckpoints.HYPERSWITCH_JOB_CHECKPOINTS, HyperswitchJobCheckpoints.HYPERSWITCH_JOB_CHECKPOINTS.RECORD_ID);
+        public static Identity<HyperswitchNotificationsRecord, ULong> IDENTITY_HYPERSWITCH_NOTIFICATIONS = Internal.createIdentity(HyperswitchNotifications.HYPERSWITCH_NOTIFICATIONS, HyperswitchNotifications.HYPERSWITCH_NOTIFICATIONS.RECORD_ID);
         public static Identity<HyperswitchPaymentMethodsRecord, ULong> IDENTITY_HYPERSWITCH_PAYMENT_METHODS = Internal.createIdentity(HyperswitchPaymentMethods.HYPERSWITCH_PAYMENT_METHODS, HyperswitchPaymentMethods.HYPERSWITCH_PAYMENT_METHODS.RECORD_ID);
         public static Identity<HyperswitchResponsesRecord, ULong> IDENTITY_HYPERSWITCH_RESPONSES = Internal.createIdentity(HyperswitchResponses.HYPERSWITCH_RESPONSES, HyperswitchResponses.HYPERSWITCH_RESPONSES.RECORD_ID);
     }
@@ -64,6 +79,11 @@ public class Keys {
         public static final UniqueKey<HyperswitchHppRequestsRecord> KEY_HYPERSWITCH_HPP_REQUESTS_PRIMARY = Internal.createUniqueKey(HyperswitchHppRequests.HYPERSWITCH_HPP_REQUESTS, "KEY_hyperswitch_hpp_requests_PRIMARY", new TableField[] { HyperswitchHppRequests.HYPERSWITCH_HPP_REQUESTS.RECORD_ID }, true);
         public static final UniqueKey<HyperswitchHppRequestsRecord> KEY_HYPERSWITCH_HPP_REQUESTS_RECORD_ID = Internal.createUniqueKey(HyperswitchHppRequests.HYPERSWITCH_HPP_REQUESTS, "KEY_hyperswitch_hpp_requests_record_id", new TableField[] { HyperswitchHppRequests.HYPERSWITCH_HPP_REQUESTS.RECORD_ID }, true);
         public static final UniqueKey<HyperswitchHppRequestsRecord> KEY_HYPERSWITCH_HPP_REQUESTS_HYPERSWITCH_HPP_REQUESTS_KB_SESSION_ID = Internal.createUniqueKey(HyperswitchHppRequests.HYPERSWITCH_HPP_REQUESTS, "KEY_hyperswitch_hpp_requests_hyperswitch_hpp_requests_kb_session_id", new TableField[] { HyperswitchHppRequests.HYPERSWITCH_HPP_REQUESTS.SESSION_ID }, true);
+        public static final UniqueKey<HyperswitchJobCheckpointsRecord> KEY_HYPERSWITCH_JOB_CHECKPOINTS_PRIMARY = Internal.createUniqueKey(HyperswitchJobCheckpoints.HYPERSWITCH_JOB_CHECKPOINTS, "KEY_hyperswitch_job_checkpoints_PRIMARY", new TableField[] { HyperswitchJobCheckpoints.HYPERSWITCH_JOB_CHECKPOINTS.RECORD_ID }, true);
+        public static final UniqueKey<HyperswitchJobCheckpointsRecord> KEY_HYPERSWITCH_JOB_CHECKPOINTS_HYPERSWITCH_JOB_CHECKPOINTS_JOB_NAME = Internal.createUniqueKey(HyperswitchJobCheckpoints.HYPERSWITCH_JOB_CHECKPOINTS, "KEY_hyperswitch_job_checkpoints_hyperswitch_job_checkpoints_job_name", new TableField[] { HyperswitchJobCheckpoints.HYPERSWITCH_JOB_CHECKPOINTS.KB_TENANT_ID, HyperswitchJobCheckpoints.HYPERSWITCH_JOB_CHECKPOINTS.JOB_NAME }, true);
+        public static final UniqueKey<HyperswitchNotificationsRecord> KEY_HYPERSWITCH_NOTIFICATIONS_PRIMARY = Internal.createUniqueKey(HyperswitchNotifications.HYPERSWITCH_NOTIFICATIONS, "KEY_hyperswitch_notifications_PRIMARY", new TableField[] { HyperswitchNotifications.HYPERSWITCH_NOTIFICATIONS.RECORD_ID }, true);
+        public static final UniqueKey<HyperswitchNotificationsRecord> KEY_HYPERSWITCH_NOTIFICATIONS_HYPERSWITCH_NOTIFICATIONS_EVENT_ID = Internal.createUniqueKey(HyperswitchNotifications.HYPERSWITCH_NOTIFICATIONS, "KEY_hyperswitch_notifications_hyperswitch_notifications_event_id", new TableField[] { HyperswitchNotifications.HYPERSWITCH_NOTIFICATIONS.KB_TENANT_ID, HyperswitchNotifications.HYPERSWITCH_NOTIFICATIONS.EVENT_ID }, true);
+        public static final UniqueKey<HyperswitchPaymentHeadsRecord> KEY_HYPERSWITCH_PAYMENT_HEADS_PRIMARY = Internal.createUniqueKey(HyperswitchPaymentHeads.HYPERSWITCH_PAYMENT_HEADS, "KEY_hyperswitch_payment_heads_PRIMARY", new TableField[] { HyperswitchPaymentHeads.HYPERSWITCH_PAYMENT_HEADS.KB_PAYMENT_ID }, true);
         public static final UniqueKey<HyperswitchPaymentMethodsRecord> KEY_HYPERSWITCH_PAYMENT_METHODS_PRIMARY = Internal.createUniqueKey(HyperswitchPaymentMethods.HYPERSWITCH_PAYMENT_METHODS, "KEY_hyperswitch_payment_methods_PRIMARY", new TableField[] { HyperswitchPaymentMethods.HYPERSWITCH_PAYMENT_METHODS.RECORD_ID }, true);
         public static final UniqueKey<HyperswitchPaymentMethodsRecord> KEY_HYPERSWITCH_PAYMENT_METHODS_RECORD_ID = Internal.createUniqueKey(HyperswitchPaymentMethods.HYPERSWITCH_PAYMENT_METHODS, "KEY_hyperswitch_payment_methods_record_id", new TableField[] { HyperswitchPaymentMethods.HYPERSWITCH_PAYMENT_METHODS.RECORD_ID }, true);
         public static final UniqueKey<HyperswitchPaymentMethodsRecord> KEY_HYPERSWITCH_PAYMENT_METHODS_HYPERSWITCH_PAYMENT_METHODS_KB_PAYMENT_ID = Internal.createUniqueKey(HyperswitchPaymentMethods.HYPERSWITCH_PAYMENT_METHODS, "KEY_hyperswitch_payment_methods_hyperswitch_payment_methods_kb_payment_id", new TableField[] { HyperswitchPaymentMethods.HYPERSWITCH_PAYMENT_METHODS.KB_PAYMENT_METHOD_ID }, true);
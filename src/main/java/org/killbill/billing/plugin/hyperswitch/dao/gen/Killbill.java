@@ -11,6 +11,9 @@ import org.jooq.Catalog;
 import org.jooq.Table;
 import org.jooq.impl.SchemaImpl;
 import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchHppRequests;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchJobCheckpoints;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchNotifications;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchPaymentHeads;
 import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchPaymentMethods;
 import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchResponses;
 
@@ -33,6 +36,21 @@ public class Killbill extends SchemaImpl {
      */
     public final HyperswitchHppRequests HYPERSWITCH_HPP_REQUESTS = HyperswitchHppRequests.HYPERSWITCH_HPP_REQUESTS;
 
+    /**
+     * The table <code>killbill.hyperswitch_job_checkpoints</code>.
+     */
+    public final HyperswitchJobCheckpoints HYPERSWITCH_JOB_CHECKPOINTS = HyperswitchJobCheckpoints.HYPERSWITCH_JOB_CHECKPOINTS;
+
+    /**
+     * The table <code>killbill.hyperswitch_notifications</code>.
+     */
+    public final HyperswitchNotifications HYPERSWITCH_NOTIFICATIONS = HyperswitchNotifications.HYPERSWITCH_NOTIFICATIONS;
+
+    /**
+     * The table <code>killbill.hyperswitch_payment_heads</code>.
+     */
+    public final HyperswitchPaymentHeads HYPERSWITCH_PAYMENT_HEADS = HyperswitchPaymentHeads.HYPERSWITCH_PAYMENT_HEADS;
+
     /**
      * The table <code>killbill.hyperswitch_payment_methods</code>.
      */
@@ -60,6 +78,9 @@ public class Killbill extends SchemaImpl {
     public final List<Table<?>> getTables() {
         return Arrays.<Table<?>>asList(
             HyperswitchHppRequests.HYPERSWITCH_HPP_REQUESTS,
+            HyperswitchJobCheckpoints.HYPERSWITCH_JOB_CHECKPOINTS,
+            HyperswitchNotifications.HYPERSWITCH_NOTIFICATIONS,
+            HyperswitchPaymentHeads.HYPERSWITCH_PAYMENT_HEADS,
             HyperswitchPaymentMethods.HYPERSWITCH_PAYMENT_METHODS,
             HyperswitchResponses.HYPERSWITCH_RESPONSES);
     }
@@ -5,6 +5,9 @@ package org.killbill.billing.plugin.hyperswitch.dao.gen;
 
 
 import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchHppRequests;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchJobCheckpoints;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchNotifications;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchPaymentHeads;
 import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchPaymentMethods;
 import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.HyperswitchResponses;
 
@@ -20,6 +23,21 @@ public class Tables {
      */
     public static final HyperswitchHppRequests HYPERSWITCH_HPP_REQUESTS = HyperswitchHppRequests.HYPERSWITCH_HPP_REQUESTS;
 
+    /**
+     * The table <code>killbill.hyperswitch_job_checkpoints</code>.
+     */
+    public static final HyperswitchJobCheckpoints HYPERSWITCH_JOB_CHECKPOINTS = HyperswitchJobCheckpoints.HYPERSWITCH_JOB_CHECKPOINTS;
+
+    /**
+     * The table <code>killbill.hyperswitch_notifications</code>.
+     */
+    public static final HyperswitchNotifications HYPERSWITCH_NOTIFICATIONS = HyperswitchNotifications.HYPERSWITCH_NOTIFICATIONS;
+
+    /**
+     * The table <code>killbill.hyperswitch_payment_heads</code>.
+     */
+    public static final HyperswitchPaymentHeads HYPERSWITCH_PAYMENT_HEADS = HyperswitchPaymentHeads.HYPERSWITCH_PAYMENT_HEADS;
+
     /**
      * The table <code>killbill.hyperswitch_payment_methods</code>.
      */
@@ -130,7 +130,7 @@ public class HyperswitchHppRequests extends TableImpl<HyperswitchHppRequestsReco
 
     @Override
     public List<Index> getIndexes() {
-        return Arrays.<Index>asList(Indexes.HYPERSWITCH_HPP_REQUESTS_HYPERSWITCH_HPP_REQUESTS_KB_ACCOUNT_ID, Indexes.HYPERSWITCH_HPP_REQUESTS_HYPERSWITCH_HPP_REQUESTS_KB_PAYMENT_TRANSACTION_ID);
+        return Arrays.<Index>asList(Indexes.HYPERSWITCH_HPP_REQUESTS_HYPERSWITCH_HPP_REQUESTS_CREATED_DATE, Indexes.HYPERSWITCH_HPP_REQUESTS_HYPERSWITCH_HPP_REQUESTS_KB_ACCOUNT_ID, Indexes.HYPERSWITCH_HPP_REQUESTS_HYPERSWITCH_HPP_REQUESTS_KB_PAYMENT_TRANSACTION_ID);
     }
 
     @Override
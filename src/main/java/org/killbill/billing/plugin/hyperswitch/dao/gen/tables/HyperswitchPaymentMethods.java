@@ -140,7 +140,7 @@ public class HyperswitchPaymentMethods extends TableImpl<HyperswitchPaymentMetho
 
     @Override
     public List<Index> getIndexes() {
-        return Arrays.<Index>asList(Indexes.HYPERSWITCH_PAYMENT_METHODS_HYPERSWITCH_PAYMENT_METHODS_HYPERSWITCH_ID);
+        return Arrays.<Index>asList(Indexes.HYPERSWITCH_PAYMENT_METHODS_HYPERSWITCH_PAYMENT_METHODS_HYPERSWITCH_ID, Indexes.HYPERSWITCH_PAYMENT_METHODS_HYPERSWITCH_PAYMENT_METHODS_KB_TENANT_ID_KB_ACCOUNT_ID);
     }
 
     @Override
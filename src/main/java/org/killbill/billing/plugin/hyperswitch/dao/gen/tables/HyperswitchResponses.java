@@ -120,6 +120,42 @@ public class HyperswitchResponses extends TableImpl<HyperswitchResponsesRecord>
     public final TableField<HyperswitchResponsesRecord, String> KB_TENANT_ID = createField(DSL.name("kb_tenant_id"),
             SQLDataType.CHAR(36).nullable(false), this, "");
 
+    /** The column <code>killbill.hyperswitch_responses.status</code>. */
+    public final TableField<HyperswitchResponsesRecord, String> STATUS = createField(
+            DSL.name("status"),
+            SQLDataType.VARCHAR(32).defaultValue(DSL.inline("NULL", SQLDataType.VARCHAR)),
+            this,
+            "");
+
+    /** The column <code>killbill.hyperswitch_responses.next_sync_date</code>. */
+    public final TableField<HyperswitchResponsesRecord, LocalDateTime> NEXT_SYNC_DATE = createField(
+            DSL.name("next_sync_date"), SQLDataType.LOCALDATETIME(0), this, "");
+
+    /** The column <code>killbill.hyperswitch_responses.refund_id</code>. */
+    public final TableField<HyperswitchResponsesRecord, String> REFUND_ID = createField(
+            DSL.name("refund_id"),
+            SQLDataType.VARCHAR(64).defaultValue(DSL.inline("NULL", SQLDataType.VARCHAR)),
+            this,
+            "");
+
+    /** The column <code>killbill.hyperswitch_responses.minor_amount</code>. */
+    public final TableField<HyperswitchResponsesRecord, Long> MINOR_AMOUNT = createField(
+            DSL.name("minor_amount"),
+            SQLDataType.BIGINT.defaultValue(DSL.inline("NULL", SQLDataType.BIGINT)),
+            this,
+            "");
+
+    /** The column <code>killbill.hyperswitch_responses.profile_id</code>. */
+    public final TableField<HyperswitchResponsesRecord, String> PROFILE_ID = createField(
+            DSL.name("profile_id"),
+            SQLDataType.VARCHAR(64).defaultValue(DSL.inline("NULL", SQLDataType.VARCHAR)),
+            this,
+            "");
+
+    /** The column <code>killbill.hyperswitch_responses.updated_date</code>. */
+    public final TableField<HyperswitchResponsesRecord, LocalDateTime> UPDATED_DATE = createField(
+            DSL.name("updated_date"), SQLDataType.LOCALDATETIME(0), this, "");
+
     private HyperswitchResponses(Name alias, Table<HyperswitchResponsesRecord> aliased) {
         this(alias, aliased, null);
     }
@@ -160,9 +196,12 @@ public class HyperswitchResponses extends TableImpl<HyperswitchResponsesRecord>
     @Override
     public List<Index> getIndexes() {
         return Arrays.<Index>asList(
-                Indexes.HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_PAYMENT_ID,
-                Indexes.HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_PAYMENT_TRANSACTION_ID,
-                Indexes.HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_PAYMENT_ATTEMPT_ID);
+                Indexes.HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_TENANT_ID_ERROR_CODE,
+                Indexes.HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_TENANT_ID_KB_PAYMENT_ID,
+                Indexes.HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_TENANT_ID_KB_PAYMENT_TRANSACTION_ID,
+                Indexes.HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_TENANT_ID_PAYMENT_ATTEMPT_ID,
+                Indexes.HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_KB_TENANT_ID_REFUND_ID,
+                Indexes.HYPERSWITCH_RESPONSES_HYPERSWITCH_RESPONSES_STATUS);
     }
 
     @Override
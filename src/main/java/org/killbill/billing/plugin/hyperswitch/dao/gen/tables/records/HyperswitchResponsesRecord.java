@@ -152,6 +152,66 @@ public class HyperswitchResponsesRecord extends UpdatableRecordImpl<HyperswitchR
         return (String) get(12);
     }
 
+    /** Setter for <code>killbill.hyperswitch_responses.status</code>. */
+    public void setStatus(String value) {
+        set(13, value);
+    }
+
+    /** Getter for <code>killbill.hyperswitch_responses.status</code>. */
+    public String getStatus() {
+        return (String) get(13);
+    }
+
+    /** Setter for <code>killbill.hyperswitch_responses.next_sync_date</code>. */
+    public void setNextSyncDate(LocalDateTime value) {
+        set(14, value);
+    }
+
+    /** Getter for <code>killbill.hyperswitch_responses.next_sync_date</code>. */
+    public LocalDateTime getNextSyncDate() {
+        return (LocalDateTime) get(14);
+    }
+
+    /** Setter for <code>killbill.hyperswitch_responses.refund_id</code>. */
+    public void setRefundId(String value) {
+        set(15, value);
+    }
+
+    /** Getter for <code>killbill.hyperswitch_responses.refund_id</code>. */
+    public String getRefundId() {
+        return (String) get(15);
+    }
+
+    /** Setter for <code>killbill.hyperswitch_responses.minor_amount</code>. */
+    public void setMinorAmount(Long value) {
+        set(16, value);
+    }
+
+    /** Getter for <code>killbill.hyperswitch_responses.minor_amount</code>. */
+    public Long getMinorAmount() {
+        return (Long) get(16);
+    }
+
+    /** Setter for <code>killbill.hyperswitch_responses.profile_id</code>. */
+    public void setProfileId(String value) {
+        set(17, value);
+    }
+
+    /** Getter for <code>killbill.hyperswitch_responses.profile_id</code>. */
+    public String getProfileId() {
+        return (String) get(17);
+    }
+
+    /** Setter for <code>killbill.hyperswitch_responses.updated_date</code>. */
+    public void setUpdatedDate(LocalDateTime value) {
+        set(18, value);
+    }
+
+    /** Getter for <code>killbill.hyperswitch_responses.updated_date</code>. */
+    public LocalDateTime getUpdatedDate() {
+        return (LocalDateTime) get(18);
+    }
+
     // -------------------------------------------------------------------------
     // Primary key information
     // -------------------------------------------------------------------------
@@ -184,7 +244,13 @@ public class HyperswitchResponsesRecord extends UpdatableRecordImpl<HyperswitchR
             String errorCode,
             String additionalData,
             LocalDateTime createdDate,
-            String kbTenantId) {
+            String kbTenantId,
+            String status,
+            LocalDateTime nextSyncDate,
+            String refundId,
+            Long minorAmount,
+            String profileId,
+            LocalDateTime updatedDate) {
         super(HyperswitchResponses.HYPERSWITCH_RESPONSES);
 
         setRecordId(recordId);
@@ -200,5 +266,11 @@ public class HyperswitchResponsesRecord extends UpdatableRecordImpl<HyperswitchR
         setAdditionalData(additionalData);
         setCreatedDate(createdDate);
         setKbTenantId(kbTenantId);
+        setStatus(status);
+        setNextSyncDate(nextSyncDate);
+        setRefundId(refundId);
+        setMinorAmount(minorAmount);
+        setProfileId(profileId);
+        setUpdatedDate(updatedDate);
     }
 }
@@ -17,7 +17,7 @@
 
 /*! SET default_storage_engine=INNODB */;
 
-drop table if exists create table hyperswitch_payment_methods ;
+drop table if exists hyperswitch_payment_methods;
 create table hyperswitch_payment_methods (
   record_id serial
 , kb_account_id char(36) not null
@@ -33,6 +33,7 @@ create table hyperswitch_payment_methods (
 ) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
 create unique index hyperswitch_payment_methods_kb_payment_id on hyperswitch_payment_methods(kb_payment_method_id);
 create index hyperswitch_payment_methods_hyperswitch_id on hyperswitch_payment_methods(hyperswitch_id);
+create index hyperswitch_payment_methods_kb_tenant_id_kb_account_id on hyperswitch_payment_methods(kb_tenant_id, kb_account_id, record_id);
 
 
 drop table if exists hyperswitch_responses;
@@ -47,11 +48,85 @@ create table hyperswitch_responses (
 , payment_attempt_id varchar(64) not null
 , error_message varchar(64)
 , error_code varchar(64)
+, status varchar(32) default null
+, refund_id varchar(64) default null
+, minor_amount bigint default null
+, profile_id varchar(64) default null
 , additional_data longtext default null
 , created_date datetime not null
+, updated_date datetime default null
+, next_sync_date datetime default null
 , kb_tenant_id char(36) not null
 , primary key(record_id)
 ) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
-create index hyperswitch_responses_kb_payment_id on hyperswitch_responses(kb_payment_id);
-create index hyperswitch_responses_kb_payment_transaction_id on hyperswitch_responses(kb_payment_transaction_id);
-create index hyperswitch_responses_payment_attmept_id on hyperswitch_responses(payment_attempt_id);
\ No newline at end of file
+create index hyperswitch_responses_kb_tenant_id_kb_payment_id on hyperswitch_responses(kb_tenant_id, kb_payment_id, record_id);
+create index hyperswitch_responses_kb_tenant_id_kb_payment_transaction_id on hyperswitch_responses(kb_tenant_id, kb_payment_transaction_id, record_id);
+create index hyperswitch_responses_kb_tenant_id_payment_attempt_id on hyperswitch_responses(kb_tenant_id, payment_attempt_id, record_id);
+create index hyperswitch_responses_kb_tenant_id_refund_id on hyperswitch_responses(kb_tenant_id, refund_id, record_id);
+create index hyperswitch_responses_kb_tenant_id_error_code on hyperswitch_responses(kb_tenant_id, error_code, record_id);
+create index hyperswitch_responses_status on hyperswitch_responses(status, next_sync_date);
+
+drop table if exists hyperswitch_notifications;
+create table hyperswitch_notifications (
+  record_id serial
+, event_id varchar(64) not null
+, event_type varchar(64) default null
+, payment_id varchar(64) default null
+, refund_id varchar(64) default null
+, status varchar(32) default null
+, payload longtext default null
+, created_date datetime not null
+, processed_date datetime default null
+, kb_tenant_id char(36) not null
+, primary key(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+create unique index hyperswitch_notifications_event_id on hyperswitch_notifications(kb_tenant_id, event_id);
+create index hyperswitch_notifications_processed_date on hyperswitch_notifications(processed_date, record_id);
+
+drop table if exists hyperswitch_job_checkpoints;
+create table hyperswitch_job_checkpoints (
+  record_id serial
+, job_name varchar(64) not null
+, next_offset bigint not null default 0
+, nb_processed bigint not null default 0
+, created_date datetime not null
+, updated_date datetime not null
+, kb_tenant_id char(36) not null
+, primary key(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+create unique index hyperswitch_job_checkpoints_job_name on hyperswitch_job_checkpoints(kb_tenant_id, job_name);
+
+drop table if exists hyperswitch_hpp_requests;
+create table hyperswitch_hpp_requests (
+  record_id serial
+, kb_account_id char(36) not null
+, kb_payment_id char(36) default null
+, kb_payment_transaction_id char(36) default null
+, session_id varchar(255) not null
+, additional_data longtext default null
+, created_date datetime not null
+, kb_tenant_id char(36) not null
+, primary key(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+create index hyperswitch_hpp_requests_kb_account_id on hyperswitch_hpp_requests(kb_account_id);
+create index hyperswitch_hpp_requests_kb_payment_transaction_id on hyperswitch_hpp_requests(kb_payment_transaction_id);
+create unique index hyperswitch_hpp_requests_kb_session_id on hyperswitch_hpp_requests(session_id);
+create index hyperswitch_hpp_requests_created_date on hyperswitch_hpp_requests(created_date, record_id);
+
+drop table if exists hyperswitch_payment_heads;
+create table hyperswitch_payment_heads (
+  kb_payment_id char(36) not null
+, kb_account_id char(36) not null
+, payment_attempt_id varchar(64) default null
+, amount bigint default null
+, currency char(3) default null
+, captured_amount bigint not null default 0
+, refunded_amount bigint not null default 0
+, refundable_amount bigint not null default 0
+, status varchar(32) default null
+, kb_payment_transaction_id char(36) not null
+, created_date datetime not null
+, updated_date datetime not null
+, kb_tenant_id char(36) not null
+, primary key(kb_payment_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
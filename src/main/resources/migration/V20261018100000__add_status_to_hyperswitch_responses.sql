@@ -0,0 +1,4 @@
+alter table hyperswitch_responses add column status varchar(32) default null after error_code;
+alter table hyperswitch_responses add column next_sync_date datetime default null after created_date;
+update hyperswitch_responses set status = json_unquote(json_extract(additional_data, '$.status')) where additional_data is not null;
+create index hyperswitch_responses_status on hyperswitch_responses(status, next_sync_date);
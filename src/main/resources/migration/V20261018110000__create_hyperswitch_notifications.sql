@@ -0,0 +1,15 @@
+create table hyperswitch_notifications (
+  record_id serial
+, event_id varchar(64) not null
+, event_type varchar(64) default null
+, payment_id varchar(64) default null
+, refund_id varchar(64) default null
+, status varchar(32) default null
+, payload longtext default null
+, created_date datetime not null
+, processed_date datetime default null
+, kb_tenant_id char(36) not null
+, primary key(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+create unique index hyperswitch_notifications_event_id on hyperswitch_notifications(kb_tenant_id, event_id);
+create index hyperswitch_notifications_processed_date on hyperswitch_notifications(processed_date, record_id);
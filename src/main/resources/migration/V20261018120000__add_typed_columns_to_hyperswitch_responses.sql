@@ -0,0 +1,10 @@
+alter table hyperswitch_responses add column refund_id varchar(64) default null after status;
+alter table hyperswitch_responses add column minor_amount bigint default null after refund_id;
+alter table hyperswitch_responses add column profile_id varchar(64) default null after minor_amount;
+alter table hyperswitch_responses add column updated_date datetime default null after created_date;
+update hyperswitch_responses
+set refund_id = json_unquote(json_extract(additional_data, '$.refund_id'))
+, minor_amount = json_extract(additional_data, '$.amount')
+, profile_id = json_unquote(json_extract(additional_data, '$.profile_id'))
+where additional_data is not null;
+create index hyperswitch_responses_refund_id on hyperswitch_responses(refund_id);
@@ -0,0 +1,4 @@
+create index hyperswitch_responses_kb_tenant_id_kb_payment_id on hyperswitch_responses(kb_tenant_id, kb_payment_id, record_id);
+create index hyperswitch_responses_kb_tenant_id_kb_payment_transaction_id on hyperswitch_responses(kb_tenant_id, kb_payment_transaction_id, record_id);
+drop index hyperswitch_responses_kb_payment_id on hyperswitch_responses;
+drop index hyperswitch_responses_kb_payment_transaction_id on hyperswitch_responses;
@@ -0,0 +1,5 @@
+create index hyperswitch_responses_kb_tenant_id_payment_attempt_id on hyperswitch_responses(kb_tenant_id, payment_attempt_id, record_id);
+create index hyperswitch_responses_kb_tenant_id_refund_id on hyperswitch_responses(kb_tenant_id, refund_id, record_id);
+create index hyperswitch_responses_kb_tenant_id_error_code on hyperswitch_responses(kb_tenant_id, error_code, record_id);
+drop index hyperswitch_responses_payment_attmept_id on hyperswitch_responses;
+drop index hyperswitch_responses_refund_id on hyperswitch_responses;
@@ -0,0 +1 @@
+create index hyperswitch_payment_methods_kb_tenant_id_kb_account_id on hyperswitch_payment_methods(kb_tenant_id, kb_account_id, record_id);
@@ -0,0 +1,11 @@
+create table hyperswitch_job_checkpoints (
+  record_id serial
+, job_name varchar(64) not null
+, next_offset bigint not null default 0
+, nb_processed bigint not null default 0
+, created_date datetime not null
+, updated_date datetime not null
+, kb_tenant_id char(36) not null
+, primary key(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+create unique index hyperswitch_job_checkpoints_job_name on hyperswitch_job_checkpoints(kb_tenant_id, job_name);
@@ -0,0 +1,15 @@
+create table hyperswitch_hpp_requests (
+  record_id serial
+, kb_account_id char(36) not null
+, kb_payment_id char(36) default null
+, kb_payment_transaction_id char(36) default null
+, session_id varchar(255) not null
+, additional_data longtext default null
+, created_date datetime not null
+, kb_tenant_id char(36) not null
+, primary key(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+create index hyperswitch_hpp_requests_kb_account_id on hyperswitch_hpp_requests(kb_account_id);
+create index hyperswitch_hpp_requests_kb_payment_transaction_id on hyperswitch_hpp_requests(kb_payment_transaction_id);
+create unique index hyperswitch_hpp_requests_kb_session_id on hyperswitch_hpp_requests(session_id);
+create index hyperswitch_hpp_requests_created_date on hyperswitch_hpp_requests(created_date, record_id);
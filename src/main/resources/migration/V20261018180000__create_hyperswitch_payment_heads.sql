@@ -0,0 +1,15 @@
+create table hyperswitch_payment_heads (
+  kb_payment_id char(36) not null
+, kb_account_id char(36) not null
+, payment_attempt_id varchar(64) default null
+, amount bigint default null
+, currency char(3) default null
+, captured_amount bigint not null default 0
+, refunded_amount bigint not null default 0
+, status varchar(32) default null
+, kb_payment_transaction_id char(36) not null
+, created_date datetime not null
+, updated_date datetime not null
+, kb_tenant_id char(36) not null
+, primary key(kb_payment_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
@@ -0,0 +1,2 @@
+alter table hyperswitch_payment_heads add column refundable_amount bigint not null default 0 after refunded_amount;
+update hyperswitch_payment_heads set refundable_amount = captured_amount - refunded_amount;
@@ -0,0 +1,17 @@
+-- Captures, voids and refunds used to be recorded with the Kill Bill payment method id as payment and transaction id:
+-- attach them to the payment of their authorization (or purchase), through the Hyperswitch payment id. Their
+-- transaction id is unknown and left as is. Heads built from the incomplete history are dropped, to be rebuilt.
+delete h from hyperswitch_payment_heads h
+join hyperswitch_responses p on p.kb_payment_id = h.kb_payment_id and p.kb_tenant_id = h.kb_tenant_id
+join hyperswitch_responses r on r.payment_attempt_id = p.payment_attempt_id and r.kb_tenant_id = p.kb_tenant_id
+where p.transaction_type in ('AUTHORIZE', 'PURCHASE')
+and r.transaction_type in ('CAPTURE', 'VOID', 'REFUND')
+and r.kb_payment_id = r.kb_payment_transaction_id
+and r.kb_payment_id <> p.kb_payment_id;
+update hyperswitch_responses r
+join hyperswitch_responses p on p.payment_attempt_id = r.payment_attempt_id and p.kb_tenant_id = r.kb_tenant_id
+set r.kb_payment_id = p.kb_payment_id
+where p.transaction_type in ('AUTHORIZE', 'PURCHASE')
+and r.transaction_type in ('CAPTURE', 'VOID', 'REFUND')
+and r.kb_payment_id = r.kb_payment_transaction_id
+and r.kb_payment_id <> p.kb_payment_id;
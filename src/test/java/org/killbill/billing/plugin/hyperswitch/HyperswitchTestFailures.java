@@ -0,0 +1,56 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+
+import feign.FeignException;
+import feign.Request;
+import feign.Response;
+import feign.RetryableException;
+
+/**
+ * Failures of Hyperswitch calls, as thrown by the Feign client.
+ */
+final class HyperswitchTestFailures {
+
+    private static final Request REQUEST = Request.create(Request.HttpMethod.POST,
+                                                          "http://localhost/payments",
+                                                          Collections.emptyMap(),
+                                                          null,
+                                                          StandardCharsets.UTF_8,
+                                                          null);
+
+    private HyperswitchTestFailures() {}
+
+    static FeignException errorStatus(final int status) {
+        final Response response = Response.builder()
+                                          .status(status)
+                                          .reason("HTTP " + status)
+                                          .request(REQUEST)
+                                          .headers(Collections.emptyMap())
+                                          .build();
+        return FeignException.errorStatus("HyperswitchApi#call", response);
+    }
+
+    static FeignException ioFailure(final IOException cause) {
+        return new RetryableException(-1, cause.getMessage(), Request.HttpMethod.POST, cause, (Date) null, REQUEST);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.billing.plugin.hyperswitch.HyperswitchCircuitBreaker.CallNotPermittedException;
+import org.killbill.billing.plugin.hyperswitch.HyperswitchCircuitBreaker.State;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import feign.FeignException;
+
+public class TestHyperswitchCircuitBreaker {
+
+    private static final long OPEN_MILLIS = 100;
+
+    @Test(groups = "fast")
+    public void testOpensOnServerErrors() throws Exception {
+        final HyperswitchCircuitBreaker circuitBreaker = newCircuitBreaker(10);
+        final UUID kbTenantId = UUID.randomUUID();
+
+        succeed(circuitBreaker, kbTenantId);
+        succeed(circuitBreaker, kbTenantId);
+        fail(circuitBreaker, kbTenantId, 500);
+        Assert.assertEquals(circuitBreaker.getState(kbTenantId), State.CLOSED);
+        fail(circuitBreaker, kbTenantId, 503);
+        Assert.assertEquals(circuitBreaker.getState(kbTenantId), State.OPEN);
+
+        try {
+            succeed(circuitBreaker, kbTenantId);
+            Assert.fail("The circuit should be open");
+        } catch (final CallNotPermittedException expected) {
+            Assert.assertEquals(circuitBreaker.getRejectedByCircuit(), 1);
+        }
+        // Circuits are per tenant
+        Assert.assertEquals(circuitBreaker.getState(UUID.randomUUID()), State.CLOSED);
+        Assert.assertEquals(circuitBreaker.getTrippedCircuits().get(kbTenantId), State.OPEN);
+    }
+
+    @Test(groups = "fast")
+    public void testClientErrorsAreNotFailures() throws Exception {
+        final HyperswitchCircuitBreaker circuitBreaker = newCircuitBreaker(10);
+        final UUID kbTenantId = UUID.randomUUID();
+
+        for (int i = 0; i < 8; i++) {
+            fail(circuitBreaker, kbTenantId, 400);
+        }
+        Assert.assertEquals(circuitBreaker.getState(kbTenantId), State.CLOSED);
+
+        // Throttling is a failure
+        for (int i = 0; i < 2; i++) {
+            fail(circuitBreaker, kbTenantId, 429);
+        }
+        Assert.assertEquals(circuitBreaker.getState(kbTenantId), State.OPEN);
+    }
+
+    @Test(groups = "fast")
+    public void testHalfOpen() throws Exception {
+        final HyperswitchCircuitBreaker circuitBreaker = newCircuitBreaker(10);
+        final UUID kbTenantId = UUID.randomUUID();
+        open(circuitBreaker, kbTenantId);
+
+        // A failed trial call re-opens the circuit
+        Thread.sleep(OPEN_MILLIS + 50);
+        Assert.assertEquals(circuitBreaker.getState(kbTenantId), State.HALF_OPEN);
+        fail(circuitBreaker, kbTenantId, 502);
+        Assert.assertEquals(circuitBreaker.getState(kbTenantId), State.OPEN);
+
+        // All trial calls succeed
+        Thread.sleep(OPEN_MILLIS + 50);
+        succeed(circuitBreaker, kbTenantId);
+        Assert.assertEquals(circuitBreaker.getState(kbTenantId), State.HALF_OPEN);
+        succeed(circuitBreaker, kbTenantId);
+        Assert.assertEquals(circuitBreaker.getState(kbTenantId), State.CLOSED);
+    }
+
+    @Test(groups = "fast")
+    public void testBulkhead() throws Exception {
+        final HyperswitchCircuitBreaker circuitBreaker = newCircuitBreaker(1);
+        final UUID kbTenantId = UUID.randomUUID();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<String> inFlight = executor.submit(() -> circuitBreaker.call(kbTenantId, () -> {
+                started.countDown();
+                release.await();
+                return "ok";
+            }));
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            try {
+                succeed(circuitBreaker, kbTenantId);
+                Assert.fail("The bulkhead should be full");
+            } catch (final CallNotPermittedException expected) {
+                Assert.assertEquals(circuitBreaker.getRejectedByBulkhead(), 1);
+            }
+            // Other tenants have their own bulkhead
+            succeed(circuitBreaker, UUID.randomUUID());
+
+            release.countDown();
+            Assert.assertEquals(inFlight.get(5, TimeUnit.SECONDS), "ok");
+            succeed(circuitBreaker, kbTenantId);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static HyperswitchCircuitBreaker newCircuitBreaker(final int maxConcurrentCalls) {
+        // Opens at 50% errors over the last 4 calls, slow calls never trip it
+        return new HyperswitchCircuitBreaker(maxConcurrentCalls, 4, 4, 50.0, 99.0, 60000, OPEN_MILLIS, 2);
+    }
+
+    private static void open(final HyperswitchCircuitBreaker circuitBreaker, final UUID kbTenantId) throws CallNotPermittedException {
+        for (int i = 0; i < 4; i++) {
+            fail(circuitBreaker, kbTenantId, 500);
+        }
+        Assert.assertEquals(circuitBreaker.getState(kbTenantId), State.OPEN);
+    }
+
+    private static void succeed(final HyperswitchCircuitBreaker circuitBreaker, final UUID kbTenantId) throws CallNotPermittedException {
+        Assert.assertEquals(circuitBreaker.call(kbTenantId, () -> "ok"), "ok");
+    }
+
+    private static void fail(final HyperswitchCircuitBreaker circuitBreaker, final UUID kbTenantId, final int status) throws CallNotPermittedException {
+        try {
+            circuitBreaker.call(kbTenantId, () -> {
+                throw HyperswitchTestFailures.errorStatus(status);
+            });
+            Assert.fail("The call should have failed");
+        } catch (final FeignException e) {
+            Assert.assertEquals(e.status(), status);
+        }
+    }
+}
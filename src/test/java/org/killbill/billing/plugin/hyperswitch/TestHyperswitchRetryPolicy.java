@@ -0,0 +1,211 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.killbill.billing.plugin.hyperswitch.HyperswitchCircuitBreaker.CallNotPermittedException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import feign.FeignException;
+
+public class TestHyperswitchRetryPolicy {
+
+    @Test(groups = "fast")
+    public void testRetriesTransientFailures() throws Exception {
+        final HyperswitchRetryPolicy retryPolicy = newRetryPolicy();
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final String result = retryPolicy.call("createPayment", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw HyperswitchTestFailures.errorStatus(attempts.get() == 1 ? 503 : 429);
+            }
+            return "pay_1";
+        }, null);
+
+        Assert.assertEquals(result, "pay_1");
+        Assert.assertEquals(attempts.get(), 3);
+        Assert.assertEquals(retryPolicy.getRetries(), 2);
+    }
+
+    @Test(groups = "fast")
+    public void testGivesUpAfterMaxAttempts() throws Exception {
+        final HyperswitchRetryPolicy retryPolicy = newRetryPolicy();
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final FeignException failure = expectFailure(() -> retryPolicy.call("createPayment", () -> {
+            attempts.incrementAndGet();
+            throw HyperswitchTestFailures.errorStatus(500);
+        }, null));
+
+        Assert.assertEquals(failure.status(), 500);
+        Assert.assertEquals(attempts.get(), 3);
+    }
+
+    @Test(groups = "fast")
+    public void testDoesNotRetryClientErrors() throws Exception {
+        final HyperswitchRetryPolicy retryPolicy = newRetryPolicy();
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final FeignException failure = expectFailure(() -> retryPolicy.call("createPayment", () -> {
+            attempts.incrementAndGet();
+            throw HyperswitchTestFailures.errorStatus(400);
+        }, () -> "recovered"));
+
+        // Not a rejected retry: nothing to recover
+        Assert.assertEquals(failure.status(), 400);
+        Assert.assertEquals(attempts.get(), 1);
+        Assert.assertEquals(retryPolicy.getRecoveries(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testRecoversRejectedRetry() throws Exception {
+        final HyperswitchRetryPolicy retryPolicy = newRetryPolicy();
+        final AtomicInteger attempts = new AtomicInteger();
+
+        // The first attempt went through but timed out, the retry is rejected as a duplicate
+        final String result = retryPolicy.call("createPayment", () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw HyperswitchTestFailures.ioFailure(new SocketTimeoutException("Read timed out"));
+            }
+            throw HyperswitchTestFailures.errorStatus(400);
+        }, () -> "pay_1");
+
+        Assert.assertEquals(result, "pay_1");
+        Assert.assertEquals(retryPolicy.getRecoveries(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testRejectedRetryWithoutPreviousAttempt() throws Exception {
+        final HyperswitchRetryPolicy retryPolicy = newRetryPolicy();
+        final AtomicInteger attempts = new AtomicInteger();
+
+        // The previous attempt didn't go through: the rejection stands
+        final FeignException failure = expectFailure(() -> retryPolicy.call("createPayment", () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw HyperswitchTestFailures.errorStatus(502);
+            }
+            throw HyperswitchTestFailures.errorStatus(409);
+        }, () -> null));
+        Assert.assertEquals(failure.status(), 409);
+        Assert.assertEquals(retryPolicy.getRecoveries(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testRecoveryFailure() throws Exception {
+        final HyperswitchRetryPolicy retryPolicy = newRetryPolicy();
+        final AtomicInteger attempts = new AtomicInteger();
+
+        // The outcome of the previous attempt can't be fetched: it is still unknown
+        final FeignException unknown = expectFailure(() -> retryPolicy.call("createPayment", () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw HyperswitchTestFailures.errorStatus(502);
+            }
+            throw HyperswitchTestFailures.errorStatus(409);
+        }, () -> {
+            throw HyperswitchTestFailures.errorStatus(500);
+        }));
+        Assert.assertEquals(unknown.status(), 502);
+        Assert.assertEquals(retryPolicy.getRecoveries(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testNotIdempotentCall() throws Exception {
+        final HyperswitchRetryPolicy retryPolicy = newRetryPolicy();
+        final AtomicInteger attempts = new AtomicInteger();
+
+        // The request may have been processed
+        expectFailure(() -> retryPolicy.callNotIdempotent("capturePayment", () -> {
+            attempts.incrementAndGet();
+            throw HyperswitchTestFailures.ioFailure(new SocketTimeoutException("Read timed out"));
+        }));
+        Assert.assertEquals(attempts.get(), 1);
+
+        attempts.set(0);
+        expectFailure(() -> retryPolicy.callNotIdempotent("capturePayment", () -> {
+            attempts.incrementAndGet();
+            throw HyperswitchTestFailures.errorStatus(500);
+        }));
+        Assert.assertEquals(attempts.get(), 1);
+
+        // The request wasn't processed
+        attempts.set(0);
+        final String result = retryPolicy.callNotIdempotent("capturePayment", () -> {
+            switch (attempts.incrementAndGet()) {
+                case 1:
+                    throw HyperswitchTestFailures.ioFailure(new ConnectException("Connection refused"));
+                case 2:
+                    throw HyperswitchTestFailures.errorStatus(503);
+                default:
+                    return "pay_1";
+            }
+        });
+        Assert.assertEquals(result, "pay_1");
+        Assert.assertEquals(attempts.get(), 3);
+    }
+
+    @Test(groups = "fast")
+    public void testCallNotPermitted() throws Exception {
+        final HyperswitchRetryPolicy retryPolicy = newRetryPolicy();
+        final AtomicInteger attempts = new AtomicInteger();
+
+        try {
+            retryPolicy.call("createPayment", () -> {
+                attempts.incrementAndGet();
+                throw new CallNotPermittedException("open");
+            }, null);
+            Assert.fail("The call should have been rejected");
+        } catch (final CallNotPermittedException expected) {
+            Assert.assertEquals(attempts.get(), 1);
+        }
+
+        // Once an attempt was sent, its failure is reported instead
+        attempts.set(0);
+        final FeignException failure = expectFailure(() -> retryPolicy.call("createPayment", () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw HyperswitchTestFailures.errorStatus(504);
+            }
+            throw new CallNotPermittedException("open");
+        }, null));
+        Assert.assertEquals(failure.status(), 504);
+    }
+
+    @Test(groups = "fast")
+    public void testIds() {
+        final UUID kbTransactionId = UUID.fromString("0b7a5f2e-6d4c-4b8a-9e1f-3c2d1a0b9f8e");
+        Assert.assertEquals(HyperswitchRetryPolicy.toPaymentId(kbTransactionId), "pay_0b7a5f2e6d4c4b8a9e1f3c2d1a0b9f8e");
+        Assert.assertEquals(HyperswitchRetryPolicy.toRefundId(kbTransactionId), "ref_0b7a5f2e6d4c4b8a9e1f3c2d1a0b9f8e");
+    }
+
+    private static HyperswitchRetryPolicy newRetryPolicy() {
+        return new HyperswitchRetryPolicy(3, 1, 5, 10000);
+    }
+
+    private static FeignException expectFailure(final HyperswitchMetrics.Call<?, CallNotPermittedException> call) throws CallNotPermittedException {
+        try {
+            call.call();
+        } catch (final FeignException e) {
+            return e;
+        }
+        Assert.fail("The call should have failed");
+        return null;
+    }
+}
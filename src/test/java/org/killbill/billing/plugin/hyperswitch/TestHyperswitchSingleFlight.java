@@ -0,0 +1,147 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestHyperswitchSingleFlight {
+
+    private static final long TTL_MILLIS = 200;
+
+    @Test(groups = "fast")
+    public void testCoalescesConcurrentLoads() throws Exception {
+        final HyperswitchSingleFlight<String, String> singleFlight = new HyperswitchSingleFlight<String, String>(100, 0, 0);
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final int followers = 4;
+        final ExecutorService executor = Executors.newFixedThreadPool(followers + 1);
+        try {
+            final Future<String> leader = executor.submit(() -> singleFlight.get("pay_1", () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                release.await();
+                return "succeeded";
+            }, deadline()));
+            Assert.assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+            final List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < followers; i++) {
+                results.add(executor.submit(() -> singleFlight.get("pay_1", () -> {
+                    loads.incrementAndGet();
+                    return "loaded again";
+                }, deadline())));
+            }
+            // Wait for all followers to join the flight of the leader
+            final long waitUntil = System.currentTimeMillis() + 5000;
+            while (singleFlight.getCoalescedLoads() < followers && System.currentTimeMillis() < waitUntil) {
+                Thread.sleep(10);
+            }
+
+            release.countDown();
+            Assert.assertEquals(leader.get(5, TimeUnit.SECONDS), "succeeded");
+            for (final Future<String> result : results) {
+                Assert.assertEquals(result.get(5, TimeUnit.SECONDS), "succeeded");
+            }
+            Assert.assertEquals(loads.get(), 1);
+            Assert.assertEquals(singleFlight.getCoalescedLoads(), followers);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testFollowerDeadline() throws Exception {
+        final HyperswitchSingleFlight<String, String> singleFlight = new HyperswitchSingleFlight<String, String>(100, 0, 0);
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<String> leader = executor.submit(() -> singleFlight.get("pay_1", () -> {
+                loading.countDown();
+                release.await();
+                return "succeeded";
+            }, deadline()));
+            Assert.assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+            // Gives up instead of waiting for the leader
+            Assert.assertNull(singleFlight.get("pay_1", () -> "loaded again", System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50)));
+
+            release.countDown();
+            Assert.assertEquals(leader.get(5, TimeUnit.SECONDS), "succeeded");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testRemembersOutcomes() throws Exception {
+        final HyperswitchSingleFlight<String, String> singleFlight = new HyperswitchSingleFlight<String, String>(100, TTL_MILLIS, TTL_MILLIS);
+        final AtomicInteger loads = new AtomicInteger();
+
+        Assert.assertEquals(singleFlight.get("pay_1", () -> "v" + loads.incrementAndGet(), deadline()), "v1");
+        Assert.assertEquals(singleFlight.get("pay_1", () -> "v" + loads.incrementAndGet(), deadline()), "v1");
+        Assert.assertEquals(singleFlight.getCachedLoads(), 1);
+
+        Thread.sleep(TTL_MILLIS + 50);
+        Assert.assertEquals(singleFlight.get("pay_1", () -> "v" + loads.incrementAndGet(), deadline()), "v2");
+
+        // Failures are remembered too
+        final AtomicInteger failures = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            try {
+                singleFlight.get("pay_2", () -> {
+                    failures.incrementAndGet();
+                    throw new IllegalStateException("Hyperswitch is down");
+                }, deadline());
+                Assert.fail("The load should have failed");
+            } catch (final IllegalStateException expected) {
+                Assert.assertEquals(expected.getMessage(), "Hyperswitch is down");
+            }
+        }
+        Assert.assertEquals(failures.get(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testDoesNotRememberNull() throws Exception {
+        final HyperswitchSingleFlight<String, String> singleFlight = new HyperswitchSingleFlight<String, String>(100, TTL_MILLIS, TTL_MILLIS);
+        final AtomicInteger loads = new AtomicInteger();
+
+        Assert.assertNull(singleFlight.get("pay_1", () -> {
+            loads.incrementAndGet();
+            return null;
+        }, deadline()));
+        Assert.assertEquals(singleFlight.get("pay_1", () -> "v" + loads.incrementAndGet(), deadline()), "v2");
+        Assert.assertEquals(singleFlight.getCachedLoads(), 0);
+    }
+
+    private static long deadline() {
+        return System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.killbill.billing.plugin.hyperswitch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.io.BaseEncoding;
+
+public class TestHyperswitchWebhookParser {
+
+    private static final String SECRET = "whsec_test";
+    private static final String PAYMENT_EVENT = "{\"merchant_id\":\"merchant_1\"," +
+                                                "\"event_id\":\"evt_1\"," +
+                                                "\"event_type\":\"payment_succeeded\"," +
+                                                "\"content\":{\"type\":\"payment_details\"," +
+                                                "\"object\":{\"payment_id\":\"pay_1\",\"status\":\"succeeded\",\"metadata\":{\"status\":\"ignored\"}}}}";
+    private static final String REFUND_EVENT = "{\"event_id\":\"evt_2\"," +
+                                               "\"event_type\":\"refund_failed\"," +
+                                               "\"content\":{\"object\":{\"refund_id\":\"ref_1\",\"payment_id\":\"pay_1\",\"status\":\"failed\"}}}";
+
+    @Test(groups = "fast")
+    public void testSignature() throws Exception {
+        final String signature = sign(PAYMENT_EVENT, SECRET);
+        Assert.assertTrue(HyperswitchWebhookParser.isSignatureValid(PAYMENT_EVENT, signature, SECRET));
+        // Hex case and surrounding whitespace don't matter
+        Assert.assertTrue(HyperswitchWebhookParser.isSignatureValid(PAYMENT_EVENT, " " + signature.toUpperCase() + " ", SECRET));
+
+        Assert.assertFalse(HyperswitchWebhookParser.isSignatureValid(PAYMENT_EVENT + " ", signature, SECRET));
+        Assert.assertFalse(HyperswitchWebhookParser.isSignatureValid(PAYMENT_EVENT, signature, "other_secret"));
+        Assert.assertFalse(HyperswitchWebhookParser.isSignatureValid(PAYMENT_EVENT, null, SECRET));
+        Assert.assertFalse(HyperswitchWebhookParser.isSignatureValid(PAYMENT_EVENT, signature, null));
+        Assert.assertFalse(HyperswitchWebhookParser.isSignatureValid(PAYMENT_EVENT, signature, ""));
+    }
+
+    @Test(groups = "fast")
+    public void testParsePaymentEvent() throws Exception {
+        final HyperswitchWebhookEvent event = HyperswitchWebhookParser.parse(PAYMENT_EVENT);
+        Assert.assertEquals(event.getEventId(), "evt_1");
+        Assert.assertEquals(event.getEventType(), "payment_succeeded");
+        Assert.assertEquals(event.getPaymentId(), "pay_1");
+        Assert.assertNull(event.getRefundId());
+        // Nested fields of the object are skipped
+        Assert.assertEquals(event.getStatus(), "succeeded");
+    }
+
+    @Test(groups = "fast")
+    public void testParseRefundEvent() throws Exception {
+        final HyperswitchWebhookEvent event = HyperswitchWebhookParser.parse(REFUND_EVENT);
+        Assert.assertEquals(event.getEventId(), "evt_2");
+        Assert.assertEquals(event.getEventType(), "refund_failed");
+        Assert.assertEquals(event.getPaymentId(), "pay_1");
+        Assert.assertEquals(event.getRefundId(), "ref_1");
+        Assert.assertEquals(event.getStatus(), "failed");
+    }
+
+    @Test(groups = "fast", expectedExceptions = IOException.class)
+    public void testParseNotAnObject() throws Exception {
+        HyperswitchWebhookParser.parse("[\"evt_1\"]");
+    }
+
+    private static String sign(final String payload, final String secret) throws Exception {
+        final Mac mac = Mac.getInstance("HmacSHA512");
+        mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA512"));
+        return BaseEncoding.base16().lowerCase().encode(mac.doFinal(payload.getBytes(StandardCharsets.UTF_8)));
+    }
+}
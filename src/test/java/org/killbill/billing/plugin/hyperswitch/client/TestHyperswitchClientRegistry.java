@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch.client;
+
+import java.util.Properties;
+import java.util.UUID;
+
+import org.killbill.billing.plugin.hyperswitch.HyperswitchConfigProperties;
+import org.killbill.billing.plugin.hyperswitch.HyperswitchTenantConfig;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestHyperswitchClientRegistry {
+
+    private static final String PROPERTY_PREFIX = "org.killbill.billing.plugin.hyperswitch.";
+
+    @Test(groups = "fast")
+    public void testSharedTransportIsClosedWithItsLastTenant() {
+        final HyperswitchTenantConfig config = tenantConfig("snd_1", null);
+        final UUID kbTenantId1 = UUID.randomUUID();
+        final UUID kbTenantId2 = UUID.randomUUID();
+        try (final HyperswitchClientRegistry registry = new HyperswitchClientRegistry()) {
+            registry.getClients(kbTenantId1, config);
+            registry.getClients(kbTenantId2, tenantConfig("snd_2", null));
+            Assert.assertEquals(registry.getTransports(), 1);
+
+            registry.invalidate(kbTenantId1);
+            Assert.assertEquals(registry.getTransports(), 1);
+
+            // Rebuilt with the same transport settings: the transport is kept
+            registry.getClients(kbTenantId2, tenantConfig("snd_3", null));
+            Assert.assertEquals(registry.getTransports(), 1);
+
+            registry.invalidate(kbTenantId2);
+            Assert.assertEquals(registry.getTransports(), 0);
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testTransportIsReleasedOnSettingsChange() {
+        final UUID kbTenantId = UUID.randomUUID();
+        try (final HyperswitchClientRegistry registry = new HyperswitchClientRegistry()) {
+            registry.getClients(kbTenantId, tenantConfig("snd_1", null));
+            Assert.assertEquals(registry.getTransports(), 1);
+
+            // Moved to the sandbox: its own transport replaces the shared one
+            registry.getClients(kbTenantId, tenantConfig("snd_1", "sandbox"));
+            Assert.assertEquals(registry.getTransports(), 1);
+            Assert.assertEquals(registry.getRebuilds(), 1);
+
+            registry.invalidate(kbTenantId);
+            Assert.assertEquals(registry.getTransports(), 0);
+        }
+    }
+
+    private static HyperswitchTenantConfig tenantConfig(final String apiKey, final String environment) {
+        final Properties properties = new Properties();
+        properties.setProperty(PROPERTY_PREFIX + "hyperswitchApikey", apiKey);
+        if (environment != null) {
+            properties.setProperty(PROPERTY_PREFIX + "environment", environment);
+        }
+        return HyperswitchTenantConfig.resolve(new HyperswitchConfigProperties(properties, null));
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.hyperswitch.dao;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+
+/**
+ * In-memory H2 database (MySQL mode) with the plugin schema from ddl.sql.
+ */
+class EmbeddedDatabase implements AutoCloseable {
+
+    private final JdbcConnectionPool dataSource;
+
+    EmbeddedDatabase(final int maxConnections) throws IOException, SQLException {
+        this(maxConnections, true);
+    }
+
+    /**
+     * @param withSchema false for a database without tables, where every query of the plugin fails
+     */
+    EmbeddedDatabase(final int maxConnections, final boolean withSchema) throws IOException, SQLException {
+        // The generated jOOQ classes reference the killbill schema
+        final String url = "jdbc:h2:mem:" + UUID.randomUUID() +
+                           ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1" +
+                           ";INIT=CREATE SCHEMA IF NOT EXISTS killbill\\;SET SCHEMA killbill";
+        this.dataSource = JdbcConnectionPool.create(url, "killbill", "killbill");
+        this.dataSource.setMaxConnections(maxConnections);
+        if (withSchema) {
+            createSchema();
+        }
+    }
+
+    DataSource getDataSource() {
+        return dataSource;
+    }
+
+    @Override
+    public void close() {
+        dataSource.dispose();
+    }
+
+    private void createSchema() throws IOException, SQLException {
+        final String ddl;
+        try (final InputStream in = EmbeddedDatabase.class.getResourceAsStream("/ddl.sql")) {
+            if (in == null) {
+                throw new IOException("ddl.sql not found on the classpath");
+            }
+            ddl = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        try (final Connection connection = dataSource.getConnection();
+             final Statement statement = connection.createStatement()) {
+            // Comments are stripped first: the license header contains semicolons
+            for (final String sql : toH2(ddl).split(";")) {
+                if (!sql.isBlank()) {
+                    statement.execute(sql.trim());
+                }
+            }
+        }
+    }
+
+    private static String toH2(final String mysql) {
+        // MySQL-only clauses (/*! ... */) and the license header
+        return mysql.replaceAll("(?s)/\\*.*?\\*/", "")
+                    .replaceAll("(?m)^\\s*--.*$", "")
+                    .replaceAll("\\bserial\\b", "bigint not null auto_increment");
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.killbill.billing.plugin.hyperswitch.dao;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.plugin.hyperswitch.dao.gen.tables.records.HyperswitchPaymentHeadsRecord;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.hyperswitch.client.model.IntentStatus;
+import com.hyperswitch.client.model.PaymentsResponse;
+import com.hyperswitch.client.model.RefundResponse;
+import com.hyperswitch.client.model.RefundStatus;
+
+public class TestHyperswitchDao {
+
+    private EmbeddedDatabase database;
+    private HyperswitchDao dao;
+    private UUID kbAccountId;
+    private UUID kbTenantId;
+
+    @BeforeMethod(groups = "fast")
+    public void setUp() throws Exception {
+        database = new EmbeddedDatabase(4);
+        dao = new HyperswitchDao(database.getDataSource());
+        kbAccountId = UUID.randomUUID();
+        kbTenantId = UUID.randomUUID();
+    }
+
+    @AfterMethod(groups = "fast")
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test(groups = "fast")
+    public void testPaymentHeadTotals() throws Exception {
+        final UUID kbPaymentId = UUID.randomUUID();
+
+        addPaymentResponse(kbPaymentId, TransactionType.AUTHORIZE, "10.00", IntentStatus.REQUIRES_CAPTURE);
+        HyperswitchPaymentHeadsRecord head = dao.getPaymentHead(kbPaymentId, kbTenantId);
+        Assert.assertEquals((long) head.getAmount(), 1000L);
+        Assert.assertEquals(head.getCurrency(), "USD");
+        Assert.assertEquals((long) head.getCapturedAmount(), 0L);
+        Assert.assertEquals((long) head.getRefundableAmount(), 0L);
+
+        addPaymentResponse(kbPaymentId, TransactionType.CAPTURE, "6.00", IntentStatus.PARTIALLY_CAPTURED_AND_CAPTURABLE);
+        addPaymentResponse(kbPaymentId, TransactionType.CAPTURE, "4.00", IntentStatus.SUCCEEDED);
+        head = dao.getPaymentHead(kbPaymentId, kbTenantId);
+        // Captures don't change the amount of the payment
+        Assert.assertEquals((long) head.getAmount(), 1000L);
+        Assert.assertEquals((long) head.getCapturedAmount(), 1000L);
+        Assert.assertEquals((long) head.getRefundedAmount(), 0L);
+        Assert.assertEquals((long) head.getRefundableAmount(), 1000L);
+        Assert.assertEquals(head.getStatus(), IntentStatus.SUCCEEDED.toString());
+
+        // Successful refund: reserved, then accounted for by its response
+        Assert.assertTrue(dao.reserveRefund(kbPaymentId, 300L, kbTenantId));
+        addRefundResponse(kbPaymentId, "3.00", RefundStatus.SUCCEEDED);
+        head = dao.getPaymentHead(kbPaymentId, kbTenantId);
+        Assert.assertEquals((long) head.getRefundedAmount(), 300L);
+        Assert.assertEquals((long) head.getRefundableAmount(), 700L);
+
+        // Failed refund: given back by its response
+        Assert.assertTrue(dao.reserveRefund(kbPaymentId, 200L, kbTenantId));
+        addRefundResponse(kbPaymentId, "2.00", RefundStatus.FAILED);
+        head = dao.getPaymentHead(kbPaymentId, kbTenantId);
+        Assert.assertEquals((long) head.getCapturedAmount(), 1000L);
+        Assert.assertEquals((long) head.getRefundedAmount(), 300L);
+        Assert.assertEquals((long) head.getRefundableAmount(), 700L);
+        Assert.assertEquals(head.getStatus(), RefundStatus.FAILED.toString());
+
+        // Heads are scoped by tenant
+        Assert.assertNull(dao.getPaymentHead(kbPaymentId, UUID.randomUUID()));
+    }
+
+    @Test(groups = "fast")
+    public void testProcessingCapture() throws Exception {
+        final UUID kbPaymentId = UUID.randomUUID();
+        addPaymentResponse(kbPaymentId, TransactionType.AUTHORIZE, "10.00", IntentStatus.REQUIRES_CAPTURE);
+        final UUID kbCaptureId = addPaymentResponse(kbPaymentId, TransactionType.CAPTURE, "10.00", IntentStatus.PROCESSING);
+        HyperswitchPaymentHeadsRecord head = dao.getPaymentHead(kbPaymentId, kbTenantId);
+        // Not captured (nor refundable) until confirmed
+        Assert.assertEquals((long) head.getCapturedAmount(), 0L);
+        Assert.assertEquals((long) head.getRefundableAmount(), 0L);
+        Assert.assertEquals(head.getStatus(), IntentStatus.PROCESSING.toString());
+
+        // Confirmed by a refresh
+        dao.updateResponse(kbCaptureId, toPaymentsResponse(kbPaymentId, IntentStatus.SUCCEEDED), kbTenantId);
+        head = dao.getPaymentHead(kbPaymentId, kbTenantId);
+        Assert.assertEquals((long) head.getCapturedAmount(), 1000L);
+        Assert.assertEquals((long) head.getRefundableAmount(), 1000L);
+        Assert.assertEquals(head.getStatus(), IntentStatus.SUCCEEDED.toString());
+    }
+
+    @Test(groups = "fast")
+    public void testReserveAndReleaseRefund() throws Exception {
+        final UUID kbPaymentId = UUID.randomUUID();
+        addPaymentResponse(kbPaymentId, TransactionType.PURCHASE, "10.00", IntentStatus.SUCCEEDED);
+        Assert.assertEquals((long) dao.getPaymentHead(kbPaymentId, kbTenantId).getRefundableAmount(), 1000L);
+
+        Assert.assertTrue(dao.reserveRefund(kbPaymentId, 600L, kbTenantId));
+        // Concurrent refunds can't go over the captured total
+        Assert.assertFalse(dao.reserveRefund(kbPaymentId, 600L, kbTenantId));
+        Assert.assertTrue(dao.reserveRefund(kbPaymentId, 400L, kbTenantId));
+        Assert.assertEquals((long) dao.getPaymentHead(kbPaymentId, kbTenantId).getRefundableAmount(), 0L);
+
+        // The first refund didn't get a response
+        dao.releaseRefund(kbPaymentId, 600L, kbTenantId);
+        Assert.assertEquals((long) dao.getPaymentHead(kbPaymentId, kbTenantId).getRefundableAmount(), 600L);
+        Assert.assertTrue(dao.reserveRefund(kbPaymentId, 600L, kbTenantId));
+
+        // Other tenants can't touch the head
+        Assert.assertFalse(dao.reserveRefund(kbPaymentId, 1L, UUID.randomUUID()));
+        dao.releaseRefund(kbPaymentId, 1000L, UUID.randomUUID());
+        Assert.assertEquals((long) dao.getPaymentHead(kbPaymentId, kbTenantId).getRefundableAmount(), 0L);
+    }
+
+    private UUID addPaymentResponse(final UUID kbPaymentId,
+                                    final TransactionType transactionType,
+                                    final String amount,
+                                    final IntentStatus status) throws Exception {
+        final UUID kbTransactionId = UUID.randomUUID();
+        dao.addResponse(kbAccountId,
+                        kbPaymentId,
+                        kbTransactionId,
+                        transactionType,
+                        new BigDecimal(amount),
+                        Currency.USD,
+                        toPaymentsResponse(kbPaymentId, status),
+                        DateTime.now(DateTimeZone.UTC),
+                        kbTenantId);
+        return kbTransactionId;
+    }
+
+    private static PaymentsResponse toPaymentsResponse(final UUID kbPaymentId, final IntentStatus status) {
+        final PaymentsResponse paymentsResponse = new PaymentsResponse();
+        paymentsResponse.setPaymentId("pay_" + kbPaymentId.toString().replace("-", ""));
+        paymentsResponse.setStatus(status);
+        return paymentsResponse;
+    }
+
+    private void addRefundResponse(final UUID kbPaymentId, final String amount, final RefundStatus status) throws Exception {
+        final UUID kbTransactionId = UUID.randomUUID();
+        final RefundResponse refundResponse = new RefundResponse();
+        refundResponse.setRefundId("ref_" + kbTransactionId.toString().replace("-", ""));
+        refundResponse.setPaymentId("pay_" + kbPaymentId.toString().replace("-", ""));
+        refundResponse.setStatus(status);
+        dao.addResponse(kbAccountId,
+                        kbPaymentId,
+                        kbTransactionId,
+                        TransactionType.REFUND,
+                        new BigDecimal(amount),
+                        Currency.USD,
+                        refundResponse,
+                        DateTime.now(DateTimeZone.UTC),
+                        kbTenantId);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020-2023 Equinix, Inc
+ * Copyright 2014-2023 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.killbill.billing.plugin.hyperswitch.dao;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.payment.api.TransactionType;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.hyperswitch.client.model.IntentStatus;
+import com.hyperswitch.client.model.PaymentsResponse;
+
+public class TestHyperswitchResponseJournal {
+
+    private static final int JOURNAL_SIZE_BYTES = 1024 * 1024;
+
+    private EmbeddedDatabase database;
+    private HyperswitchDao dao;
+    private File journalFile;
+    private UUID kbAccountId;
+    private UUID kbTenantId;
+
+    @BeforeMethod(groups = "fast")
+    public void setUp() throws Exception {
+        database = new EmbeddedDatabase(4);
+        dao = new HyperswitchDao(database.getDataSource());
+        journalFile = File.createTempFile("hyperswitch-journal", ".bin");
+        kbAccountId = UUID.randomUUID();
+        kbTenantId = UUID.randomUUID();
+    }
+
+    @AfterMethod(groups = "fast")
+    public void tearDown() {
+        database.close();
+        journalFile.delete();
+    }
+
+    @Test(groups = "fast")
+    public void testRecovery() throws Exception {
+        final UUID kbPaymentId = UUID.randomUUID();
+
+        // The writer can't insert anything: journaled responses are only in the file when the journal is closed
+        try (final EmbeddedDatabase brokenDatabase = new EmbeddedDatabase(1, false)) {
+            final HyperswitchDao brokenDao = new HyperswitchDao(brokenDatabase.getDataSource());
+            final HyperswitchResponseJournal journal = newJournal(brokenDao);
+            Assert.assertEquals(journal.start(), 0);
+            brokenDao.setResponseJournal(journal);
+            addResponse(brokenDao, kbPaymentId, TransactionType.AUTHORIZE, IntentStatus.REQUIRES_CAPTURE);
+            addResponse(brokenDao, kbPaymentId, TransactionType.CAPTURE, IntentStatus.SUCCEEDED);
+            Assert.assertEquals(journal.getAppendedResponses(), 2);
+            Assert.assertEquals(journal.getFlushedResponses(), 0);
+            journal.close();
+        }
+        Assert.assertEquals(dao.getResponses(kbPaymentId, kbTenantId).size(), 0);
+
+        // Replayed at next startup
+        final HyperswitchResponseJournal journal = newJournal(dao);
+        try {
+            Assert.assertEquals(journal.start(), 2);
+            Assert.assertEquals(dao.getResponses(kbPaymentId, kbTenantId).size(), 2);
+        } finally {
+            journal.close();
+        }
+
+        // Not replayed twice
+        final HyperswitchResponseJournal reopenedJournal = newJournal(dao);
+        try {
+            Assert.assertEquals(reopenedJournal.start(), 0);
+            Assert.assertEquals(dao.getResponses(kbPaymentId, kbTenantId).size(), 2);
+        } finally {
+            reopenedJournal.close();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testWriteBehind() throws Exception {
+        final UUID kbPaymentId = UUID.randomUUID();
+        final HyperswitchResponseJournal journal = newJournal(dao);
+        try {
+            journal.start();
+            dao.setResponseJournal(journal);
+            addResponse(dao, kbPaymentId, TransactionType.PURCHASE, IntentStatus.SUCCEEDED);
+
+            // Wait for the writer, like reads do
+            dao.awaitFlushed(kbPaymentId);
+            Assert.assertEquals(journal.getQueueDepth(), 0);
+            Assert.assertEquals(dao.getResponses(kbPaymentId, kbTenantId).size(), 1);
+        } finally {
+            dao.setResponseJournal(null);
+            journal.close();
+        }
+
+        // Already in the database: nothing to replay
+        final HyperswitchResponseJournal reopenedJournal = newJournal(dao);
+        try {
+            Assert.assertEquals(reopenedJournal.start(), 0);
+            Assert.assertEquals(dao.getResponses(kbPaymentId, kbTenantId).size(), 1);
+        } finally {
+            reopenedJournal.close();
+        }
+    }
+
+    private HyperswitchResponseJournal newJournal(final HyperswitchDao hyperswitchDao) throws Exception {
+        return new HyperswitchResponseJournal(hyperswitchDao, journalFile, JOURNAL_SIZE_BYTES, 100, 10, 5000);
+    }
+
+    private void addResponse(final HyperswitchDao hyperswitchDao,
+                             final UUID kbPaymentId,
+                             final TransactionType transactionType,
+                             final IntentStatus status) throws Exception {
+        final PaymentsResponse paymentsResponse = new PaymentsResponse();
+        paymentsResponse.setPaymentId("pay_" + kbPaymentId.toString().replace("-", ""));
+        paymentsResponse.setStatus(status);
+        hyperswitchDao.addResponse(kbAccountId,
+                                   kbPaymentId,
+                                   UUID.randomUUID(),
+                                   transactionType,
+                                   BigDecimal.TEN,
+                                   Currency.USD,
+                                   paymentsResponse,
+                                   DateTime.now(DateTimeZone.UTC),
+                                   kbTenantId);
+    }
+}